@@ -0,0 +1,45 @@
+package com.university.exam.dao;
+
+import com.university.exam.util.DatabaseConfig;
+
+import java.sql.*;
+
+public class EnrollmentDAO {
+    public boolean enroll(int studentId, int courseId) {
+        String sql = "INSERT INTO enrollments (student_id, course_id) VALUES (?, ?)";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, studentId);
+            stmt.setInt(2, courseId);
+            
+            if (stmt.executeUpdate() > 0) {
+                ExamAvailabilityIndex.getInstance().enrolled(studentId, courseId);
+                return true;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+    
+    public boolean unenroll(int studentId, int courseId) {
+        String sql = "DELETE FROM enrollments WHERE student_id = ? AND course_id = ?";
+        
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, studentId);
+            stmt.setInt(2, courseId);
+            
+            if (stmt.executeUpdate() > 0) {
+                ExamAvailabilityIndex.getInstance().unenrolled(studentId, courseId);
+                return true;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+}
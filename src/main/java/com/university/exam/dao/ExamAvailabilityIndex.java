@@ -0,0 +1,519 @@
+package com.university.exam.dao;
+
+import com.university.exam.model.Exam;
+import com.university.exam.util.DatabaseConfig;
+import com.university.exam.util.IdBitmap;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory index answering "upcoming exams for student X" without a
+ * query. Published exams that have not started are kept per course in
+ * arrays sorted by start time, next to each student's enrolled courses;
+ * a lookup binary-searches past the exams that have already started in
+ * each of the student's courses and merges what is left. The students of
+ * each course are also kept as a compressed bitmap, for membership tests
+ * and for set operations across courses such as finding the students
+ * booked into two exams at the same time.
+ *
+ * Loaded on first use and kept current by the DAOs that change exams and
+ * enrollments. Readers never lock: every change replaces a course's array
+ * or a student's course list with a new one. A full reload every
+ * exam.index.reloadSeconds (system property, default 300, 0 to disable)
+ * drops exams that have started and picks up rows written outside this
+ * application.
+ */
+public class ExamAvailabilityIndex {
+    private static final String LOAD_EXAMS_SQL = "SELECT id, course_id, title, description, start_time, " +
+                    "duration_minutes, total_marks, status FROM exams " +
+                    "WHERE status = 'published' AND start_time > NOW()";
+    private static final String LOAD_EXAM_SQL = "SELECT id, course_id, title, description, start_time, " +
+                    "duration_minutes, total_marks, status FROM exams WHERE id = ?";
+    private static final String LOAD_ENROLLMENTS_SQL = "SELECT student_id, course_id FROM enrollments";
+    private static final Entry[] NO_EXAMS = new Entry[0];
+    private static final int[] NO_COURSES = new int[0];
+
+    private static volatile ExamAvailabilityIndex instance;
+
+    /** Immutable copy of the exam columns the dashboard shows. */
+    private static final class Entry {
+        final int id;
+        final int courseId;
+        final String title;
+        final String description;
+        final long startMillis;
+        final int durationMinutes;
+        final int totalMarks;
+        final String status;
+
+        Entry(Exam exam) {
+            this.id = exam.getId();
+            this.courseId = exam.getCourseId();
+            this.title = exam.getTitle();
+            this.description = exam.getDescription();
+            this.startMillis = exam.getStartTime().getTime();
+            this.durationMinutes = exam.getDurationMinutes();
+            this.totalMarks = exam.getTotalMarks();
+            this.status = exam.getStatus();
+        }
+
+        Exam toExam() {
+            Exam exam = new Exam();
+            exam.setId(id);
+            exam.setCourseId(courseId);
+            exam.setTitle(title);
+            exam.setDescription(description);
+            exam.setStartTime(new Timestamp(startMillis));
+            exam.setDurationMinutes(durationMinutes);
+            exam.setTotalMarks(totalMarks);
+            exam.setStatus(status);
+            return exam;
+        }
+
+        long endMillis() {
+            return startMillis + durationMinutes * 60_000L;
+        }
+
+        boolean before(Entry other) {
+            return startMillis < other.startMillis || (startMillis == other.startMillis && id < other.id);
+        }
+    }
+
+    // course id -> exams sorted by start time, then id
+    private volatile Map<Integer, Entry[]> examsByCourse = new ConcurrentHashMap<>();
+    // exam id -> course it is filed under
+    private volatile Map<Integer, Integer> courseOfExam = new ConcurrentHashMap<>();
+    // student id -> sorted course ids
+    private volatile Map<Integer, int[]> coursesByStudent = new ConcurrentHashMap<>();
+    // course id -> enrolled students
+    private volatile Map<Integer, IdBitmap> studentsByCourse = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private final long reloadSeconds = Long.getLong("exam.index.reloadSeconds", 300);
+    private ScheduledExecutorService reloader;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder changes = new LongAdder();
+    private volatile long reloads;
+    private volatile long lastLoadMillis;
+
+    ExamAvailabilityIndex() {
+    }
+
+    public static ExamAvailabilityIndex getInstance() {
+        ExamAvailabilityIndex index = instance;
+        if (index == null) {
+            synchronized (ExamAvailabilityIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = new ExamAvailabilityIndex();
+                    instance = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Stops the periodic reload and forgets the index, e.g. on undeploy.
+     */
+    public static synchronized void shutdown() {
+        ExamAvailabilityIndex index = instance;
+        instance = null;
+        if (index != null) {
+            synchronized (index) {
+                if (index.reloader != null) {
+                    index.reloader.shutdownNow();
+                    index.reloader = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Published exams of the student's courses that have not
+     *         started, soonest first, or null if the index could not be
+     *         loaded and the caller should query the database
+     */
+    public List<Exam> getUpcomingExams(int studentId) {
+        if (!loaded && !ensureLoaded()) {
+            return null;
+        }
+        lookups.increment();
+        int[] courses = coursesByStudent.getOrDefault(studentId, NO_COURSES);
+        long now = System.currentTimeMillis();
+        Map<Integer, Entry[]> exams = examsByCourse;
+
+        Entry[][] lists = new Entry[courses.length][];
+        int[] positions = new int[courses.length];
+        int total = 0;
+        for (int c = 0; c < courses.length; c++) {
+            lists[c] = exams.getOrDefault(courses[c], NO_EXAMS);
+            positions[c] = firstAfter(lists[c], now);
+            total += lists[c].length - positions[c];
+        }
+
+        // A student has a handful of courses, so picking the earliest head each time is cheapest
+        List<Exam> upcoming = new ArrayList<>(total);
+        while (upcoming.size() < total) {
+            int next = -1;
+            for (int c = 0; c < lists.length; c++) {
+                if (positions[c] < lists[c].length
+                        && (next < 0 || lists[c][positions[c]].before(lists[next][positions[next]]))) {
+                    next = c;
+                }
+            }
+            upcoming.add(lists[next][positions[next]++].toExam());
+        }
+        return upcoming;
+    }
+
+    /**
+     * Files the exam as read from the database, or drops it if it is no
+     * longer a published exam that has yet to start.
+     */
+    private void apply(Exam exam) {
+        synchronized (this) {
+            if (!loaded) {
+                // Picked up by the first load
+                return;
+            }
+            changes.increment();
+            remove(exam.getId());
+            if ("published".equals(exam.getStatus()) && exam.getStartTime() != null
+                    && exam.getStartTime().getTime() > System.currentTimeMillis()) {
+                insert(new Entry(exam));
+            }
+        }
+    }
+
+    /**
+     * Re-reads one exam after it was created or changed. The row is read
+     * back rather than taken from the caller because the database rounds
+     * start times to whole seconds.
+     */
+    public void examChanged(int examId) {
+        if (!loaded) {
+            return;
+        }
+        try (Connection conn = DatabaseConfig.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(LOAD_EXAM_SQL)) {
+            stmt.setInt(1, examId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    apply(ExamDAO.mapExam(rs));
+                } else {
+                    synchronized (this) {
+                        changes.increment();
+                        remove(examId);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            // The next full reload corrects the entry
+            e.printStackTrace();
+        }
+    }
+
+    public void enrolled(int studentId, int courseId) {
+        synchronized (this) {
+            if (!loaded) {
+                return;
+            }
+            changes.increment();
+            int[] courses = coursesByStudent.getOrDefault(studentId, NO_COURSES);
+            int position = Arrays.binarySearch(courses, courseId);
+            if (position < 0) {
+                position = -position - 1;
+                int[] updated = new int[courses.length + 1];
+                System.arraycopy(courses, 0, updated, 0, position);
+                updated[position] = courseId;
+                System.arraycopy(courses, position, updated, position + 1, courses.length - position);
+                coursesByStudent.put(studentId, updated);
+            }
+            studentsByCourse.put(courseId, getStudents(courseId).with(studentId));
+        }
+    }
+
+    public void unenrolled(int studentId, int courseId) {
+        synchronized (this) {
+            if (!loaded) {
+                return;
+            }
+            changes.increment();
+            int[] courses = coursesByStudent.getOrDefault(studentId, NO_COURSES);
+            int position = Arrays.binarySearch(courses, courseId);
+            if (position >= 0) {
+                int[] updated = new int[courses.length - 1];
+                System.arraycopy(courses, 0, updated, 0, position);
+                System.arraycopy(courses, position + 1, updated, position, updated.length - position);
+                if (updated.length == 0) {
+                    coursesByStudent.remove(studentId);
+                } else {
+                    coursesByStudent.put(studentId, updated);
+                }
+            }
+            IdBitmap students = getStudents(courseId).without(studentId);
+            if (students.isEmpty()) {
+                studentsByCourse.remove(courseId);
+            } else {
+                studentsByCourse.put(courseId, students);
+            }
+        }
+    }
+
+    /**
+     * @return The students enrolled in the course, per the index
+     */
+    public IdBitmap getStudents(int courseId) {
+        if (!loaded && !ensureLoaded()) {
+            return IdBitmap.EMPTY;
+        }
+        return studentsByCourse.getOrDefault(courseId, IdBitmap.EMPTY);
+    }
+
+    public boolean isEnrolled(int studentId, int courseId) {
+        return getStudents(courseId).contains(studentId);
+    }
+
+    /**
+     * @return Whether the exam is a published exam yet to start in one of
+     *         the student's courses, i.e. one listed on their dashboard
+     */
+    public boolean canSee(int studentId, int examId) {
+        if (!loaded && !ensureLoaded()) {
+            return false;
+        }
+        Integer courseId = courseOfExam.get(examId);
+        return courseId != null && isEnrolled(studentId, courseId);
+    }
+
+    /** Two upcoming exams whose times overlap, and the students booked into both. */
+    public static final class Clash {
+        private final int firstExamId;
+        private final int secondExamId;
+        private final IdBitmap students;
+
+        Clash(int firstExamId, int secondExamId, IdBitmap students) {
+            this.firstExamId = firstExamId;
+            this.secondExamId = secondExamId;
+            this.students = students;
+        }
+
+        public int getFirstExamId() { return firstExamId; }
+
+        public int getSecondExamId() { return secondExamId; }
+
+        public IdBitmap getStudents() { return students; }
+    }
+
+    /**
+     * Finds students sitting two exams at the same time: for every pair of
+     * upcoming exams whose start-to-end times overlap, the students of the
+     * two courses are intersected.
+     * @return The overlapping pairs that share students, first exam
+     *         starting first
+     */
+    public List<Clash> findClashes() {
+        List<Clash> clashes = new ArrayList<>();
+        if (!loaded && !ensureLoaded()) {
+            return clashes;
+        }
+        List<Entry> upcoming = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Entry[] course : examsByCourse.values()) {
+            for (int i = firstAfter(course, now); i < course.length; i++) {
+                upcoming.add(course[i]);
+            }
+        }
+        upcoming.sort((a, b) -> a.before(b) ? -1 : b.before(a) ? 1 : 0);
+        Map<Integer, IdBitmap> students = studentsByCourse;
+        for (int i = 0; i < upcoming.size(); i++) {
+            Entry first = upcoming.get(i);
+            IdBitmap firstStudents = students.getOrDefault(first.courseId, IdBitmap.EMPTY);
+            for (int j = i + 1; j < upcoming.size() && upcoming.get(j).startMillis < first.endMillis(); j++) {
+                Entry second = upcoming.get(j);
+                IdBitmap both = second.courseId == first.courseId ? firstStudents
+                    : firstStudents.and(students.getOrDefault(second.courseId, IdBitmap.EMPTY));
+                if (!both.isEmpty()) {
+                    clashes.add(new Clash(first.id, second.id, both));
+                }
+            }
+        }
+        return clashes;
+    }
+
+    private synchronized boolean ensureLoaded() {
+        return loaded || load();
+    }
+
+    /**
+     * Rebuilds the index from the database. Changes reported while it runs
+     * wait for it and are applied on top of the new contents.
+     * @return false if the database could not be read
+     */
+    public synchronized boolean load() {
+        long start = System.currentTimeMillis();
+        Map<Integer, List<Entry>> exams = new HashMap<>();
+        Map<Integer, Integer> courseOf = new ConcurrentHashMap<>();
+        Map<Integer, int[]> courses = new ConcurrentHashMap<>();
+        Map<Integer, IdBitmap> students = new ConcurrentHashMap<>();
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(LOAD_EXAMS_SQL)) {
+                while (rs.next()) {
+                    Entry entry = new Entry(ExamDAO.mapExam(rs));
+                    exams.computeIfAbsent(entry.courseId, id -> new ArrayList<>()).add(entry);
+                    courseOf.put(entry.id, entry.courseId);
+                }
+            }
+            Map<Integer, int[]> counts = new HashMap<>();
+            Map<Integer, int[]> courseCounts = new HashMap<>();
+            List<int[]> rows = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery(LOAD_ENROLLMENTS_SQL)) {
+                while (rs.next()) {
+                    int[] row = {rs.getInt(1), rs.getInt(2)};
+                    rows.add(row);
+                    counts.computeIfAbsent(row[0], id -> new int[1])[0]++;
+                    courseCounts.computeIfAbsent(row[1], id -> new int[1])[0]++;
+                }
+            }
+            Map<Integer, int[]> studentLists = new HashMap<>();
+            for (int[] row : rows) {
+                // Filled back to front; each count reaches 0 with the last row
+                int[] count = counts.get(row[0]);
+                courses.computeIfAbsent(row[0], id -> new int[count[0]])[--count[0]] = row[1];
+                int[] courseCount = courseCounts.get(row[1]);
+                studentLists.computeIfAbsent(row[1], id -> new int[courseCount[0]])[--courseCount[0]] = row[0];
+            }
+            for (int[] list : courses.values()) {
+                Arrays.sort(list);
+            }
+            for (Map.Entry<Integer, int[]> course : studentLists.entrySet()) {
+                students.put(course.getKey(), IdBitmap.of(course.getValue()));
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not load the exam availability index: " + e.getMessage());
+            return false;
+        }
+
+        Map<Integer, Entry[]> byCourse = new ConcurrentHashMap<>();
+        for (Map.Entry<Integer, List<Entry>> course : exams.entrySet()) {
+            Entry[] sorted = course.getValue().toArray(NO_EXAMS);
+            Arrays.sort(sorted, (a, b) -> a.before(b) ? -1 : b.before(a) ? 1 : 0);
+            byCourse.put(course.getKey(), sorted);
+        }
+        examsByCourse = byCourse;
+        courseOfExam = courseOf;
+        coursesByStudent = courses;
+        studentsByCourse = students;
+        loaded = true;
+        reloads++;
+        lastLoadMillis = System.currentTimeMillis() - start;
+        scheduleReloads();
+        return true;
+    }
+
+    private void scheduleReloads() {
+        if (reloader != null || reloadSeconds <= 0) {
+            return;
+        }
+        reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exam-index-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(this::load, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+    }
+
+    // Callers hold the lock
+    private void insert(Entry entry) {
+        Entry[] exams = examsByCourse.getOrDefault(entry.courseId, NO_EXAMS);
+        int position = 0;
+        while (position < exams.length && exams[position].before(entry)) {
+            position++;
+        }
+        Entry[] updated = new Entry[exams.length + 1];
+        System.arraycopy(exams, 0, updated, 0, position);
+        updated[position] = entry;
+        System.arraycopy(exams, position, updated, position + 1, exams.length - position);
+        examsByCourse.put(entry.courseId, updated);
+        courseOfExam.put(entry.id, entry.courseId);
+    }
+
+    // Callers hold the lock
+    private void remove(int examId) {
+        Integer courseId = courseOfExam.remove(examId);
+        if (courseId == null) {
+            return;
+        }
+        Entry[] exams = examsByCourse.getOrDefault(courseId, NO_EXAMS);
+        for (int i = 0; i < exams.length; i++) {
+            if (exams[i].id == examId) {
+                Entry[] updated = new Entry[exams.length - 1];
+                System.arraycopy(exams, 0, updated, 0, i);
+                System.arraycopy(exams, i + 1, updated, i, updated.length - i);
+                if (updated.length == 0) {
+                    examsByCourse.remove(courseId);
+                } else {
+                    examsByCourse.put(courseId, updated);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Index of the first exam starting after nowMillis
+     */
+    private static int firstAfter(Entry[] exams, long nowMillis) {
+        int low = 0;
+        int high = exams.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (exams[mid].startMillis > nowMillis) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        int exams = 0;
+        for (Entry[] course : examsByCourse.values()) {
+            exams += course.length;
+        }
+        stats.put("loaded", loaded);
+        stats.put("exams", exams);
+        stats.put("courses", examsByCourse.size());
+        stats.put("students", coursesByStudent.size());
+        long bitmapBytes = 0;
+        for (IdBitmap course : studentsByCourse.values()) {
+            bitmapBytes += course.getSizeInBytes();
+        }
+        stats.put("enrollmentBitmapBytes", bitmapBytes);
+        stats.put("lookups", lookups.sum());
+        stats.put("changes", changes.sum());
+        stats.put("reloads", reloads);
+        stats.put("lastLoadMillis", lastLoadMillis);
+        return stats;
+    }
+}
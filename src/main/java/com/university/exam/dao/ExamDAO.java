@@ -8,31 +8,32 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ExamDAO {
-    
-    public List<Exam> getUpcomingExams(int studentId) {
-        List<Exam> exams = new ArrayList<>();
-        String sql = "SELECT e.* FROM exams e " +
+    public static final String UPCOMING_EXAMS_SQL = "SELECT e.* FROM exams e " +
                     "JOIN courses c ON e.course_id = c.id " +
                     "JOIN enrollments en ON c.id = en.course_id " +
                     "WHERE en.student_id = ? AND e.status = 'published' " +
-                    "AND e.start_time > NOW() ORDER BY e.start_time";
+                    "AND e.start_time > NOW() ORDER BY e.start_time, e.id";
+    
+    /**
+     * Answered from ExamAvailabilityIndex; the query only runs if the
+     * index cannot be loaded.
+     */
+    public List<Exam> getUpcomingExams(int studentId) {
+        List<Exam> exams = ExamAvailabilityIndex.getInstance().getUpcomingExams(studentId);
+        return exams != null ? exams : queryUpcomingExams(studentId);
+    }
+
+    List<Exam> queryUpcomingExams(int studentId) {
+        List<Exam> exams = new ArrayList<>();
         
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(UPCOMING_EXAMS_SQL)) {
             
             stmt.setInt(1, studentId);
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Exam exam = new Exam();
-                    exam.setId(rs.getInt("id"));
-                    exam.setTitle(rs.getString("title"));
-                    exam.setDescription(rs.getString("description"));
-                    exam.setStartTime(rs.getTimestamp("start_time"));
-                    exam.setDurationMinutes(rs.getInt("duration_minutes"));
-                    exam.setTotalMarks(rs.getInt("total_marks"));
-                    exam.setStatus(rs.getString("status"));
-                    exams.add(exam);
+                    exams.add(mapExam(rs));
                 }
             }
         } catch (SQLException e) {
@@ -40,6 +41,19 @@ public class ExamDAO {
         }
         return exams;
     }
+
+    static Exam mapExam(ResultSet rs) throws SQLException {
+        Exam exam = new Exam();
+        exam.setId(rs.getInt("id"));
+        exam.setCourseId(rs.getInt("course_id"));
+        exam.setTitle(rs.getString("title"));
+        exam.setDescription(rs.getString("description"));
+        exam.setStartTime(rs.getTimestamp("start_time"));
+        exam.setDurationMinutes(rs.getInt("duration_minutes"));
+        exam.setTotalMarks(rs.getInt("total_marks"));
+        exam.setStatus(rs.getString("status"));
+        return exam;
+    }
     
     public Exam createExam(Exam exam) {
         String sql = "INSERT INTO exams (course_id, title, description, start_time, " +
@@ -63,6 +77,7 @@ public class ExamDAO {
                 try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                     if (generatedKeys.next()) {
                         exam.setId(generatedKeys.getInt(1));
+                        ExamAvailabilityIndex.getInstance().examChanged(exam.getId());
                     }
                 }
             }
@@ -81,7 +96,11 @@ public class ExamDAO {
             stmt.setString(1, status);
             stmt.setInt(2, examId);
             
-            return stmt.executeUpdate() > 0;
+            if (stmt.executeUpdate() > 0) {
+                ExamAvailabilityIndex.getInstance().examChanged(examId);
+                return true;
+            }
+            return false;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
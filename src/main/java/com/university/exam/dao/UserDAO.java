@@ -6,11 +6,11 @@ import com.university.exam.util.DatabaseConfig;
 import java.sql.*;
 
 public class UserDAO {
+    public static final String AUTHENTICATE_SQL = "SELECT * FROM users WHERE username = ? AND password = ?";
+
     public User authenticate(String username, String password) {
-        String sql = "SELECT * FROM users WHERE username = ? AND password = ?";
-        
         try (Connection conn = DatabaseConfig.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+             PreparedStatement stmt = conn.prepareStatement(AUTHENTICATE_SQL)) {
             
             stmt.setString(1, username);
             stmt.setString(2, password); // In production, use password hashing
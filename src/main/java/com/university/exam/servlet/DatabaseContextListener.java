@@ -0,0 +1,32 @@
+package com.university.exam.servlet;
+
+import com.university.exam.dao.ExamAvailabilityIndex;
+import com.university.exam.util.DatabaseConfig;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * Warms the connection pool when the webapp starts and releases it on undeploy.
+ */
+@WebListener
+public class DatabaseContextListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        try {
+            DatabaseConfig.initialize();
+            sce.getServletContext().log("Database connection pool initialized");
+        } catch (RuntimeException e) {
+            // Leave the app deployable; DAOs will retry lazily on first use
+            sce.getServletContext().log("Database connection pool failed to start", e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ExamAvailabilityIndex.shutdown();
+        DatabaseConfig.shutdown();
+    }
+}
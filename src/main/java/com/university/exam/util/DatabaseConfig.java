@@ -1,20 +1,149 @@
 package com.university.exam.util;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
+/**
+ * Provides pooled connections to the DAOs.
+ * A container-managed DataSource is used when one is bound under
+ * db.jndiName; otherwise a HikariCP pool is built from database.properties.
+ */
 public class DatabaseConfig {
+    private static final String CONFIG_FILE = "database.properties";
     private static final String URL = "jdbc:mysql://localhost:3306/exam_system";
     private static final String USER = "root";
     private static final String PASSWORD = ""; // Set your MySQL password here
+    private static final String DEFAULT_JNDI_NAME = "java:comp/env/jdbc/ExamDB";
+
+    private static volatile DataSource dataSource;
+    private static HikariDataSource ownedPool;
 
     public static Connection getConnection() throws SQLException {
+        return getDataSource().getConnection();
+    }
+
+    public static DataSource getDataSource() {
+        DataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (DatabaseConfig.class) {
+                ds = dataSource;
+                if (ds == null) {
+                    ds = createDataSource(loadProperties());
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
+
+    /**
+     * Creates the DataSource and opens db.pool.warmup connections so the
+     * first requests after deployment do not pay for connection setup.
+     * Pending schema migrations are applied when db.migrateOnStart is true.
+     */
+    public static synchronized void initialize() {
+        Properties props = loadProperties();
+        if (dataSource == null) {
+            dataSource = createDataSource(props);
+        }
+        warmUp(Integer.parseInt(props.getProperty("db.pool.warmup", "5")));
+        if (Boolean.parseBoolean(props.getProperty("db.migrateOnStart", "false"))) {
+            try {
+                new MigrationRunner(dataSource).migrate();
+            } catch (SQLException e) {
+                System.err.println("Schema migration failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public static synchronized void shutdown() {
+        if (ownedPool != null) {
+            ownedPool.close();
+            ownedPool = null;
+        }
+        dataSource = null;
+    }
+
+    private static DataSource createDataSource(Properties props) {
+        String jndiName = props.getProperty("db.jndiName", DEFAULT_JNDI_NAME);
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USER, PASSWORD);
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("MySQL JDBC Driver not found.", e);
+            DataSource containerDataSource = (DataSource) new InitialContext().lookup(jndiName);
+            if (containerDataSource != null) {
+                return containerDataSource;
+            }
+        } catch (NamingException e) {
+            // No container-managed pool bound, fall back to our own
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("exam-web-pool");
+        config.setJdbcUrl(props.getProperty("db.url", URL));
+        config.setUsername(props.getProperty("db.user", USER));
+        config.setPassword(props.getProperty("db.password", PASSWORD));
+        config.setMaximumPoolSize(Integer.parseInt(props.getProperty("db.pool.maxSize", "20")));
+        config.setMinimumIdle(Integer.parseInt(props.getProperty("db.pool.minIdle", "5")));
+        config.setConnectionTimeout(Long.parseLong(props.getProperty("db.pool.connectionTimeoutMs", "5000")));
+        config.setLeakDetectionThreshold(Long.parseLong(props.getProperty("db.pool.leakDetectionMs", "30000")));
+
+        if (config.getJdbcUrl().startsWith("jdbc:mysql:")) {
+            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+            // Server-side prepared statements, cached per connection by the driver
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", props.getProperty("db.prepStmtCacheSize", "250"));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            config.addDataSourceProperty("useLocalSessionState", "true");
+        }
+
+        ownedPool = new HikariDataSource(config);
+        return ownedPool;
+    }
+
+    private static void warmUp(int connections) {
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                borrowed.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            System.err.println("Connection pool warm-up stopped early: " + e.getMessage());
+        } finally {
+            for (Connection conn : borrowed) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static Properties loadProperties() {
+        Properties props = new Properties();
+        try (InputStream in = DatabaseConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                props.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + CONFIG_FILE + ": " + e.getMessage());
+        }
+        // -Ddb.* system properties win, e.g. to point tools at another database
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("db.")) {
+                props.setProperty(key, System.getProperty(key));
+            }
         }
+        return props;
     }
 }
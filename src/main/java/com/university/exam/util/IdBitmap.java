@@ -0,0 +1,592 @@
+package com.university.exam.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable compressed set of non-negative ids, laid out like a roaring
+ * bitmap: ids are split on their high 16 bits into chunks, and each chunk
+ * keeps its low 16 bits in whichever container is smallest for it:
+ *
+ *   array  - sorted values, for up to 4096 scattered ids (2 bytes each)
+ *   bitmap - 65536 bits, for dense chunks (8 KB)
+ *   run    - start/length pairs, for ids handed out in long sequences
+ *            (4 bytes per run)
+ *
+ * Membership is a binary search over the chunks plus one container probe;
+ * unions and intersections work chunk by chunk, with word-wide AND/OR
+ * when both sides are dense. with() and without() return a new set that
+ * shares every untouched container with the old one, so a set can be
+ * published to lock-free readers and replaced on change.
+ */
+public final class IdBitmap {
+    public static final IdBitmap EMPTY = new IdBitmap(new char[0], new Container[0]);
+
+    private static final int MAX_ARRAY = 4096;
+    private static final int WORDS = 1024;
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int cardinality;
+
+    private IdBitmap(char[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        int total = 0;
+        for (Container container : containers) {
+            total += container.cardinality();
+        }
+        this.cardinality = total;
+    }
+
+    /**
+     * @param ids Ids in any order; duplicates are ignored
+     */
+    public static IdBitmap of(int... ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        if (sorted.length > 0 && sorted[0] < 0) {
+            throw new IllegalArgumentException("Negative id " + sorted[0]);
+        }
+        char[] keys = new char[sorted.length];
+        Container[] containers = new Container[sorted.length];
+        char[] low = new char[Math.min(sorted.length, 1 << 16)];
+        int chunks = 0;
+        int i = 0;
+        while (i < sorted.length) {
+            int high = sorted[i] >>> 16;
+            int count = 0;
+            for (; i < sorted.length && sorted[i] >>> 16 == high; i++) {
+                char value = (char) sorted[i];
+                if (count == 0 || low[count - 1] != value) {
+                    low[count++] = value;
+                }
+            }
+            keys[chunks] = (char) high;
+            containers[chunks++] = Container.of(Arrays.copyOf(low, count));
+        }
+        return new IdBitmap(Arrays.copyOf(keys, chunks), Arrays.copyOf(containers, chunks));
+    }
+
+    public boolean contains(int id) {
+        if (id < 0) {
+            return false;
+        }
+        int chunk = Arrays.binarySearch(keys, (char) (id >>> 16));
+        return chunk >= 0 && containers[chunk].contains((char) id);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * @return This set plus id; this set itself if id is already in it
+     */
+    public IdBitmap with(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative id " + id);
+        }
+        int chunk = Arrays.binarySearch(keys, (char) (id >>> 16));
+        if (chunk >= 0) {
+            Container updated = containers[chunk].add((char) id);
+            if (updated == containers[chunk]) {
+                return this;
+            }
+            Container[] copy = containers.clone();
+            copy[chunk] = updated;
+            return new IdBitmap(keys, copy);
+        }
+        int position = -chunk - 1;
+        char[] newKeys = new char[keys.length + 1];
+        Container[] newContainers = new Container[keys.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, position);
+        System.arraycopy(containers, 0, newContainers, 0, position);
+        newKeys[position] = (char) (id >>> 16);
+        newContainers[position] = new ArrayContainer(new char[] {(char) id});
+        System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+        System.arraycopy(containers, position, newContainers, position + 1, keys.length - position);
+        return new IdBitmap(newKeys, newContainers);
+    }
+
+    /**
+     * @return This set without id; this set itself if id is not in it
+     */
+    public IdBitmap without(int id) {
+        int chunk = id < 0 ? -1 : Arrays.binarySearch(keys, (char) (id >>> 16));
+        if (chunk < 0 || !containers[chunk].contains((char) id)) {
+            return this;
+        }
+        Container updated = containers[chunk].remove((char) id);
+        if (updated != null) {
+            Container[] copy = containers.clone();
+            copy[chunk] = updated;
+            return new IdBitmap(keys, copy);
+        }
+        char[] newKeys = new char[keys.length - 1];
+        Container[] newContainers = new Container[keys.length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, chunk);
+        System.arraycopy(containers, 0, newContainers, 0, chunk);
+        System.arraycopy(keys, chunk + 1, newKeys, chunk, newKeys.length - chunk);
+        System.arraycopy(containers, chunk + 1, newContainers, chunk, newKeys.length - chunk);
+        return new IdBitmap(newKeys, newContainers);
+    }
+
+    public IdBitmap and(IdBitmap other) {
+        int length = Math.min(keys.length, other.keys.length);
+        char[] newKeys = new char[length];
+        Container[] newContainers = new Container[length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container result = containers[i].and(other.containers[j]);
+                if (result != null) {
+                    newKeys[count] = keys[i];
+                    newContainers[count++] = result;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new IdBitmap(Arrays.copyOf(newKeys, count), Arrays.copyOf(newContainers, count));
+    }
+
+    public IdBitmap or(IdBitmap other) {
+        char[] newKeys = new char[keys.length + other.keys.length];
+        Container[] newContainers = new Container[newKeys.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                newKeys[count] = keys[i];
+                newContainers[count++] = containers[i++];
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                newKeys[count] = other.keys[j];
+                newContainers[count++] = other.containers[j++];
+            } else {
+                newKeys[count] = keys[i];
+                newContainers[count++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return new IdBitmap(Arrays.copyOf(newKeys, count), Arrays.copyOf(newContainers, count));
+    }
+
+    /**
+     * @return Whether the two sets share an id; stops at the first chunk
+     *         that shares one
+     */
+    public boolean intersects(IdBitmap other) {
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else if (containers[i++].and(other.containers[j++]) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static IdBitmap union(Iterable<IdBitmap> sets) {
+        IdBitmap result = EMPTY;
+        for (IdBitmap set : sets) {
+            result = result.or(set);
+        }
+        return result;
+    }
+
+    /**
+     * Passes every id to the consumer in ascending order.
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    public int[] toArray() {
+        int[] ids = new int[cardinality];
+        int[] count = new int[1];
+        forEach(id -> ids[count[0]++] = id);
+        return ids;
+    }
+
+    /**
+     * @return Approximate heap taken by the containers
+     */
+    public long getSizeInBytes() {
+        long bytes = keys.length * 2L;
+        for (Container container : containers) {
+            bytes += container.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "IdBitmap[" + cardinality + " ids, " + getSizeInBytes() + " bytes]";
+    }
+
+    /** The low 16 bits of one chunk's ids; never empty. */
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        /** @return The values in ascending order */
+        abstract char[] values();
+
+        /** @return A fresh 65536-bit copy */
+        abstract long[] words();
+
+        abstract void forEach(int high, IntConsumer consumer);
+
+        abstract int sizeInBytes();
+
+        Container add(char value) {
+            if (contains(value)) {
+                return this;
+            }
+            long[] words = words();
+            words[value >>> 6] |= 1L << value;
+            return fromWords(words);
+        }
+
+        /** @return The container without value, or null if it would be empty */
+        Container remove(char value) {
+            long[] words = words();
+            words[value >>> 6] &= ~(1L << value);
+            return fromWords(words);
+        }
+
+        /** @return The intersection, or null if it is empty */
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] words = words();
+            long[] otherWords = other.words();
+            for (int i = 0; i < WORDS; i++) {
+                words[i] &= otherWords[i];
+            }
+            return fromWords(words);
+        }
+
+        Container or(Container other) {
+            long[] words = words();
+            long[] otherWords = other.words();
+            for (int i = 0; i < WORDS; i++) {
+                words[i] |= otherWords[i];
+            }
+            return fromWords(words);
+        }
+
+        /**
+         * Picks the smallest container for sorted, distinct values.
+         */
+        static Container of(char[] values) {
+            if (values.length == 0) {
+                return null;
+            }
+            int runs = 1;
+            for (int i = 1; i < values.length; i++) {
+                if (values[i] != values[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            if (runs * 4 < Math.min(values.length * 2, WORDS * 8)) {
+                char[] starts = new char[runs];
+                char[] lengths = new char[runs];
+                int run = 0;
+                starts[0] = values[0];
+                for (int i = 1; i < values.length; i++) {
+                    if (values[i] != values[i - 1] + 1) {
+                        lengths[run] = (char) (values[i - 1] - starts[run]);
+                        starts[++run] = values[i];
+                    }
+                }
+                lengths[run] = (char) (values[values.length - 1] - starts[run]);
+                return new RunContainer(starts, lengths, values.length);
+            }
+            if (values.length <= MAX_ARRAY) {
+                return new ArrayContainer(values);
+            }
+            long[] words = new long[WORDS];
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return new BitmapContainer(words, values.length);
+        }
+
+        static Container fromWords(long[] words) {
+            int cardinality = 0;
+            int runs = 0;
+            long carry = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+                // A run starts at each set bit whose lower neighbour is clear
+                runs += Long.bitCount(word & ~((word << 1) | carry));
+                carry = word >>> 63;
+            }
+            if (cardinality == 0) {
+                return null;
+            }
+            if (runs * 4 < Math.min(cardinality * 2, WORDS * 8) || cardinality <= MAX_ARRAY) {
+                char[] values = new char[cardinality];
+                int count = 0;
+                for (int i = 0; i < WORDS; i++) {
+                    long word = words[i];
+                    while (word != 0) {
+                        values[count++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+                return of(values);
+            }
+            return new BitmapContainer(words, cardinality);
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() { return values.length; }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        char[] values() { return values; }
+
+        @Override
+        long[] words() {
+            long[] words = new long[WORDS];
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return words;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (char value : values) {
+                consumer.accept(high | value);
+            }
+        }
+
+        @Override
+        int sizeInBytes() { return values.length * 2; }
+
+        @Override
+        Container add(char value) {
+            int position = Arrays.binarySearch(values, value);
+            if (position >= 0) {
+                return this;
+            }
+            position = -position - 1;
+            char[] updated = new char[values.length + 1];
+            System.arraycopy(values, 0, updated, 0, position);
+            updated[position] = value;
+            System.arraycopy(values, position, updated, position + 1, values.length - position);
+            return of(updated);
+        }
+
+        @Override
+        Container remove(char value) {
+            int position = Arrays.binarySearch(values, value);
+            if (position < 0) {
+                return this;
+            }
+            char[] updated = new char[values.length - 1];
+            System.arraycopy(values, 0, updated, 0, position);
+            System.arraycopy(values, position + 1, updated, position, updated.length - position);
+            return of(updated);
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[values.length];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                char[] otherValues = ((ArrayContainer) other).values;
+                int i = 0;
+                int j = 0;
+                while (i < values.length && j < otherValues.length) {
+                    if (values[i] < otherValues[j]) {
+                        i++;
+                    } else if (values[i] > otherValues[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i++];
+                        j++;
+                    }
+                }
+            } else {
+                for (char value : values) {
+                    if (other.contains(value)) {
+                        result[count++] = value;
+                    }
+                }
+            }
+            return of(Arrays.copyOf(result, count));
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof ArrayContainer) || values.length + other.cardinality() > MAX_ARRAY) {
+                return super.or(other);
+            }
+            char[] otherValues = ((ArrayContainer) other).values;
+            char[] result = new char[values.length + otherValues.length];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < values.length || j < otherValues.length) {
+                if (j == otherValues.length || (i < values.length && values[i] < otherValues[j])) {
+                    result[count++] = values[i++];
+                } else if (i == values.length || values[i] > otherValues[j]) {
+                    result[count++] = otherValues[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+            return of(Arrays.copyOf(result, count));
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() { return cardinality; }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        char[] values() {
+            char[] values = new char[cardinality];
+            int[] count = new int[1];
+            forEach(0, value -> values[count[0]++] = (char) value);
+            return values;
+        }
+
+        @Override
+        long[] words() { return words.clone(); }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(high | (i * 64 + Long.numberOfTrailingZeros(word)));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        int sizeInBytes() { return WORDS * 8; }
+    }
+
+    private static final class RunContainer extends Container {
+        private final char[] starts;
+        // Run length minus one, so a run can cover the whole chunk
+        private final char[] lengths;
+        private final int cardinality;
+
+        RunContainer(char[] starts, char[] lengths, int cardinality) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() { return cardinality; }
+
+        @Override
+        boolean contains(char value) {
+            int run = Arrays.binarySearch(starts, value);
+            if (run >= 0) {
+                return true;
+            }
+            run = -run - 2;
+            return run >= 0 && value - starts[run] <= lengths[run];
+        }
+
+        @Override
+        char[] values() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int run = 0; run < starts.length; run++) {
+                for (int value = starts[run]; value <= starts[run] + lengths[run]; value++) {
+                    values[count++] = (char) value;
+                }
+            }
+            return values;
+        }
+
+        @Override
+        long[] words() {
+            long[] words = new long[WORDS];
+            for (int run = 0; run < starts.length; run++) {
+                int from = starts[run];
+                int to = from + lengths[run] + 1;
+                int first = from >>> 6;
+                int last = (to - 1) >>> 6;
+                if (first == last) {
+                    words[first] |= (-1L >>> (64 - (to - from))) << from;
+                } else {
+                    words[first] |= -1L << from;
+                    for (int i = first + 1; i < last; i++) {
+                        words[i] = -1L;
+                    }
+                    words[last] |= -1L >>> (64 - ((to & 63) == 0 ? 64 : to & 63));
+                }
+            }
+            return words;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int run = 0; run < starts.length; run++) {
+                for (int value = starts[run]; value <= starts[run] + lengths[run]; value++) {
+                    consumer.accept(high | value);
+                }
+            }
+        }
+
+        @Override
+        int sizeInBytes() { return starts.length * 4; }
+    }
+}
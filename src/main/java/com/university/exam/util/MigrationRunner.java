@@ -0,0 +1,193 @@
+package com.university.exam.util;
+
+import com.university.exam.dao.ExamDAO;
+import com.university.exam.dao.UserDAO;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Applies the versioned scripts under db/migration in order and records
+ * each one in schema_version. Also prints the EXPLAIN plan of every DAO
+ * query so missing indexes show up before they hurt.
+ */
+public class MigrationRunner {
+    private static final String MIGRATION_PATH = "db/migration/";
+
+    // Applied in this order; append new scripts, never edit applied ones
+    private static final String[] MIGRATIONS = {
+        "V1__core_schema.sql",
+        "V2__hot_path_indexes.sql"
+    };
+
+    // "Already exists" errors raised when adopting a database built from database.sql
+    private static final Set<Integer> ALREADY_APPLIED_ERRORS = Set.of(1050, 1060, 1061, 42101, 42111, 42121);
+
+    private final DataSource dataSource;
+
+    public MigrationRunner(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return Number of migrations applied
+     */
+    public int migrate() throws SQLException {
+        int applied = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                             "version INT PRIMARY KEY, " +
+                             "script VARCHAR(200) NOT NULL, " +
+                             "checksum BIGINT NOT NULL, " +
+                             "execution_ms BIGINT NOT NULL, " +
+                             "installed_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            }
+
+            Map<Integer, Long> installed = new HashMap<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+                while (rs.next()) {
+                    installed.put(rs.getInt("version"), rs.getLong("checksum"));
+                }
+            }
+
+            for (String script : MIGRATIONS) {
+                int version = Integer.parseInt(script.substring(1, script.indexOf("__")));
+                String sql = readScript(script);
+                CRC32 crc = new CRC32();
+                crc.update(sql.getBytes(StandardCharsets.UTF_8));
+                long checksum = crc.getValue();
+
+                if (installed.containsKey(version)) {
+                    if (installed.get(version) != checksum) {
+                        System.err.println("Warning: " + script + " changed after it was applied");
+                    }
+                    continue;
+                }
+
+                long start = System.currentTimeMillis();
+                for (String statement : splitStatements(sql)) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute(statement);
+                    } catch (SQLException e) {
+                        if (!ALREADY_APPLIED_ERRORS.contains(e.getErrorCode())) {
+                            throw e;
+                        }
+                    }
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, script, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+                    stmt.setInt(1, version);
+                    stmt.setString(2, script);
+                    stmt.setLong(3, checksum);
+                    stmt.setLong(4, System.currentTimeMillis() - start);
+                    stmt.executeUpdate();
+                }
+                System.out.println("Applied migration " + script);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Prints the plan of each DAO query, flagging full table scans.
+     * @return Names of the queries that needed a full table scan
+     */
+    public List<String> explainQueries(PrintStream out) throws SQLException {
+        Map<String, Object[]> queries = new LinkedHashMap<>();
+        queries.put("ExamDAO.getUpcomingExams", new Object[] {ExamDAO.UPCOMING_EXAMS_SQL, 1});
+        queries.put("UserDAO.authenticate", new Object[] {UserDAO.AUTHENTICATE_SQL, "admin", "admin123"});
+
+        List<String> fullScans = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection()) {
+            for (Map.Entry<String, Object[]> query : queries.entrySet()) {
+                Object[] spec = query.getValue();
+                try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + spec[0])) {
+                    for (int i = 1; i < spec.length; i++) {
+                        stmt.setObject(i, spec[i]);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            String type = rs.getString("type");
+                            String key = rs.getString("key");
+                            boolean scan = "ALL".equals(type);
+                            if (scan && !fullScans.contains(query.getKey())) {
+                                fullScans.add(query.getKey());
+                            }
+                            out.println(String.format("%-26s %-14s %-8s %-32s %s%s", query.getKey(),
+                                rs.getString("table"), type, key == null ? "-" : key, rs.getString("rows"),
+                                scan ? "   <-- FULL SCAN" : ""));
+                        }
+                    }
+                }
+            }
+        }
+        return fullScans;
+    }
+
+    private static String readScript(String script) throws SQLException {
+        try (InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + script)) {
+            if (in == null) {
+                throw new SQLException("Migration script not found on classpath: " + script);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Could not read migration " + script, e);
+        }
+    }
+
+    private static List<String> splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : sql.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String statement = current.toString().trim();
+                statements.add(statement.substring(0, statement.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (!current.toString().isBlank()) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        MigrationRunner runner = new MigrationRunner(DatabaseConfig.getDataSource());
+        try {
+            System.out.println(runner.migrate() + " migration(s) applied");
+            List<String> fullScans = runner.explainQueries(System.out);
+            System.out.println(fullScans.isEmpty()
+                ? "All DAO queries are served by an index."
+                : "Full table scans in: " + String.join(", ", fullScans));
+        } finally {
+            DatabaseConfig.shutdown();
+        }
+    }
+}
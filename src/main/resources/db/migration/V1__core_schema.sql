@@ -0,0 +1,92 @@
+-- Core schema (same layout as database.sql, safe on existing installs)
+
+-- Users table for all types of users
+CREATE TABLE IF NOT EXISTS users (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    username VARCHAR(50) UNIQUE NOT NULL,
+    password VARCHAR(255) NOT NULL,
+    user_type ENUM('student', 'teacher', 'admin') NOT NULL,
+    full_name VARCHAR(100) NOT NULL,
+    email VARCHAR(100) UNIQUE NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Courses table
+CREATE TABLE IF NOT EXISTS courses (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    course_code VARCHAR(20) UNIQUE NOT NULL,
+    course_name VARCHAR(100) NOT NULL,
+    teacher_id INT,
+    FOREIGN KEY (teacher_id) REFERENCES users(id)
+);
+
+-- Student Course Enrollment
+CREATE TABLE IF NOT EXISTS enrollments (
+    student_id INT,
+    course_id INT,
+    enrollment_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (student_id, course_id),
+    FOREIGN KEY (student_id) REFERENCES users(id),
+    FOREIGN KEY (course_id) REFERENCES courses(id)
+);
+
+-- Exams table
+CREATE TABLE IF NOT EXISTS exams (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    course_id INT,
+    title VARCHAR(200) NOT NULL,
+    description TEXT,
+    start_time DATETIME NOT NULL,
+    duration_minutes INT NOT NULL,
+    total_marks INT NOT NULL,
+    status ENUM('draft', 'published', 'ongoing', 'completed') DEFAULT 'draft',
+    created_by INT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (course_id) REFERENCES courses(id),
+    FOREIGN KEY (created_by) REFERENCES users(id)
+);
+
+-- Questions table
+CREATE TABLE IF NOT EXISTS questions (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    exam_id INT,
+    question_text TEXT NOT NULL,
+    question_type ENUM('multiple_choice', 'true_false', 'essay') NOT NULL,
+    marks INT NOT NULL,
+    FOREIGN KEY (exam_id) REFERENCES exams(id)
+);
+
+-- Multiple Choice Options
+CREATE TABLE IF NOT EXISTS question_options (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    question_id INT,
+    option_text TEXT NOT NULL,
+    is_correct BOOLEAN DEFAULT FALSE,
+    FOREIGN KEY (question_id) REFERENCES questions(id)
+);
+
+-- Student Exam Attempts
+CREATE TABLE IF NOT EXISTS exam_attempts (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    student_id INT,
+    exam_id INT,
+    start_time DATETIME NOT NULL,
+    submit_time DATETIME,
+    status ENUM('in_progress', 'submitted', 'graded') DEFAULT 'in_progress',
+    total_score INT,
+    FOREIGN KEY (student_id) REFERENCES users(id),
+    FOREIGN KEY (exam_id) REFERENCES exams(id)
+);
+
+-- Student Answers
+CREATE TABLE IF NOT EXISTS student_answers (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    attempt_id INT,
+    question_id INT,
+    answer_text TEXT,
+    selected_option_id INT,
+    marks_obtained INT,
+    FOREIGN KEY (attempt_id) REFERENCES exam_attempts(id),
+    FOREIGN KEY (question_id) REFERENCES questions(id),
+    FOREIGN KEY (selected_option_id) REFERENCES question_options(id)
+);
@@ -0,0 +1,12 @@
+-- Composite indexes shaped for the DAO queries
+
+-- ExamDAO.getUpcomingExams: course join, status = 'published', start_time > NOW() ORDER BY start_time
+CREATE INDEX idx_exams_course_status_start ON exams(course_id, status, start_time);
+-- Scheduler scans of published exams by start time
+CREATE INDEX idx_exams_status_start ON exams(status, start_time);
+
+-- Enrollment lookups by course (the primary key covers lookups by student)
+CREATE INDEX idx_enrollments_course ON enrollments(course_id, student_id);
+
+-- One student's attempt at one exam
+CREATE INDEX idx_attempts_exam_student ON exam_attempts(exam_id, student_id);
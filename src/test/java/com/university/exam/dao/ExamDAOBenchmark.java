@@ -0,0 +1,321 @@
+package com.university.exam.dao;
+
+import com.university.exam.model.Exam;
+import com.university.exam.util.BatchInsert;
+import com.university.exam.util.DatabaseConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeds courses, enrollments and exams and times the ExamDAO calls,
+ * printing latency percentiles per operation.
+ *
+ * Runs against an in-memory H2 database in MySQL mode unless -Ddb.url
+ * points elsewhere. Volumes are set with -Dbench.students, bench.courses,
+ * bench.examsPerCourse, bench.coursesPerStudent and bench.iterations.
+ * With -Dbench.maxP95Ms=N the run exits with status 1 when any p95 is
+ * over budget. Upcoming exams are timed both from ExamAvailabilityIndex
+ * and from the join query, and the two answers are compared for every
+ * student once the created exams have been published. Students booked
+ * into two overlapping exams are found with the enrollment bitmaps and
+ * with a self-join, and both the times and the answers are compared.
+ */
+public class ExamDAOBenchmark {
+    private static final String EMBEDDED_URL =
+        "jdbc:h2:mem:exam_web_bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String[] STATUSES = {"draft", "published", "ongoing", "completed"};
+
+    private final int students = Integer.getInteger("bench.students", 2000);
+    private final int courses = Integer.getInteger("bench.courses", 100);
+    private final int examsPerCourse = Integer.getInteger("bench.examsPerCourse", 20);
+    private final int coursesPerStudent = Integer.getInteger("bench.coursesPerStudent", 5);
+    private final int iterations = Integer.getInteger("bench.iterations", 500);
+    private final int warmupIterations = Integer.getInteger("bench.warmup", 100);
+
+    private final Random random = new Random(42);
+    private final List<Integer> studentIds = new ArrayList<>();
+    private final List<Integer> courseIds = new ArrayList<>();
+    private int teacherId;
+
+    public static void main(String[] args) throws SQLException {
+        setDefault("db.url", EMBEDDED_URL);
+        setDefault("db.user", "sa");
+        setDefault("db.password", "");
+        setDefault("db.migrateOnStart", "true");
+
+        DatabaseConfig.initialize();
+        int status;
+        try {
+            ExamDAOBenchmark benchmark = new ExamDAOBenchmark();
+            benchmark.seed();
+            status = benchmark.run();
+        } finally {
+            DatabaseConfig.shutdown();
+        }
+        System.exit(status);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private void seed() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.setAutoCommit(false);
+            teacherId = insertUser(conn, "bench_teacher", "teacher");
+            for (int i = 0; i < students; i++) {
+                studentIds.add(insertUser(conn, "bench_student_" + i, "student"));
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO courses (course_code, course_name, teacher_id) VALUES (?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (int c = 0; c < courses; c++) {
+                    stmt.setString(1, "BENCH" + c);
+                    stmt.setString(2, "Benchmark course " + c);
+                    stmt.setInt(3, teacherId);
+                    stmt.executeUpdate();
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        keys.next();
+                        courseIds.add(keys.getInt(1));
+                    }
+                }
+            }
+
+            List<int[]> enrollments = new ArrayList<>();
+            for (int s = 0; s < students; s++) {
+                for (int c = 0; c < coursesPerStudent; c++) {
+                    enrollments.add(new int[] {studentIds.get(s), courseIds.get((s + c * 7) % courses)});
+                }
+            }
+            BatchInsert.insertRows(conn, "INSERT INTO enrollments (student_id, course_id) VALUES (?, ?)",
+                enrollments, (stmt, enrollment, i, offset) -> {
+                    stmt.setInt(offset + 1, enrollment[0]);
+                    stmt.setInt(offset + 2, enrollment[1]);
+                });
+
+            List<Exam> exams = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (int courseId : courseIds) {
+                for (int e = 0; e < examsPerCourse; e++) {
+                    // Spread exams from a month ago to a month ahead
+                    long offsetDays = random.nextInt(61) - 30;
+                    Exam exam = new Exam();
+                    exam.setCourseId(courseId);
+                    exam.setTitle("Benchmark exam " + courseId + "-" + e);
+                    exam.setStartTime(new Timestamp(now + offsetDays * 86_400_000L));
+                    exam.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+                    exams.add(exam);
+                }
+            }
+            BatchInsert.insertRows(conn, "INSERT INTO exams (course_id, title, description, start_time, " +
+                "duration_minutes, total_marks, status, created_by) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                exams, (stmt, exam, i, offset) -> {
+                    stmt.setInt(offset + 1, exam.getCourseId());
+                    stmt.setString(offset + 2, exam.getTitle());
+                    stmt.setString(offset + 3, "Seeded by ExamDAOBenchmark");
+                    stmt.setTimestamp(offset + 4, new Timestamp(exam.getStartTime().getTime()));
+                    stmt.setInt(offset + 5, 60);
+                    stmt.setInt(offset + 6, 100);
+                    stmt.setString(offset + 7, exam.getStatus());
+                    stmt.setInt(offset + 8, teacherId);
+                });
+            conn.commit();
+            conn.setAutoCommit(true);
+        }
+        System.out.println(String.format("Seeded %d students, %d courses, %d exams in %d ms",
+            students, courses, courses * examsPerCourse, System.currentTimeMillis() - start));
+    }
+
+    private int insertUser(Connection conn, String username, String type) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO users (username, password, user_type, full_name, email) VALUES (?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, username);
+            stmt.setString(2, "bench123");
+            stmt.setString(3, type);
+            stmt.setString(4, username);
+            stmt.setString(5, username + "@example.com");
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private int run() {
+        ExamDAO examDAO = new ExamDAO();
+        List<Integer> createdIds = new ArrayList<>();
+
+        long[] upcoming = time(i -> examDAO.getUpcomingExams(studentIds.get(random.nextInt(students))));
+        long[] upcomingSql = time(i -> examDAO.queryUpcomingExams(studentIds.get(random.nextInt(students))));
+        // Before createExam adds hundreds of exams starting within seconds of each other
+        int clashMismatches = compareClashes();
+        long[] create = time(i -> {
+            Exam exam = new Exam();
+            exam.setCourseId(courseIds.get(random.nextInt(courses)));
+            exam.setTitle("Benchmark created exam " + i);
+            exam.setDescription("Created during the benchmark run");
+            exam.setStartTime(new Date(System.currentTimeMillis() + 86_400_000L));
+            exam.setDurationMinutes(90);
+            exam.setTotalMarks(100);
+            exam.setStatus("draft");
+            exam.setCreatedBy(teacherId);
+            createdIds.add(examDAO.createExam(exam).getId());
+        });
+        long[] status = time(i -> examDAO.updateExamStatus(createdIds.get(i % createdIds.size()), "published"));
+        // The published exams reached the index through the DAO calls above
+        int mismatches = verifyIndex(examDAO);
+
+        System.out.println();
+        System.out.println(String.format("%-28s %7s %9s %9s %9s %9s", "OPERATION", "CALLS", "P50 ms",
+            "P95 ms", "P99 ms", "MAX ms"));
+        int exitStatus = 0;
+        exitStatus |= print("ExamDAO.getUpcomingExams", upcoming);
+        exitStatus |= print("  (join query)", upcomingSql);
+        exitStatus |= print("ExamDAO.createExam", create);
+        exitStatus |= print("ExamDAO.updateExamStatus", status);
+        System.out.println("Availability index: " + ExamAvailabilityIndex.getInstance().getStatistics());
+        if (mismatches > 0) {
+            System.err.println("MISMATCH: index differs from the join query for " + mismatches + " students");
+            exitStatus = 1;
+        }
+        if (clashMismatches > 0) {
+            System.err.println("MISMATCH: bitmap clashes differ from the SQL ones for " + clashMismatches + " exam pairs");
+            exitStatus = 1;
+        }
+        return exitStatus;
+    }
+
+    /**
+     * Finds the students booked into two overlapping upcoming exams with
+     * the enrollment bitmaps and with a self-join, and compares the two.
+     * @return Number of exam pairs whose student counts differ
+     */
+    private int compareClashes() {
+        ExamAvailabilityIndex index = ExamAvailabilityIndex.getInstance();
+        index.findClashes();
+        long start = System.nanoTime();
+        List<ExamAvailabilityIndex.Clash> clashes = index.findClashes();
+        long bitmapNanos = System.nanoTime() - start;
+
+        Map<Long, Integer> fromSql = new HashMap<>();
+        start = System.nanoTime();
+        try (Connection conn = DatabaseConfig.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT a.id, b.id, COUNT(*) FROM exams a " +
+                 "JOIN exams b ON a.id <> b.id AND (a.start_time < b.start_time " +
+                 "OR (a.start_time = b.start_time AND a.id < b.id)) " +
+                 "AND b.start_time < TIMESTAMPADD(MINUTE, a.duration_minutes, a.start_time) " +
+                 "JOIN enrollments ea ON ea.course_id = a.course_id " +
+                 "JOIN enrollments eb ON eb.course_id = b.course_id AND eb.student_id = ea.student_id " +
+                 "WHERE a.status = 'published' AND b.status = 'published' " +
+                 "AND a.start_time > NOW() AND b.start_time > NOW() GROUP BY a.id, b.id")) {
+            while (rs.next()) {
+                fromSql.put(((long) rs.getInt(1) << 32) | rs.getInt(2), rs.getInt(3));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        long sqlNanos = System.nanoTime() - start;
+
+        int mismatches = Math.abs(fromSql.size() - clashes.size());
+        int students = 0;
+        for (ExamAvailabilityIndex.Clash clash : clashes) {
+            Integer count = fromSql.get(((long) clash.getFirstExamId() << 32) | clash.getSecondExamId());
+            if (count == null || count != clash.getStudents().cardinality()) {
+                mismatches++;
+            }
+            students += clash.getStudents().cardinality();
+        }
+        System.out.println(String.format("Exam clashes: %d overlapping pairs, %d student bookings; " +
+            "bitmaps %.3f ms, self-join %.3f ms", clashes.size(), students, bitmapNanos / 1e6, sqlNanos / 1e6));
+        return mismatches;
+    }
+
+    /**
+     * @return Number of students whose upcoming exams from the index differ
+     *         from those of the join query
+     */
+    private int verifyIndex(ExamDAO examDAO) {
+        int mismatches = 0;
+        for (int studentId : studentIds) {
+            List<Integer> indexed = new ArrayList<>();
+            for (Exam exam : examDAO.getUpcomingExams(studentId)) {
+                indexed.add(exam.getId());
+            }
+            List<Integer> queried = new ArrayList<>();
+            for (Exam exam : examDAO.queryUpcomingExams(studentId)) {
+                queried.add(exam.getId());
+            }
+            if (!indexed.equals(queried)) {
+                mismatches++;
+            } else {
+                for (int examId : queried) {
+                    if (!ExamAvailabilityIndex.getInstance().canSee(studentId, examId)) {
+                        mismatches++;
+                        break;
+                    }
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    private interface Operation {
+        void run(int iteration);
+    }
+
+    /**
+     * @return Sorted latencies in nanoseconds, excluding warm-up calls
+     */
+    private long[] time(Operation operation) {
+        long[] samples = new long[iterations];
+        for (int i = 0; i < warmupIterations + iterations; i++) {
+            long start = System.nanoTime();
+            operation.run(i);
+            if (i >= warmupIterations) {
+                samples[i - warmupIterations] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private int print(String operation, long[] sorted) {
+        double p95 = percentile(sorted, 95);
+        System.out.println(String.format("%-28s %7d %9.3f %9.3f %9.3f %9.3f", operation, sorted.length,
+            percentile(sorted, 50), p95, percentile(sorted, 99), percentile(sorted, 100)));
+        String budget = System.getProperty("bench.maxP95Ms");
+        if (budget != null && p95 > Double.parseDouble(budget)) {
+            System.err.println("REGRESSION: " + operation + " p95 exceeds " + budget + " ms");
+            return 1;
+        }
+        return 0;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,159 @@
+package com.university.exam.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bulk INSERT through multi-row statements, used to seed the benchmark
+ * database. MySQL executes a JDBC batch one row per round trip unless the
+ * driver rewrites it, so insertRows expands the single-row
+ * INSERT ... VALUES (?, ...) to as many rows as fit in half of
+ * max_allowed_packet, capped by db.insert.maxRows.
+ */
+public final class BatchInsert {
+    private static final int MAX_PARAMETERS = 65535;
+    private static final int ESTIMATED_BYTES_PER_PARAMETER = 24;
+    private static final int MAX_ROWS = Integer.getInteger("db.insert.maxRows", 1000);
+    private static final Map<String, String> EXPANDED_SQL = new ConcurrentHashMap<>();
+    private static volatile long maxPacketBytes;
+
+    /** Binds one row; its first placeholder is at offset + 1. */
+    @FunctionalInterface
+    public interface RowBinder<T> {
+        void bind(PreparedStatement stmt, T item, int index, int offset) throws SQLException;
+    }
+
+    private BatchInsert() {}
+
+    /**
+     * Inserts the items with multi-row statements. Full-size statements
+     * reuse one prepared statement and the remainder is split into
+     * power-of-two sizes, so few distinct texts reach the statement cache.
+     * SQL that is not a single-row INSERT ... VALUES, and any chunk the
+     * server rejects as too large, falls back to an ordinary batch.
+     * @return Total update count
+     */
+    public static <T> int insertRows(Connection conn, String sql, List<T> items, RowBinder<T> binder)
+            throws SQLException {
+        int values = sql.startsWith("INSERT") ? sql.indexOf("VALUES (") : -1;
+        int end = values < 0 ? -1 : closingParenthesis(sql, values + 7);
+        if (end < 0) {
+            return batchRows(conn, sql, items, 0, binder);
+        }
+        String row = sql.substring(values + 7, end + 1);
+        int parameters = (int) row.chars().filter(c -> c == '?').count();
+        if (parameters == 0) {
+            return batchRows(conn, sql, items, 0, binder);
+        }
+        long rowBytes = row.length() + 2 + (long) parameters * ESTIMATED_BYTES_PER_PARAMETER;
+        int rowsPerStatement = (int) Math.max(1, Math.min(Math.min(MAX_ROWS, MAX_PARAMETERS / parameters),
+            (maxPacketBytes(conn) / 2 - sql.length()) / rowBytes));
+
+        int total = 0;
+        int from = 0;
+        while (from < items.size()) {
+            int rows = Math.min(items.size() - from, rowsPerStatement);
+            if (rows < rowsPerStatement) {
+                rows = Integer.highestOneBit(rows);
+            }
+            if (rows == 1) {
+                return total + batchRows(conn, sql, items, from, binder);
+            }
+            String expanded = expand(sql, values + 7, end + 1, rows);
+            try (PreparedStatement stmt = conn.prepareStatement(expanded)) {
+                // Full-size chunks share this statement
+                do {
+                    for (int r = 0; r < rows; r++) {
+                        binder.bind(stmt, items.get(from + r), from + r, r * parameters);
+                    }
+                    total += stmt.executeUpdate();
+                    from += rows;
+                } while (rows == rowsPerStatement && items.size() - from >= rows);
+            } catch (SQLException e) {
+                // ER_NET_PACKET_TOO_LARGE, or Connector/J's client-side check
+                if (e.getErrorCode() != 1153 && !e.getClass().getSimpleName().equals("PacketTooBigException")) {
+                    throw e;
+                }
+                return total + batchRows(conn, sql, items, from, binder);
+            }
+        }
+        return total;
+    }
+
+    private static int closingParenthesis(String sql, int open) {
+        int depth = 0;
+        for (int i = open; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String expand(String sql, int rowStart, int rowEnd, int rows) {
+        return EXPANDED_SQL.computeIfAbsent(rows + ":" + sql, key -> {
+            String row = sql.substring(rowStart, rowEnd);
+            StringBuilder text = new StringBuilder(sql.length() + (rows - 1) * (row.length() + 2));
+            text.append(sql, 0, rowStart);
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    text.append(", ");
+                }
+                text.append(row);
+            }
+            return text.append(sql, rowEnd, sql.length()).toString();
+        });
+    }
+
+    private static <T> int batchRows(Connection conn, String sql, List<T> items, int from, RowBinder<T> binder)
+            throws SQLException {
+        if (from >= items.size()) {
+            return 0;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = from; i < items.size(); i++) {
+                binder.bind(stmt, items.get(i), i, 0);
+                stmt.addBatch();
+            }
+            int total = 0;
+            for (int result : stmt.executeBatch()) {
+                total += result == Statement.SUCCESS_NO_INFO ? 1 : Math.max(result, 0);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * @return db.maxPacketBytes if set, max_allowed_packet on MySQL,
+     *         otherwise 4 MB; looked up once
+     */
+    private static long maxPacketBytes(Connection conn) throws SQLException {
+        long bytes = maxPacketBytes;
+        if (bytes > 0) {
+            return bytes;
+        }
+        bytes = Long.getLong("db.maxPacketBytes", 0);
+        if (bytes <= 0 && conn.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql")) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT @@max_allowed_packet")) {
+                if (rs.next()) {
+                    bytes = rs.getLong(1);
+                }
+            }
+        }
+        if (bytes <= 0) {
+            bytes = 4L * 1024 * 1024;
+        }
+        maxPacketBytes = bytes;
+        return bytes;
+    }
+}
@@ -0,0 +1,166 @@
+package com.university.exam.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks IdBitmap against a TreeSet, with sets built to land in each kind
+ * of container and to move between them as ids are added and removed.
+ */
+public class IdBitmapTest {
+
+    // Chunk key plus the container: 2 bytes per array value, 4 per run, 8 KB per bitmap
+    @Test
+    void testPicksTheSmallestContainer() {
+        assertEquals(2 + 3 * 2, IdBitmap.of(5, 900, 40_000).getSizeInBytes());
+        assertEquals(2 + 4, IdBitmap.of(range(1_000, 11_000)).getSizeInBytes());
+        assertEquals(2 + 4, IdBitmap.of(range(0, 65_536)).getSizeInBytes());
+        assertEquals(2 + 8192, IdBitmap.of(scattered(new Random(1), 0, 30_000)).getSizeInBytes());
+        // One container per 65536-id chunk
+        assertEquals(3 * (2 + 2), IdBitmap.of(1, 70_000, 1 << 20).getSizeInBytes());
+    }
+
+    @Test
+    void testIgnoresDuplicatesAndOrder() {
+        IdBitmap set = IdBitmap.of(9, 3, 3, 70_000, 9, 0);
+        assertArrayEquals(new int[] {0, 3, 9, 70_000}, set.toArray());
+        assertEquals(4, set.cardinality());
+        assertFalse(set.contains(-1));
+        assertFalse(set.contains(4));
+        assertTrue(IdBitmap.of().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> IdBitmap.of(1, -2));
+        assertThrows(IllegalArgumentException.class, () -> set.with(-1));
+    }
+
+    @Test
+    void testWithAndWithoutMoveBetweenContainers() {
+        Random random = new Random(18);
+        TreeSet<Integer> expected = new TreeSet<>();
+        IdBitmap set = IdBitmap.EMPTY;
+        // Scattered ids: an array until 4096 of them, then a bitmap, and back
+        while (expected.size() < 5_000) {
+            int id = random.nextInt(65_536);
+            set = set.with(id);
+            expected.add(id);
+        }
+        assertMatches(expected, set);
+        assertEquals(2 + 8192, set.getSizeInBytes());
+        while (expected.size() > 4_000) {
+            int id = expected.pollFirst();
+            set = set.without(id);
+        }
+        assertMatches(expected, set);
+        assertEquals(2 + 4_000 * 2, set.getSizeInBytes());
+
+        // Consecutive ids: one run, then an array once every other one is gone
+        expected.clear();
+        set = IdBitmap.EMPTY;
+        for (int id = 0; id < 8_192; id++) {
+            set = set.with(id);
+            expected.add(id);
+        }
+        assertMatches(expected, set);
+        assertEquals(2 + 4, set.getSizeInBytes());
+        for (int id = 0; id < 8_192; id += 2) {
+            set = set.without(id);
+            expected.remove(id);
+        }
+        assertMatches(expected, set);
+        assertEquals(2 + 4_096 * 2, set.getSizeInBytes());
+        for (int id = 1; id < 8_192; id += 2) {
+            set = set.without(id);
+        }
+        assertEquals(0, set.getSizeInBytes());
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    void testWithAndWithoutLeaveTheOriginalUnchanged() {
+        IdBitmap original = IdBitmap.of(1, 2, 3, 100_000);
+        IdBitmap added = original.with(4);
+        IdBitmap removed = original.without(100_000);
+        assertArrayEquals(new int[] {1, 2, 3, 100_000}, original.toArray());
+        assertArrayEquals(new int[] {1, 2, 3, 4, 100_000}, added.toArray());
+        assertArrayEquals(new int[] {1, 2, 3}, removed.toArray());
+        // No change returns the same set
+        assertSame(original, original.with(2));
+        assertSame(original, original.without(5));
+        assertSame(original, original.without(-5));
+    }
+
+    @Test
+    void testSetOperationsMatchTreeSet() {
+        Random random = new Random(2024);
+        List<int[]> shapes = new ArrayList<>();
+        shapes.add(new int[0]);
+        shapes.add(scattered(random, 0, 50));
+        shapes.add(scattered(random, 0, 4_000));
+        shapes.add(scattered(random, 0, 20_000));
+        shapes.add(range(30_000, 70_000));
+        shapes.add(concat(range(0, 5_000), range(60_000, 140_000), scattered(random, 1, 3_000)));
+        shapes.add(scattered(random, 2, 40_000));
+
+        for (int[] left : shapes) {
+            for (int[] right : shapes) {
+                IdBitmap a = IdBitmap.of(left);
+                IdBitmap b = IdBitmap.of(right);
+                TreeSet<Integer> and = toSet(left);
+                and.retainAll(toSet(right));
+                TreeSet<Integer> or = toSet(left);
+                or.addAll(toSet(right));
+
+                assertMatches(and, a.and(b));
+                assertMatches(or, a.or(b));
+                assertMatches(or, IdBitmap.union(Arrays.asList(a, b)));
+                assertEquals(!and.isEmpty(), a.intersects(b));
+            }
+        }
+    }
+
+    private static void assertMatches(TreeSet<Integer> expected, IdBitmap actual) {
+        assertEquals(expected.size(), actual.cardinality());
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), actual.toArray());
+        for (int id : expected) {
+            assertTrue(actual.contains(id), "missing " + id);
+            assertEquals(expected.contains(id + 1), actual.contains(id + 1), "neighbour " + (id + 1));
+        }
+    }
+
+    private static int[] range(int from, int to) {
+        int[] ids = new int[to - from];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = from + i;
+        }
+        return ids;
+    }
+
+    /**
+     * @return count distinct random ids within the chunk
+     */
+    private static int[] scattered(Random random, int chunk, int count) {
+        TreeSet<Integer> ids = new TreeSet<>();
+        while (ids.size() < count) {
+            ids.add((chunk << 16) | random.nextInt(65_536));
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] concat(int[]... parts) {
+        return Arrays.stream(parts).flatMapToInt(Arrays::stream).toArray();
+    }
+
+    private static TreeSet<Integer> toSet(int[] ids) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+}
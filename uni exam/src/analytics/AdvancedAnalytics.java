@@ -1,44 +1,33 @@
 package analytics;
 
 import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
 import java.sql.*;
 import java.util.*;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 
 public class AdvancedAnalytics {
-    private Connection connection;
+    private final DatabaseConnection database;
 
     public AdvancedAnalytics() {
-        try {
-            connection = DatabaseConnection.getInstance().getConnection();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        database = DatabaseConnection.getInstance();
     }
 
     public Map<String, Object> getStudentProgressAnalysis(int studentId) {
         Map<String, Object> analysis = new HashMap<>();
-        try {
+        try (Connection connection = database.getReadOnlyConnection()) {
             // Get performance trend over time
-            String trendQuery = "SELECT e.subject, r.percentage, r.submission_time " +
-                              "FROM exam_results r " +
-                              "JOIN exams e ON r.exam_id = e.id " +
-                              "WHERE r.student_id = ? " +
-                              "ORDER BY r.submission_time";
-            PreparedStatement trendStmt = connection.prepareStatement(trendQuery);
-            trendStmt.setInt(1, studentId);
-            ResultSet trendRs = trendStmt.executeQuery();
-
             Map<String, List<Map<String, Object>>> subjectTrends = new HashMap<>();
-            while (trendRs.next()) {
+            SqlExecutor.forEach(connection, SqlStatement.STUDENT_TREND, stmt -> stmt.setInt(1, studentId), trendRs -> {
                 String subject = trendRs.getString("subject");
                 subjectTrends.computeIfAbsent(subject, k -> new ArrayList<>())
                     .add(Map.of(
                         "percentage", trendRs.getDouble("percentage"),
                         "date", trendRs.getTimestamp("submission_time")
                     ));
-            }
+            });
             analysis.put("performanceTrends", subjectTrends);
 
             // Calculate improvement rates
@@ -55,19 +44,8 @@ public class AdvancedAnalytics {
             analysis.put("improvementRates", improvementRates);
 
             // Get strength and weakness analysis
-            String strengthQuery = "SELECT q.subject, q.difficulty, " +
-                                 "COUNT(CASE WHEN sea.selected_option = q.correct_option THEN 1 END) as correct, " +
-                                 "COUNT(*) as total " +
-                                 "FROM student_exam_answers sea " +
-                                 "JOIN questions q ON sea.question_id = q.id " +
-                                 "WHERE sea.student_id = ? " +
-                                 "GROUP BY q.subject, q.difficulty";
-            PreparedStatement strengthStmt = connection.prepareStatement(strengthQuery);
-            strengthStmt.setInt(1, studentId);
-            ResultSet strengthRs = strengthStmt.executeQuery();
-
             Map<String, Map<String, Double>> strengthAnalysis = new HashMap<>();
-            while (strengthRs.next()) {
+            SqlExecutor.forEach(connection, SqlStatement.STUDENT_STRENGTHS, stmt -> stmt.setInt(1, studentId), strengthRs -> {
                 String subject = strengthRs.getString("subject");
                 String difficulty = strengthRs.getString("difficulty");
                 int correct = strengthRs.getInt("correct");
@@ -76,31 +54,23 @@ public class AdvancedAnalytics {
 
                 strengthAnalysis.computeIfAbsent(subject, k -> new HashMap<>())
                     .put(difficulty, accuracy);
-            }
+            });
             analysis.put("strengthAnalysis", strengthAnalysis);
 
             // Get time management analysis
-            String timeQuery = "SELECT e.duration, er.submission_time, e.start_time " +
-                             "FROM exam_results er " +
-                             "JOIN exams e ON er.exam_id = e.id " +
-                             "WHERE er.student_id = ?";
-            PreparedStatement timeStmt = connection.prepareStatement(timeQuery);
-            timeStmt.setInt(1, studentId);
-            ResultSet timeRs = timeStmt.executeQuery();
-
-            List<Map<String, Object>> timeAnalysis = new ArrayList<>();
-            while (timeRs.next()) {
-                int duration = timeRs.getInt("duration");
-                LocalDateTime startTime = timeRs.getTimestamp("start_time").toLocalDateTime();
-                LocalDateTime submissionTime = timeRs.getTimestamp("submission_time").toLocalDateTime();
-                long timeSpent = ChronoUnit.MINUTES.between(startTime, submissionTime);
-
-                timeAnalysis.add(Map.of(
-                    "duration", duration,
-                    "timeSpent", timeSpent,
-                    "timeEfficiency", ((double) timeSpent / duration) * 100
-                ));
-            }
+            List<Map<String, Object>> timeAnalysis = SqlExecutor.query(connection, SqlStatement.STUDENT_TIME_USAGE,
+                stmt -> stmt.setInt(1, studentId), timeRs -> {
+                    int duration = timeRs.getInt("duration");
+                    LocalDateTime startTime = timeRs.getTimestamp("start_time").toLocalDateTime();
+                    LocalDateTime submissionTime = timeRs.getTimestamp("submission_time").toLocalDateTime();
+                    long timeSpent = ChronoUnit.MINUTES.between(startTime, submissionTime);
+
+                    return Map.<String, Object>of(
+                        "duration", duration,
+                        "timeSpent", timeSpent,
+                        "timeEfficiency", ((double) timeSpent / duration) * 100
+                    );
+                });
             analysis.put("timeManagement", timeAnalysis);
 
         } catch (SQLException e) {
@@ -111,23 +81,14 @@ public class AdvancedAnalytics {
 
     public Map<String, Object> getPredictiveAnalysis(int studentId) {
         Map<String, Object> predictions = new HashMap<>();
-        try {
+        try (Connection connection = database.getReadOnlyConnection()) {
             // Get past performance data
-            String query = "SELECT e.subject, r.percentage " +
-                          "FROM exam_results r " +
-                          "JOIN exams e ON r.exam_id = e.id " +
-                          "WHERE r.student_id = ? " +
-                          "ORDER BY r.submission_time";
-            PreparedStatement stmt = connection.prepareStatement(query);
-            stmt.setInt(1, studentId);
-            ResultSet rs = stmt.executeQuery();
-
             Map<String, List<Double>> subjectScores = new HashMap<>();
-            while (rs.next()) {
+            SqlExecutor.forEach(connection, SqlStatement.STUDENT_SCORE_HISTORY, stmt -> stmt.setInt(1, studentId), rs -> {
                 String subject = rs.getString("subject");
                 subjectScores.computeIfAbsent(subject, k -> new ArrayList<>())
                     .add(rs.getDouble("percentage"));
-            }
+            });
 
             // Calculate predicted scores using simple linear regression
             Map<String, Double> predictedScores = new HashMap<>();
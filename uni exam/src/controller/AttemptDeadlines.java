@@ -0,0 +1,152 @@
+package controller;
+
+import util.TimingWheel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-side deadlines of the attempts in progress.
+ *
+ * Every open attempt's deadline sits in a hierarchical timing wheel that
+ * one thread advances every exam.deadline.tickMs, so a tick costs the
+ * same whether ten or fifty thousand attempts are open. An attempt that
+ * reaches its deadline plus exam.deadline.graceSeconds is submitted with
+ * its autosaved answers by AttemptRegistry on a small worker pool, so a
+ * whole class expiring at once does not hold up the ticks. The grace
+ * period covers autosaves still in flight; it is not part of the
+ * remaining time shown to students.
+ *
+ * Settings (system properties): exam.deadline.tickMs (default 1000),
+ * exam.deadline.graceSeconds (5), exam.deadline.submitThreads (8).
+ */
+public class AttemptDeadlines {
+    private final AttemptRegistry registry;
+    private final long graceMillis = TimeUnit.SECONDS.toMillis(Long.getLong("exam.deadline.graceSeconds", 5));
+    private final TimingWheel<Long> wheel;
+    private final Map<Long, TimingWheel.Timeout<Long>> timeouts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService submitter;
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private volatile long lastTickNanos;
+    private volatile long maxTickNanos;
+
+    AttemptDeadlines(AttemptRegistry registry, long tickMillis) {
+        this.registry = registry;
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exam-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadNumber = new AtomicInteger();
+        submitter = Executors.newFixedThreadPool(Integer.getInteger("exam.deadline.submitThreads", 8), runnable -> {
+            Thread thread = new Thread(runnable, "deadline-submitter-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules the attempt's automatic submission, replacing any earlier
+     * deadline. A deadline already passed fires on the next tick.
+     */
+    public void track(int studentId, int examId, long deadlineMillis) {
+        long key = AttemptRegistry.key(studentId, examId);
+        synchronized (wheel) {
+            TimingWheel.Timeout<Long> previous = timeouts.get(key);
+            if (previous != null) {
+                wheel.cancel(previous);
+            }
+            timeouts.put(key, wheel.schedule(key, deadlineMillis + graceMillis));
+        }
+    }
+
+    /**
+     * Forgets the attempt's deadline, e.g. once it has been submitted.
+     */
+    public void release(int studentId, int examId) {
+        synchronized (wheel) {
+            TimingWheel.Timeout<Long> timeout = timeouts.remove(AttemptRegistry.key(studentId, examId));
+            if (timeout != null) {
+                wheel.cancel(timeout);
+            }
+        }
+    }
+
+    /**
+     * @return Milliseconds until the attempt's deadline, 0 once it has
+     *         passed, or -1 if the attempt has no deadline here (not
+     *         opened, untimed or already submitted)
+     */
+    public long getRemainingMillis(int studentId, int examId) {
+        TimingWheel.Timeout<Long> timeout = timeouts.get(AttemptRegistry.key(studentId, examId));
+        if (timeout == null) {
+            return -1;
+        }
+        return Math.max(0, timeout.getDeadlineMillis() - graceMillis - System.currentTimeMillis());
+    }
+
+    public long getGraceMillis() {
+        return graceMillis;
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        List<TimingWheel.Timeout<Long>> due = new ArrayList<>();
+        synchronized (wheel) {
+            ticks.add(wheel.advance(System.currentTimeMillis(), due));
+            for (TimingWheel.Timeout<Long> timeout : due) {
+                timeouts.remove(timeout.getItem(), timeout);
+            }
+        }
+        for (TimingWheel.Timeout<Long> timeout : due) {
+            long key = timeout.getItem();
+            submitter.execute(() -> registry.expire((int) (key >>> 32), (int) key));
+        }
+        expired.add(due.size());
+        long elapsed = System.nanoTime() - start;
+        lastTickNanos = elapsed;
+        if (elapsed > maxTickNanos) {
+            maxTickNanos = elapsed;
+        }
+    }
+
+    /**
+     * Stops the ticks and waits for automatic submissions under way.
+     */
+    public void close() {
+        ticker.shutdown();
+        submitter.shutdown();
+        try {
+            ticker.awaitTermination(10, TimeUnit.SECONDS);
+            submitter.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (wheel) {
+            stats.put("tracked", wheel.size());
+        }
+        stats.put("ticks", ticks.sum());
+        stats.put("expired", expired.sum());
+        stats.put("lastTickMicros", lastTickNanos / 1000.0);
+        stats.put("maxTickMicros", maxTickNanos / 1000.0);
+        stats.put("tickMillis", wheel.getTickMillis());
+        return stats;
+    }
+}
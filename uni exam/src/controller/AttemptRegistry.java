@@ -0,0 +1,630 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.AnswerKey;
+import model.ExamPaper;
+import model.PaperShuffle;
+import model.Question;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server-side state of exams in progress, fed by per-question autosaves.
+ *
+ * Each attempt keeps its current answers in memory, guarded by one of a
+ * fixed set of striped locks so students never contend on a global lock.
+ * A change only marks the question dirty; repeated changes to the same
+ * question before the next flush are coalesced into one row. A background
+ * flusher writes all dirty answers of all attempts in one batch every
+ * autosave.flushMs, so database writes are spread over the exam window.
+ *
+ * The final submission seals the attempt and hands its answers to
+ * ExamController.submitExam; attempts are marked sealed in the database
+ * by the next flush. An attempt not in memory, for example after a
+ * restart, is restored from its autosaved answers on first use. That load
+ * runs outside the striped locks, once per attempt however many requests
+ * arrive for it, so autosaves of loaded attempts never wait on another
+ * student's queries. Attempts found sealed are remembered as such, so late
+ * requests for them do not reach the database.
+ * Students see questions and options in their shuffled order; answers
+ * are kept and written in paper order.
+ *
+ * An attempt can only be created for an active exam that has started and
+ * whose time has not run out, and never for a variant drawn for another
+ * student (see ExamController.createExamVariants). A timed attempt gets its deadline, the exam's
+ * start time plus its duration, when it is created, so starting late does
+ * not buy extra time. AttemptDeadlines submits it once the deadline has
+ * passed and changes arriving after that are refused. Open attempts are
+ * scheduled again when the registry starts.
+ *
+ * Settings (system properties): autosave.flushMs (default 5000),
+ * autosave.idleMinutes (240) before an untouched attempt leaves memory,
+ * exam.deadline.tickMs (1000).
+ */
+public class AttemptRegistry {
+    private static AttemptRegistry instance;
+
+    private static final int STRIPES = 64;
+    private static final String SEALED = "SEALED";
+
+    private final ExamController examController;
+    private final DatabaseConnection database;
+    private final Object[] stripes = new Object[STRIPES];
+    private final Map<Long, Attempt> attempts = new ConcurrentHashMap<>();
+    // Loads in progress, so concurrent first requests share one
+    private final Map<Long, CompletableFuture<Attempt>> loading = new ConcurrentHashMap<>();
+    // Attempts known to be sealed in the database -> when that was seen
+    private final Map<Long, Long> sealedAttempts = new ConcurrentHashMap<>();
+    private final Set<Attempt> dirtyAttempts = ConcurrentHashMap.newKeySet();
+    private final Set<Attempt> pendingSeals = ConcurrentHashMap.newKeySet();
+    private final long idleMillis = TimeUnit.MINUTES.toMillis(Long.getLong("autosave.idleMinutes", 240));
+    private final ScheduledExecutorService flusher;
+    private final AttemptDeadlines deadlines;
+
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LongAdder restored = new LongAdder();
+    private final LongAdder sealed = new LongAdder();
+
+    /** Answers of one student's attempt, in paper order. */
+    private static final class Attempt {
+        final long key;
+        final int studentId;
+        final int examId;
+        final ExamPaper paper;
+        final PaperShuffle shuffle;
+        final int[] answers;
+        final boolean[] dirty;
+        // 0 for an untimed exam
+        long deadlineMillis;
+        boolean queued;
+        boolean sealed;
+        long lastTouched;
+
+        Attempt(long key, int studentId, int examId, PaperShuffle shuffle) {
+            this.key = key;
+            this.studentId = studentId;
+            this.examId = examId;
+            this.paper = shuffle.getPaper();
+            this.shuffle = shuffle;
+            this.answers = new int[paper.getQuestionCount()];
+            this.dirty = new boolean[answers.length];
+            this.lastTouched = System.currentTimeMillis();
+        }
+    }
+
+    /** An answer copied out of an attempt for the next batch. */
+    private static final class Change {
+        final Attempt attempt;
+        final int index;
+        final int selectedOption;
+
+        Change(Attempt attempt, int index, int selectedOption) {
+            this.attempt = attempt;
+            this.index = index;
+            this.selectedOption = selectedOption;
+        }
+    }
+
+    AttemptRegistry(ExamController examController, DatabaseConnection database, long flushMillis) {
+        this.examController = examController;
+        this.database = database;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "autosave-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        deadlines = new AttemptDeadlines(this, Long.getLong("exam.deadline.tickMs", 1000));
+        scheduleOpenAttempts();
+    }
+
+    /**
+     * Schedules the deadlines of attempts left open by a restart; those
+     * already past are submitted on the first tick.
+     */
+    private void scheduleOpenAttempts() {
+        try (Connection connection = database.getConnection()) {
+            SqlExecutor.forEach(connection, SqlStatement.OPEN_ATTEMPT_DEADLINES, SqlExecutor.NO_PARAMETERS,
+                rs -> deadlines.track(rs.getInt("student_id"), rs.getInt("exam_id"),
+                    rs.getTimestamp("deadline_at").getTime()));
+        } catch (SQLException e) {
+            System.err.println("Could not schedule deadlines of open attempts: " + e.getMessage());
+        }
+    }
+
+    static long key(int studentId, int examId) {
+        return ((long) studentId << 32) | (examId & 0xFFFFFFFFL);
+    }
+
+    public static synchronized AttemptRegistry getInstance() {
+        if (instance == null) {
+            instance = new AttemptRegistry(ExamController.getInstance(), DatabaseConnection.getInstance(),
+                Long.getLong("autosave.flushMs", 5000));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts or resumes an attempt.
+     * @return Current answers in served order (AnswerKey.UNANSWERED where
+     *         none was saved), or null if the attempt was already sealed,
+     *         the exam is not open or has no questions
+     */
+    public int[] openAttempt(int studentId, int examId) throws SQLException {
+        Attempt attempt = attempt(studentId, examId);
+        if (attempt == null) {
+            return null;
+        }
+        synchronized (stripe(attempt.key)) {
+            return attempt.sealed ? null : attempt.shuffle.toServedOrder(attempt.answers);
+        }
+    }
+
+    /**
+     * Records one answer change. It reaches the database with the next
+     * flush.
+     * @param position Position of the question as served, from 0
+     * @param selectedOption Option from 1 as served, or
+     *                       AnswerKey.UNANSWERED to clear
+     * @return false if the attempt is sealed or past its deadline, or the
+     *         answer is out of range
+     */
+    public boolean saveAnswer(int studentId, int examId, int position, int selectedOption) {
+        Attempt attempt;
+        try {
+            attempt = attempt(studentId, examId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (attempt == null || position < 0 || position >= attempt.answers.length) {
+            return false;
+        }
+        int questionIndex = attempt.shuffle.getPaperIndex(position);
+        Question question = attempt.paper.getQuestions().get(questionIndex);
+        if (selectedOption < AnswerKey.UNANSWERED || selectedOption > question.getOptions().size()) {
+            return false;
+        }
+        int option = attempt.shuffle.toPaperOption(questionIndex, selectedOption);
+        synchronized (stripe(attempt.key)) {
+            if (attempt.sealed || isPastDeadline(attempt)) {
+                return false;
+            }
+            if (attempt.dirty[questionIndex]) {
+                coalesced.increment();
+            }
+            attempt.answers[questionIndex] = option;
+            attempt.dirty[questionIndex] = true;
+            attempt.lastTouched = System.currentTimeMillis();
+            if (!attempt.queued) {
+                attempt.queued = true;
+                dirtyAttempts.add(attempt);
+            }
+        }
+        changes.increment();
+        return true;
+    }
+
+    /**
+     * Seals the attempt and submits its answers. Autosaves not yet flushed
+     * are superseded by the submission and dropped.
+     * @return false if the attempt was already sealed or the submission
+     *         was rejected, in which case the attempt stays open
+     */
+    public boolean submitAttempt(int studentId, int examId) {
+        Attempt attempt;
+        try {
+            attempt = attempt(studentId, examId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return attempt != null && seal(attempt, null);
+    }
+
+    /**
+     * Seals the attempt with answers posted as question id and option
+     * pairs, replacing whatever was autosaved. Questions without a pair
+     * count as unanswered.
+     * @param servedOptions Options as numbered for the student, or
+     *                      AnswerKey.UNANSWERED
+     * @param count Number of pairs to read from the arrays
+     * @return false if the attempt was already sealed or is past its
+     *         deadline, an answer is not on the paper or out of range, or
+     *         the submission was rejected
+     */
+    public boolean submitAnswers(int studentId, int examId, int[] questionIds, int[] servedOptions, int count) {
+        Attempt attempt;
+        try {
+            attempt = attempt(studentId, examId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (attempt == null) {
+            return false;
+        }
+        int[] answers = new int[attempt.answers.length];
+        List<Question> questions = attempt.paper.getQuestions();
+        for (int i = 0; i < count; i++) {
+            int index = attempt.paper.indexOf(questionIds[i]);
+            if (index < 0 || servedOptions[i] < AnswerKey.UNANSWERED
+                    || servedOptions[i] > questions.get(index).getOptions().size()) {
+                System.err.println("Rejected submission of student " + studentId + " for exam " + examId
+                    + ": question " + questionIds[i] + ", option " + servedOptions[i]);
+                return false;
+            }
+            answers[index] = attempt.shuffle.toPaperOption(index, servedOptions[i]);
+        }
+        return seal(attempt, answers);
+    }
+
+    /**
+     * @param answers Posted answers in paper order, or null to submit the
+     *                autosaved ones; posted answers are refused after the
+     *                deadline
+     */
+    private boolean seal(Attempt attempt, int[] answers) {
+        synchronized (stripe(attempt.key)) {
+            if (attempt.sealed || (answers != null && isPastDeadline(attempt))) {
+                return false;
+            }
+            attempt.sealed = true;
+            if (answers == null) {
+                answers = attempt.answers.clone();
+            }
+        }
+        if (!examController.submitInPaperOrder(attempt.studentId, attempt.examId, answers)) {
+            synchronized (stripe(attempt.key)) {
+                attempt.sealed = false;
+            }
+            return false;
+        }
+        deadlines.release(attempt.studentId, attempt.examId);
+        // Stays in memory, refusing changes, until the seal is flushed
+        dirtyAttempts.remove(attempt);
+        pendingSeals.add(attempt);
+        sealed.increment();
+        return true;
+    }
+
+    /**
+     * Submits an attempt whose deadline has passed. Called by
+     * AttemptDeadlines; a submission that fails is retried on the next tick.
+     */
+    void expire(int studentId, int examId) {
+        Attempt attempt;
+        try {
+            attempt = attempt(studentId, examId);
+        } catch (SQLException e) {
+            System.err.println("Cannot load expired attempt of student " + studentId + " in exam " + examId
+                + ", will retry: " + e.getMessage());
+            deadlines.track(studentId, examId, System.currentTimeMillis());
+            return;
+        }
+        if (attempt == null || submitAttempt(studentId, examId)) {
+            return;
+        }
+        synchronized (stripe(attempt.key)) {
+            if (attempt.sealed) {
+                return;
+            }
+        }
+        deadlines.track(studentId, examId, attempt.deadlineMillis);
+    }
+
+    private boolean isPastDeadline(Attempt attempt) {
+        return attempt.deadlineMillis > 0
+            && System.currentTimeMillis() > attempt.deadlineMillis + deadlines.getGraceMillis();
+    }
+
+    public AttemptDeadlines getDeadlines() {
+        return deadlines;
+    }
+
+    /**
+     * Writes every dirty answer and pending seal in one transaction. Runs
+     * on the flusher thread; callable directly, e.g. before shutdown.
+     * @return Number of answer rows written
+     */
+    public synchronized int flush() {
+        List<Change> batch = new ArrayList<>();
+        for (Iterator<Attempt> it = dirtyAttempts.iterator(); it.hasNext(); ) {
+            Attempt attempt = it.next();
+            it.remove();
+            synchronized (stripe(attempt.key)) {
+                attempt.queued = false;
+                if (attempt.sealed) {
+                    continue;
+                }
+                for (int i = 0; i < attempt.dirty.length; i++) {
+                    if (attempt.dirty[i]) {
+                        attempt.dirty[i] = false;
+                        batch.add(new Change(attempt, i, attempt.answers[i]));
+                    }
+                }
+            }
+        }
+        List<Attempt> seals = new ArrayList<>(pendingSeals);
+        pendingSeals.removeAll(seals);
+
+        if (!batch.isEmpty() || !seals.isEmpty()) {
+            try (Connection connection = database.getConnection()) {
+                try {
+                    connection.setAutoCommit(false);
+                    SqlExecutor.insertRows(connection, SqlStatement.SAVE_ATTEMPT_ANSWER, batch,
+                        (pstmt, change, i, offset) -> {
+                            pstmt.setInt(offset + 1, change.attempt.studentId);
+                            pstmt.setInt(offset + 2, change.attempt.examId);
+                            pstmt.setInt(offset + 3, change.attempt.paper.getQuestions().get(change.index).getId());
+                            pstmt.setInt(offset + 4, change.selectedOption);
+                        });
+                    SqlExecutor.batch(connection, SqlStatement.SEAL_ATTEMPT, seals, (pstmt, attempt, i) -> {
+                        pstmt.setInt(1, attempt.studentId);
+                        pstmt.setInt(2, attempt.examId);
+                    });
+                    connection.commit();
+                } catch (SQLException e) {
+                    try {
+                        connection.rollback();
+                    } catch (SQLException ex) {
+                        e.addSuppressed(ex);
+                    }
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                long now = System.currentTimeMillis();
+                for (Attempt attempt : seals) {
+                    sealedAttempts.put(attempt.key, now);
+                    attempts.remove(attempt.key, attempt);
+                }
+                rowsWritten.add(batch.size());
+                flushes.increment();
+            } catch (SQLException e) {
+                flushFailures.increment();
+                System.err.println("Autosave flush of " + batch.size() + " answers failed, will retry: "
+                    + e.getMessage());
+                requeue(batch);
+                pendingSeals.addAll(seals);
+                return 0;
+            }
+        }
+        evictIdle();
+        return batch.size();
+    }
+
+    /**
+     * Stops the flusher after a final flush.
+     */
+    public void close() {
+        deadlines.close();
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void requeue(List<Change> batch) {
+        for (Change change : batch) {
+            Attempt attempt = change.attempt;
+            synchronized (stripe(attempt.key)) {
+                // answers[] already holds the newest value for the question
+                attempt.dirty[change.index] = true;
+                if (!attempt.queued && !attempt.sealed) {
+                    attempt.queued = true;
+                    dirtyAttempts.add(attempt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops attempts that have not been touched for autosave.idleMinutes
+     * and have nothing left to flush; they are restored on next use.
+     * Sealed attempts stay until flush has made the seal durable, or a
+     * reload would find them ACTIVE and accept answers again. Sealed
+     * markers are dropped after the same idle time.
+     */
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        sealedAttempts.values().removeIf(seenAt -> seenAt < cutoff);
+        for (Attempt attempt : attempts.values()) {
+            synchronized (stripe(attempt.key)) {
+                if (attempt.lastTouched < cutoff && !attempt.queued && !attempt.sealed
+                        && !pendingSeals.contains(attempt)) {
+                    attempts.remove(attempt.key, attempt);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The attempt in memory, restored or created if needed, or
+     *         null if it was sealed, the exam is not open or has no
+     *         questions
+     */
+    private Attempt attempt(int studentId, int examId) throws SQLException {
+        long key = key(studentId, examId);
+        Attempt attempt = attempts.get(key);
+        if (attempt != null || sealedAttempts.containsKey(key)) {
+            return attempt;
+        }
+        // Only the first request of an attempt reaches the database; the
+        // others wait for its result
+        CompletableFuture<Attempt> load = new CompletableFuture<>();
+        CompletableFuture<Attempt> running = loading.putIfAbsent(key, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // Published by a load that finished since the first check
+            attempt = attempts.get(key);
+            if (attempt == null && !sealedAttempts.containsKey(key)) {
+                attempt = load(key, studentId, examId);
+                if (attempt != null) {
+                    attempts.put(key, attempt);
+                }
+            }
+            load.complete(attempt);
+            return attempt;
+        } catch (SQLException | RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, load);
+        }
+    }
+
+    private static Attempt await(CompletableFuture<Attempt> load) throws SQLException {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while the attempt was loaded", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Attempt could not be loaded: " + cause.getMessage(), cause);
+        }
+    }
+
+    private Attempt load(long key, int studentId, int examId) throws SQLException {
+        ExamPaper paper = examController.getExamPaper(examId);
+        if (paper.getQuestionCount() == 0) {
+            return null;
+        }
+        Attempt attempt = new Attempt(key, studentId, examId, examController.getShuffle(studentId, paper));
+        try (Connection connection = database.getConnection()) {
+            Integer assignedStudent = SqlExecutor.queryForObject(connection, SqlStatement.VARIANT_STUDENT,
+                pstmt -> pstmt.setInt(1, examId), rs -> rs.getInt("student_id"));
+            if (assignedStudent != null && assignedStudent != studentId) {
+                return null; // Another student's variant
+            }
+            Object[] row = SqlExecutor.queryForObject(connection, SqlStatement.ATTEMPT_STATUS, pstmt -> {
+                pstmt.setInt(1, studentId);
+                pstmt.setInt(2, examId);
+            }, rs -> new Object[] {rs.getString("status"), rs.getTimestamp("deadline_at")});
+            String status = row == null ? null : (String) row[0];
+            if (SEALED.equals(status)) {
+                sealedAttempts.put(key, System.currentTimeMillis());
+                return null;
+            }
+            // A submission whose seal was not flushed before a restart
+            Integer results = SqlExecutor.queryForObject(connection, SqlStatement.COUNT_RESULT, pstmt -> {
+                pstmt.setInt(1, studentId);
+                pstmt.setInt(2, examId);
+            }, rs -> rs.getInt(1));
+            if (results != null && results > 0) {
+                sealedAttempts.put(key, System.currentTimeMillis());
+                return null;
+            }
+            if (status == null) {
+                Object[] window = SqlExecutor.queryForObject(connection, SqlStatement.EXAM_WINDOW,
+                    pstmt -> pstmt.setInt(1, examId),
+                    rs -> new Object[] {rs.getInt("duration"), rs.getTimestamp("start_time"), rs.getBoolean("is_active")});
+                long now = System.currentTimeMillis();
+                if (window == null || !(Boolean) window[2] || ((Timestamp) window[1]).getTime() > now) {
+                    return null; // Not active or not started yet
+                }
+                int duration = (Integer) window[0];
+                if (duration > 0) {
+                    long durationMillis = TimeUnit.MINUTES.toMillis(duration);
+                    attempt.deadlineMillis = Math.min(now + durationMillis,
+                        ((Timestamp) window[1]).getTime() + durationMillis);
+                    if (now > attempt.deadlineMillis) {
+                        return null; // The exam is over
+                    }
+                }
+                SqlExecutor.update(connection, SqlStatement.INSERT_ATTEMPT, pstmt -> {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, examId);
+                    if (attempt.deadlineMillis > 0) {
+                        pstmt.setTimestamp(3, new Timestamp(attempt.deadlineMillis));
+                    } else {
+                        pstmt.setNull(3, Types.TIMESTAMP);
+                    }
+                });
+                track(attempt);
+                return attempt;
+            }
+            Timestamp deadline = (Timestamp) row[1];
+            if (deadline != null) {
+                attempt.deadlineMillis = deadline.getTime();
+            }
+            track(attempt);
+
+            Map<Integer, Integer> positions = new HashMap<>();
+            List<Question> questions = paper.getQuestions();
+            for (int i = 0; i < questions.size(); i++) {
+                positions.put(questions.get(i).getId(), i);
+            }
+            SqlExecutor.forEach(connection, SqlStatement.ATTEMPT_ANSWERS, pstmt -> {
+                pstmt.setInt(1, studentId);
+                pstmt.setInt(2, examId);
+            }, rs -> {
+                Integer index = positions.get(rs.getInt("question_id"));
+                if (index != null) {
+                    attempt.answers[index] = rs.getInt("selected_option");
+                }
+            });
+        }
+        restored.increment();
+        return attempt;
+    }
+
+    private void track(Attempt attempt) {
+        if (attempt.deadlineMillis > 0) {
+            deadlines.track(attempt.studentId, attempt.examId, attempt.deadlineMillis);
+        }
+    }
+
+    private Object stripe(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 58)];
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeAttempts", attempts.size());
+        stats.put("sealedAttempts", sealedAttempts.size());
+        stats.put("dirtyAttempts", dirtyAttempts.size());
+        stats.put("changes", changes.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("rowsWritten", rowsWritten.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("restored", restored.sum());
+        stats.put("sealed", sealed.sum());
+        return stats;
+    }
+}
@@ -1,19 +1,16 @@
 package controller;
 
 import database.DatabaseConnection;
+import database.SqlStatement;
 import model.User;
 import java.sql.*;
 
 public class AuthenticationController {
     private static AuthenticationController instance;
-    private Connection connection;
+    private final DatabaseConnection database;
 
     private AuthenticationController() {
-        try {
-            connection = DatabaseConnection.getInstance().getConnection();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        database = DatabaseConnection.getInstance();
     }
 
     public static AuthenticationController getInstance() {
@@ -25,22 +22,17 @@ public class AuthenticationController {
 
     public User login(String username, String password) {
         try {
-            String query = "SELECT * FROM users WHERE username = ? AND password = ?";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            pstmt.setString(1, username);
-            pstmt.setString(2, password); // In production, use password hashing
-
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return new User(
-                    rs.getInt("id"),
-                    rs.getString("username"),
-                    rs.getString("password"),
-                    rs.getString("role"),
-                    rs.getString("full_name"),
-                    rs.getString("email")
-                );
-            }
+            return database.queryForObject(SqlStatement.LOGIN, pstmt -> {
+                pstmt.setString(1, username);
+                pstmt.setString(2, password); // In production, use password hashing
+            }, rs -> new User(
+                rs.getInt("id"),
+                rs.getString("username"),
+                rs.getString("password"),
+                rs.getString("role"),
+                rs.getString("full_name"),
+                rs.getString("email")
+            ));
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -49,15 +41,13 @@ public class AuthenticationController {
 
     public boolean registerUser(User user) {
         try {
-            String query = "INSERT INTO users (username, password, role, full_name, email) VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            pstmt.setString(1, user.getUsername());
-            pstmt.setString(2, user.getPassword()); // In production, use password hashing
-            pstmt.setString(3, user.getRole());
-            pstmt.setString(4, user.getFullName());
-            pstmt.setString(5, user.getEmail());
-
-            int rowsAffected = pstmt.executeUpdate();
+            int rowsAffected = database.update(SqlStatement.INSERT_USER, pstmt -> {
+                pstmt.setString(1, user.getUsername());
+                pstmt.setString(2, user.getPassword()); // In production, use password hashing
+                pstmt.setString(3, user.getRole());
+                pstmt.setString(4, user.getFullName());
+                pstmt.setString(5, user.getEmail());
+            });
             return rowsAffected > 0;
         } catch (SQLException e) {
             e.printStackTrace();
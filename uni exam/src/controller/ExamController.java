@@ -1,51 +1,121 @@
 package controller;
 
+import model.AnswerKey;
 import model.Exam;
+import model.ExamBlueprint;
+import model.ExamPaper;
+import model.PaperShuffle;
 import model.Question;
 import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import database.SubmissionJournal;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Date;
+import java.util.Map;
 
 public class ExamController {
     private static ExamController instance;
-    private Connection connection;
+    private final DatabaseConnection database;
+    private final ExamPaperCache paperCache;
+    private final ExamPrewarmScheduler prewarmScheduler;
+    private final SubmissionQueue submissionQueue;
+    private final boolean shuffleEnabled = Boolean.parseBoolean(System.getProperty("exam.shuffle.enabled", "true"));
+    private final long shuffleSecret = shuffleSecret();
 
     private ExamController() {
+        database = DatabaseConnection.getInstance();
+        paperCache = ExamPaperCache.getInstance();
+        prewarmScheduler = new ExamPrewarmScheduler(this, database, paperCache);
+        prewarmScheduler.start();
+        submissionQueue = openSubmissionQueue();
+    }
+
+    /**
+     * @return Seed material from exam.shuffle.secret. Without it the order
+     *         each student gets can be worked out from the exam and
+     *         student ids alone.
+     */
+    private static long shuffleSecret() {
+        String secret = System.getProperty("exam.shuffle.secret");
+        if (secret == null || secret.isEmpty()) {
+            System.err.println("exam.shuffle.secret is not set, question order is predictable");
+            return 0;
+        }
         try {
-            connection = DatabaseConnection.getInstance().getConnection();
-        } catch (SQLException e) {
-            e.printStackTrace();
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            long seed = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                seed = (seed << 8) | (digest[i] & 0xFF);
+            }
+            return seed;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
         }
     }
 
-    public static ExamController getInstance() {
+    /**
+     * @return The write-behind queue, or null when submission.writeBehind
+     *         is false or the journal cannot be opened
+     */
+    private SubmissionQueue openSubmissionQueue() {
+        if (!Boolean.parseBoolean(System.getProperty("submission.writeBehind", "true"))) {
+            return null;
+        }
+        try {
+            SubmissionJournal journal = new SubmissionJournal(
+                Paths.get(System.getProperty("submission.journal.dir", "data/submission-journal")),
+                Integer.getInteger("submission.journal.segmentBytes", 8 * 1024 * 1024));
+            return new SubmissionQueue(this, database, journal);
+        } catch (IOException e) {
+            System.err.println("Submission journal unavailable, storing submissions directly: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static synchronized ExamController getInstance() {
         if (instance == null) {
             instance = new ExamController();
         }
         return instance;
     }
 
+    public ExamPrewarmScheduler getPrewarmScheduler() {
+        return prewarmScheduler;
+    }
+
+    /**
+     * @return The write-behind submission queue, or null if submissions
+     *         are stored directly
+     */
+    public SubmissionQueue getSubmissionQueue() {
+        return submissionQueue;
+    }
+
     public boolean createExam(Exam exam) {
-        try {
-            String query = "INSERT INTO exams (title, subject, start_time, duration, total_marks, created_by) " +
-                          "VALUES (?, ?, ?, ?, ?, ?)";
-            PreparedStatement pstmt = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-            pstmt.setString(1, exam.getTitle());
-            pstmt.setString(2, exam.getSubject());
-            pstmt.setTimestamp(3, new Timestamp(exam.getStartTime().getTime()));
-            pstmt.setInt(4, exam.getDuration());
-            pstmt.setInt(5, exam.getTotalMarks());
-            pstmt.setInt(6, 1); // Replace with actual teacher ID
-
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                ResultSet rs = pstmt.getGeneratedKeys();
-                if (rs.next()) {
-                    int examId = rs.getInt(1);
-                    return addQuestionsToExam(examId, exam.getQuestions());
-                }
+        try (Connection connection = database.getConnection()) {
+            int examId = SqlExecutor.insert(connection, SqlStatement.INSERT_EXAM, pstmt -> {
+                pstmt.setString(1, exam.getTitle());
+                pstmt.setString(2, exam.getSubject());
+                pstmt.setTimestamp(3, new Timestamp(exam.getStartTime().getTime()));
+                pstmt.setInt(4, exam.getDuration());
+                pstmt.setInt(5, exam.getTotalMarks());
+                pstmt.setInt(6, 1); // Replace with actual teacher ID
+            });
+            if (examId > 0) {
+                exam.setId(examId);
+                boolean added = addQuestionsToExam(connection, examId, exam.getQuestions());
+                paperCache.invalidateExam(examId);
+                return added;
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -53,142 +123,265 @@ public class ExamController {
         return false;
     }
 
-    private boolean addQuestionsToExam(int examId, List<Question> questions) {
+    private boolean addQuestionsToExam(Connection connection, int examId, List<Question> questions) {
+        int[] questionIds = new int[questions.size()];
+        for (int i = 0; i < questionIds.length; i++) {
+            questionIds[i] = questions.get(i).getId();
+        }
+        return addQuestionsToExam(connection, examId, questionIds);
+    }
+
+    private boolean addQuestionsToExam(Connection connection, int examId, int[] questionIds) {
+        List<Integer> ids = new ArrayList<>(questionIds.length);
+        for (int id : questionIds) {
+            ids.add(id);
+        }
         try {
-            String query = "INSERT INTO exam_questions (exam_id, question_id, question_number) VALUES (?, ?, ?)";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            
-            for (int i = 0; i < questions.size(); i++) {
-                pstmt.setInt(1, examId);
-                pstmt.setInt(2, questions.get(i).getId());
-                pstmt.setInt(3, i + 1);
-                pstmt.addBatch();
-            }
-            
-            int[] results = pstmt.executeBatch();
-            return results.length == questions.size();
+            int inserted = SqlExecutor.insertRows(connection, SqlStatement.INSERT_EXAM_QUESTION, ids,
+                (pstmt, questionId, i, offset) -> {
+                    pstmt.setInt(offset + 1, examId);
+                    pstmt.setInt(offset + 2, questionId);
+                    pstmt.setInt(offset + 3, i + 1);
+                });
+            // The exam is set with the questions as they read now; later edits
+            // create new versions it adopts only while it has not started
+            SqlExecutor.update(connection, SqlStatement.PIN_EXAM_QUESTIONS, pstmt -> pstmt.setInt(1, examId));
+            return inserted == questionIds.length;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Creates a different exam for every student, each drawn from the bank
+     * to the blueprint by ExamGenerator, with the template's title,
+     * subject, start time and duration. All of them are stored in one
+     * transaction, so a cohort is created whole or not at all.
+     * @param seed Draws the same papers again for the same bank and students
+     * @return Exam id per student id, or null if the exams could not be stored
+     * @throws IllegalArgumentException if the bank cannot satisfy the blueprint
+     *         with a different paper for every student
+     */
+    public Map<Integer, Integer> createExamVariants(Exam template, ExamBlueprint blueprint, List<Integer> studentIds,
+                                                    long seed) {
+        if (new HashSet<>(studentIds).size() != studentIds.size()) {
+            throw new IllegalArgumentException("Each student can only be given one exam");
+        }
+        List<ExamGenerator.Paper> papers = ExamGenerator.getInstance().generate(blueprint, studentIds.size(), seed);
+        if (papers == null) {
+            return null;
+        }
+        Map<Integer, Integer> examIds = new LinkedHashMap<>();
+        try (Connection connection = database.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                Timestamp startTime = new Timestamp(template.getStartTime().getTime());
+                for (int s = 0; s < papers.size(); s++) {
+                    ExamGenerator.Paper paper = papers.get(s);
+                    int examId = SqlExecutor.insert(connection, SqlStatement.INSERT_EXAM, pstmt -> {
+                        pstmt.setString(1, template.getTitle());
+                        pstmt.setString(2, template.getSubject());
+                        pstmt.setTimestamp(3, startTime);
+                        pstmt.setInt(4, template.getDuration());
+                        pstmt.setInt(5, paper.getTotalMarks());
+                        pstmt.setInt(6, 1); // Replace with actual teacher ID
+                    });
+                    if (examId <= 0 || !addQuestionsToExam(connection, examId, paper.getQuestionIds())) {
+                        connection.rollback();
+                        return null;
+                    }
+                    examIds.put(studentIds.get(s), examId);
+                }
+                SqlExecutor.insertRows(connection, SqlStatement.INSERT_EXAM_VARIANT,
+                    new ArrayList<>(examIds.entrySet()), (pstmt, variant, i, offset) -> {
+                        pstmt.setInt(offset + 1, variant.getValue());
+                        pstmt.setInt(offset + 2, variant.getKey());
+                    });
+                connection.commit();
+                return examIds;
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return Upcoming active exams, leaving out variants drawn for other
+     *         students
+     */
     public List<Exam> getAvailableExams(int studentId) {
-        List<Exam> exams = new ArrayList<>();
         try {
-            String query = "SELECT * FROM exams WHERE start_time > NOW() AND is_active = true";
-            Statement stmt = connection.createStatement();
-            ResultSet rs = stmt.executeQuery(query);
-            
-            while (rs.next()) {
-                Exam exam = new Exam(
-                    rs.getInt("id"),
-                    rs.getString("title"),
-                    rs.getString("subject"),
-                    new Date(rs.getTimestamp("start_time").getTime()),
-                    rs.getInt("duration")
-                );
-                exams.add(exam);
-            }
+            return database.query(SqlStatement.AVAILABLE_EXAMS, pstmt -> pstmt.setInt(1, studentId), rs -> new Exam(
+                rs.getInt("id"),
+                rs.getString("title"),
+                rs.getString("subject"),
+                new Date(rs.getTimestamp("start_time").getTime()),
+                rs.getInt("duration")
+            ));
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return exams;
+        return new ArrayList<>();
     }
 
+    /**
+     * @return The exam's questions in paper order. The list is shared
+     *         with other callers and read-only.
+     */
     public List<Question> getExamQuestions(int examId) {
-        List<Question> questions = new ArrayList<>();
         try {
-            String query = "SELECT q.* FROM questions q " +
-                          "JOIN exam_questions eq ON q.id = eq.question_id " +
-                          "WHERE eq.exam_id = ? ORDER BY eq.question_number";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            pstmt.setInt(1, examId);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                List<String> options = new ArrayList<>();
-                options.add(rs.getString("option1"));
-                options.add(rs.getString("option2"));
-                options.add(rs.getString("option3"));
-                options.add(rs.getString("option4"));
-
-                Question question = new Question(
-                    rs.getInt("id"),
-                    rs.getString("question_text"),
-                    options,
-                    rs.getInt("correct_option"),
-                    rs.getInt("marks"),
-                    rs.getString("subject"),
-                    rs.getString("difficulty")
-                );
-                questions.add(question);
-            }
+            return getExamPaper(examId).getQuestions();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * @return The exam's questions as served to one student: shuffled, with
+     *         options reordered and correct options renumbered to match.
+     *         Answers to this list are what submitExam expects.
+     */
+    public List<Question> getExamQuestions(int studentId, int examId) {
+        try {
+            return getShuffle(studentId, getExamPaper(examId)).getQuestions();
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return questions;
+        return new ArrayList<>();
+    }
+
+    /**
+     * @return The student's ordering of the paper, recomputed from its seed
+     *         on every call; the paper order when exam.shuffle.enabled is
+     *         false
+     */
+    PaperShuffle getShuffle(int studentId, ExamPaper paper) {
+        return shuffleEnabled ? PaperShuffle.forStudent(paper, studentId, shuffleSecret)
+            : PaperShuffle.identity(paper);
+    }
+
+    ExamPaper getExamPaper(int examId) throws SQLException {
+        return paperCache.get(examId, this::loadExamQuestions);
+    }
+
+    private List<Question> loadExamQuestions(int examId) throws SQLException {
+        try (Connection connection = database.getConnection()) {
+            return SqlExecutor.query(connection, SqlStatement.EXAM_QUESTIONS,
+                pstmt -> pstmt.setInt(1, examId),
+                QuestionBankController::mapQuestion);
+        }
     }
 
     public boolean submitExam(int studentId, int examId, List<Integer> answers) {
+        int[] selected = new int[answers.size()];
+        for (int i = 0; i < selected.length; i++) {
+            Integer answer = answers.get(i);
+            selected[i] = answer != null ? answer : AnswerKey.UNANSWERED;
+        }
+        return submitExam(studentId, examId, selected);
+    }
+
+    /**
+     * Accepts a submission once it is durable in the submission journal;
+     * the write-behind queue grades and stores it shortly after. Without
+     * the queue the submission is graded and stored in one transaction.
+     * @param answers Selected option per question in the order served by
+     *                getExamQuestions(studentId, examId),
+     *                AnswerKey.UNANSWERED for skipped questions
+     */
+    public boolean submitExam(int studentId, int examId, int[] answers) {
+        return submit(studentId, examId, answers, true);
+    }
+
+    /**
+     * submitExam for answers already mapped back to paper order.
+     */
+    boolean submitInPaperOrder(int studentId, int examId, int[] answers) {
+        return submit(studentId, examId, answers, false);
+    }
+
+    private boolean submit(int studentId, int examId, int[] submitted, boolean served) {
+        // Served from the paper cache, so submissions do not repeat the join
+        ExamPaper paper;
         try {
-            // Start transaction
-            connection.setAutoCommit(false);
-            
-            // Insert answers
-            String answerQuery = "INSERT INTO student_exam_answers (student_id, exam_id, question_id, selected_option, marks_obtained) " +
-                                "VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement answerStmt = connection.prepareStatement(answerQuery);
-            
-            List<Question> questions = getExamQuestions(examId);
-            int totalMarksObtained = 0;
-            
-            for (int i = 0; i < questions.size(); i++) {
-                Question question = questions.get(i);
-                int selectedOption = answers.get(i);
-                int marksObtained = (selectedOption == question.getCorrectOption()) ? question.getMarks() : 0;
-                totalMarksObtained += marksObtained;
-                
-                answerStmt.setInt(1, studentId);
-                answerStmt.setInt(2, examId);
-                answerStmt.setInt(3, question.getId());
-                answerStmt.setInt(4, selectedOption);
-                answerStmt.setInt(5, marksObtained);
-                answerStmt.addBatch();
-            }
-            answerStmt.executeBatch();
-            
-            // Insert result
-            String resultQuery = "INSERT INTO exam_results (student_id, exam_id, total_marks_obtained, percentage) " +
-                               "VALUES (?, ?, ?, ?)";
-            PreparedStatement resultStmt = connection.prepareStatement(resultQuery);
-            resultStmt.setInt(1, studentId);
-            resultStmt.setInt(2, examId);
-            resultStmt.setInt(3, totalMarksObtained);
-            
-            int totalMarks = questions.stream().mapToInt(Question::getMarks).sum();
-            double percentage = (totalMarksObtained * 100.0) / totalMarks;
-            resultStmt.setDouble(4, percentage);
-            
-            resultStmt.executeUpdate();
-            
-            // Commit transaction
-            connection.commit();
-            return true;
+            paper = getExamPaper(examId);
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ex) {
-                ex.printStackTrace();
-            }
             e.printStackTrace();
             return false;
-        } finally {
+        }
+        AnswerKey answerKey = paper.getAnswerKey();
+        if (submitted.length != answerKey.getQuestionCount()) {
+            System.err.println("Rejected submission for exam " + examId + ": expected "
+                + answerKey.getQuestionCount() + " answers, got " + submitted.length);
+            return false;
+        }
+        // Journaled and graded in paper order
+        int[] answers = served ? getShuffle(studentId, paper).toPaperOrder(submitted) : submitted;
+        if (submissionQueue != null) {
             try {
-                connection.setAutoCommit(true);
+                submissionQueue.submit(studentId, examId, answers);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Could not journal submission, storing it directly: " + e.getMessage());
+            }
+        }
+        int[] marksObtained = new int[answers.length];
+        int totalMarksObtained = answerKey.grade(answers, marksObtained);
+
+        // The transaction runs on its own pooled connection so autocommit
+        // changes never leak into queries issued by other threads
+        try (Connection connection = database.getConnection()) {
+            try {
+                // Start transaction
+                connection.setAutoCommit(false);
+
+                // Insert answers
+                SqlExecutor.insertRows(connection, SqlStatement.INSERT_ANSWER, paper.getQuestions(),
+                    (pstmt, question, i, offset) -> {
+                        pstmt.setInt(offset + 1, studentId);
+                        pstmt.setInt(offset + 2, examId);
+                        pstmt.setInt(offset + 3, question.getId());
+                        pstmt.setInt(offset + 4, answers[i]);
+                        pstmt.setInt(offset + 5, marksObtained[i]);
+                    });
+
+                // Insert result
+                double percentage = (totalMarksObtained * 100.0) / answerKey.getTotalMarks();
+                SqlExecutor.update(connection, SqlStatement.INSERT_RESULT, pstmt -> {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, examId);
+                    pstmt.setInt(3, totalMarksObtained);
+                    pstmt.setDouble(4, percentage);
+                });
+
+                // Commit transaction
+                connection.commit();
+                return true;
             } catch (SQLException e) {
-                e.printStackTrace();
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
         }
     }
 }
@@ -0,0 +1,415 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.ExamBlueprint;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Draws exam papers from the question bank to an ExamBlueprint, so every
+ * student in a cohort can sit a different paper.
+ *
+ * The ids and marks of each (subject, difficulty) pool are read in one
+ * scan and kept in primitive arrays sorted by marks; drawing a paper
+ * never queries the database. Each requirement is sampled without
+ * replacement with Floyd's algorithm, which costs one random number per
+ * question whatever the size of the pool. When the blueprint fixes the
+ * total marks, drawn questions are then swapped for undrawn ones from the
+ * same pool that move the total towards the target. Papers that repeat
+ * an earlier one in the batch are drawn again.
+ *
+ * The pools are a snapshot. QuestionBankController drops it whenever the
+ * bank changes and the next call reads the table again.
+ */
+public class ExamGenerator {
+    private static ExamGenerator instance;
+
+    // Swaps tried per question before the paper is drawn again
+    private static final int SWAPS_PER_QUESTION = 32;
+    // Draws tried per paper before giving up on a unique one
+    private static final int MAX_DRAWS = 100;
+
+    private final DatabaseConnection database;
+    private final Object buildLock = new Object();
+    private volatile Map<String, Pool> pools;
+    // Bumped by invalidate, so a read that overlaps a change is not kept
+    private volatile int bankVersion;
+
+    private final LongAdder papers = new LongAdder();
+    private final LongAdder redraws = new LongAdder();
+    private final LongAdder generateNanos = new LongAdder();
+    private volatile long lastBuildMillis;
+
+    /** Questions of one subject and difficulty, in ascending order of marks. */
+    private static final class Pool {
+        int[] ids = new int[16];
+        int[] marks = new int[16];
+        int size;
+
+        void add(int id, int mark) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                marks = Arrays.copyOf(marks, size * 2);
+            }
+            ids[size] = id;
+            marks[size++] = mark;
+        }
+
+        void sortByMarks() {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) marks[i] << 32) | (ids[i] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            ids = new int[size];
+            marks = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = (int) packed[i];
+                marks[i] = (int) (packed[i] >> 32);
+            }
+        }
+    }
+
+    /**
+     * One requirement of a blueprint, with excluded questions removed from
+     * its pool. Not thread-safe: chosen marks the questions in the paper
+     * being drawn.
+     */
+    private static final class Draw {
+        final int count;
+        final int[] ids;
+        final int[] marks;
+        // Indexes [0, lowerEnd[i]) hold lower marks than i, [upperStart[i], size) higher ones
+        final int[] lowerEnd;
+        final int[] upperStart;
+        final int[] chosen;
+
+        Draw(int count, Pool pool, Set<Integer> excluded) {
+            this.count = count;
+            int size = 0;
+            int[] ids = new int[pool == null ? 0 : pool.size];
+            int[] marks = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                if (!excluded.contains(pool.ids[i])) {
+                    ids[size] = pool.ids[i];
+                    marks[size++] = pool.marks[i];
+                }
+            }
+            this.ids = Arrays.copyOf(ids, size);
+            this.marks = Arrays.copyOf(marks, size);
+            lowerEnd = new int[size];
+            upperStart = new int[size];
+            for (int i = 0; i < size; i++) {
+                lowerEnd[i] = i > 0 && marks[i - 1] == marks[i] ? lowerEnd[i - 1] : i;
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                upperStart[i] = i < size - 1 && marks[i + 1] == marks[i] ? upperStart[i + 1] : i + 1;
+            }
+            chosen = new int[size];
+        }
+
+        int minMarks() {
+            int sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += marks[i];
+            }
+            return sum;
+        }
+
+        int maxMarks() {
+            int sum = 0;
+            for (int i = ids.length - count; i < ids.length; i++) {
+                sum += marks[i];
+            }
+            return sum;
+        }
+
+        /**
+         * @return Natural log of the number of ways to choose count questions
+         */
+        double logCombinations() {
+            double log = 0;
+            for (int i = 0; i < count; i++) {
+                log += Math.log((double) (ids.length - i) / (count - i));
+            }
+            return log;
+        }
+    }
+
+    /** A generated paper. */
+    public static final class Paper {
+        private final int[] questionIds;
+        private final int totalMarks;
+
+        Paper(int[] questionIds, int totalMarks) {
+            this.questionIds = questionIds;
+            this.totalMarks = totalMarks;
+        }
+
+        /**
+         * @return The question ids in paper order, grouped by subject and
+         *         difficulty in the order the blueprint first names them.
+         *         The array is not copied.
+         */
+        public int[] getQuestionIds() { return questionIds; }
+
+        public int getTotalMarks() { return totalMarks; }
+    }
+
+    ExamGenerator() {
+        database = DatabaseConnection.getInstance();
+    }
+
+    public static synchronized ExamGenerator getInstance() {
+        if (instance == null) {
+            instance = new ExamGenerator();
+        }
+        return instance;
+    }
+
+    /**
+     * Draws count different papers that each satisfy the blueprint. The
+     * same blueprint, bank and seed always give the same papers.
+     * @return The papers, or null if the question bank cannot be read
+     * @throws IllegalArgumentException if the bank cannot satisfy the
+     *         blueprint, or holds fewer than count different papers
+     * @throws IllegalStateException if no paper with the required marks,
+     *         or not enough different ones, turn up after repeated draws
+     */
+    public List<Paper> generate(ExamBlueprint blueprint, int count, long seed) {
+        Map<String, Pool> current = pools();
+        if (current == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        // Requirements on the same pool are drawn together so no question appears twice
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (ExamBlueprint.Requirement requirement : blueprint.getRequirements()) {
+            if (requirement.getCount() <= 0) {
+                throw new IllegalArgumentException("Requirement " + requirement + " must ask for at least one question");
+            }
+            counts.merge(key(requirement.getSubject(), requirement.getDifficulty()), requirement.getCount(),
+                Integer::sum);
+        }
+        Draw[] draws = new Draw[counts.size()];
+        int questions = 0;
+        int minMarks = 0;
+        int maxMarks = 0;
+        double logPapers = 0;
+        int r = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Draw draw = new Draw(entry.getValue(), current.get(entry.getKey()), blueprint.getExcludedQuestionIds());
+            if (draw.ids.length < draw.count) {
+                throw new IllegalArgumentException(entry.getValue() + " x " + entry.getKey().replace('\u0000', '/')
+                    + " needs more than the " + draw.ids.length + " questions available");
+            }
+            draws[r++] = draw;
+            questions += draw.count;
+            minMarks += draw.minMarks();
+            maxMarks += draw.maxMarks();
+            logPapers += draw.logCombinations();
+        }
+        if (questions == 0) {
+            throw new IllegalArgumentException("The blueprint asks for no questions");
+        }
+        int target = blueprint.getTotalMarks();
+        if (target > 0 && (target < minMarks || target > maxMarks)) {
+            throw new IllegalArgumentException("Papers to this blueprint carry between " + minMarks + " and "
+                + maxMarks + " marks, not " + target);
+        }
+        if (logPapers < Math.log(count)) {
+            throw new IllegalArgumentException(String.format("The blueprint allows about %.0f different papers, "
+                + "fewer than %d", Math.exp(logPapers), count));
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] slotDraw = new int[questions];
+        int[] slotIndex = new int[questions];
+        Set<Long> seen = new HashSet<>(count * 2);
+        List<Paper> result = new ArrayList<>(count);
+        int stamp = 0;
+        for (int p = 0; p < count; p++) {
+            int[] ids = null;
+            int marks = 0;
+            for (int attempt = 0; attempt < MAX_DRAWS && ids == null; attempt++) {
+                if (attempt > 0) {
+                    redraws.increment();
+                }
+                stamp++;
+                marks = draw(draws, random, stamp, slotDraw, slotIndex);
+                if (target > 0) {
+                    marks = adjustMarks(draws, random, stamp, slotDraw, slotIndex, marks, target);
+                    if (marks != target) {
+                        continue;
+                    }
+                }
+                int[] candidate = new int[questions];
+                for (int s = 0; s < questions; s++) {
+                    candidate[s] = draws[slotDraw[s]].ids[slotIndex[s]];
+                }
+                if (seen.add(signature(candidate))) {
+                    ids = candidate;
+                }
+            }
+            if (ids == null) {
+                throw new IllegalStateException("Found only " + p + " different papers to " + blueprint
+                    + " after " + MAX_DRAWS + " draws");
+            }
+            result.add(new Paper(ids, marks));
+        }
+        papers.add(count);
+        generateNanos.add(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Draws every requirement afresh with Floyd's algorithm, marking the
+     * chosen indexes with stamp.
+     * @return The paper's total marks
+     */
+    private static int draw(Draw[] draws, SplittableRandom random, int stamp, int[] slotDraw, int[] slotIndex) {
+        int slot = 0;
+        int marks = 0;
+        for (int r = 0; r < draws.length; r++) {
+            Draw draw = draws[r];
+            int size = draw.ids.length;
+            for (int j = size - draw.count; j < size; j++) {
+                int index = random.nextInt(j + 1);
+                if (draw.chosen[index] == stamp) {
+                    index = j;
+                }
+                draw.chosen[index] = stamp;
+                slotDraw[slot] = r;
+                slotIndex[slot++] = index;
+                marks += draw.marks[index];
+            }
+        }
+        return marks;
+    }
+
+    /**
+     * Swaps random questions for undrawn ones of the same pool, keeping
+     * each swap that brings the total strictly closer to target.
+     * @return The total marks after the swaps
+     */
+    private static int adjustMarks(Draw[] draws, SplittableRandom random, int stamp, int[] slotDraw,
+                                   int[] slotIndex, int marks, int target) {
+        int slots = slotDraw.length;
+        for (int attempt = slots * SWAPS_PER_QUESTION; attempt > 0 && marks != target; attempt--) {
+            int slot = random.nextInt(slots);
+            Draw draw = draws[slotDraw[slot]];
+            int index = slotIndex[slot];
+            // Pools are sorted by marks, so candidates that move the right way form one range
+            int from = marks > target ? 0 : draw.upperStart[index];
+            int to = marks > target ? draw.lowerEnd[index] : draw.ids.length;
+            if (from >= to) {
+                continue;
+            }
+            int candidate = from + random.nextInt(to - from);
+            int after = marks - draw.marks[index] + draw.marks[candidate];
+            if (draw.chosen[candidate] == stamp || Math.abs(after - target) >= Math.abs(marks - target)) {
+                continue;
+            }
+            draw.chosen[index] = 0;
+            draw.chosen[candidate] = stamp;
+            slotIndex[slot] = candidate;
+            marks = after;
+        }
+        return marks;
+    }
+
+    /**
+     * @return A hash of the paper's questions regardless of their order
+     */
+    private static long signature(int[] ids) {
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        long hash = 0x9E3779B97F4A7C15L;
+        for (int id : sorted) {
+            hash = (hash ^ id) * 0xBF58476D1CE4E5B9L;
+            hash ^= hash >>> 31;
+        }
+        return hash;
+    }
+
+    private static String key(String subject, String difficulty) {
+        return subject + '\u0000' + difficulty;
+    }
+
+    /**
+     * @return The pools, read from the database if the bank changed since
+     *         the last read, or null if it cannot be read
+     */
+    private Map<String, Pool> pools() {
+        Map<String, Pool> current = pools;
+        if (current != null) {
+            return current;
+        }
+        synchronized (buildLock) {
+            if (pools == null) {
+                int version = bankVersion;
+                long start = System.currentTimeMillis();
+                Map<String, Pool> built = new HashMap<>();
+                try (Connection connection = database.getConnection()) {
+                    SqlExecutor.forEach(connection, SqlStatement.QUESTION_POOLS, database.getFetchSize(),
+                        SqlExecutor.NO_PARAMETERS,
+                        rs -> built.computeIfAbsent(key(rs.getString("subject"), rs.getString("difficulty")),
+                            k -> new Pool()).add(rs.getInt("id"), rs.getInt("marks")));
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+                for (Pool pool : built.values()) {
+                    pool.sortByMarks();
+                }
+                lastBuildMillis = System.currentTimeMillis() - start;
+                if (version != bankVersion) {
+                    return built;
+                }
+                pools = built;
+            }
+            return pools;
+        }
+    }
+
+    /**
+     * Drops the pools after a question is added, edited or deleted; the
+     * next generate call reads them again.
+     */
+    public void invalidate() {
+        bankVersion++;
+        pools = null;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Pool> current = pools;
+        stats.put("built", current != null);
+        if (current != null) {
+            int questions = 0;
+            for (Pool pool : current.values()) {
+                questions += pool.size;
+            }
+            stats.put("pools", current.size());
+            stats.put("questions", questions);
+        }
+        long count = papers.sum();
+        stats.put("papers", count);
+        stats.put("redraws", redraws.sum());
+        stats.put("averagePaperMicros", count == 0 ? 0.0 : generateNanos.sum() / 1000.0 / count);
+        stats.put("lastBuildMillis", lastBuildMillis);
+        return stats;
+    }
+}
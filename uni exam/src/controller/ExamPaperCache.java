@@ -0,0 +1,179 @@
+package controller;
+
+import model.ExamPaper;
+import model.Question;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of immutable exam papers, keyed by exam id.
+ *
+ * A paper shows the question versions its exam pins, and a version never
+ * changes once written, so editing a question leaves cached papers valid;
+ * only exams that adopt the new version are dropped (see
+ * QuestionBankController.updateQuestion and adoptLatestVersion).
+ *
+ * Every paper records the content version it was loaded at. Any such
+ * invalidation bumps the version and drops the affected papers; a
+ * load that raced with such a change is handed to its caller but not
+ * cached, so a stale paper is never installed after its invalidation.
+ * Concurrent misses for the same exam wait for a single load instead of
+ * all running the join.
+ */
+public class ExamPaperCache {
+    private static ExamPaperCache instance;
+
+    /** Loads the questions of an exam in paper order. */
+    @FunctionalInterface
+    public interface Loader {
+        List<Question> load(int examId) throws SQLException;
+    }
+
+    private final int maxPapers;
+    private final Map<Integer, Entry> papers = new ConcurrentHashMap<>();
+    private final Map<Integer, Object> loadLocks = new ConcurrentHashMap<>();
+    private final AtomicLong contentVersion = new AtomicLong();
+    private final AtomicLong accessClock = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private static final class Entry {
+        final ExamPaper paper;
+        volatile long lastAccess;
+
+        Entry(ExamPaper paper, long lastAccess) {
+            this.paper = paper;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    ExamPaperCache(int maxPapers) {
+        this.maxPapers = maxPapers;
+    }
+
+    public static synchronized ExamPaperCache getInstance() {
+        if (instance == null) {
+            instance = new ExamPaperCache(Integer.getInteger("cache.examPapers.max", 256));
+        }
+        return instance;
+    }
+
+    /**
+     * @return The cached paper, loading it on first use
+     */
+    public ExamPaper get(int examId, Loader loader) throws SQLException {
+        Entry entry = papers.get(examId);
+        if (entry != null) {
+            entry.lastAccess = accessClock.incrementAndGet();
+            hits.increment();
+            return entry.paper;
+        }
+        synchronized (loadLocks.computeIfAbsent(examId, id -> new Object())) {
+            entry = papers.get(examId);
+            if (entry != null) {
+                entry.lastAccess = accessClock.incrementAndGet();
+                hits.increment();
+                return entry.paper;
+            }
+            misses.increment();
+            long version = contentVersion.get();
+            ExamPaper paper = new ExamPaper(examId, version, loader.load(examId));
+            if (contentVersion.get() == version && !paper.getQuestions().isEmpty()) {
+                papers.put(examId, new Entry(paper, accessClock.incrementAndGet()));
+                if (papers.size() > maxPapers) {
+                    evictLeastRecentlyUsed();
+                }
+                // A change may have landed between the check and the put
+                if (contentVersion.get() != version) {
+                    papers.remove(examId);
+                }
+            }
+            return paper;
+        }
+    }
+
+    /**
+     * @return The cached paper, or null; never loads and is not counted
+     *         as a hit or miss
+     */
+    public ExamPaper peek(int examId) {
+        Entry entry = papers.get(examId);
+        return entry != null ? entry.paper : null;
+    }
+
+    /**
+     * @return Number of papers held before the least recently used is evicted
+     */
+    public int getMaxPapers() {
+        return maxPapers;
+    }
+
+    /**
+     * Drops every paper containing the question. Call after the question
+     * is deleted; edits only need invalidateExam for the adopting exams.
+     */
+    public void invalidateQuestion(int questionId) {
+        contentVersion.incrementAndGet();
+        papers.entrySet().removeIf(e -> {
+            boolean stale = e.getValue().paper.containsQuestion(questionId);
+            if (stale) {
+                invalidations.increment();
+            }
+            return stale;
+        });
+    }
+
+    /**
+     * Drops the paper of an exam whose question list was edited or that
+     * adopted a new question version.
+     */
+    public void invalidateExam(int examId) {
+        contentVersion.incrementAndGet();
+        if (papers.remove(examId) != null) {
+            invalidations.increment();
+        }
+    }
+
+    public void clear() {
+        contentVersion.incrementAndGet();
+        papers.clear();
+    }
+
+    private void evictLeastRecentlyUsed() {
+        while (papers.size() > maxPapers) {
+            Map.Entry<Integer, Entry> oldest = null;
+            for (Map.Entry<Integer, Entry> e : papers.entrySet()) {
+                if (oldest == null || e.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = e;
+                }
+            }
+            if (oldest == null || !papers.remove(oldest.getKey(), oldest.getValue())) {
+                return;
+            }
+            loadLocks.remove(oldest.getKey());
+            evictions.increment();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        stats.put("papers", papers.size());
+        stats.put("maxPapers", maxPapers);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("contentVersion", contentVersion.get());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount) * 100);
+        return stats;
+    }
+}
@@ -0,0 +1,155 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlStatement;
+import model.ExamPaper;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the papers and answer keys of exams about to start, so the burst
+ * of students opening an exam at its start time is served from memory.
+ *
+ * Every scan looks for active exams starting within the lead time and
+ * loads any whose paper is not cached, including papers dropped because an
+ * exam adopted a new question version after an earlier scan. At most as
+ * many exams as ExamPaperCache holds are warmed, soonest first: warming
+ * more, e.g. a cohort of per-student variants starting together, would
+ * only evict papers warmed moments earlier and reload them on every scan.
+ * One summary line is logged per scan that loads or skips papers.
+ *
+ * Settings (system properties): exam.prewarm.enabled (default true),
+ * exam.prewarm.leadMinutes (15), exam.prewarm.scanSeconds (60).
+ */
+public class ExamPrewarmScheduler {
+    private final ExamController examController;
+    private final DatabaseConnection database;
+    private final ExamPaperCache paperCache;
+    private final long leadMillis = TimeUnit.MINUTES.toMillis(Long.getLong("exam.prewarm.leadMinutes", 15));
+    private final long scanSeconds = Long.getLong("exam.prewarm.scanSeconds", 60);
+    private ScheduledExecutorService scheduler;
+    private volatile List<Map<String, Object>> readiness = Collections.emptyList();
+
+    private static final class UpcomingExam {
+        final int id;
+        final String title;
+        final Timestamp startTime;
+
+        UpcomingExam(int id, String title, Timestamp startTime) {
+            this.id = id;
+            this.title = title;
+            this.startTime = startTime;
+        }
+    }
+
+    ExamPrewarmScheduler(ExamController examController, DatabaseConnection database, ExamPaperCache paperCache) {
+        this.examController = examController;
+        this.database = database;
+        this.paperCache = paperCache;
+    }
+
+    synchronized void start() {
+        if (scheduler != null || !Boolean.parseBoolean(System.getProperty("exam.prewarm.enabled", "true"))) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "exam-prewarm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scan, 0, scanSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Warms every exam starting within the lead time.
+     * @return Number of papers loaded by this scan
+     */
+    public int scan() {
+        long now = System.currentTimeMillis();
+        List<UpcomingExam> upcoming;
+        try {
+            upcoming = database.query(SqlStatement.UPCOMING_EXAM_STARTS,
+                pstmt -> pstmt.setTimestamp(1, new Timestamp(now + leadMillis)),
+                rs -> new UpcomingExam(rs.getInt("id"), rs.getString("title"), rs.getTimestamp("start_time")));
+        } catch (SQLException e) {
+            System.err.println("Exam pre-warm scan failed: " + e.getMessage());
+            return 0;
+        }
+
+        int capacity = paperCache.getMaxPapers();
+        int skipped = Math.max(0, upcoming.size() - capacity);
+        if (skipped > 0) {
+            upcoming = upcoming.subList(0, capacity);
+        }
+        int warmed = 0;
+        int alreadyCached = 0;
+        double totalLoadMillis = 0;
+        List<Map<String, Object>> report = new ArrayList<>();
+        for (UpcomingExam exam : upcoming) {
+            Map<String, Object> status = new HashMap<>();
+            status.put("examId", exam.id);
+            status.put("title", exam.title);
+            status.put("startTime", exam.startTime);
+            status.put("secondsToStart", (exam.startTime.getTime() - now) / 1000);
+            ExamPaper paper = paperCache.peek(exam.id);
+            boolean cached = paper != null;
+            if (cached) {
+                alreadyCached++;
+            }
+            try {
+                long start = System.nanoTime();
+                if (!cached) {
+                    paper = examController.getExamPaper(exam.id);
+                }
+                status.put("questions", paper.getQuestionCount());
+                status.put("totalMarks", paper.getTotalMarks());
+                status.put("ready", paper.getQuestionCount() > 0);
+                if (!cached) {
+                    warmed++;
+                    double loadMillis = (System.nanoTime() - start) / 1_000_000.0;
+                    status.put("loadMillis", loadMillis);
+                    totalLoadMillis += loadMillis;
+                }
+                if (paper.getQuestionCount() == 0) {
+                    System.err.println("Exam " + exam.id + " '" + exam.title + "' starts soon but has no questions");
+                }
+            } catch (SQLException | RuntimeException e) {
+                status.put("ready", false);
+                status.put("error", e.getMessage());
+                System.err.println("Could not pre-warm exam " + exam.id + ": " + e.getMessage());
+            }
+            report.add(status);
+        }
+        readiness = Collections.unmodifiableList(report);
+        if (warmed > 0 || skipped > 0) {
+            System.out.println(String.format("Pre-warmed %d exam papers in %.1f ms, %d already cached, "
+                + "%d starting within %d min left cold (cache.examPapers.max=%d)", warmed, totalLoadMillis,
+                alreadyCached, skipped, leadMillis / 60_000, capacity));
+        }
+        return warmed;
+    }
+
+    /**
+     * @return One entry per exam warmed or found cached by the last scan:
+     *         question count, total marks, seconds to start and whether it
+     *         is ready
+     */
+    public List<Map<String, Object>> getReadinessReport() {
+        return readiness;
+    }
+}
@@ -1,21 +1,42 @@
 package controller;
 
 import model.Question;
+import model.QuestionPage;
 import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class QuestionBankController {
+    // Placeholders in SqlStatement.QUESTIONS_BY_IDS
+    static final int IDS_PER_QUERY = 50;
+
     private static QuestionBankController instance;
-    private Connection connection;
+    private final DatabaseConnection database;
+    private final ExamPaperCache paperCache;
+    private final QuestionSearchIndex searchIndex;
+    private final QuestionSimilarityIndex similarityIndex;
+    private final ExamGenerator examGenerator;
+    private final QuestionStore store;
+    // Serve whole-subject lists and search results from QuestionStore
+    private final boolean storeEnabled = Boolean.parseBoolean(System.getProperty("questions.store.enabled", "true"));
+    private final int maxSearchResults = Integer.getInteger("search.questions.maxResults", 100);
+    private final int maxPageSize = Integer.getInteger("questions.page.maxSize", 200);
 
     private QuestionBankController() {
-        try {
-            connection = DatabaseConnection.getInstance().getConnection();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        database = DatabaseConnection.getInstance();
+        paperCache = ExamPaperCache.getInstance();
+        searchIndex = QuestionSearchIndex.getInstance();
+        similarityIndex = QuestionSimilarityIndex.getInstance();
+        examGenerator = ExamGenerator.getInstance();
+        store = QuestionStore.getInstance();
+        // Picks up re-grade jobs interrupted by a restart
+        RegradeEngine.getInstance();
     }
 
     public static QuestionBankController getInstance() {
@@ -25,143 +46,439 @@ public class QuestionBankController {
         return instance;
     }
 
+    /**
+     * Saves the question and sets its generated id. Questions that it
+     * nearly duplicates are flagged for review, see getNearDuplicates.
+     */
     public boolean addQuestion(Question question) {
-        try {
-            String query = "INSERT INTO questions (question_text, option1, option2, option3, option4, " +
-                          "correct_option, marks, subject, difficulty, created_by) " +
-                          "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            
-            pstmt.setString(1, question.getQuestionText());
-            List<String> options = question.getOptions();
-            for (int i = 0; i < 4; i++) {
-                pstmt.setString(i + 2, options.get(i));
+        try (Connection connection = database.getConnection()) {
+            int id = SqlExecutor.insert(connection, SqlStatement.INSERT_QUESTION, pstmt -> {
+                pstmt.setString(1, question.getQuestionText());
+                List<String> options = question.getOptions();
+                for (int i = 0; i < 4; i++) {
+                    pstmt.setString(i + 2, options.get(i));
+                }
+                pstmt.setInt(6, question.getCorrectOption());
+                pstmt.setInt(7, question.getMarks());
+                pstmt.setString(8, question.getSubject());
+                pstmt.setString(9, question.getDifficulty());
+                pstmt.setInt(10, 1); // Replace with actual teacher ID
+            });
+            if (id < 0) {
+                return false;
             }
-            pstmt.setInt(6, question.getCorrectOption());
-            pstmt.setInt(7, question.getMarks());
-            pstmt.setString(8, question.getSubject());
-            pstmt.setString(9, question.getDifficulty());
-            pstmt.setInt(10, 1); // Replace with actual teacher ID
-
-            return pstmt.executeUpdate() > 0;
+            question.setId(id);
+            searchIndex.questionChanged(question);
+            store.questionChanged(question);
+            examGenerator.invalidate();
+            flagNearDuplicates(connection, question);
+            return true;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Saves the question as a new version, keeping the one it replaces.
+     * Exams that have already started stay set with the version they were
+     * given, so their cached papers and stored marks are untouched; exams
+     * that have not started adopt the new version. See adoptLatestVersion
+     * to move a started exam on, e.g. to correct its answer key.
+     */
     public boolean updateQuestion(Question question) {
-        try {
-            String query = "UPDATE questions SET question_text = ?, option1 = ?, option2 = ?, " +
-                          "option3 = ?, option4 = ?, correct_option = ?, marks = ?, " +
-                          "subject = ?, difficulty = ? WHERE id = ?";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            
-            pstmt.setString(1, question.getQuestionText());
-            List<String> options = question.getOptions();
-            for (int i = 0; i < 4; i++) {
-                pstmt.setString(i + 2, options.get(i));
+        List<Integer> adoptingExams;
+        try (Connection connection = database.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                Integer version = SqlExecutor.queryForObject(connection, SqlStatement.LOCK_QUESTION_VERSION,
+                    pstmt -> pstmt.setInt(1, question.getId()), rs -> rs.getInt("current_version"));
+                if (version == null) {
+                    connection.rollback();
+                    return false;
+                }
+                int newVersion = version + 1;
+                SqlExecutor.update(connection, SqlStatement.SAVE_QUESTION_VERSION,
+                    pstmt -> pstmt.setInt(1, question.getId()));
+                SqlExecutor.update(connection, SqlStatement.UPDATE_QUESTION, pstmt -> {
+                    pstmt.setString(1, question.getQuestionText());
+                    List<String> options = question.getOptions();
+                    for (int i = 0; i < 4; i++) {
+                        pstmt.setString(i + 2, options.get(i));
+                    }
+                    pstmt.setInt(6, question.getCorrectOption());
+                    pstmt.setInt(7, question.getMarks());
+                    pstmt.setString(8, question.getSubject());
+                    pstmt.setString(9, question.getDifficulty());
+                    pstmt.setInt(10, newVersion);
+                    pstmt.setInt(11, question.getId());
+                });
+                adoptingExams = SqlExecutor.query(connection, SqlStatement.EXAMS_TO_ADOPT, pstmt -> {
+                    pstmt.setInt(1, question.getId());
+                    pstmt.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+                }, rs -> rs.getInt("exam_id"));
+                SqlExecutor.batch(connection, SqlStatement.PIN_QUESTION_VERSION, adoptingExams,
+                    (pstmt, examId, i) -> {
+                        pstmt.setInt(1, newVersion);
+                        pstmt.setInt(2, examId);
+                        pstmt.setInt(3, question.getId());
+                    });
+                connection.commit();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
-            pstmt.setInt(6, question.getCorrectOption());
-            pstmt.setInt(7, question.getMarks());
-            pstmt.setString(8, question.getSubject());
-            pstmt.setString(9, question.getDifficulty());
-            pstmt.setInt(10, question.getId());
-
-            return pstmt.executeUpdate() > 0;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
+
+        // Papers of the other exams show a version that never changes
+        for (int examId : adoptingExams) {
+            paperCache.invalidateExam(examId);
+        }
+        searchIndex.questionChanged(question);
+        similarityIndex.questionChanged(question);
+        store.questionChanged(question);
+        examGenerator.invalidate();
+        return true;
     }
 
-    public boolean deleteQuestion(int questionId) {
+    /**
+     * Moves the exams on to the question's current version, e.g. to apply
+     * a corrected answer key to an exam already taken. Only the papers of
+     * those exams leave the cache, and when the correct option or marks
+     * differ from the version they had, the stored answers are re-graded
+     * in the background (see RegradeEngine).
+     * @return Number of exams that adopted the version, or -1 if the
+     *         question does not exist or on error
+     */
+    public int adoptLatestVersion(int questionId, int... examIds) {
+        List<Integer> adopted = new ArrayList<>();
+        boolean keyChanged = false;
+        try (Connection connection = database.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                Integer version = SqlExecutor.queryForObject(connection, SqlStatement.LOCK_QUESTION_VERSION,
+                    pstmt -> pstmt.setInt(1, questionId), rs -> rs.getInt("current_version"));
+                if (version == null) {
+                    connection.rollback();
+                    return -1;
+                }
+                int[] key = SqlExecutor.queryForObject(connection, SqlStatement.QUESTION_KEY,
+                    pstmt -> pstmt.setInt(1, questionId),
+                    rs -> new int[] {rs.getInt("correct_option"), rs.getInt("marks")});
+                for (int examId : examIds) {
+                    Integer pinned = SqlExecutor.queryForObject(connection, SqlStatement.EXAM_QUESTION_VERSION,
+                        pstmt -> {
+                            pstmt.setInt(1, examId);
+                            pstmt.setInt(2, questionId);
+                        }, rs -> rs.getInt("question_version"));
+                    if (pinned == null || pinned.intValue() == version) {
+                        continue; // Not on the exam, or already current
+                    }
+                    Question previous = SqlExecutor.queryForObject(connection, SqlStatement.QUESTION_VERSION,
+                        pstmt -> {
+                            pstmt.setInt(1, questionId);
+                            pstmt.setInt(2, pinned);
+                            pstmt.setInt(3, questionId);
+                            pstmt.setInt(4, pinned);
+                        }, QuestionBankController::mapQuestion);
+                    SqlExecutor.update(connection, SqlStatement.PIN_QUESTION_VERSION, pstmt -> {
+                        pstmt.setInt(1, version);
+                        pstmt.setInt(2, examId);
+                        pstmt.setInt(3, questionId);
+                    });
+                    adopted.add(examId);
+                    if (previous == null || previous.getCorrectOption() != key[0] || previous.getMarks() != key[1]) {
+                        keyChanged = true;
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        }
+
+        for (int examId : adopted) {
+            paperCache.invalidateExam(examId);
+        }
+        // Scheduled after the invalidation so the job grades against the new papers
+        if (keyChanged) {
+            RegradeEngine.getInstance().scheduleRegrade(questionId);
+        }
+        return adopted.size();
+    }
+
+    /**
+     * @return The question as it read at the given version, or null if
+     *         there is no such version
+     */
+    public Question getQuestionVersion(int questionId, int version) {
         try {
+            return database.queryForObject(SqlStatement.QUESTION_VERSION, pstmt -> {
+                pstmt.setInt(1, questionId);
+                pstmt.setInt(2, version);
+                pstmt.setInt(3, questionId);
+                pstmt.setInt(4, version);
+            }, QuestionBankController::mapQuestion);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public boolean deleteQuestion(int questionId) {
+        try (Connection connection = database.getConnection()) {
             // First check if the question is used in any exam
-            String checkQuery = "SELECT COUNT(*) FROM exam_questions WHERE question_id = ?";
-            PreparedStatement checkStmt = connection.prepareStatement(checkQuery);
-            checkStmt.setInt(1, questionId);
-            ResultSet rs = checkStmt.executeQuery();
-            
-            if (rs.next() && rs.getInt(1) > 0) {
+            Integer usage = SqlExecutor.queryForObject(connection, SqlStatement.COUNT_QUESTION_USAGE,
+                pstmt -> pstmt.setInt(1, questionId), rs -> rs.getInt(1));
+            if (usage != null && usage > 0) {
                 return false; // Question is in use, cannot delete
             }
 
             // If not in use, delete the question
-            String deleteQuery = "DELETE FROM questions WHERE id = ?";
-            PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery);
-            deleteStmt.setInt(1, questionId);
-            
-            return deleteStmt.executeUpdate() > 0;
+            boolean deleted = SqlExecutor.update(connection, SqlStatement.DELETE_QUESTION,
+                pstmt -> pstmt.setInt(1, questionId)) > 0;
+            if (deleted) {
+                paperCache.invalidateQuestion(questionId);
+                searchIndex.questionDeleted(questionId);
+                similarityIndex.questionDeleted(questionId);
+                store.questionDeleted(questionId);
+                examGenerator.invalidate();
+            }
+            return deleted;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Looks for questions the given one nearly duplicates, e.g. to warn
+     * before saving it.
+     * @return Similar questions, most similar first
+     */
+    public List<QuestionSimilarityIndex.Match> findNearDuplicates(Question question) {
+        List<QuestionSimilarityIndex.Match> matches = similarityIndex.findSimilar(question);
+        return matches != null ? matches : new ArrayList<>();
+    }
+
+    /**
+     * @return Questions flagged as near-duplicates when this one was added,
+     *         most similar first
+     */
+    public List<QuestionSimilarityIndex.Match> getNearDuplicates(int questionId) {
+        try {
+            return database.query(SqlStatement.SIMILARITY_FLAGS, pstmt -> pstmt.setInt(1, questionId),
+                rs -> new QuestionSimilarityIndex.Match(rs.getInt("similar_question_id"), rs.getDouble("similarity")));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Records the questions a newly added one nearly duplicates and adds
+     * it to the similarity index. The question stays saved if this fails.
+     */
+    private void flagNearDuplicates(Connection connection, Question question) {
+        List<QuestionSimilarityIndex.Match> matches = similarityIndex.findSimilar(question);
+        similarityIndex.questionChanged(question);
+        if (matches == null || matches.isEmpty()) {
+            return;
+        }
+        try {
+            SqlExecutor.insertRows(connection, SqlStatement.INSERT_SIMILARITY_FLAG, matches,
+                (pstmt, match, i, offset) -> {
+                    pstmt.setInt(offset + 1, question.getId());
+                    pstmt.setInt(offset + 2, match.getQuestionId());
+                    pstmt.setDouble(offset + 3, Math.round(match.getSimilarity() * 1000) / 1000.0);
+                });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads every question of the subject at once, as views over
+     * QuestionStore unless questions.store.enabled is false. Large subjects
+     * should be read page by page or streamed instead, see the overloads
+     * below.
+     */
     public List<Question> getQuestionsBySubject(String subject) {
-        List<Question> questions = new ArrayList<>();
+        if (storeEnabled) {
+            List<Question> questions = store.getQuestionsBySubject(subject);
+            if (questions != null) {
+                return questions;
+            }
+        }
         try {
-            String query = "SELECT * FROM questions WHERE subject = ?";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            pstmt.setString(1, subject);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                List<String> options = new ArrayList<>();
-                options.add(rs.getString("option1"));
-                options.add(rs.getString("option2"));
-                options.add(rs.getString("option3"));
-                options.add(rs.getString("option4"));
-
-                Question question = new Question(
-                    rs.getInt("id"),
-                    rs.getString("question_text"),
-                    options,
-                    rs.getInt("correct_option"),
-                    rs.getInt("marks"),
-                    rs.getString("subject"),
-                    rs.getString("difficulty")
-                );
-                questions.add(question);
+            return database.query(SqlStatement.QUESTIONS_BY_SUBJECT,
+                pstmt -> pstmt.setString(1, subject),
+                QuestionBankController::mapQuestion);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Reads one page of the subject's questions in id order.
+     * @param afterId Cursor from the previous page, or 0 for the first page
+     * @param pageSize Questions per page, capped at questions.page.maxSize
+     *                 (default 200)
+     * @return The page, or null if the query fails
+     */
+    public QuestionPage getQuestionsBySubject(String subject, int afterId, int pageSize) {
+        int limit = Math.max(1, Math.min(pageSize, maxPageSize));
+        try {
+            // One extra row tells whether another page follows
+            List<Question> questions = database.query(SqlStatement.QUESTIONS_BY_SUBJECT_PAGE, pstmt -> {
+                pstmt.setString(1, subject);
+                pstmt.setInt(2, afterId);
+                pstmt.setInt(3, limit + 1);
+            }, QuestionBankController::mapQuestion);
+            boolean hasMore = questions.size() > limit;
+            if (hasMore) {
+                questions.remove(limit);
             }
+            int nextCursor = questions.isEmpty() ? afterId : questions.get(questions.size() - 1).getId();
+            return new QuestionPage(questions, nextCursor, hasMore);
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return questions;
+        return null;
+    }
+
+    /**
+     * Passes every question of the subject to the consumer as it is read,
+     * db.fetchSize rows per round trip, so memory stays bounded by the fetch
+     * size rather than the subject. The connection is held until the last
+     * row, so the consumer should not block for long.
+     * @return Number of questions passed, or -1 if the query fails
+     */
+    public int forEachQuestionBySubject(String subject, Consumer<Question> consumer) {
+        int[] count = new int[1];
+        try (Connection connection = database.getConnection()) {
+            SqlExecutor.forEach(connection, SqlStatement.QUESTIONS_BY_SUBJECT, database.getFetchSize(),
+                pstmt -> pstmt.setString(1, subject), rs -> {
+                    consumer.accept(mapQuestion(rs));
+                    count[0]++;
+                });
+            return count[0];
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        }
     }
 
+    /**
+     * Searches question text and subject through QuestionSearchIndex.
+     * @return Up to search.questions.maxResults questions (default 100),
+     *         best match first
+     */
     public List<Question> searchQuestions(String searchTerm) {
-        List<Question> questions = new ArrayList<>();
+        return searchQuestions(searchTerm, maxSearchResults);
+    }
+
+    public List<Question> searchQuestions(String searchTerm, int limit) {
+        int[] ids = searchIndex.search(searchTerm, limit);
+        if (ids == null) {
+            return searchQuestionsLike(searchTerm, limit);
+        }
         try {
-            String query = "SELECT * FROM questions WHERE question_text LIKE ? OR subject LIKE ?";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            String searchPattern = "%" + searchTerm + "%";
-            pstmt.setString(1, searchPattern);
-            pstmt.setString(2, searchPattern);
-            ResultSet rs = pstmt.executeQuery();
-            
-            while (rs.next()) {
-                List<String> options = new ArrayList<>();
-                options.add(rs.getString("option1"));
-                options.add(rs.getString("option2"));
-                options.add(rs.getString("option3"));
-                options.add(rs.getString("option4"));
-
-                Question question = new Question(
-                    rs.getInt("id"),
-                    rs.getString("question_text"),
-                    options,
-                    rs.getInt("correct_option"),
-                    rs.getInt("marks"),
-                    rs.getString("subject"),
-                    rs.getString("difficulty")
-                );
-                questions.add(question);
-            }
+            return getQuestions(ids);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Substring search in the database, used while the index is unavailable.
+     */
+    private List<Question> searchQuestionsLike(String searchTerm, int limit) {
+        String searchPattern = "%" + searchTerm + "%";
+        try {
+            List<Question> questions = database.query(SqlStatement.SEARCH_QUESTIONS, pstmt -> {
+                pstmt.setString(1, searchPattern);
+                pstmt.setString(2, searchPattern);
+            }, QuestionBankController::mapQuestion);
+            return questions.size() > limit ? new ArrayList<>(questions.subList(0, limit)) : questions;
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Loads questions by id from QuestionStore, or IDS_PER_QUERY per query
+     * when the store is disabled or unavailable.
+     * @return The questions in the order of ids, skipping any since deleted
+     */
+    List<Question> getQuestions(int[] ids) throws SQLException {
+        if (storeEnabled) {
+            List<Question> questions = store.getQuestions(ids);
+            if (questions != null) {
+                return questions;
+            }
+        }
+        Map<Integer, Question> byId = new HashMap<>();
+        try (Connection connection = database.getConnection()) {
+            for (int from = 0; from < ids.length; from += IDS_PER_QUERY) {
+                int offset = from;
+                SqlExecutor.forEach(connection, SqlStatement.QUESTIONS_BY_IDS, pstmt -> {
+                    for (int i = 0; i < IDS_PER_QUERY; i++) {
+                        pstmt.setInt(i + 1, offset + i < ids.length ? ids[offset + i] : 0);
+                    }
+                }, rs -> {
+                    Question question = mapQuestion(rs);
+                    byId.put(question.getId(), question);
+                });
+            }
+        }
+        List<Question> questions = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Question question = byId.get(id);
+            if (question != null) {
+                questions.add(question);
+            }
+        }
         return questions;
     }
+
+    static Question mapQuestion(ResultSet rs) throws SQLException {
+        List<String> options = new ArrayList<>();
+        options.add(rs.getString("option1"));
+        options.add(rs.getString("option2"));
+        options.add(rs.getString("option3"));
+        options.add(rs.getString("option4"));
+
+        return new Question(
+            rs.getInt("id"),
+            rs.getString("question_text"),
+            options,
+            rs.getInt("correct_option"),
+            rs.getInt("marks"),
+            rs.getString("subject"),
+            rs.getString("difficulty")
+        );
+    }
 }
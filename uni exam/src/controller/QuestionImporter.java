@@ -0,0 +1,666 @@
+package controller;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Loads a question bank from a CSV or JSON file. The file is streamed:
+ * one thread splits it into chunks of records, import.threads workers
+ * parse and validate the chunks and hash their content, and the calling
+ * thread inserts the accepted questions with multi-row INSERTs, committing
+ * every import.transactionRows rows. At most two chunks per worker are in
+ * flight, so memory does not grow with the file.
+ *
+ * A question whose text and options match one already in the bank, or one
+ * earlier in the file, is skipped as a duplicate. Matching ignores case,
+ * spacing and the order of the options.
+ *
+ * Rows committed before a failure stay imported; importing the same file
+ * again skips them as duplicates.
+ *
+ * CSV files start with a header naming the columns question, option1 to
+ * option4, correct_option, marks, subject and difficulty, in any order
+ * (the format written by GET /teacher/questions/export). JSON files hold
+ * one array of objects with the fields of POST /api/questions.
+ *
+ * Usage: java controller.QuestionImporter questions.csv|questions.json [teacherId]
+ */
+public class QuestionImporter {
+    private static final int CHUNK_RECORDS = 1000;
+    private static final int MAX_REPORTED_REJECTS = 1000;
+    private static final int OPTIONS = 4;
+    // Column sizes in the questions table
+    private static final int MAX_TEXT_BYTES = 65535;
+    private static final int MAX_SUBJECT_LENGTH = 50;
+    private static final int MAX_DIFFICULTY_LENGTH = 20;
+    private static final String[] CSV_COLUMNS = {"question", "option1", "option2", "option3", "option4",
+        "correct_option", "marks", "subject", "difficulty"};
+
+    private final DatabaseConnection database;
+    private final int teacherId;
+    private final int threads = Math.max(1, Integer.getInteger("import.threads",
+        Runtime.getRuntime().availableProcessors()));
+    private final int transactionRows = Math.max(1, Integer.getInteger("import.transactionRows", 5000));
+
+    /**
+     * @param teacherId Recorded as the creator of every imported question
+     */
+    public QuestionImporter(int teacherId) {
+        this.database = DatabaseConnection.getInstance();
+        this.teacherId = teacherId;
+    }
+
+    /**
+     * One record that was not imported.
+     */
+    public static final class Reject {
+        private final int record;
+        private final String reason;
+
+        Reject(int record, String reason) {
+            this.record = record;
+            this.reason = reason;
+        }
+
+        /**
+         * @return Line of the file where a CSV record starts, or the
+         *         1-based position of a JSON object in the array
+         */
+        public int getRecord() { return record; }
+
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return record + ": " + reason;
+        }
+    }
+
+    public static final class Report {
+        private int records;
+        private int imported;
+        private int duplicates;
+        private int invalid;
+        private long elapsedMillis;
+        private final List<Reject> rejects = new ArrayList<>();
+
+        public int getRecords() { return records; }
+
+        public int getImported() { return imported; }
+
+        public int getDuplicates() { return duplicates; }
+
+        public int getInvalid() { return invalid; }
+
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        public double getRecordsPerSecond() {
+            return elapsedMillis == 0 ? records : records * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * @return The first rejected records, duplicates and invalid ones
+         *         alike, in file order (at most 1000)
+         */
+        public List<Reject> getRejects() { return Collections.unmodifiableList(rejects); }
+
+        private void reject(int record, String reason) {
+            if (rejects.size() < MAX_REPORTED_REJECTS) {
+                rejects.add(new Reject(record, reason));
+            }
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("records", records);
+            map.put("imported", imported);
+            map.put("duplicates", duplicates);
+            map.put("invalid", invalid);
+            map.put("elapsedMillis", elapsedMillis);
+            map.put("recordsPerSecond", Math.round(getRecordsPerSecond()));
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return toMap().toString();
+        }
+    }
+
+    /**
+     * Records read by the reader thread, then filled in by a worker.
+     */
+    private static final class Chunk {
+        final Object[] raw = new Object[CHUNK_RECORDS];
+        final int[] positions = new int[CHUNK_RECORDS];
+        int size;
+        Question[] questions;
+        long[] hashes;
+        String[] errors;
+        boolean last;
+    }
+
+    /**
+     * Turns one raw record into a question.
+     * @throws IllegalArgumentException with the reason the record is invalid
+     */
+    @FunctionalInterface
+    private interface RecordParser {
+        Question parse(Object raw);
+    }
+
+    /**
+     * Splits the input into raw records for a RecordParser.
+     */
+    @FunctionalInterface
+    private interface RecordSource {
+        /**
+         * @return false at the end of the input
+         */
+        boolean next(Chunk chunk) throws IOException;
+    }
+
+    /**
+     * Imports a .json file as JSON and anything else as CSV.
+     */
+    public Report importFile(Path file) throws IOException, SQLException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")
+                ? importJson(in) : importCsv(in);
+        }
+    }
+
+    public Report importCsv(Reader in) throws IOException, SQLException {
+        BufferedReader lines = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        int[] lineNumber = new int[1];
+        String header = readCsvRecord(lines, lineNumber);
+        if (header == null) {
+            throw new IOException("The CSV file is empty");
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : parseCsvRecord(header.replace("\uFEFF", ""))) {
+            names.add(name.trim().toLowerCase(Locale.ROOT));
+        }
+        int[] columns = new int[CSV_COLUMNS.length];
+        for (int c = 0; c < CSV_COLUMNS.length; c++) {
+            columns[c] = names.indexOf(CSV_COLUMNS[c]);
+            if (columns[c] < 0) {
+                throw new IOException("The CSV header has no " + CSV_COLUMNS[c] + " column");
+            }
+        }
+        return run(chunk -> {
+            while (chunk.size < CHUNK_RECORDS) {
+                int position = lineNumber[0] + 1;
+                String record = readCsvRecord(lines, lineNumber);
+                if (record == null) {
+                    return false;
+                }
+                if (!record.isEmpty()) {
+                    chunk.positions[chunk.size] = position;
+                    chunk.raw[chunk.size++] = record;
+                }
+            }
+            return true;
+        }, raw -> csvQuestion(parseCsvRecord((String) raw), columns));
+    }
+
+    public Report importJson(Reader in) throws IOException, SQLException {
+        JsonReader json = new JsonReader(in);
+        int[] position = new int[1];
+        try {
+            json.beginArray();
+        } catch (IllegalStateException | JsonParseException e) {
+            throw new IOException("The JSON file does not hold an array: " + e.getMessage());
+        }
+        return run(chunk -> {
+            try {
+                while (chunk.size < CHUNK_RECORDS) {
+                    if (!json.hasNext()) {
+                        json.endArray();
+                        return false;
+                    }
+                    chunk.positions[chunk.size] = ++position[0];
+                    chunk.raw[chunk.size++] = JsonParser.parseReader(json);
+                }
+                return true;
+            } catch (IllegalStateException | JsonParseException e) {
+                throw new IOException("Malformed JSON after item " + position[0] + ": " + e.getMessage());
+            }
+        }, raw -> jsonQuestion((JsonElement) raw));
+    }
+
+    private Report run(RecordSource source, RecordParser parser) throws IOException, SQLException {
+        long start = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "question-import-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Chunks in file order; the bound stops the reader running ahead of the inserts
+        BlockingQueue<Future<Chunk>> chunks = new ArrayBlockingQueue<>(threads * 2);
+        Thread reader = new Thread(() -> readChunks(source, parser, workers, chunks), "question-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+        Report report = new Report();
+        try {
+            store(chunks, report);
+            report.elapsedMillis = System.currentTimeMillis() - start;
+            return report;
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+            // Also after a failure: batches committed before it are in the bank
+            if (report.imported > 0) {
+                refreshIndexes();
+            }
+        }
+    }
+
+    private static void refreshIndexes() {
+        if (QuestionSearchIndex.getInstance().isBuilt()) {
+            QuestionSearchIndex.getInstance().rebuild();
+        }
+        if (QuestionSimilarityIndex.getInstance().isBuilt()) {
+            QuestionSimilarityIndex.getInstance().rebuild();
+        }
+        if (QuestionStore.getInstance().isBuilt()) {
+            QuestionStore.getInstance().rebuild();
+        }
+        ExamGenerator.getInstance().invalidate();
+    }
+
+    private static void readChunks(RecordSource source, RecordParser parser, ExecutorService workers,
+                                   BlockingQueue<Future<Chunk>> chunks) {
+        try {
+            boolean more = true;
+            while (more) {
+                Chunk chunk = new Chunk();
+                try {
+                    more = source.next(chunk);
+                } catch (IOException | RuntimeException e) {
+                    CompletableFuture<Chunk> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    chunks.put(failed);
+                    return;
+                }
+                chunk.last = !more;
+                chunks.put(workers.submit(() -> parseChunk(chunk, parser)));
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // The import was abandoned
+        }
+    }
+
+    private static Chunk parseChunk(Chunk chunk, RecordParser parser) {
+        MessageDigest digest = sha256();
+        chunk.questions = new Question[chunk.size];
+        chunk.hashes = new long[chunk.size];
+        chunk.errors = new String[chunk.size];
+        for (int i = 0; i < chunk.size; i++) {
+            try {
+                Question question = parser.parse(chunk.raw[i]);
+                validate(question);
+                chunk.questions[i] = question;
+                chunk.hashes[i] = contentHash(digest, question.getQuestionText(), question.getOptions());
+            } catch (IllegalArgumentException e) {
+                chunk.errors[i] = e.getMessage();
+            }
+            chunk.raw[i] = null;
+        }
+        return chunk;
+    }
+
+    /**
+     * Drops duplicates in file order and inserts the rest, committing
+     * every transactionRows rows. report.imported counts committed rows
+     * only, so it stays accurate when a later batch fails.
+     */
+    private void store(BlockingQueue<Future<Chunk>> chunks, Report report) throws IOException, SQLException {
+        try (Connection connection = database.getConnection()) {
+            // Hash of every question seen so far, with its record or 0 if it was already in the bank
+            Map<Long, Integer> seen = loadExistingHashes(connection);
+            connection.setAutoCommit(false);
+            List<Question> pending = new ArrayList<>(transactionRows);
+            try {
+                boolean last = false;
+                while (!last) {
+                    Chunk chunk = take(chunks);
+                    for (int i = 0; i < chunk.size; i++) {
+                        report.records++;
+                        int position = chunk.positions[i];
+                        if (chunk.errors[i] != null) {
+                            report.invalid++;
+                            report.reject(position, chunk.errors[i]);
+                            continue;
+                        }
+                        Integer original = seen.putIfAbsent(chunk.hashes[i], position);
+                        if (original != null) {
+                            report.duplicates++;
+                            report.reject(position, original == 0 ? "Already in the question bank"
+                                : "Duplicate of record " + original);
+                            continue;
+                        }
+                        pending.add(chunk.questions[i]);
+                        if (pending.size() == transactionRows) {
+                            report.imported += insert(connection, pending);
+                        }
+                    }
+                    last = chunk.last;
+                }
+                report.imported += insert(connection, pending);
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static Chunk take(BlockingQueue<Future<Chunk>> chunks) throws IOException {
+        try {
+            return chunks.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not read the file: " + e.getCause(), e.getCause());
+        }
+    }
+
+    private int insert(Connection connection, List<Question> questions) throws SQLException {
+        if (questions.isEmpty()) {
+            return 0;
+        }
+        SqlExecutor.insertRows(connection, SqlStatement.INSERT_QUESTION, questions,
+            (pstmt, question, i, offset) -> {
+                pstmt.setString(offset + 1, question.getQuestionText());
+                List<String> options = question.getOptions();
+                for (int o = 0; o < OPTIONS; o++) {
+                    pstmt.setString(offset + o + 2, options.get(o));
+                }
+                pstmt.setInt(offset + 6, question.getCorrectOption());
+                pstmt.setInt(offset + 7, question.getMarks());
+                pstmt.setString(offset + 8, question.getSubject());
+                pstmt.setString(offset + 9, question.getDifficulty());
+                pstmt.setInt(offset + 10, teacherId);
+            });
+        connection.commit();
+        int inserted = questions.size();
+        questions.clear();
+        return inserted;
+    }
+
+    private Map<Long, Integer> loadExistingHashes(Connection connection) throws SQLException {
+        Map<Long, Integer> hashes = new HashMap<>();
+        MessageDigest digest = sha256();
+        SqlExecutor.forEach(connection, SqlStatement.QUESTION_CONTENT, database.getFetchSize(),
+            SqlExecutor.NO_PARAMETERS, rs -> hashes.put(contentHash(digest, rs.getString("question_text"),
+                Arrays.asList(rs.getString("option1"), rs.getString("option2"), rs.getString("option3"),
+                    rs.getString("option4"))), 0));
+        return hashes;
+    }
+
+    /**
+     * First 64 bits of the SHA-256 of the normalized text and options.
+     * Text is NFKC-normalized, lower-cased and its whitespace collapsed;
+     * options are sorted so their order does not matter.
+     */
+    static long contentHash(MessageDigest digest, String text, List<String> options) {
+        String[] normalized = new String[options.size()];
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = normalize(options.get(i));
+        }
+        Arrays.sort(normalized);
+        digest.reset();
+        digest.update(normalize(text).getBytes(StandardCharsets.UTF_8));
+        for (String option : normalized) {
+            digest.update((byte) 0);
+            digest.update(option.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] hash = digest.digest();
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(folded.length());
+        boolean space = false;
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks a parsed question against the questions table.
+     * @throws IllegalArgumentException with the first problem found
+     */
+    static void validate(Question question) {
+        requireText("question", question.getQuestionText());
+        if (question.getOptions() == null || question.getOptions().size() != OPTIONS) {
+            throw new IllegalArgumentException("Expected " + OPTIONS + " options");
+        }
+        for (int i = 0; i < OPTIONS; i++) {
+            requireText("option" + (i + 1), question.getOptions().get(i));
+        }
+        if (question.getCorrectOption() < 1 || question.getCorrectOption() > OPTIONS) {
+            throw new IllegalArgumentException("correct_option must be between 1 and " + OPTIONS);
+        }
+        if (question.getMarks() <= 0) {
+            throw new IllegalArgumentException("marks must be positive");
+        }
+        requireText("subject", question.getSubject());
+        if (question.getSubject().length() > MAX_SUBJECT_LENGTH) {
+            throw new IllegalArgumentException("subject is longer than " + MAX_SUBJECT_LENGTH + " characters");
+        }
+        requireText("difficulty", question.getDifficulty());
+        if (question.getDifficulty().length() > MAX_DIFFICULTY_LENGTH) {
+            throw new IllegalArgumentException("difficulty is longer than " + MAX_DIFFICULTY_LENGTH + " characters");
+        }
+    }
+
+    private static void requireText(String field, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(field + " is empty");
+        }
+        // Three bytes per character is the most a TEXT column can hold of any string
+        if (value.length() * 3 > MAX_TEXT_BYTES && value.getBytes(StandardCharsets.UTF_8).length > MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException(field + " is longer than " + MAX_TEXT_BYTES + " bytes");
+        }
+    }
+
+    private static Question csvQuestion(List<String> fields, int[] columns) {
+        String[] values = new String[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            values[c] = columns[c] < fields.size() ? fields.get(columns[c]).trim() : null;
+        }
+        return new Question(0, values[0], Arrays.asList(values[1], values[2], values[3], values[4]),
+            parseInt("correct_option", values[5]), parseInt("marks", values[6]), values[7], values[8]);
+    }
+
+    private static int parseInt(String field, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " is not a number: " + value);
+        }
+    }
+
+    private static Question jsonQuestion(JsonElement element) {
+        if (!element.isJsonObject()) {
+            throw new IllegalArgumentException("Expected an object");
+        }
+        JsonObject object = element.getAsJsonObject();
+        JsonElement optionsElement = object.get("options");
+        if (optionsElement == null || !optionsElement.isJsonArray()) {
+            throw new IllegalArgumentException("options is not an array");
+        }
+        JsonArray optionsArray = optionsElement.getAsJsonArray();
+        List<String> options = new ArrayList<>(optionsArray.size());
+        for (JsonElement option : optionsArray) {
+            options.add(option.isJsonPrimitive() ? option.getAsString() : null);
+        }
+        return new Question(0, jsonString(object, "questionText"), options, jsonInt(object, "correctOption"),
+            jsonInt(object, "marks"), jsonString(object, "subject"), jsonString(object, "difficulty"));
+    }
+
+    private static String jsonString(JsonObject object, String field) {
+        JsonElement value = object.get(field);
+        return value != null && value.isJsonPrimitive() ? value.getAsString().trim() : null;
+    }
+
+    private static int jsonInt(JsonObject object, String field) {
+        JsonElement value = object.get(field);
+        if (value == null || !value.isJsonPrimitive()) {
+            throw new IllegalArgumentException(field + " is missing");
+        }
+        return parseInt(field, value.getAsString());
+    }
+
+    /**
+     * Reads one CSV record, joining lines while a quoted field is open.
+     * @param lineNumber Advanced by the lines read
+     * @return The record without its line break, or null at the end
+     */
+    static String readCsvRecord(BufferedReader lines, int[] lineNumber) throws IOException {
+        String line = lines.readLine();
+        if (line == null) {
+            return null;
+        }
+        lineNumber[0]++;
+        int quotes = count(line, '"');
+        if (quotes % 2 == 0) {
+            return line;
+        }
+        StringBuilder record = new StringBuilder(line);
+        while (quotes % 2 != 0 && (line = lines.readLine()) != null) {
+            lineNumber[0]++;
+            record.append('\n').append(line);
+            quotes += count(line, '"');
+        }
+        return record.toString();
+    }
+
+    private static int count(String text, char c) {
+        int count = 0;
+        for (int i = text.indexOf(c); i >= 0; i = text.indexOf(c, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Splits a record into fields. Fields may be quoted, with "" standing
+     * for a quote inside them.
+     */
+    static List<String> parseCsvRecord(String record) {
+        List<String> fields = new ArrayList<>(CSV_COLUMNS.length + 1);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < record.length() && record.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java controller.QuestionImporter questions.csv|questions.json [teacherId]");
+            System.exit(2);
+        }
+        QuestionImporter importer = new QuestionImporter(args.length > 1 ? Integer.parseInt(args[1]) : 1);
+        try {
+            Report report = importer.importFile(Paths.get(args[0]));
+            System.out.println(String.format("%d records in %d ms (%.0f records/sec): %d imported, "
+                    + "%d duplicates, %d invalid", report.getRecords(), report.getElapsedMillis(),
+                report.getRecordsPerSecond(), report.getImported(), report.getDuplicates(), report.getInvalid()));
+            for (Reject reject : report.getRejects()) {
+                System.out.println("  " + reject);
+            }
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+}
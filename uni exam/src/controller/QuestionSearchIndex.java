@@ -0,0 +1,447 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-process inverted index over question text and subject, so searching
+ * the bank does not scan the questions table.
+ *
+ * Text is split into lower-case runs of letters and digits. Every query
+ * word matches the terms it is a prefix of ("alg" finds "algebra"), and a
+ * question must match all the words. Matches are ranked with BM25; a word
+ * in the subject counts as SUBJECT_WEIGHT words of text, and a word
+ * matched only as a prefix counts PREFIX_WEIGHT of an exact match.
+ *
+ * Built from the database on first use and kept current by
+ * QuestionBankController as questions are added, edited and deleted.
+ * rebuild() swaps in a fresh copy; changes made while it reads the table
+ * are replayed onto the copy before the swap. Searches share a read lock
+ * and changes take the write lock. An edited question gets a new document
+ * number and its old postings are skipped until the next compaction.
+ */
+public class QuestionSearchIndex {
+    private static QuestionSearchIndex instance;
+
+    private static final int SUBJECT_WEIGHT = 3;
+    private static final float PREFIX_WEIGHT = 0.5f;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // Further words add little and each costs a pass over its postings
+    private static final int MAX_QUERY_WORDS = 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object buildLock = new Object();
+    // Both guarded by lock
+    private Segment segment;
+    private List<Object> pendingChanges;
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private volatile long lastBuildMillis;
+
+    /** Postings of one term, in ascending document order. */
+    private static final class Posting {
+        int[] docs = new int[2];
+        short[] weights = new short[2];
+        int size;
+
+        void add(int doc, int weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            weights[size++] = (short) Math.min(weight, Short.MAX_VALUE);
+        }
+    }
+
+    /** A complete index; not thread-safe. */
+    private static final class Segment {
+        final TreeMap<String, Posting> terms = new TreeMap<>();
+        final Map<Integer, Integer> docOfQuestion = new HashMap<>();
+        // Document number -> question id, or -1 once removed
+        int[] questionIds = new int[1024];
+        int[] lengths = new int[1024];
+        int docCount;
+        int liveDocs;
+        long totalLength;
+        long postings;
+
+        void add(int questionId, String text, String subject) {
+            remove(questionId);
+            Map<String, int[]> weights = new HashMap<>();
+            tokenize(text, term -> weights.computeIfAbsent(term, t -> new int[1])[0]++);
+            tokenize(subject, term -> weights.computeIfAbsent(term, t -> new int[1])[0] += SUBJECT_WEIGHT);
+
+            int doc = docCount++;
+            if (doc == questionIds.length) {
+                questionIds = Arrays.copyOf(questionIds, doc * 2);
+                lengths = Arrays.copyOf(lengths, doc * 2);
+            }
+            int length = 0;
+            for (Map.Entry<String, int[]> term : weights.entrySet()) {
+                terms.computeIfAbsent(term.getKey(), t -> new Posting()).add(doc, term.getValue()[0]);
+                length += term.getValue()[0];
+            }
+            questionIds[doc] = questionId;
+            lengths[doc] = length;
+            docOfQuestion.put(questionId, doc);
+            liveDocs++;
+            totalLength += length;
+            postings += weights.size();
+        }
+
+        void remove(int questionId) {
+            Integer doc = docOfQuestion.remove(questionId);
+            if (doc != null) {
+                questionIds[doc] = -1;
+                liveDocs--;
+                totalLength -= lengths[doc];
+            }
+        }
+
+        /**
+         * Renumbers the live documents and drops the postings of removed
+         * ones, once they make up a quarter of the index.
+         */
+        void compactIfNeeded() {
+            int removed = docCount - liveDocs;
+            if (removed < 1024 || removed < docCount / 4) {
+                return;
+            }
+            int[] renumbered = new int[docCount];
+            int next = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (questionIds[doc] >= 0) {
+                    questionIds[next] = questionIds[doc];
+                    lengths[next] = lengths[doc];
+                    docOfQuestion.put(questionIds[doc], next);
+                    renumbered[doc] = next++;
+                } else {
+                    renumbered[doc] = -1;
+                }
+            }
+            docCount = next;
+            postings = 0;
+            terms.values().removeIf(posting -> {
+                int kept = 0;
+                for (int i = 0; i < posting.size; i++) {
+                    int doc = renumbered[posting.docs[i]];
+                    if (doc >= 0) {
+                        posting.docs[kept] = doc;
+                        posting.weights[kept++] = posting.weights[i];
+                    }
+                }
+                posting.size = kept;
+                postings += kept;
+                return kept == 0;
+            });
+        }
+
+        int[] search(List<String> words, int limit) {
+            // Matching terms per word, most selective word first
+            List<List<Map.Entry<String, Posting>>> matches = new ArrayList<>();
+            List<String> matchedWords = new ArrayList<>();
+            List<Long> sizes = new ArrayList<>();
+            for (String word : words) {
+                List<Map.Entry<String, Posting>> terms = new ArrayList<>(
+                    this.terms.subMap(word, true, word + Character.MAX_VALUE, false).entrySet());
+                if (terms.isEmpty()) {
+                    return new int[0];
+                }
+                long size = 0;
+                for (Map.Entry<String, Posting> term : terms) {
+                    size += term.getValue().size;
+                }
+                int position = 0;
+                while (position < sizes.size() && sizes.get(position) <= size) {
+                    position++;
+                }
+                sizes.add(position, size);
+                matches.add(position, terms);
+                matchedWords.add(position, word);
+            }
+
+            float[] scores = new float[docCount];
+            // Number of words each document has matched so far
+            byte[] matched = new byte[docCount];
+            int[] candidates = new int[(int) Math.min(sizes.get(0), docCount)];
+            int candidateCount = 0;
+            float averageLength = liveDocs == 0 ? 1 : (float) totalLength / liveDocs;
+            for (int w = 0; w < matches.size(); w++) {
+                for (Map.Entry<String, Posting> term : matches.get(w)) {
+                    Posting posting = term.getValue();
+                    boolean exact = term.getKey().equals(matchedWords.get(w));
+                    float idf = (float) Math.log(1 + (liveDocs - posting.size + 0.5) / (posting.size + 0.5));
+                    if (!exact) {
+                        idf *= PREFIX_WEIGHT;
+                    }
+                    for (int i = 0; i < posting.size; i++) {
+                        int doc = posting.docs[i];
+                        int seen = matched[doc];
+                        if ((seen != w && seen != w + 1) || questionIds[doc] < 0) {
+                            continue;
+                        }
+                        if (seen == w) {
+                            matched[doc] = (byte) (w + 1);
+                            if (w == 0) {
+                                candidates[candidateCount++] = doc;
+                            }
+                        }
+                        float weight = posting.weights[i];
+                        scores[doc] += idf * weight * (K1 + 1)
+                            / (weight + K1 * (1 - B + B * lengths[doc] / averageLength));
+                    }
+                }
+            }
+
+            // Keep the best `limit` in a min-heap on score
+            int[] heap = new int[Math.min(limit, candidateCount)];
+            int heapSize = 0;
+            for (int c = 0; c < candidateCount; c++) {
+                int doc = candidates[c];
+                if (matched[doc] != matches.size()) {
+                    continue;
+                }
+                if (heapSize < heap.length) {
+                    heap[heapSize] = doc;
+                    siftUp(heap, heapSize++, scores);
+                } else if (heap.length > 0 && better(doc, heap[0], scores)) {
+                    heap[0] = doc;
+                    siftDown(heap, heapSize, scores);
+                }
+            }
+            int[] ranked = new int[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                ranked[i] = questionIds[heap[0]];
+                heap[0] = heap[--heapSize];
+                siftDown(heap, heapSize, scores);
+            }
+            return ranked;
+        }
+
+        private boolean better(int doc, int other, float[] scores) {
+            return scores[doc] > scores[other]
+                || (scores[doc] == scores[other] && questionIds[doc] < questionIds[other]);
+        }
+
+        private void siftUp(int[] heap, int index, float[] scores) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!better(heap[parent], heap[index], scores)) {
+                    break;
+                }
+                int swap = heap[parent];
+                heap[parent] = heap[index];
+                heap[index] = swap;
+                index = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int size, float[] scores) {
+            int index = 0;
+            while (true) {
+                int worst = index;
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                    if (better(heap[worst], heap[child], scores)) {
+                        worst = child;
+                    }
+                }
+                if (worst == index) {
+                    return;
+                }
+                int swap = heap[worst];
+                heap[worst] = heap[index];
+                heap[index] = swap;
+                index = worst;
+            }
+        }
+    }
+
+    QuestionSearchIndex() {
+    }
+
+    public static synchronized QuestionSearchIndex getInstance() {
+        if (instance == null) {
+            instance = new QuestionSearchIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * @return Ids of the best matching questions, best first, or null if
+     *         the index could not be built and the caller should query the
+     *         database
+     */
+    public int[] search(String query, int limit) {
+        if (!isBuilt() && !rebuild()) {
+            return null;
+        }
+        Set<String> unique = new LinkedHashSet<>();
+        tokenize(query, unique::add);
+        List<String> words = new ArrayList<>(unique);
+        if (words.size() > MAX_QUERY_WORDS) {
+            words = words.subList(0, MAX_QUERY_WORDS);
+        }
+        if (words.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            return segment.search(words, limit);
+        } finally {
+            lock.readLock().unlock();
+            searches.increment();
+            searchNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Indexes a new or edited question. Does nothing until the index has
+     * been built, as the build reads the question from the database.
+     */
+    public void questionChanged(Question question) {
+        lock.writeLock().lock();
+        try {
+            if (segment != null) {
+                segment.add(question.getId(), question.getQuestionText(), question.getSubject());
+                segment.compactIfNeeded();
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(question);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void questionDeleted(int questionId) {
+        lock.writeLock().lock();
+        try {
+            if (segment != null) {
+                segment.remove(questionId);
+                segment.compactIfNeeded();
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(questionId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isBuilt() {
+        lock.readLock().lock();
+        try {
+            return segment != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every question and replaces the index. Searches carry on
+     * against the old index meanwhile.
+     * @return false if the questions could not be read
+     */
+    public boolean rebuild() {
+        synchronized (buildLock) {
+            long start = System.currentTimeMillis();
+            lock.writeLock().lock();
+            try {
+                pendingChanges = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Segment built = new Segment();
+            boolean loaded = false;
+            try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+                SqlExecutor.forEach(connection, SqlStatement.QUESTION_SEARCH_TEXT, SqlExecutor.NO_PARAMETERS,
+                    rs -> built.add(rs.getInt("id"), rs.getString("question_text"), rs.getString("subject")));
+                loaded = true;
+            } catch (SQLException e) {
+                System.err.println("Could not build the question search index: " + e.getMessage());
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    for (Object change : pendingChanges) {
+                        if (change instanceof Question) {
+                            Question question = (Question) change;
+                            built.add(question.getId(), question.getQuestionText(), question.getSubject());
+                        } else {
+                            built.remove((Integer) change);
+                        }
+                    }
+                    built.compactIfNeeded();
+                    segment = built;
+                    lastBuildMillis = System.currentTimeMillis() - start;
+                }
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * Splits text into lower-case runs of letters and digits.
+     */
+    static void tokenize(String text, Consumer<String> consumer) {
+        if (text == null) {
+            return;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("built", segment != null);
+            if (segment != null) {
+                stats.put("questions", segment.liveDocs);
+                stats.put("terms", segment.terms.size());
+                stats.put("postings", segment.postings);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = searches.sum();
+        stats.put("searches", count);
+        stats.put("averageSearchMicros", count == 0 ? 0.0 : searchNanos.sum() / 1000.0 / count);
+        stats.put("lastBuildMillis", lastBuildMillis);
+        return stats;
+    }
+}
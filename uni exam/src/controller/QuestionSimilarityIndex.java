@@ -0,0 +1,713 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Finds questions that are near-duplicates of each other, such as the same
+ * question reworded slightly or with its options in another order, without
+ * comparing every pair.
+ *
+ * Each question is reduced to a MinHash signature over the 5-character
+ * shingles of its words and over its options as wholes: SLOTS one-byte
+ * minimums, whose agreement between two questions estimates the Jaccard
+ * similarity of their shingle sets. Signatures are split into BANDS bands
+ * of ROWS slots, and questions sharing any band are candidates; only
+ * candidates are compared. A pair at the similarity.threshold (default
+ * 0.7) is found with probability about 0.99, one at 0.5 with about 0.65.
+ *
+ * Everything is held in primitive arrays, roughly 220 bytes per question,
+ * so 500k questions take about 110 MB.
+ *
+ * Built from the database on first use and kept current by
+ * QuestionBankController, like QuestionSearchIndex. Lookups share a read
+ * lock and changes take the write lock.
+ *
+ * Usage: java controller.QuestionSimilarityIndex [threads]
+ */
+public class QuestionSimilarityIndex {
+    private static QuestionSimilarityIndex instance;
+
+    private static final int SLOTS = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = SLOTS / BANDS;
+    private static final int SHINGLE = 5;
+    // Two one-byte minimums agree by chance once in 256
+    private static final double CHANCE_MATCH = 1.0 / 256;
+    private static final int[] MULTIPLIERS = new int[SLOTS];
+    private static final int[] INCREMENTS = new int[SLOTS];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDL);
+        for (int i = 0; i < SLOTS; i++) {
+            MULTIPLIERS[i] = random.nextInt() | 1;
+            INCREMENTS[i] = random.nextInt();
+        }
+    }
+
+    private final double threshold = Double.parseDouble(System.getProperty("similarity.threshold", "0.7"));
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object buildLock = new Object();
+    // Both guarded by lock
+    private Table table;
+    private List<Object> pendingChanges;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupNanos = new LongAdder();
+    private volatile long lastBuildMillis;
+
+    /** A question similar to the one looked up. */
+    public static final class Match {
+        private final int questionId;
+        private final double similarity;
+
+        Match(int questionId, double similarity) {
+            this.questionId = questionId;
+            this.similarity = similarity;
+        }
+
+        public int getQuestionId() { return questionId; }
+
+        /**
+         * @return Estimated Jaccard similarity of the two questions' shingles, 0 to 1
+         */
+        public double getSimilarity() { return similarity; }
+
+        @Override
+        public String toString() {
+            return questionId + String.format(" (%.2f)", similarity);
+        }
+    }
+
+    /** Questions linked by near-duplicate pairs. */
+    public static final class Cluster {
+        private final int[] questionIds;
+        private final int pairs;
+        private final double minSimilarity;
+
+        Cluster(int[] questionIds, int pairs, double minSimilarity) {
+            this.questionIds = questionIds;
+            this.pairs = pairs;
+            this.minSimilarity = minSimilarity;
+        }
+
+        /**
+         * @return The questions in ascending id order
+         */
+        public int[] getQuestionIds() { return questionIds.clone(); }
+
+        public int size() { return questionIds.length; }
+
+        /**
+         * @return Near-duplicate pairs found within the cluster
+         */
+        public int getPairs() { return pairs; }
+
+        /**
+         * @return Similarity of the weakest pair that joined the cluster
+         */
+        public double getMinSimilarity() { return minSimilarity; }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(questionIds);
+        }
+    }
+
+    /**
+     * Signatures by document number, and per band a hash table of chains
+     * linking the documents whose band falls in the same bucket. Deleted
+     * documents are reused by the next question added.
+     */
+    private static final class Table {
+        byte[] signatures = new byte[1024 * SLOTS];
+        int[] questionIds = new int[1024];
+        // Document + 1 of each question id, 0 when absent
+        int[] docOfQuestion = new int[1024];
+        final int[][] next = new int[BANDS][1024];
+        int[][] heads = newHeads(1024);
+        int[] freeDocs = new int[16];
+        int freeCount;
+        int size;
+        int live;
+
+        static int[][] newHeads(int capacity) {
+            int[][] heads = new int[BANDS][capacity];
+            for (int[] band : heads) {
+                Arrays.fill(band, -1);
+            }
+            return heads;
+        }
+
+        void add(int questionId, byte[] signature) {
+            remove(questionId);
+            int doc;
+            if (freeCount > 0) {
+                doc = freeDocs[--freeCount];
+            } else {
+                doc = size++;
+                if (doc == questionIds.length) {
+                    int capacity = doc * 2;
+                    signatures = Arrays.copyOf(signatures, capacity * SLOTS);
+                    questionIds = Arrays.copyOf(questionIds, capacity);
+                    for (int band = 0; band < BANDS; band++) {
+                        next[band] = Arrays.copyOf(next[band], capacity);
+                    }
+                }
+            }
+            if (questionId >= docOfQuestion.length) {
+                docOfQuestion = Arrays.copyOf(docOfQuestion, Math.max(questionId + 1, docOfQuestion.length * 2));
+            }
+            System.arraycopy(signature, 0, signatures, doc * SLOTS, SLOTS);
+            questionIds[doc] = questionId;
+            docOfQuestion[questionId] = doc + 1;
+            live++;
+            // Chains average at most two documents
+            if (live > heads[0].length * 2) {
+                rehash(heads[0].length * 2);
+            } else {
+                link(doc);
+            }
+        }
+
+        void remove(int questionId) {
+            if (questionId >= docOfQuestion.length || docOfQuestion[questionId] == 0) {
+                return;
+            }
+            int doc = docOfQuestion[questionId] - 1;
+            for (int band = 0; band < BANDS; band++) {
+                int[] chain = heads[band];
+                int bucket = bucket(band, bandKey(signatures, doc * SLOTS, band), chain.length);
+                if (chain[bucket] == doc) {
+                    chain[bucket] = next[band][doc];
+                    continue;
+                }
+                for (int d = chain[bucket]; d >= 0; d = next[band][d]) {
+                    if (next[band][d] == doc) {
+                        next[band][d] = next[band][doc];
+                        break;
+                    }
+                }
+            }
+            questionIds[doc] = 0;
+            docOfQuestion[questionId] = 0;
+            live--;
+            if (freeCount == freeDocs.length) {
+                freeDocs = Arrays.copyOf(freeDocs, freeCount * 2);
+            }
+            freeDocs[freeCount++] = doc;
+        }
+
+        private void link(int doc) {
+            for (int band = 0; band < BANDS; band++) {
+                int bucket = bucket(band, bandKey(signatures, doc * SLOTS, band), heads[band].length);
+                next[band][doc] = heads[band][bucket];
+                heads[band][bucket] = doc;
+            }
+        }
+
+        private void rehash(int capacity) {
+            heads = newHeads(capacity);
+            for (int doc = 0; doc < size; doc++) {
+                if (questionIds[doc] != 0) {
+                    link(doc);
+                }
+            }
+        }
+
+        /**
+         * Calls the consumer for each live document sharing a band with
+         * the signature, other than skipDoc.
+         * @param seen Scratch array of at least size entries, stamped with
+         *             mark so each document is passed once; or null to pass
+         *             a document once per band it shares
+         */
+        void forEachCandidate(byte[] signature, int offset, int skipDoc, int[] seen, int mark, DocConsumer consumer) {
+            for (int band = 0; band < BANDS; band++) {
+                int key = bandKey(signature, offset, band);
+                int[] chain = heads[band];
+                for (int d = chain[bucket(band, key, chain.length)]; d >= 0; d = next[band][d]) {
+                    if (d != skipDoc && (seen == null || seen[d] != mark)
+                            && bandKey(signatures, d * SLOTS, band) == key) {
+                        if (seen != null) {
+                            seen[d] = mark;
+                        }
+                        consumer.accept(d);
+                    }
+                }
+            }
+        }
+
+        long getSizeInBytes() {
+            long bytes = signatures.length + 4L * (questionIds.length + docOfQuestion.length + freeDocs.length);
+            for (int band = 0; band < BANDS; band++) {
+                bytes += 4L * (next[band].length + heads[band].length);
+            }
+            return bytes;
+        }
+    }
+
+    @FunctionalInterface
+    private interface DocConsumer {
+        void accept(int doc);
+    }
+
+    QuestionSimilarityIndex() {
+    }
+
+    public static synchronized QuestionSimilarityIndex getInstance() {
+        if (instance == null) {
+            instance = new QuestionSimilarityIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * @return Questions at or above the similarity threshold, most similar
+     *         first, excluding the question itself; or null if the index
+     *         could not be built
+     */
+    public List<Match> findSimilar(Question question) {
+        if (!isBuilt() && !rebuild()) {
+            return null;
+        }
+        byte[] signature = signature(question.getQuestionText(), question.getOptions());
+        List<Match> matches = new ArrayList<>();
+        if (signature == null) {
+            return matches;
+        }
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            Table current = table;
+            int skipDoc = question.getId() < current.docOfQuestion.length
+                ? current.docOfQuestion[question.getId()] - 1 : -1;
+            // A few candidates at most, so duplicates across bands are dropped by sorting
+            int[][] candidates = {new int[16]};
+            int[] count = {0};
+            current.forEachCandidate(signature, 0, skipDoc, null, 0, doc -> {
+                if (count[0] == candidates[0].length) {
+                    candidates[0] = Arrays.copyOf(candidates[0], count[0] * 2);
+                }
+                candidates[0][count[0]++] = doc;
+            });
+            int[] docs = candidates[0];
+            Arrays.sort(docs, 0, count[0]);
+            for (int i = 0; i < count[0]; i++) {
+                if (i > 0 && docs[i] == docs[i - 1]) {
+                    continue;
+                }
+                double similarity = similarity(signature, 0, current.signatures, docs[i] * SLOTS);
+                if (similarity >= threshold) {
+                    matches.add(new Match(current.questionIds[docs[i]], similarity));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+            lookups.increment();
+            lookupNanos.add(System.nanoTime() - start);
+        }
+        matches.sort((a, b) -> Double.compare(b.getSimilarity(), a.getSimilarity()));
+        return matches;
+    }
+
+    /**
+     * Groups the whole bank into clusters of near-duplicates, comparing
+     * candidate pairs on the given number of threads. Changes wait until
+     * the report is done.
+     * @return Clusters of two or more questions, largest first, or null if
+     *         the index could not be built
+     */
+    public List<Cluster> findClusters(int threads) {
+        if (!isBuilt() && !rebuild()) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Table current = table;
+            int workers = Math.max(1, threads);
+            List<Pairs> found = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable, "question-similarity-report");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<Pairs>> results = new ArrayList<>();
+                for (int w = 0; w < workers; w++) {
+                    int first = w;
+                    results.add(executor.submit(() -> comparePairs(current, first, workers)));
+                }
+                for (Future<Pairs> result : results) {
+                    found.add(result.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                executor.shutdownNow();
+            }
+            return cluster(current, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Matching pairs found by one report thread. */
+    private static final class Pairs {
+        long[] docs = new long[16];
+        float[] similarities = new float[16];
+        int size;
+
+        void add(int doc, int other, double similarity) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                similarities = Arrays.copyOf(similarities, size * 2);
+            }
+            docs[size] = ((long) doc << 32) | other;
+            similarities[size++] = (float) similarity;
+        }
+    }
+
+    /**
+     * Compares documents first, first + step, ... with their candidates of
+     * higher number, so each pair is compared once.
+     */
+    private Pairs comparePairs(Table current, int first, int step) {
+        Pairs pairs = new Pairs();
+        int[] seen = new int[current.size];
+        for (int doc = first; doc < current.size; doc += step) {
+            if (current.questionIds[doc] == 0) {
+                continue;
+            }
+            int self = doc;
+            current.forEachCandidate(current.signatures, doc * SLOTS, doc, seen, doc + 1, other -> {
+                if (other > self) {
+                    double similarity = similarity(current.signatures, self * SLOTS, current.signatures, other * SLOTS);
+                    if (similarity >= threshold) {
+                        pairs.add(self, other, similarity);
+                    }
+                }
+            });
+        }
+        return pairs;
+    }
+
+    private static List<Cluster> cluster(Table current, List<Pairs> found) {
+        int[] parent = new int[current.size];
+        for (int doc = 0; doc < parent.length; doc++) {
+            parent[doc] = doc;
+        }
+        for (Pairs pairs : found) {
+            for (int i = 0; i < pairs.size; i++) {
+                int a = root(parent, (int) (pairs.docs[i] >>> 32));
+                int b = root(parent, (int) pairs.docs[i]);
+                if (a != b) {
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+        Map<Integer, int[]> pairCounts = new HashMap<>();
+        Map<Integer, Float> minSimilarities = new HashMap<>();
+        for (Pairs pairs : found) {
+            for (int i = 0; i < pairs.size; i++) {
+                int root = root(parent, (int) (pairs.docs[i] >>> 32));
+                pairCounts.computeIfAbsent(root, r -> new int[1])[0]++;
+                minSimilarities.merge(root, pairs.similarities[i], Math::min);
+            }
+        }
+        Map<Integer, List<Integer>> members = new HashMap<>();
+        for (int doc = 0; doc < parent.length; doc++) {
+            int root = root(parent, doc);
+            if (pairCounts.containsKey(root)) {
+                members.computeIfAbsent(root, r -> new ArrayList<>()).add(current.questionIds[doc]);
+            }
+        }
+        List<Cluster> clusters = new ArrayList<>(members.size());
+        for (Map.Entry<Integer, List<Integer>> entry : members.entrySet()) {
+            int[] ids = entry.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+            clusters.add(new Cluster(ids, pairCounts.get(entry.getKey())[0], minSimilarities.get(entry.getKey())));
+        }
+        clusters.sort((a, b) -> a.size() != b.size() ? Integer.compare(b.size(), a.size())
+            : Integer.compare(a.questionIds[0], b.questionIds[0]));
+        return clusters;
+    }
+
+    private static int root(int[] parent, int doc) {
+        while (parent[doc] != doc) {
+            parent[doc] = parent[parent[doc]];
+            doc = parent[doc];
+        }
+        return doc;
+    }
+
+    /**
+     * Indexes a new or edited question. Does nothing until the index has
+     * been built, as the build reads the question from the database.
+     */
+    public void questionChanged(Question question) {
+        byte[] signature = signature(question.getQuestionText(), question.getOptions());
+        lock.writeLock().lock();
+        try {
+            if (table != null) {
+                if (signature != null) {
+                    table.add(question.getId(), signature);
+                } else {
+                    table.remove(question.getId());
+                }
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(question);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void questionDeleted(int questionId) {
+        lock.writeLock().lock();
+        try {
+            if (table != null) {
+                table.remove(questionId);
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(questionId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isBuilt() {
+        lock.readLock().lock();
+        try {
+            return table != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every question and replaces the index. Lookups carry on
+     * against the old index meanwhile.
+     * @return false if the questions could not be read
+     */
+    public boolean rebuild() {
+        synchronized (buildLock) {
+            long start = System.currentTimeMillis();
+            lock.writeLock().lock();
+            try {
+                pendingChanges = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Table built = new Table();
+            boolean loaded = false;
+            DatabaseConnection database = DatabaseConnection.getInstance();
+            try (Connection connection = database.getConnection()) {
+                SqlExecutor.forEach(connection, SqlStatement.QUESTION_CONTENT, database.getFetchSize(),
+                    SqlExecutor.NO_PARAMETERS, rs -> {
+                        byte[] signature = signature(rs.getString("question_text"), Arrays.asList(
+                            rs.getString("option1"), rs.getString("option2"), rs.getString("option3"),
+                            rs.getString("option4")));
+                        if (signature != null) {
+                            built.add(rs.getInt("id"), signature);
+                        }
+                    });
+                loaded = true;
+            } catch (SQLException e) {
+                System.err.println("Could not build the question similarity index: " + e.getMessage());
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    for (Object change : pendingChanges) {
+                        if (change instanceof Question) {
+                            Question question = (Question) change;
+                            byte[] signature = signature(question.getQuestionText(), question.getOptions());
+                            if (signature != null) {
+                                built.add(question.getId(), signature);
+                            } else {
+                                built.remove(question.getId());
+                            }
+                        } else {
+                            built.remove((Integer) change);
+                        }
+                    }
+                    table = built;
+                    lastBuildMillis = System.currentTimeMillis() - start;
+                }
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * @return The signature of the question's words and options, or null
+     *         if it has neither
+     */
+    static byte[] signature(String text, List<String> options) {
+        int[] minimums = new int[SLOTS];
+        Arrays.fill(minimums, Integer.MAX_VALUE);
+        StringBuilder words = new StringBuilder();
+        QuestionSearchIndex.tokenize(text, word -> words.append(words.length() == 0 ? "" : " ").append(word));
+        boolean empty = true;
+        if (words.length() > 0 && words.length() < SHINGLE) {
+            update(minimums, mix(words.toString().hashCode()));
+            empty = false;
+        }
+        int power = 1;
+        for (int i = 1; i < SHINGLE; i++) {
+            power *= 31;
+        }
+        int rolling = 0;
+        for (int i = 0; i < words.length(); i++) {
+            if (i >= SHINGLE) {
+                rolling -= words.charAt(i - SHINGLE) * power;
+            }
+            rolling = rolling * 31 + words.charAt(i);
+            if (i >= SHINGLE - 1) {
+                update(minimums, mix(rolling));
+                empty = false;
+            }
+        }
+        if (options != null) {
+            for (String option : options) {
+                StringBuilder optionWords = new StringBuilder();
+                QuestionSearchIndex.tokenize(option, word -> optionWords.append(' ').append(word));
+                if (optionWords.length() > 0) {
+                    // Hashed apart from the text shingles
+                    update(minimums, mix(optionWords.toString().hashCode() ^ 0x5bd1e995));
+                    empty = false;
+                }
+            }
+        }
+        if (empty) {
+            return null;
+        }
+        byte[] signature = new byte[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            signature[i] = (byte) minimums[i];
+        }
+        return signature;
+    }
+
+    private static void update(int[] minimums, int shingle) {
+        for (int i = 0; i < SLOTS; i++) {
+            int value = (MULTIPLIERS[i] * shingle + INCREMENTS[i]) >>> 1;
+            if (value < minimums[i]) {
+                minimums[i] = value;
+            }
+        }
+    }
+
+    /** Murmur3 finalizer. */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Jaccard similarity estimated from the share of agreeing slots,
+     * corrected for one-byte slots that agree by chance.
+     */
+    private static double similarity(byte[] a, int aOffset, byte[] b, int bOffset) {
+        int agree = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            if (a[aOffset + i] == b[bOffset + i]) {
+                agree++;
+            }
+        }
+        return Math.max(0, ((double) agree / SLOTS - CHANCE_MATCH) / (1 - CHANCE_MATCH));
+    }
+
+    private static int bandKey(byte[] signatures, int offset, int band) {
+        int start = offset + band * ROWS;
+        return (signatures[start] & 0xff) << 24 | (signatures[start + 1] & 0xff) << 16
+            | (signatures[start + 2] & 0xff) << 8 | (signatures[start + 3] & 0xff);
+    }
+
+    private static int bucket(int band, int key, int capacity) {
+        return mix(key + band * 0x9E3779B9) & (capacity - 1);
+    }
+
+    /**
+     * Prints the clusters of near-duplicates in the question bank.
+     */
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        try {
+            QuestionSimilarityIndex index = getInstance();
+            if (!index.rebuild()) {
+                System.exit(1);
+            }
+            long start = System.currentTimeMillis();
+            List<Cluster> clusters = index.findClusters(threads);
+            int questions = 0;
+            for (Cluster cluster : clusters) {
+                questions += cluster.size();
+            }
+            System.out.println(String.format("%d clusters of near-duplicates covering %d questions, found in %d ms "
+                + "on %d threads", clusters.size(), questions, System.currentTimeMillis() - start, threads));
+            for (Cluster cluster : clusters) {
+                System.out.println(String.format("  %d questions, similarity >= %.2f: %s", cluster.size(),
+                    cluster.getMinSimilarity(), cluster));
+            }
+            System.out.println(index.getStatistics());
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("built", table != null);
+            if (table != null) {
+                stats.put("questions", table.live);
+                long bytes = table.getSizeInBytes();
+                stats.put("sizeInBytes", bytes);
+                stats.put("bytesPerQuestion", table.live == 0 ? 0 : bytes / table.live);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        long count = lookups.sum();
+        stats.put("threshold", threshold);
+        stats.put("lookups", count);
+        stats.put("averageLookupMicros", count == 0 ? 0.0 : lookupNanos.sum() / 1000.0 / count);
+        stats.put("lastBuildMillis", lastBuildMillis);
+        return stats;
+    }
+}
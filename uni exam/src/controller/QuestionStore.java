@@ -0,0 +1,551 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The question bank held in memory in columns, so listing and looking up
+ * questions neither queries the database nor keeps a String and list per
+ * field of every question.
+ *
+ * Question text and options are stored once each as UTF-8 in a shared
+ * string table, so options repeated across the bank ("True", "None of the
+ * above") cost one int per use. Subjects and difficulties are dictionary
+ * codes, and marks and correct options are primitive columns. Questions
+ * handed out are views over the table: the text is decoded on each call
+ * and the options on first use, and a view stays as it was when created
+ * even if the question changes later.
+ *
+ * Built from the database on first use and kept current by
+ * QuestionBankController, like QuestionSearchIndex. Strings left behind
+ * by edits and deletes stay in the table until the next rebuild.
+ */
+public class QuestionStore {
+    private static QuestionStore instance;
+
+    private static final int OPTIONS = 4;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object buildLock = new Object();
+    // Both guarded by lock
+    private Table table;
+    private List<Object> pendingChanges;
+
+    private final LongAdder views = new LongAdder();
+    private volatile long lastBuildMillis;
+
+    /**
+     * Distinct strings packed end to end. Bytes are only ever appended,
+     * so a view may keep reading the arrays it was created from after they
+     * have been replaced by larger ones.
+     */
+    private static final class StringTable {
+        byte[] bytes = new byte[1 << 16];
+        int length;
+        // Code -> start in bytes; offsets[count] is the end of the last string
+        int[] offsets = new int[1024];
+        int count;
+        // Open addressing on the string's hash: code + 1, or 0 when empty
+        int[] slots = new int[2048];
+
+        /**
+         * @return The code of the string, adding it if it is new, or -1 for null
+         */
+        int intern(String value) {
+            if (value == null) {
+                return -1;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            int mask = slots.length - 1;
+            for (int slot = hash(utf8, 0, utf8.length) & mask; ; slot = (slot + 1) & mask) {
+                int code = slots[slot] - 1;
+                if (code < 0) {
+                    code = append(utf8);
+                    slots[slot] = code + 1;
+                    if (count * 2 > slots.length) {
+                        rehash();
+                    }
+                    return code;
+                }
+                if (matches(code, utf8)) {
+                    return code;
+                }
+            }
+        }
+
+        private int append(byte[] utf8) {
+            if (length + utf8.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + utf8.length));
+            }
+            if (count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            offsets[count] = length;
+            length += utf8.length;
+            offsets[count + 1] = length;
+            return count++;
+        }
+
+        private boolean matches(int code, byte[] utf8) {
+            int start = offsets[code];
+            return offsets[code + 1] - start == utf8.length
+                && Arrays.equals(bytes, start, start + utf8.length, utf8, 0, utf8.length);
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int code = 0; code < count; code++) {
+                int slot = hash(bytes, offsets[code], offsets[code + 1]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = code + 1;
+            }
+        }
+
+        private static int hash(byte[] bytes, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + bytes[i];
+            }
+            return hash ^ (hash >>> 16);
+        }
+
+        void trim() {
+            bytes = Arrays.copyOf(bytes, length);
+            offsets = Arrays.copyOf(offsets, count + 1);
+        }
+
+        long sizeInBytes() {
+            return bytes.length + 4L * offsets.length + 4L * slots.length;
+        }
+    }
+
+    /** Codes for the few distinct values of a column such as subject. */
+    private static final class Dictionary {
+        final List<String> values = new ArrayList<>();
+        final Map<String, Short> codes = new HashMap<>();
+
+        short code(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Short code = codes.get(value);
+            if (code == null) {
+                if (values.size() > Short.MAX_VALUE) {
+                    throw new IllegalStateException("More than " + Short.MAX_VALUE + " distinct values");
+                }
+                code = (short) values.size();
+                values.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        String value(short code) {
+            return code < 0 ? null : values.get(code);
+        }
+    }
+
+    /** A complete store; not thread-safe. */
+    private static final class Table {
+        final StringTable strings = new StringTable();
+        final Dictionary subjects = new Dictionary();
+        final Dictionary difficulties = new Dictionary();
+        // Question id -> row, or -1
+        int[] rowOfId = new int[1024];
+        // Row -> question id, or -1 once deleted
+        int[] ids = new int[1024];
+        int[] texts = new int[1024];
+        int[] options = new int[1024 * OPTIONS];
+        int[] marks = new int[1024];
+        byte[] correctOptions = new byte[1024];
+        short[] subjectCodes = new short[1024];
+        short[] difficultyCodes = new short[1024];
+        int rows;
+        int live;
+        // Rows of deleted questions, reused before new ones
+        int[] freeRows = new int[16];
+        int freeCount;
+
+        Table() {
+            Arrays.fill(rowOfId, -1);
+        }
+
+        void put(int id, String text, List<String> questionOptions, int correctOption, int questionMarks,
+                 String subject, String difficulty) {
+            if (id >= rowOfId.length) {
+                int oldLength = rowOfId.length;
+                rowOfId = Arrays.copyOf(rowOfId, Math.max(Math.max(16, oldLength * 2), id + 1));
+                Arrays.fill(rowOfId, oldLength, rowOfId.length, -1);
+            }
+            int row = rowOfId[id];
+            if (row < 0) {
+                row = freeCount > 0 ? freeRows[--freeCount] : newRow();
+                rowOfId[id] = row;
+                ids[row] = id;
+                live++;
+            }
+            texts[row] = strings.intern(text);
+            for (int o = 0; o < OPTIONS; o++) {
+                options[row * OPTIONS + o] = strings.intern(questionOptions != null && o < questionOptions.size()
+                    ? questionOptions.get(o) : null);
+            }
+            correctOptions[row] = (byte) correctOption;
+            marks[row] = questionMarks;
+            subjectCodes[row] = subjects.code(subject);
+            difficultyCodes[row] = difficulties.code(difficulty);
+        }
+
+        private int newRow() {
+            if (rows == ids.length) {
+                int capacity = Math.max(16, rows * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                texts = Arrays.copyOf(texts, capacity);
+                options = Arrays.copyOf(options, capacity * OPTIONS);
+                marks = Arrays.copyOf(marks, capacity);
+                correctOptions = Arrays.copyOf(correctOptions, capacity);
+                subjectCodes = Arrays.copyOf(subjectCodes, capacity);
+                difficultyCodes = Arrays.copyOf(difficultyCodes, capacity);
+            }
+            return rows++;
+        }
+
+        void remove(int id) {
+            if (id < 0 || id >= rowOfId.length || rowOfId[id] < 0) {
+                return;
+            }
+            int row = rowOfId[id];
+            rowOfId[id] = -1;
+            ids[row] = -1;
+            if (freeCount == freeRows.length) {
+                freeRows = Arrays.copyOf(freeRows, freeCount * 2);
+            }
+            freeRows[freeCount++] = row;
+            live--;
+        }
+
+        Question view(int id) {
+            int row = id >= 0 && id < rowOfId.length ? rowOfId[id] : -1;
+            if (row < 0) {
+                return null;
+            }
+            int first = row * OPTIONS;
+            return new StoredQuestion(id, strings.bytes, strings.offsets, texts[row],
+                new int[] {options[first], options[first + 1], options[first + 2], options[first + 3]},
+                correctOptions[row], marks[row], subjects.value(subjectCodes[row]),
+                difficulties.value(difficultyCodes[row]));
+        }
+
+        /**
+         * Drops the spare capacity left by growing the arrays while loading.
+         */
+        void trim() {
+            strings.trim();
+            int maxId = -1;
+            for (int row = 0; row < rows; row++) {
+                maxId = Math.max(maxId, ids[row]);
+            }
+            rowOfId = Arrays.copyOf(rowOfId, maxId + 1);
+            ids = Arrays.copyOf(ids, rows);
+            texts = Arrays.copyOf(texts, rows);
+            options = Arrays.copyOf(options, rows * OPTIONS);
+            marks = Arrays.copyOf(marks, rows);
+            correctOptions = Arrays.copyOf(correctOptions, rows);
+            subjectCodes = Arrays.copyOf(subjectCodes, rows);
+            difficultyCodes = Arrays.copyOf(difficultyCodes, rows);
+        }
+
+        long sizeInBytes() {
+            return 4L * rowOfId.length + (4L + 4 + 4 * OPTIONS + 4 + 1 + 2 + 2) * ids.length
+                + 4L * freeRows.length + strings.sizeInBytes();
+        }
+    }
+
+    /**
+     * A question read from the store. The text and options are decoded
+     * from the string table when asked for; setting either replaces the
+     * stored value for this view only.
+     */
+    static final class StoredQuestion extends Question {
+        private final byte[] bytes;
+        private final int[] offsets;
+        // -1 once the text has been set on the view
+        private int textCode;
+        // null once the options have been decoded or set
+        private int[] optionCodes;
+
+        StoredQuestion(int id, byte[] bytes, int[] offsets, int textCode, int[] optionCodes, int correctOption,
+                       int marks, String subject, String difficulty) {
+            super(id, null, null, correctOption, marks, subject, difficulty);
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.textCode = textCode;
+            this.optionCodes = optionCodes;
+        }
+
+        private String decode(int code) {
+            return code < 0 ? null
+                : new String(bytes, offsets[code], offsets[code + 1] - offsets[code], StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String getQuestionText() {
+            return textCode >= 0 ? decode(textCode) : super.getQuestionText();
+        }
+
+        @Override
+        public void setQuestionText(String questionText) {
+            textCode = -1;
+            super.setQuestionText(questionText);
+        }
+
+        @Override
+        public List<String> getOptions() {
+            if (optionCodes != null) {
+                // Decoded into a list of the question's own, as callers may change it
+                List<String> options = new ArrayList<>(OPTIONS);
+                for (int code : optionCodes) {
+                    options.add(decode(code));
+                }
+                setOptions(options);
+            }
+            return super.getOptions();
+        }
+
+        @Override
+        public void setOptions(List<String> options) {
+            optionCodes = null;
+            super.setOptions(options);
+        }
+    }
+
+    QuestionStore() {
+    }
+
+    public static synchronized QuestionStore getInstance() {
+        if (instance == null) {
+            instance = new QuestionStore();
+        }
+        return instance;
+    }
+
+    /**
+     * @return The questions in the order of ids, skipping any not in the
+     *         bank, or null if the store could not be built and the caller
+     *         should query the database
+     */
+    public List<Question> getQuestions(int[] ids) {
+        if (!isBuilt() && !rebuild()) {
+            return null;
+        }
+        List<Question> questions = new ArrayList<>(ids.length);
+        lock.readLock().lock();
+        try {
+            for (int id : ids) {
+                Question question = table.view(id);
+                if (question != null) {
+                    questions.add(question);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        views.add(questions.size());
+        return questions;
+    }
+
+    /**
+     * @return The subject's questions in id order, or null if the store
+     *         could not be built
+     */
+    public List<Question> getQuestionsBySubject(String subject) {
+        if (!isBuilt() && !rebuild()) {
+            return null;
+        }
+        List<Question> questions = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Short code = table.subjects.codes.get(subject);
+            if (code == null) {
+                return questions;
+            }
+            int[] rowOfId = table.rowOfId;
+            for (int id = 0; id < rowOfId.length; id++) {
+                int row = rowOfId[id];
+                if (row >= 0 && table.subjectCodes[row] == code) {
+                    questions.add(table.view(id));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        views.add(questions.size());
+        return questions;
+    }
+
+    /**
+     * Stores a new or edited question. Does nothing until the store has
+     * been built, as the build reads the question from the database.
+     */
+    public void questionChanged(Question question) {
+        lock.writeLock().lock();
+        try {
+            if (table != null) {
+                put(table, question);
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(question);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void questionDeleted(int questionId) {
+        lock.writeLock().lock();
+        try {
+            if (table != null) {
+                table.remove(questionId);
+            }
+            if (pendingChanges != null) {
+                pendingChanges.add(questionId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void put(Table table, Question question) {
+        table.put(question.getId(), question.getQuestionText(), question.getOptions(), question.getCorrectOption(),
+            question.getMarks(), question.getSubject(), question.getDifficulty());
+    }
+
+    public boolean isBuilt() {
+        lock.readLock().lock();
+        try {
+            return table != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every question and replaces the store, dropping strings no
+     * longer used. Lookups carry on against the old store meanwhile.
+     * @return false if the questions could not be read
+     */
+    public boolean rebuild() {
+        synchronized (buildLock) {
+            long start = System.currentTimeMillis();
+            lock.writeLock().lock();
+            try {
+                pendingChanges = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Table built = new Table();
+            boolean loaded = false;
+            DatabaseConnection database = DatabaseConnection.getInstance();
+            try (Connection connection = database.getConnection()) {
+                List<String> options = new ArrayList<>(OPTIONS);
+                SqlExecutor.forEach(connection, SqlStatement.QUESTION_STORE, database.getFetchSize(),
+                    SqlExecutor.NO_PARAMETERS, rs -> {
+                        options.clear();
+                        for (int o = 1; o <= OPTIONS; o++) {
+                            options.add(rs.getString("option" + o));
+                        }
+                        built.put(rs.getInt("id"), rs.getString("question_text"), options,
+                            rs.getInt("correct_option"), rs.getInt("marks"), rs.getString("subject"),
+                            rs.getString("difficulty"));
+                    });
+                loaded = true;
+            } catch (SQLException e) {
+                System.err.println("Could not build the question store: " + e.getMessage());
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (loaded) {
+                    for (Object change : pendingChanges) {
+                        if (change instanceof Question) {
+                            put(built, (Question) change);
+                        } else {
+                            built.remove((Integer) change);
+                        }
+                    }
+                    built.trim();
+                    table = built;
+                    lastBuildMillis = System.currentTimeMillis() - start;
+                }
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * @return Footprint of the store: bytes held per column and per question
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("built", table != null);
+            if (table != null) {
+                long size = table.sizeInBytes();
+                stats.put("questions", table.live);
+                stats.put("distinctStrings", table.strings.count);
+                stats.put("stringBytes", table.strings.length);
+                stats.put("subjects", table.subjects.values.size());
+                stats.put("difficulties", table.difficulties.values.size());
+                stats.put("sizeInBytes", size);
+                stats.put("bytesPerQuestion", table.live == 0 ? 0 : size / table.live);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("views", views.sum());
+        stats.put("lastBuildMillis", lastBuildMillis);
+        return stats;
+    }
+
+    /**
+     * Builds the store from the configured database and prints its
+     * footprint.
+     */
+    public static void main(String[] args) {
+        QuestionStore store = getInstance();
+        try {
+            if (!store.rebuild()) {
+                System.exit(1);
+            }
+            Map<String, Object> stats = store.getStatistics();
+            System.out.println(String.format("%,d questions in %,d bytes, %,d bytes per question",
+                (Integer) stats.get("questions"), (Long) stats.get("sizeInBytes"), (Long) stats.get("bytesPerQuestion")));
+            System.out.println(String.format("%,d distinct strings in %,d bytes of UTF-8, %d subjects, %d difficulties",
+                (Integer) stats.get("distinctStrings"), (Integer) stats.get("stringBytes"),
+                (Integer) stats.get("subjects"), (Integer) stats.get("difficulties")));
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+}
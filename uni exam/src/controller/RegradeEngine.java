@@ -0,0 +1,387 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.ExamPaper;
+import model.Question;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Re-grades stored answers after an answer-key correction.
+ *
+ * Every answer is graded against the question version its exam pins (see
+ * QuestionBankController.adoptLatestVersion), so exams still set with an
+ * earlier version keep their marks.
+ *
+ * A job walks the answers of each changed question in (exam, student)
+ * order, one page at a time. Every page is split into partitions that are
+ * graded in parallel, each in its own short transaction that updates the
+ * answer rows and adjusts the matching result rows by the mark delta.
+ * Because the delta is computed from the stored marks, replaying a page
+ * is harmless, so a job interrupted by a crash simply continues from its
+ * last checkpoint in regrade_jobs. Small transactions and a pause between
+ * pages keep row locks short so exams in progress are not held up.
+ *
+ * Settings (system properties): regrade.pageSize (default 2000),
+ * regrade.threads (4), regrade.pauseMs (50).
+ */
+public class RegradeEngine {
+    private static RegradeEngine instance;
+
+    static final String PENDING = "PENDING";
+    static final String RUNNING = "RUNNING";
+    static final String DONE = "DONE";
+    static final String FAILED = "FAILED";
+
+    private final DatabaseConnection database;
+    private final int pageSize = Integer.getInteger("regrade.pageSize", 2000);
+    private final int partitions = Integer.getInteger("regrade.threads", 4);
+    private final long pauseMillis = Long.getLong("regrade.pauseMs", 50);
+    private final ExecutorService coordinator;
+    private final ExecutorService workers;
+
+    /** One stored answer to re-grade. */
+    private static final class AnswerRow {
+        final int examId;
+        final int studentId;
+        final int selectedOption;
+        final int oldMarks;
+        int newMarks;
+
+        AnswerRow(int examId, int studentId, int selectedOption, int oldMarks) {
+            this.examId = examId;
+            this.studentId = studentId;
+            this.selectedOption = selectedOption;
+            this.oldMarks = oldMarks;
+        }
+    }
+
+    /** Cursor and counters of a job, mirrored to regrade_jobs after every page. */
+    private static final class Job {
+        final int id;
+        final int[] questionIds;
+        String status;
+        int questionIndex;
+        int lastExamId;
+        int lastStudentId;
+        int totalAnswers;
+        int processedAnswers;
+        int changedAnswers;
+
+        Job(int id, int[] questionIds) {
+            this.id = id;
+            this.questionIds = questionIds;
+        }
+    }
+
+    private RegradeEngine() {
+        database = DatabaseConnection.getInstance();
+        // Jobs run one at a time; their pages fan out to the workers
+        coordinator = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "regrade-coordinator"));
+        workers = Executors.newFixedThreadPool(partitions, runnable -> daemon(runnable, "regrade-worker"));
+        resumeUnfinishedJobs();
+    }
+
+    public static synchronized RegradeEngine getInstance() {
+        if (instance == null) {
+            instance = new RegradeEngine();
+        }
+        return instance;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Records a re-grade job for the questions and starts it in the background.
+     * @return Job id for getProgress, or -1 if the job could not be recorded
+     */
+    public int scheduleRegrade(int... questionIds) {
+        StringBuilder ids = new StringBuilder();
+        for (int questionId : questionIds) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(questionId);
+        }
+        try (Connection connection = database.getConnection()) {
+            int jobId = SqlExecutor.insert(connection, SqlStatement.INSERT_REGRADE_JOB,
+                pstmt -> pstmt.setString(1, ids.toString()));
+            if (jobId > 0) {
+                submit(jobId);
+            }
+            return jobId;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Restarts jobs left PENDING or RUNNING by a previous process.
+     */
+    private void resumeUnfinishedJobs() {
+        try {
+            List<Integer> jobIds = database.query(SqlStatement.UNFINISHED_REGRADE_JOBS,
+                SqlExecutor.NO_PARAMETERS, rs -> rs.getInt("id"));
+            for (int jobId : jobIds) {
+                System.out.println("Resuming re-grade job " + jobId);
+                submit(jobId);
+            }
+        } catch (SQLException e) {
+            System.err.println("Could not look for unfinished re-grade jobs: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a recorded job, e.g. to retry one that FAILED.
+     */
+    public void submit(int jobId) {
+        coordinator.submit(() -> run(jobId));
+    }
+
+    /**
+     * @return Status, cursor and answer counts of the job, or an empty map
+     */
+    public Map<String, Object> getProgress(int jobId) {
+        try {
+            Map<String, Object> progress = database.queryForObject(SqlStatement.REGRADE_JOB,
+                pstmt -> pstmt.setInt(1, jobId), rs -> {
+                    Map<String, Object> row = new HashMap<>();
+                    row.put("jobId", rs.getInt("id"));
+                    row.put("questionIds", rs.getString("question_ids"));
+                    row.put("status", rs.getString("status"));
+                    row.put("totalAnswers", rs.getInt("total_answers"));
+                    row.put("processedAnswers", rs.getInt("processed_answers"));
+                    row.put("changedAnswers", rs.getInt("changed_answers"));
+                    row.put("updatedAt", rs.getTimestamp("updated_at"));
+                    return row;
+                });
+            return progress != null ? progress : new HashMap<>();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new HashMap<>();
+        }
+    }
+
+    private void run(int jobId) {
+        Job job = null;
+        try {
+            job = loadJob(jobId);
+            if (job == null || DONE.equals(job.status)) {
+                return;
+            }
+            job.status = RUNNING;
+            if (job.totalAnswers == 0) {
+                for (int questionId : job.questionIds) {
+                    Integer count = database.queryForObject(SqlStatement.COUNT_QUESTION_ANSWERS,
+                        pstmt -> pstmt.setInt(1, questionId), rs -> rs.getInt(1));
+                    job.totalAnswers += count != null ? count : 0;
+                }
+            }
+            saveJob(job);
+
+            long start = System.currentTimeMillis();
+            while (job.questionIndex < job.questionIds.length) {
+                regradeQuestion(job, job.questionIds[job.questionIndex]);
+                job.questionIndex++;
+                job.lastExamId = 0;
+                job.lastStudentId = 0;
+                saveJob(job);
+            }
+            job.status = DONE;
+            saveJob(job);
+            System.out.println(String.format("Re-grade job %d finished: %d answers checked, %d changed in %d ms",
+                job.id, job.processedAnswers, job.changedAnswers, System.currentTimeMillis() - start));
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Re-grade job " + jobId + " failed: " + e.getMessage());
+            e.printStackTrace();
+            if (job != null) {
+                job.status = FAILED;
+                try {
+                    saveJob(job);
+                } catch (SQLException ex) {
+                    System.err.println("Could not record failure of re-grade job " + jobId + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void regradeQuestion(Job job, int questionId) throws SQLException {
+        Map<Integer, Integer> examTotals = new HashMap<>();
+        Map<Integer, Question> examQuestions = new HashMap<>();
+
+        while (true) {
+            int lastExamId = job.lastExamId;
+            int lastStudentId = job.lastStudentId;
+            List<AnswerRow> page = database.query(SqlStatement.REGRADE_ANSWER_PAGE, pstmt -> {
+                pstmt.setInt(1, questionId);
+                pstmt.setInt(2, lastExamId);
+                pstmt.setInt(3, lastExamId);
+                pstmt.setInt(4, lastStudentId);
+                pstmt.setInt(5, pageSize);
+            }, rs -> new AnswerRow(rs.getInt("exam_id"), rs.getInt("student_id"),
+                rs.getInt("selected_option"), rs.getInt("marks_obtained")));
+            if (page.isEmpty()) {
+                return;
+            }
+
+            for (AnswerRow row : page) {
+                if (!examTotals.containsKey(row.examId)) {
+                    // The exam's paper holds its pinned version of the question and
+                    // the total marks used for percentages
+                    ExamPaper paper = ExamController.getInstance().getExamPaper(row.examId);
+                    examTotals.put(row.examId, paper.getTotalMarks());
+                    int index = paper.indexOf(questionId);
+                    examQuestions.put(row.examId, index >= 0 ? paper.getQuestions().get(index) : null);
+                }
+                Question question = examQuestions.get(row.examId);
+                if (question == null) {
+                    row.newMarks = row.oldMarks; // No longer on the exam's paper
+                } else {
+                    row.newMarks = row.selectedOption == question.getCorrectOption() ? question.getMarks() : 0;
+                }
+            }
+            job.changedAnswers += writePartitions(questionId, page, examTotals);
+
+            AnswerRow last = page.get(page.size() - 1);
+            job.lastExamId = last.examId;
+            job.lastStudentId = last.studentId;
+            job.processedAnswers += page.size();
+            saveJob(job);
+            System.out.println(String.format("Re-grade job %d: %d/%d answers", job.id,
+                job.processedAnswers, job.totalAnswers));
+
+            if (page.size() < pageSize) {
+                return;
+            }
+            pause();
+        }
+    }
+
+    /**
+     * Writes one page back in parallel partitions, each in its own transaction.
+     * @return Number of answers whose marks changed
+     */
+    private int writePartitions(int questionId, List<AnswerRow> page, Map<Integer, Integer> examTotals)
+            throws SQLException {
+        int partitionSize = (page.size() + partitions - 1) / partitions;
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int from = 0; from < page.size(); from += partitionSize) {
+            List<AnswerRow> partition = page.subList(from, Math.min(page.size(), from + partitionSize));
+            results.add(workers.submit(() -> writePartition(questionId, partition, examTotals)));
+        }
+        int changed = 0;
+        try {
+            for (Future<Integer> result : results) {
+                changed += result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Re-grade interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Re-grade partition failed", e.getCause());
+        }
+        return changed;
+    }
+
+    private int writePartition(int questionId, List<AnswerRow> partition, Map<Integer, Integer> examTotals)
+            throws SQLException {
+        List<AnswerRow> changed = new ArrayList<>();
+        for (AnswerRow row : partition) {
+            if (row.newMarks != row.oldMarks) {
+                changed.add(row);
+            }
+        }
+        try (Connection connection = database.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                SqlExecutor.batch(connection, SqlStatement.UPDATE_ANSWER_MARKS, changed, (pstmt, row, i) -> {
+                    pstmt.setInt(1, row.newMarks);
+                    pstmt.setInt(2, row.studentId);
+                    pstmt.setInt(3, row.examId);
+                    pstmt.setInt(4, questionId);
+                });
+                // Every result is rewritten: the exam total may have changed even
+                // where this student's marks did not
+                SqlExecutor.batch(connection, SqlStatement.ADJUST_RESULT, partition, (pstmt, row, i) -> {
+                    int delta = row.newMarks - row.oldMarks;
+                    pstmt.setInt(1, delta);
+                    pstmt.setInt(2, examTotals.get(row.examId));
+                    pstmt.setInt(3, delta);
+                    pstmt.setInt(4, row.studentId);
+                    pstmt.setInt(5, row.examId);
+                });
+                connection.commit();
+                return changed.size();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void pause() {
+        if (pauseMillis > 0) {
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Job loadJob(int jobId) throws SQLException {
+        return database.queryForObject(SqlStatement.REGRADE_JOB, pstmt -> pstmt.setInt(1, jobId), rs -> {
+            String[] parts = rs.getString("question_ids").split(",");
+            int[] questionIds = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                questionIds[i] = Integer.parseInt(parts[i].trim());
+            }
+            Job job = new Job(rs.getInt("id"), questionIds);
+            job.status = rs.getString("status");
+            job.questionIndex = rs.getInt("question_index");
+            job.lastExamId = rs.getInt("last_exam_id");
+            job.lastStudentId = rs.getInt("last_student_id");
+            job.totalAnswers = rs.getInt("total_answers");
+            job.processedAnswers = rs.getInt("processed_answers");
+            job.changedAnswers = rs.getInt("changed_answers");
+            return job;
+        });
+    }
+
+    private void saveJob(Job job) throws SQLException {
+        database.update(SqlStatement.UPDATE_REGRADE_JOB, pstmt -> {
+            pstmt.setString(1, job.status);
+            pstmt.setInt(2, job.questionIndex);
+            pstmt.setInt(3, job.lastExamId);
+            pstmt.setInt(4, job.lastStudentId);
+            pstmt.setInt(5, job.totalAnswers);
+            pstmt.setInt(6, job.processedAnswers);
+            pstmt.setInt(7, job.changedAnswers);
+            pstmt.setInt(8, job.id);
+        });
+    }
+}
@@ -0,0 +1,333 @@
+package controller;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import database.SubmissionJournal;
+import model.AnswerKey;
+import model.ExamPaper;
+import model.Question;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind path for exam submissions.
+ *
+ * A submission is acknowledged once its journal record is on disk, so a
+ * burst of students submitting at an exam deadline waits for a shared
+ * fsync rather than for a database transaction each. A single writer
+ * thread drains the queue in batches, grades each submission against its
+ * cached answer key and stores the answers and results of the whole batch
+ * in one transaction, then checkpoints the journal. Records still in the
+ * journal at startup are replayed, so an acknowledged submission survives
+ * a crash before it reached the database.
+ *
+ * If a batch fails, its submissions are retried one transaction each and
+ * any whose result already exists (a replay or a double submit) is
+ * skipped. While the database is unreachable the writer keeps the batch
+ * and retries; submissions that can never be stored are logged in full.
+ *
+ * Settings (system properties): submission.journal.dir (default
+ * data/submission-journal), submission.journal.segmentBytes (8 MB),
+ * submission.batchSize (200), submission.retryMs (1000).
+ */
+public class SubmissionQueue {
+    private final ExamController examController;
+    private final DatabaseConnection database;
+    private final SubmissionJournal journal;
+    private final int batchSize = Integer.getInteger("submission.batchSize", 200);
+    private final long retryMillis = Long.getLong("submission.retryMs", 1000);
+    private final Object appendLock = new Object();
+    private final Object commitLock = new Object();
+    private final LinkedBlockingQueue<SubmissionJournal.Record> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long committedSequence;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final int replayed;
+
+    /** A journaled submission graded against its paper. */
+    private static final class GradedSubmission {
+        final SubmissionJournal.Record record;
+        final ExamPaper paper;
+        final int[] marksObtained;
+        final int totalMarksObtained;
+
+        GradedSubmission(SubmissionJournal.Record record, ExamPaper paper, int[] marksObtained,
+                         int totalMarksObtained) {
+            this.record = record;
+            this.paper = paper;
+            this.marksObtained = marksObtained;
+            this.totalMarksObtained = totalMarksObtained;
+        }
+    }
+
+    SubmissionQueue(ExamController examController, DatabaseConnection database, SubmissionJournal journal) {
+        this.examController = examController;
+        this.database = database;
+        this.journal = journal;
+
+        List<SubmissionJournal.Record> unfinished = journal.recover();
+        replayed = unfinished.size();
+        if (replayed > 0) {
+            System.out.println("Replaying " + replayed + " journaled submissions");
+        }
+        pending.addAll(unfinished);
+
+        writer = new Thread(this::runWriter, "submission-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Journals a submission and waits until it is durable. The answer count
+     * must already have been checked against the paper.
+     * @throws IOException If the submission could not be journaled; it was
+     *                     not queued and the caller may store it directly
+     */
+    public void submit(int studentId, int examId, int[] answers) throws IOException {
+        SubmissionJournal.Record record;
+        // Queue order must match journal order for checkpoints to be exact
+        synchronized (appendLock) {
+            record = journal.append(studentId, examId, answers);
+            pending.add(record);
+        }
+        accepted.increment();
+        try {
+            journal.awaitDurable(record.getSequence());
+        } catch (IOException e) {
+            // Already queued, so the database becomes the durable copy
+            System.err.println("Journal sync failed, waiting for the database write: " + e.getMessage());
+            awaitCommitted(record.getSequence());
+        }
+    }
+
+    /**
+     * Stops the writer after it has stored everything queued so far.
+     */
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void awaitCommitted(long sequence) {
+        synchronized (commitLock) {
+            while (committedSequence < sequence) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void runWriter() {
+        List<SubmissionJournal.Record> batch = new ArrayList<>(batchSize);
+        while (running || !pending.isEmpty()) {
+            try {
+                SubmissionJournal.Record first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, batchSize - 1);
+                while (!writeBatch(batch)) {
+                    Thread.sleep(retryMillis);
+                }
+                long lastSequence = batch.get(batch.size() - 1).getSequence();
+                journal.checkpoint(lastSequence);
+                synchronized (commitLock) {
+                    committedSequence = lastSequence;
+                    commitLock.notifyAll();
+                }
+            } catch (InterruptedException e) {
+                // Unstored records stay in the journal for the next start
+                return;
+            } catch (IOException e) {
+                System.err.println("Submission journal checkpoint failed: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @return false if the database could not be reached, in which case
+     *         the whole batch should be retried later
+     */
+    private boolean writeBatch(List<SubmissionJournal.Record> batch) {
+        List<GradedSubmission> graded = new ArrayList<>(batch.size());
+        try {
+            for (SubmissionJournal.Record record : batch) {
+                GradedSubmission submission = grade(record);
+                if (submission != null) {
+                    graded.add(submission);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Submission writer cannot load exam papers: " + e.getMessage());
+            return false;
+        }
+        if (graded.isEmpty()) {
+            return true;
+        }
+
+        try (Connection connection = database.getConnection()) {
+            try {
+                connection.setAutoCommit(false);
+                insertSubmissions(connection, graded);
+                connection.commit();
+                stored.add(graded.size());
+                batches.increment();
+                return true;
+            } catch (SQLException e) {
+                rollback(connection, e);
+                if (!connection.isValid(2)) {
+                    throw e;
+                }
+                System.err.println("Group commit of " + graded.size() + " submissions failed ("
+                    + e.getMessage() + "), storing them one by one");
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            fallbacks.increment();
+            for (GradedSubmission submission : graded) {
+                storeSingle(connection, submission);
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Submission writer cannot reach the database: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return The graded submission, or null if it can never be stored
+     */
+    private GradedSubmission grade(SubmissionJournal.Record record) throws SQLException {
+        ExamPaper paper = examController.getExamPaper(record.getExamId());
+        AnswerKey answerKey = paper.getAnswerKey();
+        int[] answers = record.getAnswers();
+        if (answers.length != answerKey.getQuestionCount()) {
+            reject(record, "exam has " + answerKey.getQuestionCount() + " questions");
+            return null;
+        }
+        int[] marksObtained = new int[answers.length];
+        int totalMarksObtained = answerKey.grade(answers, marksObtained);
+        return new GradedSubmission(record, paper, marksObtained, totalMarksObtained);
+    }
+
+    private void storeSingle(Connection connection, GradedSubmission submission) throws SQLException {
+        SubmissionJournal.Record record = submission.record;
+        try {
+            Integer existing = SqlExecutor.queryForObject(connection, SqlStatement.COUNT_RESULT, pstmt -> {
+                pstmt.setInt(1, record.getStudentId());
+                pstmt.setInt(2, record.getExamId());
+            }, rs -> rs.getInt(1));
+            if (existing != null && existing > 0) {
+                duplicates.increment();
+                return;
+            }
+            connection.setAutoCommit(false);
+            insertSubmissions(connection, List.of(submission));
+            connection.commit();
+            stored.increment();
+        } catch (SQLException e) {
+            rollback(connection, e);
+            if (!connection.isValid(2)) {
+                throw e;
+            }
+            reject(record, e.getMessage());
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void insertSubmissions(Connection connection, List<GradedSubmission> submissions)
+            throws SQLException {
+        // One row per answer: student, exam, question, selected option, marks
+        List<int[]> answerRows = new ArrayList<>();
+        for (GradedSubmission submission : submissions) {
+            List<Question> questions = submission.paper.getQuestions();
+            int[] answers = submission.record.getAnswers();
+            for (int i = 0; i < answers.length; i++) {
+                answerRows.add(new int[] {submission.record.getStudentId(), submission.record.getExamId(),
+                    questions.get(i).getId(), answers[i], submission.marksObtained[i]});
+            }
+        }
+        SqlExecutor.insertRows(connection, SqlStatement.INSERT_ANSWER, answerRows, (pstmt, row, i, offset) -> {
+            for (int column = 0; column < row.length; column++) {
+                pstmt.setInt(offset + column + 1, row[column]);
+            }
+        });
+        SqlExecutor.insertRows(connection, SqlStatement.INSERT_RESULT, submissions,
+            (pstmt, submission, i, offset) -> {
+                int totalMarks = submission.paper.getTotalMarks();
+                pstmt.setInt(offset + 1, submission.record.getStudentId());
+                pstmt.setInt(offset + 2, submission.record.getExamId());
+                pstmt.setInt(offset + 3, submission.totalMarksObtained);
+                pstmt.setDouble(offset + 4,
+                    totalMarks == 0 ? 0.0 : (submission.totalMarksObtained * 100.0) / totalMarks);
+            });
+    }
+
+    private static void rollback(Connection connection, SQLException cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            cause.addSuppressed(ex);
+        }
+    }
+
+    private void reject(SubmissionJournal.Record record, String reason) {
+        rejected.increment();
+        System.err.println("Could not store journaled submission " + record.getSequence() + " (student "
+            + record.getStudentId() + ", exam " + record.getExamId() + ", answers "
+            + Arrays.toString(record.getAnswers()) + "): " + reason);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long batchCount = batches.sum();
+        long storedCount = stored.sum();
+        stats.put("accepted", accepted.sum());
+        stats.put("replayed", replayed);
+        stats.put("pending", pending.size());
+        stats.put("stored", storedCount);
+        stats.put("duplicates", duplicates.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("groupCommits", batchCount);
+        stats.put("fallbacks", fallbacks.sum());
+        stats.put("journalFsyncs", journal.getForceCount());
+        stats.put("durableSequence", journal.getDurableSequence());
+        synchronized (commitLock) {
+            stats.put("committedSequence", committedSequence);
+        }
+        return stats;
+    }
+}
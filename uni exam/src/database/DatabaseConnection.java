@@ -1,71 +1,302 @@
 package database;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import javax.sql.DataSource;
 import javax.swing.JOptionPane;
 
+/**
+ * Pooled access to the exam database.
+ * Callers borrow a connection per unit of work and close it when done,
+ * which hands it back to the pool instead of closing the socket.
+ * Settings are read from database.properties on the classpath and can be
+ * overridden with -Ddb.* system properties.
+ */
 public class DatabaseConnection {
     private static DatabaseConnection instance;
-    private Connection connection;
-    
-    // Database configuration
+    private HikariDataSource dataSource;
+    private HikariDataSource replicaDataSource;
+    private ReplicaRouter replicaRouter;
+    private int fetchSize;
+    private final PoolMetrics metrics = new PoolMetrics();
+
+    // Database configuration defaults
+    private static final String CONFIG_FILE = "database.properties";
     private static final String DB_URL = "jdbc:mysql://localhost:3306/exam_system";
     private static final String DB_USER = "root";
     private static final String DB_PASSWORD = "root"; // Change this to your MySQL password
-    
+
     private DatabaseConnection() {
+        Properties config = loadConfig();
         try {
-            // Load MySQL JDBC driver
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            
-            // Create the connection
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            
-            if (connection.isValid(5)) {
-                System.out.println("Database connection established successfully!");
+            dataSource = new HikariDataSource(buildPoolConfig(config));
+            fetchSize = Integer.parseInt(config.getProperty("db.fetchSize", "500"));
+            warmUp(Integer.parseInt(config.getProperty("db.pool.warmup", "0")));
+            System.out.println("Database connection pool started: " + dataSource.getPoolName());
+            if (Boolean.parseBoolean(config.getProperty("db.migrateOnStart", "false"))) {
+                migrate();
             }
-        } catch (ClassNotFoundException e) {
-            showError("MySQL JDBC Driver not found.\nPlease add the MySQL JDBC driver to your project.");
-            System.exit(1);
-        } catch (SQLException e) {
+            if (config.getProperty("db.replica.url") != null) {
+                startReplica(config);
+            }
+        } catch (RuntimeException e) {
             showError("Database connection failed!\nError: " + e.getMessage());
             System.exit(1);
         }
     }
-    
+
+    /**
+     * Creates a pool from explicit settings without touching the
+     * application-wide instance (used by tools and benchmarks).
+     * @param config Properties using the same db.* keys as database.properties
+     */
+    public static HikariDataSource createDataSource(Properties config) {
+        return new HikariDataSource(buildPoolConfig(config));
+    }
+
+    private static HikariConfig buildPoolConfig(Properties config) {
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName(config.getProperty("db.pool.name", "exam-pool"));
+        hikari.setJdbcUrl(config.getProperty("db.url", DB_URL));
+        hikari.setUsername(config.getProperty("db.user", DB_USER));
+        hikari.setPassword(config.getProperty("db.password", DB_PASSWORD));
+        String driver = config.getProperty("db.driver");
+        if (driver != null && !driver.isEmpty()) {
+            hikari.setDriverClassName(driver);
+        }
+        hikari.setMaximumPoolSize(Integer.parseInt(config.getProperty("db.pool.maxSize", "20")));
+        hikari.setMinimumIdle(Integer.parseInt(config.getProperty("db.pool.minIdle", "5")));
+        hikari.setConnectionTimeout(Long.parseLong(config.getProperty("db.pool.connectionTimeoutMs", "5000")));
+        hikari.setIdleTimeout(Long.parseLong(config.getProperty("db.pool.idleTimeoutMs", "600000")));
+        hikari.setMaxLifetime(Long.parseLong(config.getProperty("db.pool.maxLifetimeMs", "1800000")));
+        // Connections held longer than this are reported with the stack trace of the borrower
+        hikari.setLeakDetectionThreshold(Long.parseLong(config.getProperty("db.pool.leakDetectionMs", "30000")));
+        hikari.setRegisterMbeans(true);
+        if (hikari.getJdbcUrl().startsWith("jdbc:mysql:")) {
+            // Let the driver keep prepared statements open per pooled connection,
+            // keyed by SQL text (see SqlStatement)
+            hikari.addDataSourceProperty("useServerPrepStmts", "true");
+            hikari.addDataSourceProperty("cachePrepStmts", "true");
+            hikari.addDataSourceProperty("prepStmtCacheSize", config.getProperty("db.prepStmtCacheSize", "250"));
+            hikari.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            // Without it the driver reads every row of a result before returning
+            // the first one, whatever fetch size the statement asks for
+            hikari.addDataSourceProperty("useCursorFetch", "true");
+        }
+        return hikari;
+    }
+
+    private void migrate() {
+        try {
+            new MigrationRunner(dataSource).migrate();
+        } catch (SQLException e) {
+            System.err.println("Schema migration failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens a read-only pool against the replica. db.replica.* keys override
+     * the primary settings, so only db.replica.url is required.
+     */
+    private void startReplica(Properties config) {
+        Properties replicaConfig = new Properties();
+        replicaConfig.putAll(config);
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith("db.replica.")) {
+                replicaConfig.setProperty("db." + key.substring("db.replica.".length()), config.getProperty(key));
+            }
+        }
+        replicaConfig.setProperty("db.pool.name", "exam-replica-pool");
+        try {
+            HikariConfig hikari = buildPoolConfig(replicaConfig);
+            hikari.setReadOnly(true);
+            // A missing replica must not stop the application; reads fall back to the primary
+            hikari.setInitializationFailTimeout(-1);
+            replicaDataSource = new HikariDataSource(hikari);
+
+            String lagQuery = config.getProperty("db.replica.lagQuery");
+            replicaRouter = new ReplicaRouter(replicaDataSource,
+                Long.parseLong(config.getProperty("db.replica.maxLagSeconds", "5")),
+                Long.parseLong(config.getProperty("db.replica.lagCheckIntervalMs", "2000")),
+                lagQuery != null ? ReplicaRouter.queryProbe(lagQuery) : ReplicaRouter.MYSQL_REPLICA_STATUS);
+            System.out.println("Read replica pool started: " + replicaDataSource.getJdbcUrl());
+        } catch (RuntimeException e) {
+            System.err.println("Read replica disabled: " + e.getMessage());
+        }
+    }
+
+    private static Properties loadConfig() {
+        Properties config = new Properties();
+        try (InputStream in = DatabaseConnection.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (in != null) {
+                config.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + CONFIG_FILE + ": " + e.getMessage());
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("db.")) {
+                config.setProperty(key, System.getProperty(key));
+            }
+        }
+        return config;
+    }
+
+    /**
+     * Opens the requested number of physical connections up front so the
+     * first wave of logins does not pay for the TCP and auth handshake.
+     */
+    private void warmUp(int connections) {
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                borrowed.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            System.err.println("Pool warm-up stopped early: " + e.getMessage());
+        } finally {
+            for (Connection conn : borrowed) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    System.err.println("Error returning connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool. Always use try-with-resources;
+     * closing the connection returns it to the pool.
+     */
     public Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            try {
-                connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            } catch (SQLException e) {
-                showError("Failed to get database connection!\nError: " + e.getMessage());
-                throw e;
+        long start = System.nanoTime();
+        try {
+            Connection conn = dataSource.getConnection();
+            metrics.recordAcquire(System.nanoTime() - start, getPoolMXBean().getThreadsAwaitingConnection());
+            return conn;
+        } catch (SQLException e) {
+            metrics.recordTimeout();
+            System.err.println("Failed to get database connection!\nError: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a connection for read-only analytics. Served by the replica
+     * when one is configured and within the lag threshold, otherwise by the
+     * primary. Never use it for writes or for reads that must observe the
+     * caller's own recent writes.
+     */
+    public Connection getReadOnlyConnection() throws SQLException {
+        if (replicaRouter != null) {
+            Connection replica = replicaRouter.getReplicaConnection();
+            if (replica != null) {
+                return replica;
             }
         }
-        return connection;
+        return getConnection();
+    }
+
+    /**
+     * Runs a registered query on a connection borrowed for this call only.
+     */
+    public <T> List<T> query(SqlStatement statement, SqlExecutor.Binder binder,
+                             SqlExecutor.RowMapper<T> mapper) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return SqlExecutor.query(conn, statement, binder, mapper);
+        }
+    }
+
+    /**
+     * Same as query, but may be served by the read replica.
+     */
+    public <T> List<T> queryReadOnly(SqlStatement statement, SqlExecutor.Binder binder,
+                                     SqlExecutor.RowMapper<T> mapper) throws SQLException {
+        try (Connection conn = getReadOnlyConnection()) {
+            return SqlExecutor.query(conn, statement, binder, mapper);
+        }
+    }
+
+    public <T> T queryForObject(SqlStatement statement, SqlExecutor.Binder binder,
+                                SqlExecutor.RowMapper<T> mapper) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return SqlExecutor.queryForObject(conn, statement, binder, mapper);
+        }
     }
-    
-    public static DatabaseConnection getInstance() {
+
+    public int update(SqlStatement statement, SqlExecutor.Binder binder) throws SQLException {
+        try (Connection conn = getConnection()) {
+            return SqlExecutor.update(conn, statement, binder);
+        }
+    }
+
+    /**
+     * @return Rows per round trip for streamed queries (db.fetchSize)
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public static synchronized DatabaseConnection getInstance() {
         if (instance == null) {
             instance = new DatabaseConnection();
         }
         return instance;
     }
-    
+
+    private HikariPoolMXBean getPoolMXBean() {
+        return dataSource.getHikariPoolMXBean();
+    }
+
+    /**
+     * Snapshot of pool usage for monitoring dashboards.
+     * @return Map of active/idle/total connections, waiting threads,
+     *         saturation and acquisition statistics
+     */
+    public Map<String, Object> getPoolStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        HikariPoolMXBean pool = getPoolMXBean();
+        int active = pool.getActiveConnections();
+        stats.put("activeConnections", active);
+        stats.put("idleConnections", pool.getIdleConnections());
+        stats.put("totalConnections", pool.getTotalConnections());
+        stats.put("threadsAwaitingConnection", pool.getThreadsAwaitingConnection());
+        stats.put("maximumPoolSize", dataSource.getMaximumPoolSize());
+        stats.put("saturation", (double) active / dataSource.getMaximumPoolSize() * 100);
+        stats.putAll(metrics.snapshot());
+        if (replicaRouter != null) {
+            stats.putAll(replicaRouter.getStatistics());
+        }
+        return stats;
+    }
+
     private void showError(String message) {
         System.err.println(message);
         JOptionPane.showMessageDialog(null, message, "Database Error", JOptionPane.ERROR_MESSAGE);
     }
-    
+
     public void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("Database connection closed successfully!");
-            } catch (SQLException e) {
-                System.err.println("Error closing connection: " + e.getMessage());
-            }
+        if (replicaDataSource != null && !replicaDataSource.isClosed()) {
+            replicaDataSource.close();
+        }
+        if (dataSource != null && !dataSource.isClosed()) {
+            dataSource.close();
+            System.out.println("Database connection pool closed successfully!");
         }
     }
 }
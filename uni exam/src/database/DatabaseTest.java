@@ -9,13 +9,10 @@ public class DatabaseTest {
     public static void main(String[] args) {
         System.out.println("Testing database connection...");
         
-        DatabaseConnection dbConnection = null;
-        Connection conn = null;
-        
-        try {
-            // Get database connection
-            dbConnection = DatabaseConnection.getInstance();
-            conn = dbConnection.getConnection();
+        // Get database connection
+        DatabaseConnection dbConnection = DatabaseConnection.getInstance();
+
+        try (Connection conn = dbConnection.getConnection()) {
             System.out.println("Connected successfully!");
             
             // Test if connection is valid
@@ -30,15 +27,15 @@ public class DatabaseTest {
                     }
                 }
             }
+            System.out.println("Pool statistics: " + dbConnection.getPoolStatistics());
+            System.out.println("Statement statistics: " + SqlStatement.getStatistics());
             
         } catch (SQLException e) {
             System.err.println("Database connection failed!");
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         } finally {
-            if (dbConnection != null) {
-                dbConnection.closeConnection();
-            }
+            dbConnection.closeConnection();
         }
     }
 }
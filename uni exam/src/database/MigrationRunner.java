@@ -0,0 +1,202 @@
+package database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import javax.sql.DataSource;
+
+/**
+ * Applies the versioned scripts under db/migration in order and records
+ * each one in schema_version, so every install converges on the same
+ * schema and indexes.
+ *
+ * Usage: java database.MigrationRunner [migrate|explain|all]
+ */
+public class MigrationRunner {
+    private static final String MIGRATION_PATH = "db/migration/";
+
+    // Applied in this order; append new scripts, never edit applied ones
+    private static final String[] MIGRATIONS = {
+        "V1__core_schema.sql",
+        "V2__audit_tables.sql",
+        "V3__hot_path_indexes.sql",
+        "V4__regrade_jobs.sql",
+        "V5__exam_attempts.sql",
+        "V6__attempt_deadlines.sql",
+        "V7__question_keyset.sql",
+        "V8__question_similarity_flags.sql",
+        "V9__exam_variants.sql",
+        "V10__question_versions.sql"
+    };
+
+    // "Already exists" errors (MySQL, then H2) raised when adopting a
+    // database that was created by hand from database.sql
+    private static final Set<Integer> ALREADY_APPLIED_ERRORS = new HashSet<>(Arrays.asList(
+        1050, 1060, 1061, 42101, 42111, 42121
+    ));
+
+    private final DataSource dataSource;
+
+    public MigrationRunner(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Applies every migration newer than the recorded schema version.
+     * @return Number of migrations applied
+     */
+    public int migrate() throws SQLException {
+        int applied = 0;
+        try (Connection conn = dataSource.getConnection()) {
+            createVersionTable(conn);
+            Map<Integer, Long> installed = loadInstalledVersions(conn);
+
+            for (String script : MIGRATIONS) {
+                int version = versionOf(script);
+                String sql = readScript(script);
+                long checksum = checksum(sql);
+
+                if (installed.containsKey(version)) {
+                    if (installed.get(version) != checksum) {
+                        System.err.println("Warning: " + script + " changed after it was applied");
+                    }
+                    continue;
+                }
+
+                long start = System.currentTimeMillis();
+                for (String statement : splitStatements(sql)) {
+                    execute(conn, statement);
+                }
+                recordVersion(conn, version, script, checksum, System.currentTimeMillis() - start);
+                System.out.println("Applied migration " + script);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private void createVersionTable(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                         "version INT PRIMARY KEY, " +
+                         "script VARCHAR(200) NOT NULL, " +
+                         "checksum BIGINT NOT NULL, " +
+                         "execution_ms BIGINT NOT NULL, " +
+                         "installed_on TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private Map<Integer, Long> loadInstalledVersions(Connection conn) throws SQLException {
+        Map<Integer, Long> installed = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                installed.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+        }
+        return installed;
+    }
+
+    private void recordVersion(Connection conn, int version, String script, long checksum, long millis)
+            throws SQLException {
+        String sql = "INSERT INTO schema_version (version, script, checksum, execution_ms) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, version);
+            stmt.setString(2, script);
+            stmt.setLong(3, checksum);
+            stmt.setLong(4, millis);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void execute(Connection conn, String statement) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(statement);
+        } catch (SQLException e) {
+            if (!ALREADY_APPLIED_ERRORS.contains(e.getErrorCode())) {
+                throw e;
+            }
+            System.out.println("Skipping, already present: " + e.getMessage());
+        }
+    }
+
+    static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static String readScript(String script) throws SQLException {
+        try (InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + script)) {
+            if (in == null) {
+                throw new SQLException("Migration script not found on classpath: " + script);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            in.transferTo(out);
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Could not read migration " + script, e);
+        }
+    }
+
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    /**
+     * Splits a script on semicolons that end a line, dropping -- comments.
+     */
+    static List<String> splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : sql.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String statement = current.toString().trim();
+                statements.add(statement.substring(0, statement.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    public static void main(String[] args) {
+        String command = args.length > 0 ? args[0] : "all";
+        DatabaseConnection database = DatabaseConnection.getInstance();
+        try {
+            if (command.equals("migrate") || command.equals("all")) {
+                int applied = new MigrationRunner(database.getDataSource()).migrate();
+                System.out.println(applied + " migration(s) applied");
+            }
+            if (command.equals("explain") || command.equals("all")) {
+                new QueryPlanReport(database.getDataSource()).print(System.out);
+            }
+        } catch (SQLException e) {
+            System.err.println("Migration failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            database.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package database;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing how hard the connection pool is being pushed.
+ * A growing peak of waiting threads or any timeouts means the pool
+ * is the bottleneck and db.pool.maxSize should be raised.
+ */
+public class PoolMetrics {
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalAcquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final AtomicLong peakWaitingThreads = new AtomicLong();
+
+    void recordAcquire(long nanos, int waitingThreads) {
+        acquisitions.increment();
+        totalAcquireNanos.add(nanos);
+        maxAcquireNanos.accumulateAndGet(nanos, Math::max);
+        peakWaitingThreads.accumulateAndGet(waitingThreads, Math::max);
+    }
+
+    void recordTimeout() {
+        timeouts.increment();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        long count = acquisitions.sum();
+        stats.put("acquisitions", count);
+        stats.put("acquireTimeouts", timeouts.sum());
+        stats.put("averageAcquireMillis", count == 0 ? 0.0 : totalAcquireNanos.sum() / (double) count / 1_000_000);
+        stats.put("maxAcquireMillis", maxAcquireNanos.get() / 1_000_000.0);
+        stats.put("peakThreadsAwaiting", peakWaitingThreads.get());
+        return stats;
+    }
+}
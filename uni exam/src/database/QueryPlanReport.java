@@ -0,0 +1,148 @@
+package database;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
+/**
+ * Runs EXPLAIN for every registered SELECT and reports, per table, which
+ * index the optimizer picked. Any table read with a full scan is flagged.
+ * Note that on nearly empty tables MySQL may prefer a scan even when a
+ * suitable index exists, so run the report against realistic data.
+ */
+public class QueryPlanReport {
+    // Representative parameter values for each query
+    private static final Map<SqlStatement, Object[]> SAMPLE_PARAMETERS = new EnumMap<>(SqlStatement.class);
+
+    static {
+        SAMPLE_PARAMETERS.put(SqlStatement.LOGIN, new Object[] {"admin", "admin123"});
+        SAMPLE_PARAMETERS.put(SqlStatement.AVAILABLE_EXAMS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.UPCOMING_EXAM_STARTS,
+            new Object[] {new Timestamp(System.currentTimeMillis() + 15 * 60_000L)});
+        SAMPLE_PARAMETERS.put(SqlStatement.EXAM_QUESTIONS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.EXAMS_TO_ADOPT,
+            new Object[] {1, new Timestamp(System.currentTimeMillis())});
+        SAMPLE_PARAMETERS.put(SqlStatement.EXAM_QUESTION_VERSION, new Object[] {1, 1});
+        SAMPLE_PARAMETERS.put(SqlStatement.COUNT_RESULT, new Object[] {1, 1});
+        SAMPLE_PARAMETERS.put(SqlStatement.EXAM_WINDOW, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.VARIANT_STUDENT, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.ATTEMPT_STATUS, new Object[] {1, 1});
+        SAMPLE_PARAMETERS.put(SqlStatement.OPEN_ATTEMPT_DEADLINES, new Object[] {});
+        SAMPLE_PARAMETERS.put(SqlStatement.ATTEMPT_ANSWERS, new Object[] {1, 1});
+        SAMPLE_PARAMETERS.put(SqlStatement.COUNT_QUESTION_USAGE, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTIONS_BY_SUBJECT, new Object[] {"Mathematics"});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTIONS_BY_SUBJECT_PAGE, new Object[] {"Mathematics", 0, 51});
+        SAMPLE_PARAMETERS.put(SqlStatement.SEARCH_QUESTIONS, new Object[] {"%math%", "%math%"});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTION_SEARCH_TEXT, new Object[] {});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTION_CONTENT, new Object[] {});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTION_STORE, new Object[] {});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTION_POOLS, new Object[] {});
+        SAMPLE_PARAMETERS.put(SqlStatement.SIMILARITY_FLAGS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTIONS_BY_IDS, Collections.nCopies(50, 1).toArray());
+        SAMPLE_PARAMETERS.put(SqlStatement.STUDENT_RESULTS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.EXAM_STATISTICS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.EXAM_QUESTION_ANALYSIS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.EXAM_DISTRIBUTION, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.TOP_PERFORMERS, new Object[] {1, 10});
+        SAMPLE_PARAMETERS.put(SqlStatement.STUDENT_TREND, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.STUDENT_STRENGTHS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.STUDENT_TIME_USAGE, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.STUDENT_SCORE_HISTORY, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTION_KEY, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.LOCK_QUESTION_VERSION, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.QUESTION_VERSION, new Object[] {1, 1, 1, 1});
+        SAMPLE_PARAMETERS.put(SqlStatement.COUNT_QUESTION_ANSWERS, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.REGRADE_ANSWER_PAGE, new Object[] {1, 0, 0, 0, 500});
+        SAMPLE_PARAMETERS.put(SqlStatement.REGRADE_JOB, new Object[] {1});
+        SAMPLE_PARAMETERS.put(SqlStatement.UNFINISHED_REGRADE_JOBS, new Object[] {});
+    }
+
+    private final DataSource dataSource;
+
+    public QueryPlanReport(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Prints one line per table access and a summary of flagged queries.
+     * @return Names of the statements that needed a full table scan
+     */
+    public List<String> print(PrintStream out) throws SQLException {
+        List<String> fullScans = new ArrayList<>();
+        out.println(String.format("%-24s %-22s %-8s %-32s %s", "STATEMENT", "TABLE", "TYPE", "KEY", "ROWS"));
+        try (Connection conn = dataSource.getConnection()) {
+            for (SqlStatement statement : SqlStatement.values()) {
+                if (!statement.getSql().startsWith("SELECT")) {
+                    continue;
+                }
+                Object[] params = SAMPLE_PARAMETERS.get(statement);
+                if (params == null) {
+                    out.println(String.format("%-24s (no sample parameters, skipped)", statement.name()));
+                    continue;
+                }
+                if (explain(conn, statement, params, out)) {
+                    fullScans.add(statement.name());
+                }
+            }
+        }
+        out.println();
+        if (fullScans.isEmpty()) {
+            out.println("All registered queries are served by an index.");
+        } else {
+            out.println("Full table scans in: " + String.join(", ", fullScans));
+        }
+        return fullScans;
+    }
+
+    private boolean explain(Connection conn, SqlStatement statement, Object[] params, PrintStream out)
+            throws SQLException {
+        boolean fullScan = false;
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + statement.getSql())) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!hasColumn(rs.getMetaData(), "type")) {
+                    // Non-MySQL engines return the plan as text
+                    while (rs.next()) {
+                        String plan = rs.getString(1);
+                        boolean scan = plan.contains("tableScan");
+                        fullScan |= scan;
+                        out.println(String.format("%-24s %s", statement.name(),
+                            scan ? "FULL SCAN" : "index") + "  " + plan.replaceAll("\\s+", " "));
+                    }
+                    return fullScan;
+                }
+                while (rs.next()) {
+                    String type = rs.getString("type");
+                    String key = rs.getString("key");
+                    boolean scan = "ALL".equals(type);
+                    fullScan |= scan;
+                    out.println(String.format("%-24s %-22s %-8s %-32s %s%s", statement.name(),
+                        rs.getString("table"), type, key == null ? "-" : key, rs.getString("rows"),
+                        scan ? "   <-- FULL SCAN" : ""));
+                }
+            }
+        }
+        return fullScan;
+    }
+
+    private static boolean hasColumn(ResultSetMetaData meta, String column) throws SQLException {
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (column.equalsIgnoreCase(meta.getColumnLabel(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,121 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.sql.DataSource;
+
+/**
+ * Decides whether read-only work may run on the replica.
+ * Replication lag is sampled at most once per check interval; while the
+ * replica is unreachable or further behind than the threshold, callers
+ * get null and fall back to the primary.
+ */
+public class ReplicaRouter {
+
+    /**
+     * Reports how many seconds the replica is behind the primary.
+     * Return a negative value when replication is broken.
+     */
+    @FunctionalInterface
+    public interface LagProbe {
+        long secondsBehind(Connection replica) throws SQLException;
+    }
+
+    /** Reads Seconds_Behind_Source from SHOW REPLICA STATUS (MySQL 8.0.22+). */
+    public static final LagProbe MYSQL_REPLICA_STATUS = replica -> {
+        try (Statement stmt = replica.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+            if (!rs.next()) {
+                return 0; // Not configured as a replica, nothing to lag behind
+            }
+            long lag = rs.getLong("Seconds_Behind_Source");
+            return rs.wasNull() ? -1 : lag;
+        }
+    };
+
+    private final DataSource replica;
+    private final long maxLagSeconds;
+    private final long checkIntervalMillis;
+    private final LagProbe lagProbe;
+
+    private volatile boolean replicaUsable;
+    private volatile long lastCheckMillis;
+    private volatile long lastLagSeconds = -1;
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryFallbacks = new LongAdder();
+
+    public ReplicaRouter(DataSource replica, long maxLagSeconds, long checkIntervalMillis, LagProbe lagProbe) {
+        this.replica = replica;
+        this.maxLagSeconds = maxLagSeconds;
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.lagProbe = lagProbe;
+    }
+
+    /**
+     * Builds a probe from a query returning the lag in seconds as its
+     * first column, e.g. a heartbeat-table query or a fixed value in tests.
+     */
+    public static LagProbe queryProbe(String lagQuery) {
+        return replica -> {
+            try (Statement stmt = replica.createStatement();
+                 ResultSet rs = stmt.executeQuery(lagQuery)) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        };
+    }
+
+    /**
+     * @return A replica connection, or null when reads must go to the primary
+     */
+    public Connection getReplicaConnection() {
+        if (isReplicaUsable()) {
+            try {
+                Connection conn = replica.getConnection();
+                replicaReads.increment();
+                return conn;
+            } catch (SQLException e) {
+                System.err.println("Replica unavailable, reading from primary: " + e.getMessage());
+                replicaUsable = false;
+            }
+        }
+        primaryFallbacks.increment();
+        return null;
+    }
+
+    public boolean isReplicaUsable() {
+        if (System.currentTimeMillis() - lastCheckMillis >= checkIntervalMillis) {
+            checkLag();
+        }
+        return replicaUsable;
+    }
+
+    private synchronized void checkLag() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheckMillis < checkIntervalMillis) {
+            return; // Another thread refreshed it while we waited
+        }
+        try (Connection conn = replica.getConnection()) {
+            lastLagSeconds = lagProbe.secondsBehind(conn);
+            replicaUsable = lastLagSeconds >= 0 && lastLagSeconds <= maxLagSeconds;
+        } catch (SQLException e) {
+            lastLagSeconds = -1;
+            replicaUsable = false;
+        }
+        lastCheckMillis = now;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("replicaUsable", replicaUsable);
+        stats.put("replicaLagSeconds", lastLagSeconds);
+        stats.put("maxLagSeconds", maxLagSeconds);
+        stats.put("replicaReads", replicaReads.sum());
+        stats.put("primaryFallbacks", primaryFallbacks.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,318 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs registered statements on a caller-supplied connection.
+ * Statements and result sets are always closed here, so callers only
+ * bind parameters and map rows.
+ */
+public final class SqlExecutor {
+
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface RowHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface BatchBinder<T> {
+        void bind(PreparedStatement stmt, T item, int index) throws SQLException;
+    }
+
+    /** Binds one row of a multi-row INSERT; its first placeholder is offset + 1. */
+    @FunctionalInterface
+    public interface RowBinder<T> {
+        void bind(PreparedStatement stmt, T item, int index, int offset) throws SQLException;
+    }
+
+    public static final Binder NO_PARAMETERS = stmt -> { };
+
+    // Prepared statements accept at most 65535 placeholders on MySQL
+    private static final int MAX_PARAMETERS = 65535;
+    private static final int ESTIMATED_BYTES_PER_PARAMETER = 24;
+    private static final int MAX_ROWS = Integer.getInteger("db.insert.maxRows", 1000);
+    private static volatile long maxPacketBytes;
+
+    private SqlExecutor() {}
+
+    public static <T> List<T> query(Connection connection, SqlStatement statement,
+                                    Binder binder, RowMapper<T> mapper) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = connection.prepareStatement(statement.getSql())) {
+            binder.bind(stmt);
+            List<T> rows = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+            failed = false;
+            return rows;
+        } finally {
+            statement.recordExecution(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Passes each row to the handler without collecting them into a list.
+     */
+    public static void forEach(Connection connection, SqlStatement statement,
+                               Binder binder, RowHandler handler) throws SQLException {
+        forEach(connection, statement, 0, binder, handler);
+    }
+
+    /**
+     * Same as forEach, but asks the driver to fetch fetchSize rows per
+     * round trip instead of buffering the whole result. MySQL honours it
+     * only with useCursorFetch=true (see DatabaseConnection).
+     * @param fetchSize Rows per round trip, or 0 for the driver default
+     */
+    public static void forEach(Connection connection, SqlStatement statement, int fetchSize,
+                               Binder binder, RowHandler handler) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = connection.prepareStatement(statement.getSql())) {
+            if (fetchSize > 0) {
+                stmt.setFetchSize(fetchSize);
+            }
+            binder.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.handle(rs);
+                }
+            }
+            failed = false;
+        } finally {
+            statement.recordExecution(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * @return The first mapped row, or null when the query returns nothing
+     */
+    public static <T> T queryForObject(Connection connection, SqlStatement statement,
+                                       Binder binder, RowMapper<T> mapper) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = connection.prepareStatement(statement.getSql())) {
+            binder.bind(stmt);
+            T row = null;
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    row = mapper.map(rs);
+                }
+            }
+            failed = false;
+            return row;
+        } finally {
+            statement.recordExecution(System.nanoTime() - start, failed);
+        }
+    }
+
+    public static int update(Connection connection, SqlStatement statement, Binder binder) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = connection.prepareStatement(statement.getSql())) {
+            binder.bind(stmt);
+            int rows = stmt.executeUpdate();
+            failed = false;
+            return rows;
+        } finally {
+            statement.recordExecution(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Executes an INSERT and returns the generated key.
+     * @return The generated id, or -1 when no row was inserted
+     */
+    public static int insert(Connection connection, SqlStatement statement, Binder binder) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = connection.prepareStatement(statement.getSql(), Statement.RETURN_GENERATED_KEYS)) {
+            binder.bind(stmt);
+            int key = -1;
+            if (stmt.executeUpdate() > 0) {
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        key = keys.getInt(1);
+                    }
+                }
+            }
+            failed = false;
+            return key;
+        } finally {
+            statement.recordExecution(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Binds every item as one batch entry and executes the batch in a single call.
+     */
+    public static <T> int[] batch(Connection connection, SqlStatement statement, List<T> items,
+                                  BatchBinder<T> binder) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try (PreparedStatement stmt = connection.prepareStatement(statement.getSql())) {
+            for (int i = 0; i < items.size(); i++) {
+                binder.bind(stmt, items.get(i), i);
+                stmt.addBatch();
+            }
+            int[] results = stmt.executeBatch();
+            failed = false;
+            return results;
+        } finally {
+            statement.recordExecution(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Inserts the items with multi-row INSERT statements, so a MySQL server
+     * receives a few statements instead of one round trip per row.
+     * @see #insertRows(Connection, SqlStatement, List, int, RowBinder)
+     * @return Total update count
+     */
+    public static <T> int insertRows(Connection connection, SqlStatement statement, List<T> items,
+                                     RowBinder<T> binder) throws SQLException {
+        int rowBytes = statement.getValuesRowLength() + 2
+            + statement.getParametersPerRow() * ESTIMATED_BYTES_PER_PARAMETER;
+        return insertRows(connection, statement, items, rowBytes, binder);
+    }
+
+    /**
+     * Inserts the items with multi-row INSERT statements. Rows per statement
+     * are capped by db.insert.maxRows, the placeholder limit and half the
+     * server's max_allowed_packet. Full-size statements reuse one prepared
+     * statement, and the remainder is split into power-of-two sizes so only
+     * a few distinct texts ever reach the statement cache. Statements that
+     * are not INSERT ... VALUES, and any chunk the server rejects as too
+     * large, fall back to an ordinary batch.
+     * @param rowBytes Estimated size of one row once bound; pass a larger
+     *                 value than the default for rows carrying long text
+     * @return Total update count
+     */
+    public static <T> int insertRows(Connection connection, SqlStatement statement, List<T> items,
+                                     int rowBytes, RowBinder<T> binder) throws SQLException {
+        int parameters = statement.getParametersPerRow();
+        if (parameters == 0) {
+            return batchRows(connection, statement, items, 0, items.size(), binder);
+        }
+        long packetBudget = maxPacketBytes(connection) / 2;
+        int rowsPerStatement = (int) Math.max(1, Math.min(Math.min(MAX_ROWS, MAX_PARAMETERS / parameters),
+            (packetBudget - statement.getSql().length()) / Math.max(1, rowBytes)));
+
+        int total = 0;
+        int from = 0;
+        if (items.size() >= rowsPerStatement && rowsPerStatement > 1) {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try (PreparedStatement stmt = connection.prepareStatement(statement.getMultiRowSql(rowsPerStatement))) {
+                for (; from + rowsPerStatement <= items.size(); from += rowsPerStatement) {
+                    total += executeRows(stmt, items, from, rowsPerStatement, parameters, binder);
+                }
+                failed = false;
+            } catch (SQLException e) {
+                if (!isPacketTooLarge(e)) {
+                    throw e;
+                }
+                // Everything from the rejected chunk on goes row by row
+                failed = false;
+                return total + batchRows(connection, statement, items, from, items.size(), binder);
+            } finally {
+                statement.recordExecution(System.nanoTime() - start, failed);
+            }
+        }
+        while (from < items.size()) {
+            int rows = Integer.highestOneBit(Math.min(items.size() - from, rowsPerStatement));
+            if (rows == 1) {
+                total += batchRows(connection, statement, items, from, items.size(), binder);
+                break;
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try (PreparedStatement stmt = connection.prepareStatement(statement.getMultiRowSql(rows))) {
+                total += executeRows(stmt, items, from, rows, parameters, binder);
+                failed = false;
+            } catch (SQLException e) {
+                if (!isPacketTooLarge(e)) {
+                    throw e;
+                }
+                failed = false;
+                return total + batchRows(connection, statement, items, from, items.size(), binder);
+            } finally {
+                statement.recordExecution(System.nanoTime() - start, failed);
+            }
+            from += rows;
+        }
+        return total;
+    }
+
+    private static <T> int executeRows(PreparedStatement stmt, List<T> items, int from, int rows, int parameters,
+                                       RowBinder<T> binder) throws SQLException {
+        for (int r = 0; r < rows; r++) {
+            binder.bind(stmt, items.get(from + r), from + r, r * parameters);
+        }
+        return stmt.executeUpdate();
+    }
+
+    private static <T> int batchRows(Connection connection, SqlStatement statement, List<T> items, int from, int to,
+                                     RowBinder<T> binder) throws SQLException {
+        if (from >= to) {
+            return 0;
+        }
+        int[] results = batch(connection, statement, items.subList(from, to),
+            (stmt, item, i) -> binder.bind(stmt, item, from + i, 0));
+        int total = 0;
+        for (int result : results) {
+            total += result == Statement.SUCCESS_NO_INFO ? 1 : Math.max(result, 0);
+        }
+        return total;
+    }
+
+    private static boolean isPacketTooLarge(SQLException e) {
+        // ER_NET_PACKET_TOO_LARGE from the server, or Connector/J's client-side check
+        return e.getErrorCode() == 1153 || e.getClass().getSimpleName().equals("PacketTooBigException");
+    }
+
+    /**
+     * @return db.maxPacketBytes if set, max_allowed_packet on MySQL,
+     *         otherwise 4 MB; looked up once
+     */
+    private static long maxPacketBytes(Connection connection) throws SQLException {
+        long bytes = maxPacketBytes;
+        if (bytes > 0) {
+            return bytes;
+        }
+        bytes = Long.getLong("db.maxPacketBytes", 0);
+        if (bytes <= 0 && connection.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql")) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT @@max_allowed_packet")) {
+                if (rs.next()) {
+                    bytes = rs.getLong(1);
+                }
+            }
+        }
+        if (bytes <= 0) {
+            bytes = 4L * 1024 * 1024;
+        }
+        maxPacketBytes = bytes;
+        return bytes;
+    }
+}
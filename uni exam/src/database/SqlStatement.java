@@ -0,0 +1,317 @@
+package database;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of every SQL statement the application runs.
+ * Declaring each query once keeps the text byte-for-byte identical between
+ * calls, so the driver's per-connection prepared statement cache can reuse
+ * the server-side statement instead of parsing it again.
+ */
+public enum SqlStatement {
+    // Users
+    LOGIN("SELECT * FROM users WHERE username = ? AND password = ?"),
+    INSERT_USER("INSERT INTO users (username, password, role, full_name, email) VALUES (?, ?, ?, ?, ?)"),
+
+    // Exams
+    INSERT_EXAM("INSERT INTO exams (title, subject, start_time, duration, total_marks, created_by) " +
+                "VALUES (?, ?, ?, ?, ?, ?)"),
+    INSERT_EXAM_QUESTION("INSERT INTO exam_questions (exam_id, question_id, question_number) VALUES (?, ?, ?)"),
+    INSERT_EXAM_VARIANT("INSERT INTO exam_variants (exam_id, student_id) VALUES (?, ?)"),
+    // A per-student variant is only listed to the student it was drawn for
+    AVAILABLE_EXAMS("SELECT e.* FROM exams e LEFT JOIN exam_variants v ON v.exam_id = e.id " +
+                    "WHERE e.start_time > NOW() AND e.is_active = true " +
+                    "AND (v.student_id IS NULL OR v.student_id = ?)"),
+    VARIANT_STUDENT("SELECT student_id FROM exam_variants WHERE exam_id = ?"),
+    UPCOMING_EXAM_STARTS("SELECT id, title, start_time FROM exams " +
+                         "WHERE is_active = true AND start_time > NOW() AND start_time <= ? " +
+                         "ORDER BY start_time, id"),
+    // Each question as of the version the exam pins: the questions row when that is
+    // still current, otherwise the copy in question_versions
+    EXAM_QUESTIONS("SELECT q.id, " +
+                   "COALESCE(v.question_text, q.question_text) AS question_text, " +
+                   "COALESCE(v.option1, q.option1) AS option1, COALESCE(v.option2, q.option2) AS option2, " +
+                   "COALESCE(v.option3, q.option3) AS option3, COALESCE(v.option4, q.option4) AS option4, " +
+                   "COALESCE(v.correct_option, q.correct_option) AS correct_option, " +
+                   "COALESCE(v.marks, q.marks) AS marks, COALESCE(v.subject, q.subject) AS subject, " +
+                   "COALESCE(v.difficulty, q.difficulty) AS difficulty " +
+                   "FROM exam_questions eq " +
+                   "JOIN questions q ON q.id = eq.question_id " +
+                   "LEFT JOIN question_versions v ON v.question_id = eq.question_id " +
+                   "AND v.version = eq.question_version AND eq.question_version <> q.current_version " +
+                   "WHERE eq.exam_id = ? ORDER BY eq.question_number"),
+    PIN_EXAM_QUESTIONS("UPDATE exam_questions SET question_version = " +
+                       "(SELECT current_version FROM questions WHERE questions.id = exam_questions.question_id) " +
+                       "WHERE exam_id = ?"),
+    EXAMS_TO_ADOPT("SELECT eq.exam_id FROM exam_questions eq JOIN exams e ON e.id = eq.exam_id " +
+                   "WHERE eq.question_id = ? AND e.start_time > ?"),
+    EXAM_QUESTION_VERSION("SELECT question_version FROM exam_questions WHERE exam_id = ? AND question_id = ?"),
+    PIN_QUESTION_VERSION("UPDATE exam_questions SET question_version = ? WHERE exam_id = ? AND question_id = ?"),
+    INSERT_ANSWER("INSERT INTO student_exam_answers (student_id, exam_id, question_id, selected_option, marks_obtained) " +
+                  "VALUES (?, ?, ?, ?, ?)"),
+    INSERT_RESULT("INSERT INTO exam_results (student_id, exam_id, total_marks_obtained, percentage) " +
+                  "VALUES (?, ?, ?, ?)"),
+    COUNT_RESULT("SELECT COUNT(*) FROM exam_results WHERE student_id = ? AND exam_id = ?"),
+
+    // Attempts in progress
+    EXAM_WINDOW("SELECT duration, start_time, is_active FROM exams WHERE id = ?"),
+    INSERT_ATTEMPT("INSERT INTO exam_attempts (student_id, exam_id, status, deadline_at) VALUES (?, ?, 'ACTIVE', ?)"),
+    ATTEMPT_STATUS("SELECT status, deadline_at FROM exam_attempts WHERE student_id = ? AND exam_id = ?"),
+    OPEN_ATTEMPT_DEADLINES("SELECT student_id, exam_id, deadline_at FROM exam_attempts " +
+                           "WHERE status = 'ACTIVE' AND deadline_at IS NOT NULL"),
+    ATTEMPT_ANSWERS("SELECT question_id, selected_option FROM attempt_answers WHERE student_id = ? AND exam_id = ?"),
+    SAVE_ATTEMPT_ANSWER("INSERT INTO attempt_answers (student_id, exam_id, question_id, selected_option) " +
+                        "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                        "selected_option = VALUES(selected_option), saved_at = CURRENT_TIMESTAMP"),
+    SEAL_ATTEMPT("UPDATE exam_attempts SET status = 'SEALED', sealed_at = CURRENT_TIMESTAMP " +
+                 "WHERE student_id = ? AND exam_id = ?"),
+
+    // Question bank
+    INSERT_QUESTION("INSERT INTO questions (question_text, option1, option2, option3, option4, " +
+                    "correct_option, marks, subject, difficulty, created_by) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"),
+    UPDATE_QUESTION("UPDATE questions SET question_text = ?, option1 = ?, option2 = ?, " +
+                    "option3 = ?, option4 = ?, correct_option = ?, marks = ?, " +
+                    "subject = ?, difficulty = ?, current_version = ? WHERE id = ?"),
+    // Locks the row so concurrent edits are numbered one after the other
+    LOCK_QUESTION_VERSION("SELECT current_version FROM questions WHERE id = ? FOR UPDATE"),
+    SAVE_QUESTION_VERSION("INSERT INTO question_versions (question_id, version, question_text, " +
+                          "option1, option2, option3, option4, correct_option, marks, subject, difficulty) " +
+                          "SELECT id, current_version, question_text, option1, option2, option3, option4, " +
+                          "correct_option, marks, subject, difficulty FROM questions WHERE id = ?"),
+    // Superseded versions are in question_versions, the current one in questions
+    QUESTION_VERSION("SELECT question_id AS id, question_text, option1, option2, option3, option4, " +
+                     "correct_option, marks, subject, difficulty FROM question_versions " +
+                     "WHERE question_id = ? AND version = ? " +
+                     "UNION ALL SELECT id, question_text, option1, option2, option3, option4, " +
+                     "correct_option, marks, subject, difficulty FROM questions " +
+                     "WHERE id = ? AND current_version = ?"),
+    COUNT_QUESTION_USAGE("SELECT COUNT(*) FROM exam_questions WHERE question_id = ?"),
+    DELETE_QUESTION("DELETE FROM questions WHERE id = ?"),
+    QUESTION_KEY("SELECT correct_option, marks FROM questions WHERE id = ?"),
+    QUESTIONS_BY_SUBJECT("SELECT * FROM questions WHERE subject = ?"),
+    // Ordered like idx_questions_subject_id so the page is read off the index without a sort
+    QUESTIONS_BY_SUBJECT_PAGE("SELECT * FROM questions WHERE subject = ? AND id > ? ORDER BY subject, id LIMIT ?"),
+    SEARCH_QUESTIONS("SELECT * FROM questions WHERE question_text LIKE ? OR subject LIKE ?"),
+    // Read once to build QuestionSearchIndex, so the full scan is expected
+    QUESTION_SEARCH_TEXT("SELECT id, question_text, subject FROM questions"),
+    // Read once per import to find duplicates (QuestionImporter) and to build
+    // QuestionSimilarityIndex, so the full scan is expected
+    QUESTION_CONTENT("SELECT id, question_text, option1, option2, option3, option4 FROM questions"),
+    // Read once to build QuestionStore, so the full scan is expected
+    QUESTION_STORE("SELECT id, question_text, option1, option2, option3, option4, correct_option, marks, " +
+                   "subject, difficulty FROM questions"),
+    // Read once to build ExamGenerator's sampling pools, so the full scan is expected
+    QUESTION_POOLS("SELECT id, subject, difficulty, marks FROM questions"),
+    INSERT_SIMILARITY_FLAG("INSERT INTO question_similarity_flags (question_id, similar_question_id, similarity) " +
+                           "VALUES (?, ?, ?)"),
+    SIMILARITY_FLAGS("SELECT similar_question_id, similarity FROM question_similarity_flags " +
+                     "WHERE question_id = ? ORDER BY similarity DESC"),
+    // Fixed at QuestionBankController.IDS_PER_QUERY placeholders so the text never varies; unused ones get 0
+    QUESTIONS_BY_IDS("SELECT * FROM questions WHERE id IN (" + String.join(", ", Collections.nCopies(50, "?")) + ")"),
+
+    // Results and analytics
+    STUDENT_RESULTS("SELECT e.title, e.subject, r.submission_time, r.total_marks_obtained, " +
+                    "r.percentage FROM exam_results r " +
+                    "JOIN exams e ON r.exam_id = e.id " +
+                    "WHERE r.student_id = ? ORDER BY r.submission_time DESC"),
+    EXAM_STATISTICS("SELECT COUNT(*) as total_students, " +
+                    "AVG(percentage) as avg_percentage, " +
+                    "MIN(percentage) as min_percentage, " +
+                    "MAX(percentage) as max_percentage " +
+                    "FROM exam_results WHERE exam_id = ?"),
+    // Answers are counted against the question version the exam pins
+    EXAM_QUESTION_ANALYSIS("SELECT q.id, COALESCE(v.question_text, q.question_text) AS question_text, " +
+                           "COUNT(CASE WHEN sea.selected_option = COALESCE(v.correct_option, q.correct_option) " +
+                           "THEN 1 END) as correct_answers, " +
+                           "COUNT(*) as total_attempts " +
+                           "FROM exam_questions eq " +
+                           "JOIN questions q ON q.id = eq.question_id " +
+                           "LEFT JOIN question_versions v ON v.question_id = eq.question_id " +
+                           "AND v.version = eq.question_version AND eq.question_version <> q.current_version " +
+                           "JOIN student_exam_answers sea ON sea.question_id = eq.question_id " +
+                           "AND sea.exam_id = eq.exam_id " +
+                           "WHERE eq.exam_id = ? " +
+                           "GROUP BY q.id, q.question_text, q.correct_option, v.question_text, v.correct_option"),
+    EXAM_DISTRIBUTION("SELECT " +
+                      "COUNT(CASE WHEN percentage >= 90 THEN 1 END) as excellent, " +
+                      "COUNT(CASE WHEN percentage >= 75 AND percentage < 90 THEN 1 END) as good, " +
+                      "COUNT(CASE WHEN percentage >= 60 AND percentage < 75 THEN 1 END) as average, " +
+                      "COUNT(CASE WHEN percentage < 60 THEN 1 END) as poor " +
+                      "FROM exam_results WHERE exam_id = ?"),
+    TOP_PERFORMERS("SELECT u.full_name, u.email, r.total_marks_obtained, r.percentage " +
+                   "FROM exam_results r " +
+                   "JOIN users u ON r.student_id = u.id " +
+                   "WHERE r.exam_id = ? " +
+                   "ORDER BY r.percentage DESC LIMIT ?"),
+    STUDENT_TREND("SELECT e.subject, r.percentage, r.submission_time " +
+                  "FROM exam_results r " +
+                  "JOIN exams e ON r.exam_id = e.id " +
+                  "WHERE r.student_id = ? " +
+                  "ORDER BY r.submission_time"),
+    STUDENT_STRENGTHS("SELECT COALESCE(v.subject, q.subject) AS subject, " +
+                      "COALESCE(v.difficulty, q.difficulty) AS difficulty, " +
+                      "COUNT(CASE WHEN sea.selected_option = COALESCE(v.correct_option, q.correct_option) " +
+                      "THEN 1 END) as correct, " +
+                      "COUNT(*) as total " +
+                      "FROM student_exam_answers sea " +
+                      "JOIN exam_questions eq ON eq.exam_id = sea.exam_id AND eq.question_id = sea.question_id " +
+                      "JOIN questions q ON sea.question_id = q.id " +
+                      "LEFT JOIN question_versions v ON v.question_id = eq.question_id " +
+                      "AND v.version = eq.question_version AND eq.question_version <> q.current_version " +
+                      "WHERE sea.student_id = ? " +
+                      "GROUP BY COALESCE(v.subject, q.subject), COALESCE(v.difficulty, q.difficulty)"),
+    STUDENT_TIME_USAGE("SELECT e.duration, er.submission_time, e.start_time " +
+                       "FROM exam_results er " +
+                       "JOIN exams e ON er.exam_id = e.id " +
+                       "WHERE er.student_id = ?"),
+    STUDENT_SCORE_HISTORY("SELECT e.subject, r.percentage " +
+                          "FROM exam_results r " +
+                          "JOIN exams e ON r.exam_id = e.id " +
+                          "WHERE r.student_id = ? " +
+                          "ORDER BY r.submission_time"),
+
+    // Re-grading
+    COUNT_QUESTION_ANSWERS("SELECT COUNT(*) FROM student_exam_answers WHERE question_id = ?"),
+    REGRADE_ANSWER_PAGE("SELECT exam_id, student_id, selected_option, marks_obtained " +
+                        "FROM student_exam_answers " +
+                        "WHERE question_id = ? AND (exam_id > ? OR (exam_id = ? AND student_id > ?)) " +
+                        "ORDER BY exam_id, student_id LIMIT ?"),
+    UPDATE_ANSWER_MARKS("UPDATE student_exam_answers SET marks_obtained = ? " +
+                        "WHERE student_id = ? AND exam_id = ? AND question_id = ?"),
+    // percentage is assigned first so it sees the old total on MySQL too; the
+    // casts give the parameters a type instead of an unbounded decimal
+    ADJUST_RESULT("UPDATE exam_results " +
+                  "SET percentage = (total_marks_obtained + CAST(? AS SIGNED)) * 100.0 / CAST(? AS SIGNED), " +
+                  "total_marks_obtained = total_marks_obtained + ? " +
+                  "WHERE student_id = ? AND exam_id = ?"),
+    INSERT_REGRADE_JOB("INSERT INTO regrade_jobs (question_ids, status) VALUES (?, 'PENDING')"),
+    REGRADE_JOB("SELECT * FROM regrade_jobs WHERE id = ?"),
+    UNFINISHED_REGRADE_JOBS("SELECT id FROM regrade_jobs WHERE status IN ('PENDING', 'RUNNING') ORDER BY id"),
+    UPDATE_REGRADE_JOB("UPDATE regrade_jobs SET status = ?, question_index = ?, last_exam_id = ?, " +
+                       "last_student_id = ?, total_answers = ?, processed_answers = ?, changed_answers = ?, " +
+                       "updated_at = CURRENT_TIMESTAMP WHERE id = ?"),
+
+    // Audit trail
+    INSERT_AUDIT_LOG("INSERT INTO audit_logs (user_id, action, details, timestamp) VALUES (?, ?, ?, ?)"),
+    INSERT_LOGIN_ATTEMPT("INSERT INTO login_attempts (username, success, ip_address, timestamp) VALUES (?, ?, ?, ?)"),
+    INSERT_EXAM_LOG("INSERT INTO exam_logs (user_id, exam_id, activity, timestamp) VALUES (?, ?, ?, ?)");
+
+    private final String sql;
+    // INSERT ... VALUES split around its row group, or null for other statements
+    private final String valuesPrefix;
+    private final String valuesRow;
+    private final String valuesSuffix;
+    private final int parametersPerRow;
+    private final Map<Integer, String> multiRowSql = new ConcurrentHashMap<>();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    SqlStatement(String sql) {
+        this.sql = sql;
+        int values = sql.startsWith("INSERT") ? sql.indexOf("VALUES (") : -1;
+        int end = values < 0 ? -1 : closingParenthesis(sql, values + 7);
+        if (end < 0) {
+            valuesPrefix = null;
+            valuesRow = null;
+            valuesSuffix = null;
+            parametersPerRow = 0;
+        } else {
+            valuesPrefix = sql.substring(0, values + 7);
+            valuesRow = sql.substring(values + 7, end + 1);
+            valuesSuffix = sql.substring(end + 1);
+            parametersPerRow = (int) valuesRow.chars().filter(c -> c == '?').count();
+        }
+    }
+
+    private static int closingParenthesis(String sql, int open) {
+        int depth = 0;
+        for (int i = open; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getSql() { return sql; }
+
+    /**
+     * @return Placeholders in one VALUES row, or 0 if the statement is not
+     *         an INSERT ... VALUES that can be expanded to several rows
+     */
+    public int getParametersPerRow() { return parametersPerRow; }
+
+    /**
+     * @return Length of one VALUES row in the statement text
+     */
+    int getValuesRowLength() { return valuesRow == null ? 0 : valuesRow.length(); }
+
+    /**
+     * The statement with its VALUES row repeated. Texts are cached, so the
+     * same row count always yields the identical string.
+     */
+    public String getMultiRowSql(int rows) {
+        if (parametersPerRow == 0) {
+            throw new IllegalStateException(name() + " is not an INSERT ... VALUES statement");
+        }
+        if (rows == 1) {
+            return sql;
+        }
+        return multiRowSql.computeIfAbsent(rows, n -> {
+            StringBuilder text = new StringBuilder(valuesPrefix.length() + n * (valuesRow.length() + 2)
+                + valuesSuffix.length());
+            text.append(valuesPrefix);
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    text.append(", ");
+                }
+                text.append(valuesRow);
+            }
+            return text.append(valuesSuffix).toString();
+        });
+    }
+
+    public long getExecutionCount() { return executions.sum(); }
+
+    public long getFailureCount() { return failures.sum(); }
+
+    public double getAverageMillis() {
+        long count = executions.sum();
+        return count == 0 ? 0.0 : totalNanos.sum() / (double) count / 1_000_000;
+    }
+
+    void recordExecution(long nanos, boolean failed) {
+        executions.increment();
+        totalNanos.add(nanos);
+        if (failed) {
+            failures.increment();
+        }
+    }
+
+    /**
+     * Execution counters for every statement that has run at least once.
+     * @return Map of statement name to its count, failures and average time
+     */
+    public static Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        for (SqlStatement statement : values()) {
+            if (statement.getExecutionCount() > 0) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("executions", statement.getExecutionCount());
+                entry.put("failures", statement.getFailureCount());
+                entry.put("averageMillis", statement.getAverageMillis());
+                stats.put(statement.name(), entry);
+            }
+        }
+        return stats;
+    }
+}
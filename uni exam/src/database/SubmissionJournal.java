@@ -0,0 +1,411 @@
+package database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of exam submissions on memory-mapped segment files.
+ *
+ * A record is [payload length][CRC32 of payload][payload], where the
+ * payload is the sequence number, student id, exam id and the answers.
+ * Segments are preallocated and zero-filled, so a zero length marks the
+ * end of the written data and a torn final record fails its checksum.
+ *
+ * Durability uses group fsync: the first appender to wait becomes the
+ * leader and forces the segment for everything appended so far, while
+ * appenders arriving meanwhile wait and are covered by the next force.
+ * Under load one fsync therefore acknowledges many submissions.
+ *
+ * Records up to the checkpoint have been written to the database; their
+ * segments are deleted and recover() returns only the records after it.
+ *
+ * The journal holds a file lock on its directory while open, so two
+ * processes sharing a directory (the desktop app and the webapp on one
+ * host) cannot both replay and append to it.
+ */
+public class SubmissionJournal implements Closeable {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String LOCK_FILE = "lock";
+    private static final int HEADER_BYTES = 8;
+    private static final int FIXED_PAYLOAD_BYTES = 8 + 4 + 4 + 4;
+    // Directories locked by this process. Closing any channel on a lock
+    // file may drop the process's lock on it, so a second journal must be
+    // refused before it opens the file.
+    private static final Set<Path> LOCKED_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+    /** One journaled submission. */
+    public static final class Record {
+        private final long sequence;
+        private final int studentId;
+        private final int examId;
+        private final int[] answers;
+
+        Record(long sequence, int studentId, int examId, int[] answers) {
+            this.sequence = sequence;
+            this.studentId = studentId;
+            this.examId = examId;
+            this.answers = answers;
+        }
+
+        public long getSequence() { return sequence; }
+
+        public int getStudentId() { return studentId; }
+
+        public int getExamId() { return examId; }
+
+        public int[] getAnswers() { return answers; }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long number;
+        FileChannel channel;
+        MappedByteBuffer buffer;
+        int position;
+        long lastSequence;
+
+        Segment(Path path, long number) {
+            this.path = path;
+            this.number = number;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FileChannel lockChannel;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+    private final List<Record> recovered = new ArrayList<>();
+    private Segment current;
+    private long nextSequence = 1;
+    private long appendedSequence;
+    private long durableSequence;
+    private long checkpointSequence;
+    private boolean flushing;
+    private long forces;
+
+    /**
+     * Opens the journal, reading back every record after the checkpoint.
+     * New records always go to a fresh segment.
+     * @throws IOException Also if another journal, in this process or
+     *         another, has the directory open
+     */
+    public SubmissionJournal(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        lockChannel = lockDirectory(directory);
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            unlockDirectory();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Channel of the directory's lock file, holding the lock until
+     *         it is closed
+     */
+    private static FileChannel lockDirectory(Path directory) throws IOException {
+        Path key = directory.toRealPath();
+        if (!LOCKED_DIRECTORIES.add(key)) {
+            throw new IOException("Journal directory " + directory + " is already open");
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+            if (channel.tryLock() == null) {
+                throw new IOException("Journal directory " + directory + " is locked by another process");
+            }
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            LOCKED_DIRECTORIES.remove(key);
+            throw e;
+        }
+    }
+
+    private void unlockDirectory() throws IOException {
+        try {
+            lockChannel.close();
+        } finally {
+            LOCKED_DIRECTORIES.remove(directory.toRealPath());
+        }
+    }
+
+    private void open() throws IOException {
+        checkpointSequence = readCheckpoint();
+
+        long lastSegment = 0;
+        for (Path path : listSegments()) {
+            Segment segment = new Segment(path, segmentNumber(path));
+            segment.lastSequence = scan(path, checkpointSequence, recovered);
+            nextSequence = Math.max(nextSequence, segment.lastSequence + 1);
+            lastSegment = segment.number;
+            if (segment.lastSequence <= checkpointSequence) {
+                Files.deleteIfExists(path);
+            } else {
+                closedSegments.addLast(segment);
+            }
+        }
+        nextSequence = Math.max(nextSequence, checkpointSequence + 1);
+        appendedSequence = nextSequence - 1;
+        durableSequence = appendedSequence;
+        current = openSegment(lastSegment + 1);
+    }
+
+    /**
+     * @return Records written before the last shutdown or crash that were
+     *         not yet checkpointed, in sequence order
+     */
+    public List<Record> recover() {
+        return new ArrayList<>(recovered);
+    }
+
+    /**
+     * Writes a record to the mapped segment. It is not durable until
+     * awaitDurable returns for its sequence number.
+     * @return The record, carrying its sequence number
+     */
+    public Record append(int studentId, int examId, int[] answers) throws IOException {
+        int payloadBytes = FIXED_PAYLOAD_BYTES + 4 * answers.length;
+        int recordBytes = HEADER_BYTES + payloadBytes;
+        if (recordBytes > segmentBytes) {
+            throw new IOException("Submission of " + answers.length + " answers does not fit a journal segment");
+        }
+        lock.lock();
+        try {
+            if (current.position + recordBytes > segmentBytes) {
+                rollSegment();
+            }
+            long sequence = nextSequence++;
+            ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+            payload.putLong(sequence).putInt(studentId).putInt(examId).putInt(answers.length);
+            for (int answer : answers) {
+                payload.putInt(answer);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload.array());
+
+            MappedByteBuffer buffer = current.buffer;
+            int start = current.position;
+            buffer.putInt(start + 4, (int) crc.getValue());
+            for (int i = 0; i < payloadBytes; i++) {
+                buffer.put(start + HEADER_BYTES + i, payload.get(i));
+            }
+            // Length last, so a reader never sees a length without its payload
+            buffer.putInt(start, payloadBytes);
+            current.position += recordBytes;
+            current.lastSequence = sequence;
+            appendedSequence = sequence;
+            return new Record(sequence, studentId, examId, answers.clone());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record is on disk, forcing the segment if no other
+     * thread is already doing so.
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                long target = appendedSequence;
+                MappedByteBuffer buffer = current.buffer;
+                lock.unlock();
+                try {
+                    buffer.force();
+                } finally {
+                    lock.lock();
+                    flushing = false;
+                    flushed.signalAll();
+                }
+                forces++;
+                durableSequence = Math.max(durableSequence, target);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that everything up to the sequence is stored in the database
+     * and deletes segments that hold nothing newer.
+     */
+    public void checkpoint(long sequence) throws IOException {
+        lock.lock();
+        try {
+            if (sequence <= checkpointSequence) {
+                return;
+            }
+            checkpointSequence = sequence;
+            Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.write(ByteBuffer.wrap(Long.toString(sequence).getBytes(StandardCharsets.US_ASCII)));
+                channel.force(true);
+            }
+            Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            while (!closedSegments.isEmpty() && closedSegments.peekFirst().lastSequence <= sequence) {
+                Files.deleteIfExists(closedSegments.removeFirst().path);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        lock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of fsyncs issued so far
+     */
+    public long getForceCount() {
+        lock.lock();
+        try {
+            return forces;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            current.buffer.force();
+            current.channel.close();
+        } finally {
+            lock.unlock();
+            unlockDirectory();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        current.buffer.force();
+        current.channel.close();
+        durableSequence = Math.max(durableSequence, current.lastSequence);
+        if (current.lastSequence > checkpointSequence) {
+            closedSegments.addLast(current);
+        } else {
+            Files.deleteIfExists(current.path);
+        }
+        current = openSegment(current.number + 1);
+    }
+
+    private Segment openSegment(long number) throws IOException {
+        Segment segment = new Segment(directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, number,
+            SEGMENT_SUFFIX)), number);
+        segment.channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return segment;
+    }
+
+    /**
+     * Reads a segment, adding records after the checkpoint to the list.
+     * @return Highest sequence number found, or 0 for an empty segment
+     */
+    private static long scan(Path path, long checkpoint, List<Record> records) throws IOException {
+        long lastSequence = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int position = 0;
+            while (position + HEADER_BYTES + FIXED_PAYLOAD_BYTES <= buffer.limit()) {
+                int payloadBytes = buffer.getInt(position);
+                if (payloadBytes < FIXED_PAYLOAD_BYTES || position + HEADER_BYTES + payloadBytes > buffer.limit()) {
+                    break; // End of data, or a torn length
+                }
+                byte[] payload = new byte[payloadBytes];
+                for (int i = 0; i < payloadBytes; i++) {
+                    payload[i] = buffer.get(position + HEADER_BYTES + i);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    System.err.println("Journal " + path.getFileName() + " ends with a torn record at " + position);
+                    break;
+                }
+                ByteBuffer data = ByteBuffer.wrap(payload);
+                long sequence = data.getLong();
+                int studentId = data.getInt();
+                int examId = data.getInt();
+                int[] answers = new int[data.getInt()];
+                for (int i = 0; i < answers.length; i++) {
+                    answers[i] = data.getInt();
+                }
+                if (sequence > checkpoint) {
+                    records.add(new Record(sequence, studentId, examId, answers));
+                }
+                lastSequence = sequence;
+                position += HEADER_BYTES + payloadBytes;
+            }
+        }
+        return lastSequence;
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        String text = new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim();
+        return text.isEmpty() ? 0 : Long.parseLong(text);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+        return segments;
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
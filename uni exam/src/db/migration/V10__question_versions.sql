@@ -0,0 +1,25 @@
+-- Immutable question versions (QuestionBankController.updateQuestion)
+
+-- The questions row always holds the current version; an edit first copies
+-- the row into question_versions, so every earlier version is kept there
+ALTER TABLE questions ADD COLUMN current_version INT NOT NULL DEFAULT 1;
+
+CREATE TABLE IF NOT EXISTS question_versions (
+    question_id INT NOT NULL,
+    version INT NOT NULL,
+    question_text TEXT NOT NULL,
+    option1 TEXT NOT NULL,
+    option2 TEXT NOT NULL,
+    option3 TEXT NOT NULL,
+    option4 TEXT NOT NULL,
+    correct_option INT NOT NULL,
+    marks INT NOT NULL,
+    subject VARCHAR(50) NOT NULL,
+    difficulty VARCHAR(20) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (question_id, version),
+    FOREIGN KEY (question_id) REFERENCES questions(id) ON DELETE CASCADE
+);
+
+-- The version each exam is set with; existing exams pin the version they show today
+ALTER TABLE exam_questions ADD COLUMN question_version INT NOT NULL DEFAULT 1;
@@ -0,0 +1,70 @@
+-- Core exam tables (same layout as database.sql, safe on existing installs)
+
+CREATE TABLE IF NOT EXISTS users (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    username VARCHAR(50) UNIQUE NOT NULL,
+    password VARCHAR(255) NOT NULL,
+    role VARCHAR(20) NOT NULL,
+    full_name VARCHAR(100) NOT NULL,
+    email VARCHAR(100) UNIQUE NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS questions (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    question_text TEXT NOT NULL,
+    option1 TEXT NOT NULL,
+    option2 TEXT NOT NULL,
+    option3 TEXT NOT NULL,
+    option4 TEXT NOT NULL,
+    correct_option INT NOT NULL,
+    marks INT NOT NULL,
+    subject VARCHAR(50) NOT NULL,
+    difficulty VARCHAR(20) NOT NULL,
+    created_by INT,
+    FOREIGN KEY (created_by) REFERENCES users(id)
+);
+
+CREATE TABLE IF NOT EXISTS exams (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    title VARCHAR(100) NOT NULL,
+    subject VARCHAR(50) NOT NULL,
+    start_time DATETIME NOT NULL,
+    duration INT NOT NULL,
+    total_marks INT NOT NULL,
+    is_active BOOLEAN DEFAULT false,
+    created_by INT,
+    FOREIGN KEY (created_by) REFERENCES users(id)
+);
+
+CREATE TABLE IF NOT EXISTS exam_questions (
+    exam_id INT,
+    question_id INT,
+    question_number INT NOT NULL,
+    PRIMARY KEY (exam_id, question_id),
+    FOREIGN KEY (exam_id) REFERENCES exams(id),
+    FOREIGN KEY (question_id) REFERENCES questions(id)
+);
+
+CREATE TABLE IF NOT EXISTS student_exam_answers (
+    student_id INT,
+    exam_id INT,
+    question_id INT,
+    selected_option INT,
+    marks_obtained INT,
+    PRIMARY KEY (student_id, exam_id, question_id),
+    FOREIGN KEY (student_id) REFERENCES users(id),
+    FOREIGN KEY (exam_id) REFERENCES exams(id),
+    FOREIGN KEY (question_id) REFERENCES questions(id)
+);
+
+CREATE TABLE IF NOT EXISTS exam_results (
+    student_id INT,
+    exam_id INT,
+    total_marks_obtained INT,
+    percentage DECIMAL(5,2),
+    submission_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (student_id, exam_id),
+    FOREIGN KEY (student_id) REFERENCES users(id),
+    FOREIGN KEY (exam_id) REFERENCES exams(id)
+);
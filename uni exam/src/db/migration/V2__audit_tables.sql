@@ -0,0 +1,49 @@
+-- Audit, login and session tables (same as database_updates.sql)
+
+ALTER TABLE users ADD COLUMN password_salt VARCHAR(64) NOT NULL DEFAULT '';
+
+CREATE TABLE IF NOT EXISTS audit_logs (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    user_id INT,
+    action VARCHAR(100) NOT NULL,
+    details TEXT,
+    timestamp DATETIME NOT NULL,
+    FOREIGN KEY (user_id) REFERENCES users(id)
+);
+
+CREATE TABLE IF NOT EXISTS login_attempts (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    username VARCHAR(50) NOT NULL,
+    success BOOLEAN NOT NULL,
+    ip_address VARCHAR(45) NOT NULL,
+    timestamp DATETIME NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS exam_logs (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    user_id INT,
+    exam_id INT,
+    activity VARCHAR(100) NOT NULL,
+    timestamp DATETIME NOT NULL,
+    FOREIGN KEY (user_id) REFERENCES users(id),
+    FOREIGN KEY (exam_id) REFERENCES exams(id)
+);
+
+CREATE TABLE IF NOT EXISTS user_sessions (
+    token VARCHAR(64) PRIMARY KEY,
+    user_id INT NOT NULL,
+    created_at DATETIME NOT NULL,
+    last_accessed DATETIME NOT NULL,
+    expired BOOLEAN DEFAULT FALSE,
+    FOREIGN KEY (user_id) REFERENCES users(id)
+);
+
+CREATE INDEX idx_audit_logs_user ON audit_logs(user_id);
+CREATE INDEX idx_audit_logs_timestamp ON audit_logs(timestamp);
+CREATE INDEX idx_login_attempts_username ON login_attempts(username);
+CREATE INDEX idx_login_attempts_timestamp ON login_attempts(timestamp);
+CREATE INDEX idx_exam_logs_user ON exam_logs(user_id);
+CREATE INDEX idx_exam_logs_exam ON exam_logs(exam_id);
+CREATE INDEX idx_exam_logs_timestamp ON exam_logs(timestamp);
+CREATE INDEX idx_user_sessions_user ON user_sessions(user_id);
+CREATE INDEX idx_user_sessions_access ON user_sessions(last_accessed);
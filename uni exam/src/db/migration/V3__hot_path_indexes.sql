@@ -0,0 +1,22 @@
+-- Composite indexes shaped for the controller queries
+
+-- ExamController.getExamQuestions: WHERE exam_id = ? ORDER BY question_number
+CREATE INDEX idx_exam_questions_exam_number ON exam_questions(exam_id, question_number, question_id);
+-- QuestionBankController.deleteQuestion usage check and analytics joins by question
+CREATE INDEX idx_exam_questions_question ON exam_questions(question_id);
+
+-- Per-question analytics: join on question_id, count by selected_option
+CREATE INDEX idx_answers_question_option ON student_exam_answers(question_id, selected_option);
+-- Answers of one exam across all students (re-grading, exam analytics)
+CREATE INDEX idx_answers_exam_question ON student_exam_answers(exam_id, question_id);
+
+-- getExamAnalytics / getTopPerformers: WHERE exam_id = ? ORDER BY percentage
+CREATE INDEX idx_results_exam_percentage ON exam_results(exam_id, percentage);
+-- Student history: WHERE student_id = ? ORDER BY submission_time
+CREATE INDEX idx_results_student_time ON exam_results(student_id, submission_time);
+
+-- getAvailableExams: WHERE is_active = true AND start_time > NOW()
+CREATE INDEX idx_exams_active_start ON exams(is_active, start_time);
+
+-- getQuestionsBySubject: WHERE subject = ?
+CREATE INDEX idx_questions_subject ON questions(subject, difficulty);
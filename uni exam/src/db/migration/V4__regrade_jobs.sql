@@ -0,0 +1,21 @@
+-- Bulk re-grading after answer-key corrections (RegradeEngine)
+
+-- One row per job; the cursor columns let an interrupted job resume
+CREATE TABLE IF NOT EXISTS regrade_jobs (
+    id INT PRIMARY KEY AUTO_INCREMENT,
+    question_ids VARCHAR(1000) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    question_index INT NOT NULL DEFAULT 0,
+    last_exam_id INT NOT NULL DEFAULT 0,
+    last_student_id INT NOT NULL DEFAULT 0,
+    total_answers INT NOT NULL DEFAULT 0,
+    processed_answers INT NOT NULL DEFAULT 0,
+    changed_answers INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_regrade_jobs_status ON regrade_jobs(status);
+
+-- Keyset scan of one question's answers in (exam_id, student_id) order
+CREATE INDEX idx_answers_question_attempt ON student_exam_answers(question_id, exam_id, student_id);
@@ -0,0 +1,24 @@
+-- Autosaved answers of exams in progress (AttemptRegistry)
+
+-- One row per attempt; SEALED once the final submission was accepted
+CREATE TABLE IF NOT EXISTS exam_attempts (
+    student_id INT NOT NULL,
+    exam_id INT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    sealed_at TIMESTAMP NULL,
+    PRIMARY KEY (student_id, exam_id),
+    FOREIGN KEY (student_id) REFERENCES users(id),
+    FOREIGN KEY (exam_id) REFERENCES exams(id)
+);
+
+-- Latest autosaved option per question, overwritten on every flush
+CREATE TABLE IF NOT EXISTS attempt_answers (
+    student_id INT NOT NULL,
+    exam_id INT NOT NULL,
+    question_id INT NOT NULL,
+    selected_option INT NOT NULL,
+    saved_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (student_id, exam_id, question_id),
+    FOREIGN KEY (student_id, exam_id) REFERENCES exam_attempts(student_id, exam_id)
+);
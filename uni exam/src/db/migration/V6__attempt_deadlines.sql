@@ -0,0 +1,13 @@
+-- Server-side exam deadlines (AttemptDeadlines)
+
+-- When the attempt is submitted automatically; NULL for untimed exams
+ALTER TABLE exam_attempts ADD COLUMN deadline_at TIMESTAMP NULL;
+
+-- As AttemptRegistry sets it: the exam's start time plus its duration,
+-- and no deadline when the duration is not positive
+UPDATE exam_attempts SET deadline_at = (SELECT TIMESTAMPADD(MINUTE, e.duration, e.start_time)
+    FROM exams e WHERE e.id = exam_attempts.exam_id)
+WHERE deadline_at IS NULL AND exam_id IN (SELECT id FROM exams WHERE duration > 0);
+
+-- Open attempts are rescheduled at startup
+CREATE INDEX idx_exam_attempts_status ON exam_attempts(status, deadline_at);
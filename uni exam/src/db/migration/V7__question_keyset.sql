@@ -0,0 +1,4 @@
+-- Keyset pagination of the question bank (QuestionBankController.getQuestionsBySubject)
+
+-- Serves WHERE subject = ? AND id > ? ORDER BY id without a sort
+CREATE INDEX idx_questions_subject_id ON questions(subject, id);
@@ -0,0 +1,12 @@
+-- Near-duplicate questions flagged when they are added (QuestionSimilarityIndex)
+
+-- similarity is the estimated Jaccard similarity of the two questions' shingles
+CREATE TABLE IF NOT EXISTS question_similarity_flags (
+    question_id INT NOT NULL,
+    similar_question_id INT NOT NULL,
+    similarity DECIMAL(4,3) NOT NULL,
+    flagged_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (question_id, similar_question_id),
+    FOREIGN KEY (question_id) REFERENCES questions(id) ON DELETE CASCADE,
+    FOREIGN KEY (similar_question_id) REFERENCES questions(id) ON DELETE CASCADE
+);
@@ -0,0 +1,12 @@
+-- Per-student exam papers drawn from a blueprint (ExamGenerator)
+
+-- Each variant is an ordinary exam with its own exam_questions rows;
+-- this records which student sits it
+CREATE TABLE IF NOT EXISTS exam_variants (
+    exam_id INT PRIMARY KEY,
+    student_id INT NOT NULL,
+    FOREIGN KEY (exam_id) REFERENCES exams(id) ON DELETE CASCADE,
+    FOREIGN KEY (student_id) REFERENCES users(id)
+);
+
+CREATE INDEX idx_exam_variants_student ON exam_variants(student_id);
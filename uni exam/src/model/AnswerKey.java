@@ -0,0 +1,76 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Answer key of an exam compiled to primitive arrays in paper order.
+ * Grading walks the arrays without boxing or allocating, so thousands of
+ * submissions landing at once leave no per-question garbage behind.
+ * Instances are immutable and shared between threads.
+ */
+public final class AnswerKey {
+    /** Selected option value for a question left unanswered. */
+    public static final int UNANSWERED = 0;
+
+    private final int[] correctOptions;
+    private final int[] marks;
+    private final int totalMarks;
+
+    public AnswerKey(List<Question> questions) {
+        correctOptions = new int[questions.size()];
+        marks = new int[questions.size()];
+        int total = 0;
+        for (int i = 0; i < questions.size(); i++) {
+            correctOptions[i] = questions.get(i).getCorrectOption();
+            marks[i] = questions.get(i).getMarks();
+            total += marks[i];
+        }
+        totalMarks = total;
+    }
+
+    public int getQuestionCount() {
+        return correctOptions.length;
+    }
+
+    public int getTotalMarks() {
+        return totalMarks;
+    }
+
+    /**
+     * Scores one submission.
+     * @param answers Selected option per question, in paper order
+     * @param marksObtained Receives the marks for each question; at least
+     *                      as long as the key
+     * @return Total marks obtained
+     */
+    public int grade(int[] answers, int[] marksObtained) {
+        if (answers.length != correctOptions.length) {
+            throw new IllegalArgumentException("Expected " + correctOptions.length
+                + " answers but got " + answers.length);
+        }
+        int total = 0;
+        for (int i = 0; i < correctOptions.length; i++) {
+            int obtained = answers[i] == correctOptions[i] ? marks[i] : 0;
+            marksObtained[i] = obtained;
+            total += obtained;
+        }
+        return total;
+    }
+
+    /**
+     * Scores one submission when the per-question marks are not needed.
+     */
+    public int score(int[] answers) {
+        if (answers.length != correctOptions.length) {
+            throw new IllegalArgumentException("Expected " + correctOptions.length
+                + " answers but got " + answers.length);
+        }
+        int total = 0;
+        for (int i = 0; i < correctOptions.length; i++) {
+            if (answers[i] == correctOptions[i]) {
+                total += marks[i];
+            }
+        }
+        return total;
+    }
+}
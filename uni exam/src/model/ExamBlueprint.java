@@ -0,0 +1,83 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What a generated exam paper must contain: how many questions to draw
+ * from each subject and difficulty, the marks the paper must add up to,
+ * and questions that must not be used. See controller.ExamGenerator.
+ */
+public class ExamBlueprint {
+    private List<Requirement> requirements = new ArrayList<>();
+    private Set<Integer> excludedQuestionIds = new HashSet<>();
+    private int totalMarks; // 0 for any total
+
+    /** Questions to draw from one subject and difficulty. */
+    public static final class Requirement {
+        private final String subject;
+        private final String difficulty;
+        private final int count;
+
+        public Requirement(String subject, String difficulty, int count) {
+            this.subject = subject;
+            this.difficulty = difficulty;
+            this.count = count;
+        }
+
+        public String getSubject() { return subject; }
+
+        public String getDifficulty() { return difficulty; }
+
+        public int getCount() { return count; }
+
+        @Override
+        public String toString() {
+            return count + " x " + subject + "/" + difficulty;
+        }
+    }
+
+    /**
+     * Adds count questions of the subject and difficulty to the paper, on
+     * top of any already required from them.
+     */
+    public void addRequirement(String subject, String difficulty, int count) {
+        requirements.add(new Requirement(subject, difficulty, count));
+    }
+
+    public List<Requirement> getRequirements() {
+        return requirements == null ? Collections.emptyList() : Collections.unmodifiableList(requirements);
+    }
+
+    public void addExclusion(int questionId) {
+        excludedQuestionIds.add(questionId);
+    }
+
+    public Set<Integer> getExcludedQuestionIds() {
+        return excludedQuestionIds == null ? Collections.emptySet() : Collections.unmodifiableSet(excludedQuestionIds);
+    }
+
+    public int getTotalMarks() { return totalMarks; }
+
+    /**
+     * @param totalMarks Marks every paper must add up to, or 0 for any total
+     */
+    public void setTotalMarks(int totalMarks) { this.totalMarks = totalMarks; }
+
+    public int getQuestionCount() {
+        int count = 0;
+        for (Requirement requirement : getRequirements()) {
+            count += requirement.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return getRequirements() + (totalMarks > 0 ? ", " + totalMarks + " marks" : "")
+            + (getExcludedQuestionIds().isEmpty() ? "" : ", " + excludedQuestionIds.size() + " excluded");
+    }
+}
@@ -0,0 +1,95 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of an exam's questions in paper order, together with
+ * its compiled answer key. One instance is shared by every student taking
+ * the exam, so neither the list nor the questions in it can be modified.
+ */
+public final class ExamPaper {
+    private final int examId;
+    private final long version;
+    private final List<Question> questions;
+    private final int[] sortedQuestionIds;
+    // Paper index of each entry of sortedQuestionIds
+    private final int[] sortedIndexes;
+    private final AnswerKey answerKey;
+
+    /**
+     * @param version Content version the paper was loaded at, see ExamPaperCache
+     */
+    public ExamPaper(int examId, long version, List<Question> questions) {
+        this.examId = examId;
+        this.version = version;
+        List<Question> frozen = new ArrayList<>(questions.size());
+        // Question id in the high half, paper index in the low half, so one sort orders both
+        long[] entries = new long[questions.size()];
+        for (int i = 0; i < questions.size(); i++) {
+            Question question = questions.get(i);
+            frozen.add(new FrozenQuestion(question));
+            entries[i] = ((long) question.getId() << 32) | i;
+        }
+        Arrays.sort(entries);
+        int[] ids = new int[entries.length];
+        int[] indexes = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            ids[i] = (int) (entries[i] >> 32);
+            indexes[i] = (int) entries[i];
+        }
+        this.questions = Collections.unmodifiableList(frozen);
+        this.sortedQuestionIds = ids;
+        this.sortedIndexes = indexes;
+        this.answerKey = new AnswerKey(frozen);
+    }
+
+    public int getExamId() { return examId; }
+
+    public long getVersion() { return version; }
+
+    public List<Question> getQuestions() { return questions; }
+
+    public int getQuestionCount() { return questions.size(); }
+
+    public int getTotalMarks() { return answerKey.getTotalMarks(); }
+
+    public AnswerKey getAnswerKey() { return answerKey; }
+
+    public boolean containsQuestion(int questionId) {
+        return Arrays.binarySearch(sortedQuestionIds, questionId) >= 0;
+    }
+
+    /**
+     * @return Position of the question in the paper, or -1 if it is not on it
+     */
+    public int indexOf(int questionId) {
+        int found = Arrays.binarySearch(sortedQuestionIds, questionId);
+        return found < 0 ? -1 : sortedIndexes[found];
+    }
+
+    /**
+     * Read-only copy of a question; every setter throws.
+     */
+    private static final class FrozenQuestion extends Question {
+        FrozenQuestion(Question source) {
+            super(source.getId(), source.getQuestionText(),
+                  Collections.unmodifiableList(new ArrayList<>(source.getOptions())),
+                  source.getCorrectOption(), source.getMarks(), source.getSubject(), source.getDifficulty());
+        }
+
+        @Override public void setId(int id) { throw readOnly(); }
+        @Override public void setQuestionText(String questionText) { throw readOnly(); }
+        @Override public void setOptions(List<String> options) { throw readOnly(); }
+        @Override public void setCorrectOption(int correctOption) { throw readOnly(); }
+        @Override public void setMarks(int marks) { throw readOnly(); }
+        @Override public void setSubject(String subject) { throw readOnly(); }
+        @Override public void setDifficulty(String difficulty) { throw readOnly(); }
+
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException("Questions of a cached exam paper are read-only");
+        }
+    }
+}
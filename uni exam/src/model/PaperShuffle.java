@@ -0,0 +1,199 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One student's ordering of an exam paper: the questions in a shuffled
+ * order and the options of each question shuffled too.
+ *
+ * The ordering is derived from a seed of exam id, student id and a server
+ * secret, so it is recomputed whenever it is needed instead of being
+ * stored. Served answers are mapped back to paper order before grading.
+ * The question order is an int per question and each option ordering is
+ * packed into one long, four bits per option, so questions with more than
+ * 16 options keep their option order.
+ */
+public final class PaperShuffle {
+    private static final int MAX_SHUFFLED_OPTIONS = 16;
+
+    private final ExamPaper paper;
+    // Served position -> paper index, or null when nothing is shuffled
+    private final int[] order;
+    // Per paper index: original option (0-based) in each 4-bit served slot; 0 keeps the order
+    private final long[] optionOrders;
+
+    private PaperShuffle(ExamPaper paper, int[] order, long[] optionOrders) {
+        this.paper = paper;
+        this.order = order;
+        this.optionOrders = optionOrders;
+    }
+
+    /**
+     * @return The paper in its original order, for when shuffling is off
+     */
+    public static PaperShuffle identity(ExamPaper paper) {
+        return new PaperShuffle(paper, null, null);
+    }
+
+    /**
+     * @return The ordering of the paper for one student; always the same
+     *         for the same paper, student and secret
+     */
+    public static PaperShuffle forStudent(ExamPaper paper, int studentId, long secret) {
+        long state = mix(secret ^ mix(((long) paper.getExamId() << 32) | (studentId & 0xFFFFFFFFL)));
+        List<Question> questions = paper.getQuestions();
+        int count = questions.size();
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            state += 0x9E3779B97F4A7C15L;
+            int j = bounded(mix(state), i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        long[] optionOrders = new long[count];
+        int[] options = new int[MAX_SHUFFLED_OPTIONS];
+        for (int q = 0; q < count; q++) {
+            int optionCount = questions.get(q).getOptions().size();
+            if (optionCount < 2 || optionCount > MAX_SHUFFLED_OPTIONS) {
+                continue;
+            }
+            for (int i = 0; i < optionCount; i++) {
+                options[i] = i;
+            }
+            for (int i = optionCount - 1; i > 0; i--) {
+                state += 0x9E3779B97F4A7C15L;
+                int j = bounded(mix(state), i + 1);
+                int swap = options[i];
+                options[i] = options[j];
+                options[j] = swap;
+            }
+            long packed = 0;
+            for (int slot = 0; slot < optionCount; slot++) {
+                packed |= (long) options[slot] << (4 * slot);
+            }
+            optionOrders[q] = packed;
+        }
+        return new PaperShuffle(paper, order, optionOrders);
+    }
+
+    public ExamPaper getPaper() { return paper; }
+
+    /**
+     * @return Index in the paper of the question served at the position
+     */
+    public int getPaperIndex(int position) {
+        return order == null ? position : order[position];
+    }
+
+    /**
+     * @param servedOption Option from 1 as the student saw it
+     * @return The same option numbered as in the question bank; values
+     *         that are not an option, such as UNANSWERED, pass through
+     */
+    public int toPaperOption(int paperIndex, int servedOption) {
+        long packed = optionOrders == null ? 0 : optionOrders[paperIndex];
+        if (packed == 0 || servedOption < 1
+                || servedOption > paper.getQuestions().get(paperIndex).getOptions().size()) {
+            return servedOption;
+        }
+        return (int) (packed >>> (4 * (servedOption - 1)) & 0xF) + 1;
+    }
+
+    /**
+     * @return The option as numbered for the student, the inverse of
+     *         toPaperOption
+     */
+    public int toServedOption(int paperIndex, int paperOption) {
+        long packed = optionOrders == null ? 0 : optionOrders[paperIndex];
+        int optionCount = paper.getQuestions().get(paperIndex).getOptions().size();
+        if (packed == 0 || paperOption < 1 || paperOption > optionCount) {
+            return paperOption;
+        }
+        for (int slot = 0; slot < optionCount; slot++) {
+            if ((packed >>> (4 * slot) & 0xF) == paperOption - 1) {
+                return slot + 1;
+            }
+        }
+        return paperOption;
+    }
+
+    /**
+     * @param servedAnswers Selected options by served position
+     * @return The answers in paper order with paper option numbers
+     */
+    public int[] toPaperOrder(int[] servedAnswers) {
+        if (order == null) {
+            return servedAnswers;
+        }
+        int[] answers = new int[servedAnswers.length];
+        for (int position = 0; position < servedAnswers.length; position++) {
+            int index = order[position];
+            answers[index] = toPaperOption(index, servedAnswers[position]);
+        }
+        return answers;
+    }
+
+    /**
+     * @return Answers in paper order rearranged as served, the inverse of
+     *         toPaperOrder
+     */
+    public int[] toServedOrder(int[] paperAnswers) {
+        if (order == null) {
+            return paperAnswers.clone();
+        }
+        int[] answers = new int[paperAnswers.length];
+        for (int position = 0; position < paperAnswers.length; position++) {
+            int index = order[position];
+            answers[position] = toServedOption(index, paperAnswers[index]);
+        }
+        return answers;
+    }
+
+    /**
+     * @return The questions in served order with their options reordered
+     *         and the correct option renumbered to match
+     */
+    public List<Question> getQuestions() {
+        List<Question> questions = paper.getQuestions();
+        if (order == null) {
+            return questions;
+        }
+        List<Question> served = new ArrayList<>(questions.size());
+        for (int index : order) {
+            Question question = questions.get(index);
+            long packed = optionOrders[index];
+            List<String> options = question.getOptions();
+            if (packed != 0) {
+                String[] reordered = new String[options.size()];
+                for (int slot = 0; slot < reordered.length; slot++) {
+                    reordered[slot] = options.get((int) (packed >>> (4 * slot) & 0xF));
+                }
+                options = Collections.unmodifiableList(Arrays.asList(reordered));
+            }
+            served.add(new Question(question.getId(), question.getQuestionText(), options,
+                toServedOption(index, question.getCorrectOption()), question.getMarks(),
+                question.getSubject(), question.getDifficulty()));
+        }
+        return Collections.unmodifiableList(served);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int bounded(long random, int bound) {
+        return (int) (((random >>> 32) * bound) >>> 32);
+    }
+}
@@ -0,0 +1,37 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated question listing. Pages are ordered by
+ * question id; pass getNextCursor() back to fetch the page after this one.
+ * Unlike an OFFSET, the cursor stays valid while questions are added or
+ * deleted, and every page costs the same to fetch however deep it is.
+ */
+public final class QuestionPage {
+    private final List<Question> questions;
+    private final int nextCursor;
+    private final boolean hasMore;
+
+    /**
+     * @param nextCursor Id of the last question on this page, or the
+     *                   requested cursor when the page is empty
+     */
+    public QuestionPage(List<Question> questions, int nextCursor, boolean hasMore) {
+        this.questions = Collections.unmodifiableList(questions);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<Question> getQuestions() { return questions; }
+
+    public int getNextCursor() { return nextCursor; }
+
+    /**
+     * @return Whether at least one more question follows this page
+     */
+    public boolean hasMore() { return hasMore; }
+
+    public boolean isEmpty() { return questions.isEmpty(); }
+}
@@ -0,0 +1,182 @@
+package servlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Streaming reader for a posted exam form
+ * (application/x-www-form-urlencoded). The exam id and the
+ * answer_&lt;questionId&gt;=&lt;option&gt; fields are parsed from the raw
+ * bytes into int arrays as they arrive, so a 200-question submission
+ * builds neither the container's parameter map nor a String per field.
+ * Other fields are skipped; an empty answer means unanswered.
+ */
+final class AnswerForm {
+    static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ANSWER_PREFIX = "answer_".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_ANSWERS = 10_000;
+    private static final int MAX_DIGITS = 9;
+
+    private static final int FIELD_SKIP = 0;
+    private static final int FIELD_ID = 1;
+    private static final int FIELD_ANSWER = 2;
+
+    private int examId = -1;
+    private int[] questionIds = new int[256];
+    private int[] options = new int[256];
+    private int count;
+    private boolean malformed;
+
+    // State of the field being read
+    private boolean inValue;
+    private int keyLength;
+    private boolean keyIsId = true;
+    private boolean keyIsAnswer = true;
+    private int keyNumber;
+    private int field;
+    private int value;
+    private int valueDigits;
+    private boolean valueIsNumber = true;
+
+    /**
+     * Reads the fields of the query string and then of the body.
+     */
+    static AnswerForm read(String queryString, InputStream body) throws IOException {
+        AnswerForm form = new AnswerForm();
+        if (queryString != null) {
+            byte[] query = queryString.getBytes(StandardCharsets.US_ASCII);
+            form.feed(query, 0, query.length);
+            form.endField();
+        }
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            form.feed(buffer, 0, read);
+        }
+        form.endField();
+        return form;
+    }
+
+    /**
+     * Reads the same fields from parameters the container already parsed,
+     * for multipart posts or a body consumed by a filter.
+     */
+    static AnswerForm fromParameters(Map<String, String[]> parameters) {
+        AnswerForm form = new AnswerForm();
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            String name = parameter.getKey();
+            String[] values = parameter.getValue();
+            if (values.length == 0) {
+                continue;
+            }
+            try {
+                if (name.equals("id")) {
+                    form.examId = Integer.parseInt(values[0]);
+                } else if (name.startsWith("answer_") && name.length() > ANSWER_PREFIX.length
+                        && name.chars().skip(ANSWER_PREFIX.length).allMatch(Character::isDigit)
+                        && !values[0].isEmpty()) {
+                    form.add(Integer.parseInt(name.substring(ANSWER_PREFIX.length)), Integer.parseInt(values[0]));
+                }
+            } catch (NumberFormatException e) {
+                form.malformed = true;
+            }
+        }
+        return form;
+    }
+
+    private void feed(byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buffer[i];
+            if (b == '&') {
+                endField();
+            } else if (inValue) {
+                if (field == FIELD_SKIP) {
+                    continue;
+                }
+                if (b >= '0' && b <= '9' && valueDigits < MAX_DIGITS) {
+                    value = value * 10 + (b - '0');
+                    valueDigits++;
+                } else {
+                    valueIsNumber = false;
+                }
+            } else if (b == '=') {
+                inValue = true;
+                if (keyIsId && keyLength == ID.length) {
+                    field = FIELD_ID;
+                } else if (keyIsAnswer && keyLength > ANSWER_PREFIX.length) {
+                    field = FIELD_ANSWER;
+                } else {
+                    field = FIELD_SKIP;
+                }
+            } else {
+                keyIsId &= keyLength < ID.length && b == ID[keyLength];
+                if (keyLength < ANSWER_PREFIX.length) {
+                    keyIsAnswer &= b == ANSWER_PREFIX[keyLength];
+                } else if (keyIsAnswer) {
+                    keyIsAnswer = b >= '0' && b <= '9' && keyLength - ANSWER_PREFIX.length < MAX_DIGITS;
+                    keyNumber = keyNumber * 10 + (b - '0');
+                }
+                keyLength++;
+            }
+        }
+    }
+
+    private void endField() {
+        if (inValue && field != FIELD_SKIP) {
+            if (!valueIsNumber) {
+                malformed = true;
+            } else if (field == FIELD_ID) {
+                if (valueDigits == 0) {
+                    malformed = true;
+                } else {
+                    examId = value;
+                }
+            } else if (valueDigits > 0) {
+                add(keyNumber, value);
+            }
+        }
+        inValue = false;
+        keyLength = 0;
+        keyIsId = true;
+        keyIsAnswer = true;
+        keyNumber = 0;
+        field = FIELD_SKIP;
+        value = 0;
+        valueDigits = 0;
+        valueIsNumber = true;
+    }
+
+    private void add(int questionId, int option) {
+        if (count == MAX_ANSWERS) {
+            malformed = true;
+            return;
+        }
+        if (count == questionIds.length) {
+            questionIds = Arrays.copyOf(questionIds, count * 2);
+            options = Arrays.copyOf(options, count * 2);
+        }
+        questionIds[count] = questionId;
+        options[count] = option;
+        count++;
+    }
+
+    /**
+     * @return true if nothing this form looks for was posted
+     */
+    boolean isEmpty() { return examId < 0 && count == 0 && !malformed; }
+
+    boolean isMalformed() { return malformed; }
+
+    int getExamId() { return examId; }
+
+    int[] getQuestionIds() { return questionIds; }
+
+    int[] getOptions() { return options; }
+
+    int getCount() { return count; }
+}
@@ -9,11 +9,19 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.util.*;
 import model.Question;
+import controller.AttemptRegistry;
 
-@WebServlet("/exam/*")
+@WebServlet(urlPatterns = "/exam/*", loadOnStartup = 1)
 public class ExamServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
 
+    @Override
+    public void init() throws ServletException {
+        // Starts the deadline ticks, so attempts left open by a restart are
+        // submitted on time even before anyone opens an exam
+        AttemptRegistry.getInstance();
+    }
+
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         HttpSession session = request.getSession(false);
@@ -40,6 +48,9 @@ public class ExamServlet extends HttpServlet {
             case "/view":
                 viewExam(request, response);
                 break;
+            case "/remaining":
+                remainingTime(request, response);
+                break;
             default:
                 response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
@@ -71,6 +82,9 @@ public class ExamServlet extends HttpServlet {
             case "/submit":
                 submitExam(request, response);
                 break;
+            case "/autosave":
+                autosaveAnswer(request, response);
+                break;
             default:
                 response.sendError(HttpServletResponse.SC_NOT_FOUND);
         }
@@ -179,27 +193,104 @@ public class ExamServlet extends HttpServlet {
         request.getRequestDispatcher("/WEB-INF/views/exam-view.jsp").forward(request, response);
     }
 
-    private void submitExam(HttpServletRequest request, HttpServletResponse response) 
-            throws ServletException, IOException {
-        String examId = request.getParameter("id");
-        if (examId == null || examId.trim().isEmpty()) {
+    /**
+     * Saves one answer change of the attempt in progress: parameters id
+     * (exam), question (position as served to the student, from 0) and
+     * option (as served, 0 clears).
+     * Responds 204 when saved and 409 when the attempt is already sealed.
+     */
+    private void autosaveAnswer(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Object studentId = request.getSession(false).getAttribute("userId");
+        if (!(studentId instanceof Integer)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        int examId;
+        int position;
+        int option;
+        try {
+            examId = Integer.parseInt(request.getParameter("id"));
+            position = Integer.parseInt(request.getParameter("question"));
+            option = Integer.parseInt(request.getParameter("option"));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        boolean saved = AttemptRegistry.getInstance().saveAnswer((Integer) studentId, examId, position, option);
+        response.setStatus(saved ? HttpServletResponse.SC_NO_CONTENT : HttpServletResponse.SC_CONFLICT);
+    }
+
+    /**
+     * Time left in the student's attempt as JSON, e.g.
+     * {"examId":7,"remainingMillis":1250000}; the server's deadline is
+     * authoritative and the page's countdown should follow it. Responds 404
+     * when the attempt has no deadline: not opened, untimed or submitted.
+     */
+    private void remainingTime(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Object studentId = request.getSession(false).getAttribute("userId");
+        if (!(studentId instanceof Integer)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        int examId;
+        try {
+            examId = Integer.parseInt(request.getParameter("id"));
+        } catch (NumberFormatException e) {
             response.sendError(HttpServletResponse.SC_BAD_REQUEST);
             return;
         }
 
-        // Get student answers
-        Map<String, String> answers = new HashMap<>();
-        Enumeration<String> paramNames = request.getParameterNames();
-        while (paramNames.hasMoreElements()) {
-            String paramName = paramNames.nextElement();
-            if (paramName.startsWith("answer_")) {
-                String questionId = paramName.substring(7); // Remove "answer_" prefix
-                answers.put(questionId, request.getParameter(paramName));
+        long remaining = AttemptRegistry.getInstance().getDeadlines().getRemainingMillis((Integer) studentId, examId);
+        if (remaining < 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("application/json");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write("{\"examId\":" + examId + ",\"remainingMillis\":" + remaining + "}");
+    }
+
+    /**
+     * Submits the student's answers: parameters id (exam) and, for each
+     * answered question, answer_&lt;questionId&gt; = option as served. The
+     * form is parsed as it streams in, graded against the cached answer
+     * key and stored through the write-behind submission queue. Responds
+     * 400 for a malformed form and 409 when the submission is refused:
+     * already submitted, past the deadline or not matching the paper.
+     */
+    private void submitExam(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        Object studentId = request.getSession(false).getAttribute("userId");
+        if (!(studentId instanceof Integer)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        AnswerForm form;
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.startsWith(AnswerForm.CONTENT_TYPE)) {
+            form = AnswerForm.read(request.getQueryString(), request.getInputStream());
+            if (form.isEmpty()) {
+                // A filter that read a parameter has already consumed the body
+                form = AnswerForm.fromParameters(request.getParameterMap());
             }
+        } else {
+            form = AnswerForm.fromParameters(request.getParameterMap());
+        }
+        if (form.isMalformed() || form.getExamId() < 0) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
         }
 
-        // TODO: Grade exam and save results to database
-        response.sendRedirect(request.getContextPath() + 
-            "/student/exams?submitted=true&id=" + examId);
+        boolean submitted = AttemptRegistry.getInstance().submitAnswers((Integer) studentId, form.getExamId(),
+            form.getQuestionIds(), form.getOptions(), form.getCount());
+        if (!submitted) {
+            response.sendError(HttpServletResponse.SC_CONFLICT);
+            return;
+        }
+        response.sendRedirect(request.getContextPath() +
+            "/student/exams?submitted=true&id=" + form.getExamId());
     }
 }
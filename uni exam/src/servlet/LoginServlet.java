@@ -1,5 +1,7 @@
 package servlet;
 
+import controller.AuthenticationController;
+import model.User;
 import java.io.IOException;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -24,14 +26,15 @@ public class LoginServlet extends HttpServlet {
         String password = request.getParameter("password");
         String role = request.getParameter("role");
 
-        // TODO: Add proper authentication logic here
-        boolean isAuthenticated = authenticate(username, password, role);
+        User user = authenticate(username, password, role);
 
-        if (isAuthenticated) {
+        if (user != null) {
             // Create session
             HttpSession session = request.getSession();
             session.setAttribute("username", username);
             session.setAttribute("role", role);
+            // The id submissions, autosaves and imports are recorded under
+            session.setAttribute("userId", user.getId());
 
             // Redirect based on role
             switch (role.toLowerCase()) {
@@ -53,9 +56,15 @@ public class LoginServlet extends HttpServlet {
         }
     }
 
-    private boolean authenticate(String username, String password, String role) {
-        // TODO: Implement proper authentication logic with database
-        // This is just a temporary implementation
-        return !username.isEmpty() && !password.isEmpty() && !role.isEmpty();
+    /**
+     * @return The user with these credentials and role, or null
+     */
+    private User authenticate(String username, String password, String role) {
+        if (username == null || password == null || role == null
+                || username.isEmpty() || password.isEmpty() || role.isEmpty()) {
+            return null;
+        }
+        User user = AuthenticationController.getInstance().login(username, password);
+        return user != null && role.equalsIgnoreCase(user.getRole()) ? user : null;
     }
 }
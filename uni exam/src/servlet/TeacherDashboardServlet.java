@@ -1,6 +1,22 @@
 package servlet;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import controller.ExamController;
+import controller.QuestionBankController;
+import controller.QuestionImporter;
+import model.Exam;
+import model.ExamBlueprint;
+import model.QuestionPage;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -11,6 +27,18 @@ import javax.servlet.http.HttpSession;
 @WebServlet("/teacher/*")
 public class TeacherDashboardServlet extends HttpServlet {
     private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    /** Body of POST /teacher/generate-exams. */
+    private static final class GenerateRequest {
+        String title;
+        String subject;
+        String startTime; // yyyy-MM-dd HH:mm
+        int duration;
+        List<Integer> studentIds;
+        Long seed;
+        ExamBlueprint blueprint;
+    }
 
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
@@ -42,6 +70,9 @@ public class TeacherDashboardServlet extends HttpServlet {
             case "/questions":
                 showQuestions(request, response);
                 break;
+            case "/questions/export":
+                exportQuestions(request, response);
+                break;
             case "/profile":
                 showProfile(request, response);
                 break;
@@ -68,12 +99,92 @@ public class TeacherDashboardServlet extends HttpServlet {
         request.getRequestDispatcher("/WEB-INF/views/teacher/students.jsp").forward(request, response);
     }
 
+    /**
+     * Lists the question bank one page at a time: parameters subject,
+     * after (cursor of the previous page, default 0) and size (default 50).
+     * The page is exposed to the view as questions, nextCursor and hasMore.
+     */
     private void showQuestions(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
-        // TODO: Add logic to fetch question bank
+        String subject = request.getParameter("subject");
+        if (subject != null && !subject.isEmpty()) {
+            int afterId;
+            int pageSize;
+            try {
+                afterId = parseOrDefault(request.getParameter("after"), 0);
+                pageSize = parseOrDefault(request.getParameter("size"), DEFAULT_PAGE_SIZE);
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            QuestionPage page = QuestionBankController.getInstance().getQuestionsBySubject(subject, afterId, pageSize);
+            if (page == null) {
+                request.setAttribute("error", "Could not load questions");
+            } else {
+                request.setAttribute("subject", subject);
+                request.setAttribute("questions", page.getQuestions());
+                request.setAttribute("nextCursor", page.getNextCursor());
+                request.setAttribute("hasMore", page.hasMore());
+            }
+        }
         request.getRequestDispatcher("/WEB-INF/views/teacher/questions.jsp").forward(request, response);
     }
 
+    /**
+     * Downloads every question of a subject as CSV. Rows are written as
+     * they are read from the database, so the subject is never held in
+     * memory, however large.
+     */
+    private void exportQuestions(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String subject = request.getParameter("subject");
+        if (subject == null || subject.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        response.setContentType("text/csv");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"questions.csv\"");
+        PrintWriter out = response.getWriter();
+        out.print("id,question,option1,option2,option3,option4,correct_option,marks,subject,difficulty\r\n");
+        int exported = QuestionBankController.getInstance().forEachQuestionBySubject(subject, question -> {
+            out.print(question.getId());
+            out.print(',');
+            out.print(csv(question.getQuestionText()));
+            for (String option : question.getOptions()) {
+                out.print(',');
+                out.print(csv(option));
+            }
+            out.print(',');
+            out.print(question.getCorrectOption());
+            out.print(',');
+            out.print(question.getMarks());
+            out.print(',');
+            out.print(csv(question.getSubject()));
+            out.print(',');
+            out.print(csv(question.getDifficulty()));
+            out.print("\r\n");
+        });
+        if (exported < 0 && !response.isCommitted()) {
+            response.reset();
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static int parseOrDefault(String value, int defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
     private void showProfile(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         // TODO: Add logic to fetch teacher profile
@@ -105,6 +216,12 @@ public class TeacherDashboardServlet extends HttpServlet {
             case "/add-question":
                 addQuestion(request, response);
                 break;
+            case "/import-questions":
+                importQuestions(request, response);
+                break;
+            case "/generate-exams":
+                generateExams(request, response);
+                break;
             case "/grade-exam":
                 gradeExam(request, response);
                 break;
@@ -135,6 +252,89 @@ public class TeacherDashboardServlet extends HttpServlet {
         response.sendRedirect(request.getContextPath() + "/teacher/questions?added=true");
     }
 
+    /**
+     * Imports the question bank in the request body: CSV, or JSON when the
+     * content type is application/json (see QuestionImporter). The body is
+     * read as it arrives. Responds with the import report as JSON.
+     */
+    private void importQuestions(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Object teacherId = request.getSession(false).getAttribute("userId");
+        if (!(teacherId instanceof Integer)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding("UTF-8");
+        }
+        String contentType = request.getContentType();
+        QuestionImporter importer = new QuestionImporter((Integer) teacherId);
+        QuestionImporter.Report report;
+        try {
+            report = contentType != null && contentType.startsWith("application/json")
+                ? importer.importJson(request.getReader()) : importer.importCsv(request.getReader());
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        Map<String, Object> body = report.toMap();
+        body.put("rejects", report.getRejects());
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(new Gson().toJson(body));
+    }
+
+    /**
+     * Creates a different exam for every listed student from the blueprint
+     * in the JSON body (see ExamController.createExamVariants). Responds
+     * with the exam id of each student as JSON.
+     */
+    private void generateExams(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding("UTF-8");
+        }
+        GenerateRequest body;
+        Date startTime;
+        try {
+            body = new Gson().fromJson(request.getReader(), GenerateRequest.class);
+            if (body == null || body.title == null || body.subject == null || body.startTime == null
+                    || body.duration <= 0 || body.studentIds == null || body.studentIds.isEmpty()
+                    || body.blueprint == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "title, subject, startTime, duration, studentIds and blueprint are required");
+                return;
+            }
+            startTime = new SimpleDateFormat("yyyy-MM-dd HH:mm").parse(body.startTime);
+        } catch (JsonParseException | ParseException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        Exam template = new Exam(0, body.title, body.subject, startTime, body.duration);
+        long seed = body.seed != null ? body.seed : System.nanoTime();
+        Map<Integer, Integer> examIds;
+        try {
+            examIds = ExamController.getInstance().createExamVariants(template, body.blueprint, body.studentIds, seed);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        if (examIds == null) {
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("seed", seed);
+        result.put("exams", examIds);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(new Gson().toJson(result));
+    }
+
     private void gradeExam(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         // TODO: Implement exam grading logic
@@ -0,0 +1,145 @@
+package test;
+
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import org.h2.tools.Server;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures bulk insert throughput into student_exam_answers: a JDBC batch
+ * (SqlExecutor.batch) against multi-row INSERT statements
+ * (SqlExecutor.insertRows), in rows per second.
+ *
+ * By default it starts an H2 TCP server on a loopback port and connects
+ * through it in MySQL mode, so every statement costs a network round trip
+ * as it does against a database server. Point -Ddb.url at an empty MySQL
+ * schema to measure a real server.
+ *
+ * Usage: java -Dbench.students=2000 -Dbench.questionsPerExam=50 test.BatchInsertBenchmark
+ */
+public class BatchInsertBenchmark {
+    private static final int ROUNDS = 5;
+
+    private final int students = Integer.getInteger("bench.students", 2000);
+    private final int questionsPerExam = Integer.getInteger("bench.questionsPerExam", 50);
+    private final List<int[]> rows = new ArrayList<>();
+    private int examId;
+
+    public static void main(String[] args) throws SQLException {
+        Server server = null;
+        if (System.getProperty("db.url") == null) {
+            server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+            BenchmarkDatabase.useUrl("jdbc:h2:tcp://localhost:" + server.getPort() + "/"
+                + BenchmarkDatabase.embeddedPath("insert_bench"));
+        } else {
+            BenchmarkDatabase.useUrl(System.getProperty("db.url"));
+        }
+
+        BatchInsertBenchmark benchmark = new BatchInsertBenchmark();
+        try {
+            benchmark.seed();
+            benchmark.run();
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Creates the students, questions and exam the answer rows refer to.
+     */
+    private void seed() throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            List<Integer> studentIds = BenchmarkDatabase.insertUsers(connection, "insert_bench_", "STUDENT", students);
+            List<Integer> questionIds = BenchmarkDatabase.insertQuestions(connection, studentIds.get(0),
+                questionsPerExam, number -> new Question(0, "Benchmark question " + number,
+                    List.of("A", "B", "C", "D"), 1 + number % 4, 1, "Mathematics", "Medium"));
+            examId = SqlExecutor.insert(connection, SqlStatement.INSERT_EXAM, pstmt -> {
+                pstmt.setString(1, "Insert benchmark");
+                pstmt.setString(2, "Mathematics");
+                pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                pstmt.setInt(4, 60);
+                pstmt.setInt(5, questionsPerExam);
+                pstmt.setInt(6, studentIds.get(0));
+            });
+            connection.commit();
+
+            for (int studentId : studentIds) {
+                for (int q = 0; q < questionsPerExam; q++) {
+                    int selected = 1 + (studentId + q) % 4;
+                    int marks = selected == 1 + q % 4 ? 1 : 0;
+                    rows.add(new int[] {studentId, examId, questionIds.get(q), selected, marks});
+                }
+            }
+        }
+    }
+
+    private void run() throws SQLException {
+        System.out.println(String.format("%d rows per round, best of %d rounds", rows.size(), ROUNDS));
+        System.out.println(String.format("%-28s %12s %14s", "PATH", "BEST ms", "ROWS/SEC"));
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass only warms up the JIT and the database
+            boolean report = pass == 1;
+            long batchNanos = best(connection -> SqlExecutor.batch(connection, SqlStatement.INSERT_ANSWER, rows,
+                (pstmt, row, i) -> {
+                    for (int column = 0; column < row.length; column++) {
+                        pstmt.setInt(column + 1, row[column]);
+                    }
+                }));
+            long multiRowNanos = best(connection -> SqlExecutor.insertRows(connection, SqlStatement.INSERT_ANSWER,
+                rows, (pstmt, row, i, offset) -> {
+                    for (int column = 0; column < row.length; column++) {
+                        pstmt.setInt(offset + column + 1, row[column]);
+                    }
+                }));
+            if (report) {
+                print("SqlExecutor.batch", batchNanos);
+                print("SqlExecutor.insertRows", multiRowNanos);
+                System.out.println(String.format("Speed-up: %.2fx", (double) batchNanos / multiRowNanos));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface InsertPath {
+        void insert(Connection connection) throws SQLException;
+    }
+
+    /**
+     * @return Fastest of ROUNDS timed inserts of all rows, each committed
+     *         and then deleted again
+     */
+    private long best(InsertPath path) throws SQLException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+                connection.setAutoCommit(false);
+                long start = System.nanoTime();
+                path.insert(connection);
+                connection.commit();
+                best = Math.min(best, System.nanoTime() - start);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.executeUpdate("DELETE FROM student_exam_answers WHERE exam_id = " + examId);
+                }
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        }
+        return best;
+    }
+
+    private void print(String path, long nanos) {
+        System.out.println(String.format("%-28s %12.1f %14.0f", path, nanos / 1_000_000.0,
+            rows.size() / (nanos / 1_000_000_000.0)));
+    }
+}
@@ -0,0 +1,141 @@
+package test;
+
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Database bootstrap and seed rows shared by the benchmarks and the
+ * assertion tests. Unless -Ddb.url is set they run on an in-memory H2
+ * database in MySQL mode, migrated on start.
+ */
+public final class BenchmarkDatabase {
+    private static final int ROWS_PER_INSERT = 1000;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Defaults db.url to the named in-memory H2 database and the other
+     * connection settings as for useUrl.
+     */
+    public static void useEmbedded(String name) {
+        useUrl("jdbc:h2:" + embeddedPath(name));
+    }
+
+    /**
+     * @return Path of the named in-memory H2 database in MySQL mode, e.g.
+     *         to serve it over TCP
+     */
+    public static String embeddedPath(String name) {
+        return "mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    /**
+     * Defaults db.url to the URL, H2's default credentials, migrations on
+     * start and no pool warm-up.
+     */
+    public static void useUrl(String url) {
+        setDefault("db.url", url);
+        setDefault("db.user", "sa");
+        setDefault("db.password", "");
+        setDefault("db.migrateOnStart", "true");
+        setDefault("db.pool.warmup", "0");
+    }
+
+    /**
+     * Sets a system property unless it was given on the command line.
+     */
+    public static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /**
+     * @return Id of the new user
+     */
+    public static int insertUser(Connection connection, String username, String role) throws SQLException {
+        return SqlExecutor.insert(connection, SqlStatement.INSERT_USER, pstmt -> {
+            pstmt.setString(1, username);
+            pstmt.setString(2, "password");
+            pstmt.setString(3, role);
+            pstmt.setString(4, username);
+            pstmt.setString(5, username + "@example.com");
+        });
+    }
+
+    /**
+     * Inserts users named prefix0, prefix1 and so on.
+     * @return Their ids in order
+     */
+    public static List<Integer> insertUsers(Connection connection, String prefix, String role, int count)
+            throws SQLException {
+        List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(insertUser(connection, prefix + i, role));
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts questions 0 to count - 1, created by the given user, with
+     * multi-row INSERTs. The caller commits.
+     * @param question Builds question number n; its id is ignored
+     * @return Generated ids in question order
+     */
+    public static List<Integer> insertQuestions(Connection connection, int createdBy, int count,
+                                                IntFunction<Question> question) throws SQLException {
+        long lastId;
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM questions");
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            lastId = rs.getLong(1);
+        }
+        List<Question> batch = new ArrayList<>(ROWS_PER_INSERT);
+        for (int n = 0; n < count; n++) {
+            batch.add(question.apply(n));
+            if (batch.size() == ROWS_PER_INSERT || n == count - 1) {
+                SqlExecutor.insertRows(connection, SqlStatement.INSERT_QUESTION, batch,
+                    (pstmt, row, i, offset) -> {
+                        pstmt.setString(offset + 1, row.getQuestionText());
+                        List<String> options = row.getOptions();
+                        for (int o = 0; o < 4; o++) {
+                            pstmt.setString(offset + o + 2, options.get(o));
+                        }
+                        pstmt.setInt(offset + 6, row.getCorrectOption());
+                        pstmt.setInt(offset + 7, row.getMarks());
+                        pstmt.setString(offset + 8, row.getSubject());
+                        pstmt.setString(offset + 9, row.getDifficulty());
+                        pstmt.setInt(offset + 10, createdBy);
+                    });
+                batch.clear();
+            }
+        }
+
+        // Rows of one multi-row INSERT get ascending ids
+        List<Integer> ids = new ArrayList<>(count);
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT id FROM questions WHERE created_by = ? AND id > ? ORDER BY id")) {
+            pstmt.setInt(1, createdBy);
+            pstmt.setLong(2, lastId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        if (ids.size() != count) {
+            throw new SQLException("Inserted " + count + " questions but found " + ids.size());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,271 @@
+package test;
+
+import controller.ExamController;
+import controller.ExamPaperCache;
+import controller.QuestionBankController;
+import controller.ResultsAnalyticsController;
+import controller.SubmissionQueue;
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeds a database and times the controller hot paths, printing latency
+ * percentiles per operation.
+ *
+ * By default it runs against an in-memory H2 database in MySQL mode with
+ * the db/migration schema applied, so it needs no server. Pass -Ddb.url
+ * (and db.user / db.password) to run it against an empty MySQL schema.
+ *
+ * Volumes and iterations are set with -Dbench.* properties, see the
+ * fields below. With -Dbench.maxP95Ms=N the run exits with status 1 if
+ * any operation's p95 exceeds N milliseconds, so it can gate a build.
+ *
+ * Usage: java -Dbench.students=2000 test.BenchmarkHarness
+ */
+public class BenchmarkHarness {
+    private static final String[] SUBJECTS = {"Mathematics", "Physics", "Chemistry", "Biology", "Computer Science"};
+    private static final String[] DIFFICULTIES = {"Easy", "Medium", "Hard"};
+
+    private final int students = Integer.getInteger("bench.students", 500);
+    private final int questionCount = Integer.getInteger("bench.questions", 2000);
+    private final int exams = Integer.getInteger("bench.exams", 20);
+    private final int questionsPerExam = Integer.getInteger("bench.questionsPerExam", 25);
+    // The first N students have already submitted every exam
+    private final int submissionsPerExam = Integer.getInteger("bench.submissionsPerExam", 200);
+    private final int iterations = Integer.getInteger("bench.iterations", 200);
+    private final int warmupIterations = Integer.getInteger("bench.warmup", 50);
+
+    private final Random random = new Random(42);
+    private final List<Integer> studentIds = new ArrayList<>();
+    private final List<Integer> examIds = new ArrayList<>();
+    private final List<LatencyRecorder> results = new ArrayList<>();
+    private DatabaseConnection database;
+
+    @FunctionalInterface
+    interface Operation {
+        void run(int iteration);
+    }
+
+    public static void main(String[] args) throws IOException {
+        BenchmarkDatabase.useEmbedded("exam_bench");
+        // A fresh database must not replay submissions journaled by an earlier run
+        BenchmarkDatabase.setDefault("submission.journal.dir", Files.createTempDirectory("bench-journal").toString());
+
+        BenchmarkHarness harness = new BenchmarkHarness();
+        int status = 0;
+        try {
+            harness.seed();
+            harness.runScenarios();
+            status = harness.report();
+        } catch (SQLException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+            e.printStackTrace();
+            status = 2;
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+        System.exit(status);
+    }
+
+    private void seed() throws SQLException {
+        if (submissionsPerExam >= students) {
+            throw new IllegalArgumentException("bench.submissionsPerExam must be lower than bench.students");
+        }
+        database = DatabaseConnection.getInstance();
+        long start = System.currentTimeMillis();
+        try (Connection connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            studentIds.addAll(BenchmarkDatabase.insertUsers(connection, "bench_student_", "STUDENT", students));
+
+            List<Question> questions = new ArrayList<>();
+            List<Integer> questionIds = BenchmarkDatabase.insertQuestions(connection, studentIds.get(0), questionCount,
+                i -> {
+                    Question question = new Question(0, "Benchmark question " + i + " about topic " + (i % 97),
+                        List.of("Option A" + i, "Option B" + i, "Option C" + i, "Option D" + i),
+                        1 + random.nextInt(4), 1 + random.nextInt(5),
+                        SUBJECTS[i % SUBJECTS.length], DIFFICULTIES[i % DIFFICULTIES.length]);
+                    questions.add(question);
+                    return question;
+                });
+            for (int i = 0; i < questionCount; i++) {
+                questions.get(i).setId(questionIds.get(i));
+            }
+
+            for (int e = 0; e < exams; e++) {
+                List<Question> paper = pickQuestions(questions);
+                int totalMarks = paper.stream().mapToInt(Question::getMarks).sum();
+                int examNumber = e;
+                int examId = SqlExecutor.insert(connection, SqlStatement.INSERT_EXAM, pstmt -> {
+                    pstmt.setString(1, "Benchmark exam " + examNumber);
+                    pstmt.setString(2, SUBJECTS[examNumber % SUBJECTS.length]);
+                    pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis() + 86_400_000L * (examNumber + 1)));
+                    pstmt.setInt(4, 60);
+                    pstmt.setInt(5, totalMarks);
+                    pstmt.setInt(6, studentIds.get(0));
+                });
+                examIds.add(examId);
+                SqlExecutor.insertRows(connection, SqlStatement.INSERT_EXAM_QUESTION, paper,
+                    (pstmt, question, i, offset) -> {
+                        pstmt.setInt(offset + 1, examId);
+                        pstmt.setInt(offset + 2, question.getId());
+                        pstmt.setInt(offset + 3, i + 1);
+                    });
+                seedSubmissions(connection, examId, paper, totalMarks);
+                connection.commit();
+            }
+
+            // Half of the exams are open, so AVAILABLE_EXAMS has something to filter
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("UPDATE exams SET is_active = true WHERE MOD(id, 2) = 0");
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+        System.out.println(String.format("Seeded %d students, %d questions, %d exams x %d questions, "
+            + "%d answers in %d ms", students, questionCount, exams, questionsPerExam,
+            (long) exams * submissionsPerExam * questionsPerExam, System.currentTimeMillis() - start));
+    }
+
+    private List<Question> pickQuestions(List<Question> questions) {
+        List<Question> paper = new ArrayList<>();
+        int offset = random.nextInt(questions.size());
+        for (int i = 0; i < questionsPerExam; i++) {
+            paper.add(questions.get((offset + i) % questions.size()));
+        }
+        return paper;
+    }
+
+    private void seedSubmissions(Connection connection, int examId, List<Question> paper, int totalMarks)
+            throws SQLException {
+        for (int s = 0; s < submissionsPerExam; s++) {
+            int studentId = studentIds.get(s);
+            int[] selected = new int[paper.size()];
+            int obtained = 0;
+            for (int q = 0; q < paper.size(); q++) {
+                Question question = paper.get(q);
+                selected[q] = random.nextInt(10) < 6 ? question.getCorrectOption() : 1 + random.nextInt(4);
+                obtained += selected[q] == question.getCorrectOption() ? question.getMarks() : 0;
+            }
+            int marks = obtained;
+            SqlExecutor.insertRows(connection, SqlStatement.INSERT_ANSWER, paper, (pstmt, question, q, offset) -> {
+                pstmt.setInt(offset + 1, studentId);
+                pstmt.setInt(offset + 2, examId);
+                pstmt.setInt(offset + 3, question.getId());
+                pstmt.setInt(offset + 4, selected[q]);
+                pstmt.setInt(offset + 5, selected[q] == question.getCorrectOption() ? question.getMarks() : 0);
+            });
+            SqlExecutor.update(connection, SqlStatement.INSERT_RESULT, pstmt -> {
+                pstmt.setInt(1, studentId);
+                pstmt.setInt(2, examId);
+                pstmt.setInt(3, marks);
+                pstmt.setDouble(4, marks * 100.0 / totalMarks);
+            });
+        }
+    }
+
+    private void runScenarios() {
+        ExamController examController = ExamController.getInstance();
+        QuestionBankController questionBank = QuestionBankController.getInstance();
+        ResultsAnalyticsController analytics = ResultsAnalyticsController.getInstance();
+
+        time("ExamController.getAvailableExams", i -> examController.getAvailableExams(randomStudent()));
+        time("ExamController.getExamQuestions", i -> examController.getExamQuestions(randomExam()));
+        time("ExamController.shuffledQuestions", i -> examController.getExamQuestions(randomStudent(), randomExam()));
+        time("QuestionBank.getQuestionsBySubject", i -> questionBank.getQuestionsBySubject(SUBJECTS[i % SUBJECTS.length]));
+        time("QuestionBank.questionsBySubject page", i -> questionBank.getQuestionsBySubject(SUBJECTS[i % SUBJECTS.length], 0, 50));
+        time("QuestionBank.forEachQuestionBySubject", i -> questionBank.forEachQuestionBySubject(SUBJECTS[i % SUBJECTS.length], question -> { }));
+        time("QuestionBank.searchQuestions", i -> questionBank.searchQuestions("topic " + (i % 97)));
+        time("Analytics.getStudentResults", i -> analytics.getStudentResults(studentIds.get(i % submissionsPerExam)));
+        time("Analytics.getExamAnalytics", i -> analytics.getExamAnalytics(randomExam()));
+        time("Analytics.getTopPerformers", i -> analytics.getTopPerformers(randomExam(), 10));
+
+        // Every submission needs a (student, exam) pair that has not been used yet
+        int freshStudents = students - submissionsPerExam;
+        int submissions = Math.min(warmupIterations + iterations, freshStudents * exams);
+        time("ExamController.submitExam", submissions, i -> {
+            int studentId = studentIds.get(submissionsPerExam + i % freshStudents);
+            int examId = examIds.get(i / freshStudents);
+            int[] answers = new int[questionsPerExam];
+            for (int q = 0; q < questionsPerExam; q++) {
+                answers[q] = 1 + random.nextInt(4);
+            }
+            if (!examController.submitExam(studentId, examId, answers)) {
+                throw new IllegalStateException("submitExam failed for student " + studentId);
+            }
+        });
+    }
+
+    private int randomStudent() {
+        return studentIds.get(random.nextInt(studentIds.size()));
+    }
+
+    private int randomExam() {
+        return examIds.get(random.nextInt(examIds.size()));
+    }
+
+    private void time(String name, Operation operation) {
+        time(name, warmupIterations + iterations, operation);
+    }
+
+    /**
+     * Runs the operation, discarding the first bench.warmup calls so JIT
+     * compilation and cold pool connections do not skew the percentiles.
+     */
+    private void time(String name, int calls, Operation operation) {
+        LatencyRecorder recorder = new LatencyRecorder(name);
+        for (int i = 0; i < calls; i++) {
+            long start = System.nanoTime();
+            operation.run(i);
+            if (i >= warmupIterations) {
+                recorder.record(System.nanoTime() - start);
+            }
+        }
+        results.add(recorder);
+    }
+
+    /**
+     * @return Process exit status: 1 when a p95 budget was exceeded
+     */
+    private int report() {
+        System.out.println();
+        System.out.println(LatencyRecorder.header());
+        for (LatencyRecorder recorder : results) {
+            System.out.println(recorder);
+        }
+        System.out.println();
+        System.out.println("Pool statistics: " + database.getPoolStatistics());
+        System.out.println("Exam paper cache: " + ExamPaperCache.getInstance().getStatistics());
+        SubmissionQueue submissionQueue = ExamController.getInstance().getSubmissionQueue();
+        if (submissionQueue != null) {
+            // Drains the write-behind queue so the counts are final
+            submissionQueue.close();
+            System.out.println("Submission queue: " + submissionQueue.getStatistics());
+        }
+
+        String budget = System.getProperty("bench.maxP95Ms");
+        if (budget == null) {
+            return 0;
+        }
+        double maxP95 = Double.parseDouble(budget);
+        int status = 0;
+        for (LatencyRecorder recorder : results) {
+            if (recorder.percentileMillis(95) > maxP95) {
+                System.err.println("REGRESSION: " + recorder.getOperation() + " p95 "
+                    + String.format("%.3f", recorder.percentileMillis(95)) + " ms exceeds " + maxP95 + " ms");
+                status = 1;
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,97 @@
+package test;
+
+import util.TimingWheel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmark of the deadline ticks behind AttemptDeadlines: the cost
+ * of one tick of the timing wheel against scanning every open deadline,
+ * as the number of open attempts grows. On a simulated clock with one
+ * second ticks, bench.due deadlines fall in the measured first
+ * bench.windowMinutes and the other attempts are due one to three hours
+ * later, so every row expires the same work. Also checks that each
+ * deadline fires on the first tick at or after it. Needs no database.
+ *
+ * Usage: java -Dbench.due=2000 -Dbench.windowMinutes=10 test.DeadlineWheelBenchmark
+ */
+public class DeadlineWheelBenchmark {
+    private static final long TICK_MILLIS = 1000;
+    private static final int[] ATTEMPTS = {2_000, 10_000, 50_000, 200_000};
+
+    public static void main(String[] args) {
+        int due = Integer.getInteger("bench.due", 2000);
+        long windowMillis = Long.getLong("bench.windowMinutes", 10) * 60_000L;
+        System.out.println(String.format("1 s ticks over %d minutes, %d deadlines due in that time",
+            windowMillis / 60_000L, due));
+        System.out.println(String.format("%-10s %14s %14s %16s", "ATTEMPTS", "WHEEL ns/TICK", "WHEEL MAX ns",
+            "SCAN ns/TICK"));
+
+        long checksum = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass only warms up the JIT
+            boolean report = pass == 1;
+            for (int attempts : ATTEMPTS) {
+                Random random = new Random(attempts);
+                long[] deadlines = new long[attempts];
+                for (int i = 0; i < attempts; i++) {
+                    deadlines[i] = i < due ? 1 + (long) (random.nextDouble() * windowMillis)
+                        : 3_600_000L + (long) (random.nextDouble() * 7_200_000L);
+                }
+                long ticks = windowMillis / TICK_MILLIS + 1;
+
+                TimingWheel<Integer> wheel = new TimingWheel<>(TICK_MILLIS, 0);
+                for (int i = 0; i < attempts; i++) {
+                    wheel.schedule(i, deadlines[i]);
+                }
+                List<TimingWheel.Timeout<Integer>> expired = new ArrayList<>();
+                long wheelNanos = 0;
+                long wheelMax = 0;
+                int fired = 0;
+                for (long tick = 1; tick <= ticks; tick++) {
+                    long now = tick * TICK_MILLIS;
+                    long start = System.nanoTime();
+                    wheel.advance(now, expired);
+                    long elapsed = System.nanoTime() - start;
+                    wheelNanos += elapsed;
+                    wheelMax = Math.max(wheelMax, elapsed);
+                    for (TimingWheel.Timeout<Integer> timeout : expired) {
+                        long deadline = deadlines[timeout.getItem()];
+                        if (deadline > now || deadline <= now - TICK_MILLIS) {
+                            throw new IllegalStateException("Deadline " + deadline + " fired at " + now);
+                        }
+                    }
+                    fired += expired.size();
+                    expired.clear();
+                }
+                if (fired != Math.min(due, attempts) || wheel.size() != attempts - fired) {
+                    throw new IllegalStateException(fired + " of " + due + " deadlines fired");
+                }
+
+                // The alternative: compare every open deadline on each tick
+                long[] open = deadlines.clone();
+                int remaining = attempts;
+                long scanNanos = 0;
+                for (long tick = 1; tick <= ticks; tick++) {
+                    long now = tick * TICK_MILLIS;
+                    long start = System.nanoTime();
+                    for (int i = 0; i < remaining; i++) {
+                        if (open[i] <= now) {
+                            checksum += open[i];
+                            open[i--] = open[--remaining];
+                        }
+                    }
+                    scanNanos += System.nanoTime() - start;
+                }
+
+                if (report) {
+                    System.out.println(String.format("%-10d %14.0f %14d %16.0f", attempts,
+                        (double) wheelNanos / ticks, wheelMax, (double) scanNanos / ticks));
+                }
+            }
+        }
+        // Printed so the JIT cannot drop the scan
+        System.out.println("checksum " + checksum);
+    }
+}
@@ -0,0 +1,299 @@
+package test;
+
+import controller.AttemptRegistry;
+import controller.ExamController;
+import controller.ExamGenerator;
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Exam;
+import model.ExamBlueprint;
+import model.Question;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Seeds a question bank and a cohort of students, then draws a different
+ * paper for every student with ExamGenerator and stores them through
+ * ExamController.createExamVariants. Compares the draw with picking each
+ * paper's questions with one ORDER BY RAND() query per requirement.
+ *
+ * Checks that every paper has the required questions per subject and
+ * difficulty, adds up to the required marks, avoids excluded questions
+ * and repeats no question, that no two papers are the same, that the
+ * stored exams match the papers, and that each student is only listed
+ * their own variant.
+ *
+ * Runs on an in-memory H2 database unless -Ddb.url is set.
+ *
+ * Usage: java -Dbench.questions=200000 -Dbench.students=3000 test.ExamGeneratorBenchmark
+ */
+public class ExamGeneratorBenchmark {
+    private static final String[] SUBJECTS = {"Mathematics", "Physics", "Chemistry", "Biology"};
+    private static final String[] DIFFICULTIES = {"Easy", "Medium", "Hard"};
+    private static final int TOTAL_MARKS = 100;
+
+    private final int questions = Integer.getInteger("bench.questions", 200_000);
+    private final int students = Integer.getInteger("bench.students", 3000);
+    private final int baselinePapers = Integer.getInteger("bench.baselinePapers", 20);
+
+    private final List<Integer> studentIds = new ArrayList<>();
+    // Question id -> index into SUBJECTS * DIFFICULTIES, and marks
+    private final Map<Integer, Integer> cellOf = new HashMap<>();
+    private final Map<Integer, Integer> marksOf = new HashMap<>();
+
+    public static void main(String[] args) throws SQLException {
+        BenchmarkDatabase.useEmbedded("generator_bench");
+
+        ExamGeneratorBenchmark benchmark = new ExamGeneratorBenchmark();
+        try {
+            benchmark.seed();
+            benchmark.run();
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+
+    private void seed() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            int teacherId = BenchmarkDatabase.insertUser(connection, "generator_teacher", "TEACHER");
+            studentIds.addAll(BenchmarkDatabase.insertUsers(connection, "generator_student", "STUDENT", students));
+            BenchmarkDatabase.insertQuestions(connection, teacherId, questions, number -> {
+                // Easy questions mostly carry 1 mark, hard ones 3
+                int difficulty = number / SUBJECTS.length % DIFFICULTIES.length;
+                return new Question(0, "Generator question " + number, Arrays.asList("A", "B", "C", "D"), 1,
+                    1 + (number % 7 < 5 ? difficulty : number % 3), SUBJECTS[number % SUBJECTS.length],
+                    DIFFICULTIES[difficulty]);
+            });
+            connection.commit();
+            SqlExecutor.forEach(connection, SqlStatement.QUESTION_POOLS, SqlExecutor.NO_PARAMETERS, rs -> {
+                cellOf.put(rs.getInt("id"), cell(rs.getString("subject"), rs.getString("difficulty")));
+                marksOf.put(rs.getInt("id"), rs.getInt("marks"));
+            });
+        }
+        System.out.println(String.format("Seeded %d questions and %d students in %d ms", questions, students,
+            System.currentTimeMillis() - start));
+    }
+
+    private static int cell(String subject, String difficulty) {
+        for (int s = 0; s < SUBJECTS.length; s++) {
+            for (int d = 0; d < DIFFICULTIES.length; d++) {
+                if (SUBJECTS[s].equals(subject) && DIFFICULTIES[d].equals(difficulty)) {
+                    return s * DIFFICULTIES.length + d;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 50 questions over three subjects, 100 marks, without every tenth
+     * question of the bank.
+     */
+    private ExamBlueprint blueprint() {
+        ExamBlueprint blueprint = new ExamBlueprint();
+        blueprint.addRequirement("Mathematics", "Easy", 10);
+        blueprint.addRequirement("Mathematics", "Medium", 10);
+        blueprint.addRequirement("Mathematics", "Hard", 5);
+        blueprint.addRequirement("Physics", "Medium", 10);
+        blueprint.addRequirement("Physics", "Hard", 5);
+        blueprint.addRequirement("Chemistry", "Easy", 5);
+        // Merged with the first Chemistry requirement
+        blueprint.addRequirement("Chemistry", "Easy", 5);
+        blueprint.setTotalMarks(TOTAL_MARKS);
+        for (int id : cellOf.keySet()) {
+            if (id % 10 == 0) {
+                blueprint.addExclusion(id);
+            }
+        }
+        return blueprint;
+    }
+
+    private void run() throws SQLException {
+        ExamBlueprint blueprint = blueprint();
+        ExamGenerator generator = ExamGenerator.getInstance();
+        LatencyRecorder draws = new LatencyRecorder("generate (" + students + " papers)");
+        List<ExamGenerator.Paper> papers = null;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            papers = generator.generate(blueprint, students, i);
+            if (i >= 3) {
+                draws.record(System.nanoTime() - start);
+            }
+        }
+        check(blueprint, papers);
+
+        // The same papers drawn one query per requirement
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement pstmt = connection.prepareStatement("SELECT id FROM questions "
+                 + "WHERE subject = ? AND difficulty = ? AND MOD(id, 10) <> 0 ORDER BY RAND() LIMIT ?")) {
+            for (int p = 0; p < baselinePapers; p++) {
+                for (ExamBlueprint.Requirement requirement : blueprint.getRequirements()) {
+                    pstmt.setString(1, requirement.getSubject());
+                    pstmt.setString(2, requirement.getDifficulty());
+                    pstmt.setInt(3, requirement.getCount());
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            rs.getInt(1);
+                        }
+                    }
+                }
+            }
+        }
+        double baselineMillis = (System.nanoTime() - start) / 1e6;
+
+        ExamController exams = ExamController.getInstance();
+        Exam template = new Exam(0, "Generated exam", "Science", new Date(System.currentTimeMillis() + 86_400_000L), 90);
+        start = System.nanoTime();
+        Map<Integer, Integer> examIds = exams.createExamVariants(template, blueprint, studentIds, 1);
+        long storeMillis = (System.nanoTime() - start) / 1_000_000;
+        if (examIds == null || examIds.size() != students) {
+            throw new IllegalStateException("createExamVariants stored " + (examIds == null ? 0 : examIds.size())
+                + " exams for " + students + " students");
+        }
+        checkStored(generator.generate(blueprint, students, 1), examIds);
+        checkVisibility(examIds);
+
+        System.out.println();
+        System.out.println(LatencyRecorder.header());
+        System.out.println(draws);
+        System.out.println();
+        System.out.println(String.format("ORDER BY RAND() per requirement: %.0f ms for %d papers, about %.0f s for %d",
+            baselineMillis, baselinePapers, baselineMillis / baselinePapers * students / 1000, students));
+        System.out.println(String.format("createExamVariants: %d exams with %d questions each stored in %d ms",
+            students, blueprint.getQuestionCount(), storeMillis));
+        System.out.println("Generator: " + generator.getStatistics());
+    }
+
+    private void check(ExamBlueprint blueprint, List<ExamGenerator.Paper> papers) {
+        int[] required = new int[SUBJECTS.length * DIFFICULTIES.length];
+        for (ExamBlueprint.Requirement requirement : blueprint.getRequirements()) {
+            required[cell(requirement.getSubject(), requirement.getDifficulty())] += requirement.getCount();
+        }
+        Set<Set<Integer>> distinct = new HashSet<>();
+        int[] marksDrawn = new int[4];
+        int[] marksInBank = new int[4];
+        for (int marks : marksOf.values()) {
+            marksInBank[marks]++;
+        }
+        for (ExamGenerator.Paper paper : papers) {
+            int[] drawn = new int[required.length];
+            int marks = 0;
+            Set<Integer> ids = new HashSet<>();
+            for (int id : paper.getQuestionIds()) {
+                if (!ids.add(id) || id % 10 == 0) {
+                    throw new IllegalStateException("Question " + id + " repeated or excluded");
+                }
+                drawn[cellOf.get(id)]++;
+                marks += marksOf.get(id);
+                marksDrawn[marksOf.get(id)]++;
+            }
+            if (!Arrays.equals(drawn, required) || marks != TOTAL_MARKS || paper.getTotalMarks() != marks) {
+                throw new IllegalStateException("Paper does not match the blueprint: " + Arrays.toString(drawn)
+                    + ", " + marks + " marks");
+            }
+            distinct.add(ids);
+        }
+        if (distinct.size() != papers.size()) {
+            throw new IllegalStateException(distinct.size() + " different papers among " + papers.size());
+        }
+        System.out.println(String.format("All %d papers match %s and differ from each other", papers.size(), blueprint));
+        System.out.println(String.format("Marks 1/2/3: %.0f%%/%.0f%%/%.0f%% of drawn questions, %.0f%%/%.0f%%/%.0f%% "
+            + "of the bank", percent(marksDrawn, 1), percent(marksDrawn, 2), percent(marksDrawn, 3),
+            percent(marksInBank, 1), percent(marksInBank, 2), percent(marksInBank, 3)));
+    }
+
+    private static double percent(int[] counts, int index) {
+        return 100.0 * counts[index] / (counts[1] + counts[2] + counts[3]);
+    }
+
+    /**
+     * Checks that each student's stored exam holds their paper in order.
+     */
+    private void checkStored(List<ExamGenerator.Paper> papers, Map<Integer, Integer> examIds) throws SQLException {
+        Map<Integer, List<Integer>> stored = new HashMap<>();
+        Map<Integer, Integer> studentOf = new HashMap<>();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT exam_id, question_id FROM exam_questions "
+                    + "ORDER BY exam_id, question_number")) {
+                while (rs.next()) {
+                    stored.computeIfAbsent(rs.getInt(1), k -> new ArrayList<>()).add(rs.getInt(2));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT exam_id, student_id FROM exam_variants")) {
+                while (rs.next()) {
+                    studentOf.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+        for (int s = 0; s < students; s++) {
+            int examId = examIds.get(studentIds.get(s));
+            List<Integer> expected = new ArrayList<>();
+            for (int id : papers.get(s).getQuestionIds()) {
+                expected.add(id);
+            }
+            if (!expected.equals(stored.get(examId)) || !studentIds.get(s).equals(studentOf.get(examId))) {
+                throw new IllegalStateException("Exam " + examId + " does not hold student " + studentIds.get(s)
+                    + "'s paper");
+            }
+        }
+        System.out.println("Every stored exam holds its student's paper");
+    }
+
+    /**
+     * Activates the variants and checks that every student is listed
+     * exactly their own.
+     */
+    private void checkVisibility(Map<Integer, Integer> examIds) throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE exams SET is_active = true WHERE id IN (SELECT exam_id FROM exam_variants)");
+        }
+        Set<Integer> variants = new HashSet<>(examIds.values());
+        ExamController exams = ExamController.getInstance();
+        for (int studentId : studentIds) {
+            List<Integer> listed = new ArrayList<>();
+            for (Exam exam : exams.getAvailableExams(studentId)) {
+                if (variants.contains(exam.getId())) {
+                    listed.add(exam.getId());
+                }
+            }
+            if (!listed.equals(List.of(examIds.get(studentId)))) {
+                throw new IllegalStateException("Student " + studentId + " is listed variants " + listed);
+            }
+        }
+
+        // Once started, a variant opens for its student and nobody else
+        int owner = studentIds.get(0);
+        int other = studentIds.get(1);
+        int examId = examIds.get(owner);
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             PreparedStatement pstmt = connection.prepareStatement("UPDATE exams SET start_time = ? WHERE id = ?")) {
+            pstmt.setTimestamp(1, new Timestamp(System.currentTimeMillis() - 60_000));
+            pstmt.setInt(2, examId);
+            pstmt.executeUpdate();
+        }
+        AttemptRegistry registry = AttemptRegistry.getInstance();
+        if (registry.openAttempt(other, examId) != null || registry.saveAnswer(other, examId, 0, 1)
+                || registry.submitAttempt(other, examId) || registry.openAttempt(owner, examId) == null) {
+            throw new IllegalStateException("Variant " + examId + " is not reserved for student " + owner);
+        }
+        System.out.println("Every student is listed only their own variant, which only they can open");
+    }
+}
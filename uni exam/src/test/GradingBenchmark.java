@@ -0,0 +1,119 @@
+package test;
+
+import model.AnswerKey;
+import model.Question;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmark of submission grading: the original walk over
+ * List&lt;Question&gt; and boxed List&lt;Integer&gt; answers against the
+ * compiled AnswerKey. Reports time and bytes allocated per submission.
+ * Needs no database.
+ *
+ * Usage: java -Dbench.questions=50 -Dbench.submissions=2000 test.GradingBenchmark
+ */
+public class GradingBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int questionCount = Integer.getInteger("bench.questions", 50);
+        int submissionCount = Integer.getInteger("bench.submissions", 2000);
+
+        Random random = new Random(42);
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < questionCount; i++) {
+            questions.add(new Question(i + 1, "Question " + i, List.of("A", "B", "C", "D"),
+                1 + random.nextInt(4), 1 + random.nextInt(5), "Mathematics", "Medium"));
+        }
+        AnswerKey answerKey = new AnswerKey(questions);
+
+        // The same submissions in both representations
+        List<List<Integer>> boxedAnswers = new ArrayList<>();
+        int[][] primitiveAnswers = new int[submissionCount][questionCount];
+        for (int s = 0; s < submissionCount; s++) {
+            List<Integer> answers = new ArrayList<>();
+            for (int q = 0; q < questionCount; q++) {
+                primitiveAnswers[s][q] = 1 + random.nextInt(4);
+                answers.add(primitiveAnswers[s][q]);
+            }
+            boxedAnswers.add(answers);
+        }
+
+        System.out.println(String.format("%d questions, %d submissions per round, best of %d rounds",
+            questionCount, submissionCount, ROUNDS));
+        System.out.println(String.format("%-22s %14s %16s", "PATH", "NS/SUBMISSION", "BYTES/SUBMISSION"));
+
+        long checksum = 0;
+        for (int warm = 0; warm < 2; warm++) {
+            // The first pass only warms up the JIT
+            boolean report = warm == 1;
+            long bestNanos = Long.MAX_VALUE;
+            long bestBytes = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                for (List<Integer> answers : boxedAnswers) {
+                    checksum += gradeWithLists(questions, answers);
+                }
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+                bestBytes = Math.min(bestBytes, allocatedBytes() - bytes);
+            }
+            if (report) {
+                print("List<Question> walk", bestNanos, bestBytes, submissionCount);
+            }
+
+            bestNanos = Long.MAX_VALUE;
+            bestBytes = Long.MAX_VALUE;
+            int[] marksObtained = new int[questionCount];
+            for (int round = 0; round < ROUNDS; round++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                for (int[] answers : primitiveAnswers) {
+                    checksum += answerKey.grade(answers, marksObtained);
+                }
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+                bestBytes = Math.min(bestBytes, allocatedBytes() - bytes);
+            }
+            if (report) {
+                print("AnswerKey.grade", bestNanos, bestBytes, submissionCount);
+            }
+        }
+        // Printed so the JIT cannot drop the grading work
+        System.out.println("checksum " + checksum);
+    }
+
+    /**
+     * Grading as ExamController.submitExam did it before answer keys.
+     */
+    private static int gradeWithLists(List<Question> questions, List<Integer> answers) {
+        int[] marksObtained = new int[questions.size()];
+        int totalMarksObtained = 0;
+        for (int i = 0; i < questions.size(); i++) {
+            Question question = questions.get(i);
+            marksObtained[i] = (answers.get(i) == question.getCorrectOption()) ? question.getMarks() : 0;
+            totalMarksObtained += marksObtained[i];
+        }
+        int totalMarks = questions.stream().mapToInt(Question::getMarks).sum();
+        return totalMarks == 0 ? 0 : totalMarksObtained;
+    }
+
+    private static void print(String path, long nanos, long bytes, int submissions) {
+        System.out.println(String.format("%-22s %14.1f %16.1f", path, (double) nanos / submissions,
+            bytes < 0 ? -1.0 : (double) bytes / submissions));
+    }
+
+    /**
+     * @return Bytes allocated so far by this thread, or -1 when the JVM
+     *         does not report it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,66 @@
+package test;
+
+import java.util.Arrays;
+
+/**
+ * Collects per-call latencies for one benchmark operation and reports
+ * percentiles. Samples are kept in a primitive array so recording does
+ * not disturb the timings with boxing garbage.
+ */
+public class LatencyRecorder {
+    private final String operation;
+    private long[] samples = new long[1024];
+    private int count;
+
+    public LatencyRecorder(String operation) {
+        this.operation = operation;
+    }
+
+    public void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile Value between 0 and 100
+     * @return Latency in milliseconds (nearest-rank), or 0 with no samples
+     */
+    public double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1_000_000.0;
+    }
+
+    public double meanMillis() {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += samples[i];
+        }
+        return count == 0 ? 0 : total / (count * 1_000_000.0);
+    }
+
+    public static String header() {
+        return String.format("%-36s %7s %9s %9s %9s %9s %9s", "OPERATION", "CALLS", "MEAN ms", "P50 ms",
+            "P95 ms", "P99 ms", "MAX ms");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-36s %7d %9.3f %9.3f %9.3f %9.3f %9.3f", operation, count, meanMillis(),
+            percentileMillis(50), percentileMillis(95), percentileMillis(99), percentileMillis(100));
+    }
+}
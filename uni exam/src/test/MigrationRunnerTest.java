@@ -0,0 +1,118 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import database.MigrationRunner;
+import org.h2.jdbcx.JdbcDataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class MigrationRunnerTest {
+    private static int databases;
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        // A fresh database per test
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:" + BenchmarkDatabase.embeddedPath("migration_test_" + ++databases));
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+    }
+
+    @Test
+    void testAppliesEveryScriptOnce() throws SQLException {
+        MigrationRunner runner = new MigrationRunner(dataSource);
+        int applied = runner.migrate();
+        assertTrue(applied > 0);
+
+        // Each script is recorded under its version, in order
+        Map<Integer, String> scripts = installedScripts();
+        assertEquals(applied, scripts.size());
+        for (int version = 1; version <= applied; version++) {
+            assertTrue(scripts.get(version).startsWith("V" + version + "__"), scripts.get(version));
+        }
+
+        // A second run finds nothing to do
+        assertEquals(0, runner.migrate());
+        assertEquals(applied, installedScripts().size());
+    }
+
+    @Test
+    void testRecordsTheChecksumOfEachScript() throws SQLException, IOException {
+        new MigrationRunner(dataSource).migrate();
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT script, checksum FROM schema_version")) {
+            while (rs.next()) {
+                assertEquals(checksum(rs.getString("script")), rs.getLong("checksum"), rs.getString("script"));
+            }
+        }
+    }
+
+    @Test
+    void testChangedScriptIsNotAppliedAgain() throws SQLException {
+        MigrationRunner runner = new MigrationRunner(dataSource);
+        runner.migrate();
+
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE schema_version SET checksum = checksum + 1 WHERE version = 1");
+            stmt.executeUpdate("INSERT INTO users (username, password, role, full_name, email) " +
+                               "VALUES ('kept', 'password', 'STUDENT', 'Kept', 'kept@example.com')");
+        }
+
+        // A checksum mismatch is reported, not fixed by re-running the script
+        assertEquals(0, runner.migrate());
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users WHERE username = 'kept'")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void testResumesAfterTheLastRecordedVersion() throws SQLException {
+        MigrationRunner runner = new MigrationRunner(dataSource);
+        int all = runner.migrate();
+
+        // As if the last script had not been released when the database was set up
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM schema_version WHERE version = " + all);
+        }
+        // Its statements meet objects that already exist and are skipped
+        assertEquals(1, runner.migrate());
+        assertEquals(all, installedScripts().size());
+    }
+
+    private Map<Integer, String> installedScripts() throws SQLException {
+        Map<Integer, String> scripts = new HashMap<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, script FROM schema_version")) {
+            while (rs.next()) {
+                scripts.put(rs.getInt("version"), rs.getString("script"));
+            }
+        }
+        return scripts;
+    }
+
+    private static long checksum(String script) throws IOException {
+        try (InputStream in = MigrationRunnerTest.class.getClassLoader()
+                .getResourceAsStream("db/migration/" + script)) {
+            assertNotNull(in, script);
+            CRC32 crc = new CRC32();
+            crc.update(in.readAllBytes());
+            return crc.getValue();
+        }
+    }
+}
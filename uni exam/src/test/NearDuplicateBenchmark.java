@@ -0,0 +1,288 @@
+package test;
+
+import controller.QuestionBankController;
+import controller.QuestionSimilarityIndex;
+import database.DatabaseConnection;
+import model.Question;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeds a large question bank in which every 50th question has a reworded
+ * copy: one word changed, or for every other copy three words changed,
+ * with the options shuffled. Builds QuestionSimilarityIndex over it and
+ * reports its size per question, the time of a lookup and of the full
+ * clustering report, and how long comparing every pair would take.
+ *
+ * Checks the report against the planted copies: recall is given by the
+ * exact Jaccard similarity of each pair's shingles, and a cluster that
+ * joins unrelated questions counts as a false positive. Also checks that
+ * addQuestion flags a copy of an existing question and that deleted
+ * questions drop out of the index.
+ *
+ * Runs on an in-memory H2 database unless -Ddb.url is set.
+ *
+ * Usage: java -Dbench.questions=200000 -Dbench.threads=4 test.NearDuplicateBenchmark
+ */
+public class NearDuplicateBenchmark {
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ne", "ru", "ta", "vo", "zi", "pe", "su",
+        "da", "fo", "gi", "he", "ju", "ba", "co", "wi", "xe", "yu"};
+    private static final int VOCABULARY = 8000;
+    private static final int COPY_EVERY = 50;
+
+    private final int questions = Integer.getInteger("bench.questions", 200_000);
+    private final int threads = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+    private final int bruteForceSample = Integer.getInteger("bench.bruteForceSample", 3000);
+
+    private final Random random = new Random(42);
+    private final String[] words = new String[VOCABULARY];
+    private final List<Question> bank = new ArrayList<>();
+    // Index in bank of each planted copy's original
+    private final Map<Integer, Integer> originals = new HashMap<>();
+
+    public static void main(String[] args) throws SQLException {
+        BenchmarkDatabase.useEmbedded("similarity_bench");
+
+        NearDuplicateBenchmark benchmark = new NearDuplicateBenchmark();
+        try {
+            benchmark.seed();
+            benchmark.run();
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+
+    private void seed() throws SQLException {
+        for (int w = 0; w < VOCABULARY; w++) {
+            StringBuilder word = new StringBuilder();
+            for (int n = w + SYLLABLES.length; n > 0; n /= SYLLABLES.length) {
+                word.append(SYLLABLES[n % SYLLABLES.length]);
+            }
+            words[w] = word.toString();
+        }
+        int originalCount = questions * COPY_EVERY / (COPY_EVERY + 1);
+        for (int q = 0; q < originalCount; q++) {
+            String[] text = new String[12 + random.nextInt(10)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = randomWord();
+            }
+            bank.add(new Question(0, String.join(" ", text) + "?",
+                Arrays.asList(randomWord(), randomWord(), randomWord(), randomWord()), 1, 1, "Mathematics", "Medium"));
+        }
+        for (int q = 0; q < originalCount && bank.size() < questions; q += COPY_EVERY) {
+            Question original = bank.get(q);
+            String[] text = original.getQuestionText().replace("?", "").split(" ");
+            int changes = (q / COPY_EVERY) % 2 == 0 ? 1 : 3;
+            for (int c = 0; c < changes; c++) {
+                text[random.nextInt(text.length)] = randomWord();
+            }
+            List<String> options = new ArrayList<>(original.getOptions());
+            Collections.shuffle(options, random);
+            originals.put(bank.size(), q);
+            bank.add(new Question(0, String.join(" ", text) + "?", options, 1, 1, "Mathematics", "Medium"));
+        }
+
+        long start = System.currentTimeMillis();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            int teacherId = BenchmarkDatabase.insertUser(connection, "similarity_teacher", "TEACHER");
+            List<Integer> ids = BenchmarkDatabase.insertQuestions(connection, teacherId, bank.size(), bank::get);
+            connection.commit();
+            for (int q = 0; q < bank.size(); q++) {
+                bank.get(q).setId(ids.get(q));
+            }
+        }
+        System.out.println(String.format("Seeded %d questions with %d reworded copies in %d ms", bank.size(),
+            originals.size(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @return A vocabulary word, low indexes far more often than high ones
+     */
+    private String randomWord() {
+        return words[(int) Math.min(VOCABULARY - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY)) - 1)];
+    }
+
+    private void run() {
+        QuestionSimilarityIndex index = QuestionSimilarityIndex.getInstance();
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = usedHeap(runtime);
+        long start = System.currentTimeMillis();
+        index.rebuild();
+        long buildMillis = System.currentTimeMillis() - start;
+        long heapAfter = usedHeap(runtime);
+        System.out.println(String.format("Built the index in %d ms: %s", buildMillis, index.getStatistics()));
+        System.out.println(String.format("Heap grew by %,d bytes (%d per question)", heapAfter - heapBefore,
+            (heapAfter - heapBefore) / bank.size()));
+
+        start = System.currentTimeMillis();
+        List<QuestionSimilarityIndex.Cluster> clusters = index.findClusters(threads);
+        long reportMillis = System.currentTimeMillis() - start;
+        checkClusters(clusters);
+
+        LatencyRecorder lookups = new LatencyRecorder("findSimilar");
+        for (int i = 0; i < 4000; i++) {
+            Question question = bank.get(random.nextInt(bank.size()));
+            long begin = System.nanoTime();
+            index.findSimilar(question);
+            if (i >= 2000) {
+                lookups.record(System.nanoTime() - begin);
+            }
+        }
+
+        long bruteForceNanos = bruteForce();
+        double pairs = (double) bank.size() * (bank.size() - 1) / 2;
+        double samplePairs = (double) bruteForceSample * (bruteForceSample - 1) / 2;
+        System.out.println();
+        System.out.println(LatencyRecorder.header());
+        System.out.println(lookups);
+        System.out.println(String.format("Clustering report: %d ms on %d threads (%d clusters)", reportMillis,
+            threads, clusters.size()));
+        System.out.println(String.format("Comparing every pair: %,.0f ms for %d questions, about %,.0f s for %d",
+            bruteForceNanos / 1e6, bruteForceSample, bruteForceNanos / 1e9 * pairs / samplePairs, bank.size()));
+
+        checkAddQuestion(index);
+    }
+
+    private static long usedHeap(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Every cluster must hold one original and its copy; recall is split
+     * by the exact similarity of the pair.
+     */
+    private void checkClusters(List<QuestionSimilarityIndex.Cluster> clusters) {
+        Map<Integer, Integer> positionOfId = new HashMap<>();
+        for (int q = 0; q < bank.size(); q++) {
+            positionOfId.put(bank.get(q).getId(), q);
+        }
+        Set<Integer> found = new HashSet<>();
+        int falsePositives = 0;
+        for (QuestionSimilarityIndex.Cluster cluster : clusters) {
+            int[] ids = cluster.getQuestionIds();
+            int copy = positionOfId.get(ids[ids.length - 1]);
+            if (ids.length == 2 && positionOfId.get(ids[0]).equals(originals.get(copy))) {
+                found.add(copy);
+            } else {
+                falsePositives++;
+                if (falsePositives <= 5) {
+                    System.out.println("  Unexpected cluster: " + cluster);
+                }
+            }
+        }
+        // Estimates scatter around the threshold, so copies just above it are reported apart
+        double[] bounds = {0.8, 0.7, 0};
+        int[] total = new int[bounds.length];
+        int[] recalled = new int[bounds.length];
+        double lowest = 1;
+        for (Map.Entry<Integer, Integer> copy : originals.entrySet()) {
+            double similarity = jaccard(shingles(bank.get(copy.getKey())), shingles(bank.get(copy.getValue())));
+            lowest = Math.min(lowest, similarity);
+            int bucket = 0;
+            while (similarity < bounds[bucket]) {
+                bucket++;
+            }
+            total[bucket]++;
+            if (found.contains(copy.getKey())) {
+                recalled[bucket]++;
+            }
+        }
+        for (int b = 0; b < bounds.length; b++) {
+            System.out.println(String.format("Copies with similarity %s: %d of %d found (%.1f%%)",
+                b == 0 ? ">= " + bounds[0] : b == bounds.length - 1 ? String.format("< %.1f (lowest %.2f)", bounds[b - 1],
+                    lowest) : bounds[b] + " to " + bounds[b - 1], recalled[b], total[b],
+                100.0 * recalled[b] / Math.max(1, total[b])));
+        }
+        System.out.println(falsePositives + " clusters with unrelated questions");
+        if (falsePositives > clusters.size() / 100 || recalled[0] < total[0] * 0.98) {
+            throw new IllegalStateException("The report missed copies or joined unrelated questions");
+        }
+    }
+
+    /**
+     * Exact Jaccard similarity of every pair of the first questions, for
+     * comparison with the index.
+     */
+    private long bruteForce() {
+        int sample = Math.min(bruteForceSample, bank.size());
+        List<Set<String>> sets = new ArrayList<>(sample);
+        for (int q = 0; q < sample; q++) {
+            sets.add(shingles(bank.get(q)));
+        }
+        long start = System.nanoTime();
+        int similar = 0;
+        for (int a = 0; a < sample; a++) {
+            for (int b = a + 1; b < sample; b++) {
+                if (jaccard(sets.get(a), sets.get(b)) >= 0.7) {
+                    similar++;
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.println(String.format("Brute force found %d similar pairs among %d questions", similar, sample));
+        return nanos;
+    }
+
+    private void checkAddQuestion(QuestionSimilarityIndex index) {
+        QuestionBankController questionBank = QuestionBankController.getInstance();
+        Question original = bank.get(1);
+        String[] text = original.getQuestionText().split(" ");
+        text[0] = "Reworded";
+        Question copy = new Question(0, String.join(" ", text), original.getOptions(), 1, 1, "Mathematics", "Easy");
+        long start = System.nanoTime();
+        questionBank.addQuestion(copy);
+        long addMicros = (System.nanoTime() - start) / 1000;
+        List<QuestionSimilarityIndex.Match> flags = questionBank.getNearDuplicates(copy.getId());
+        if (flags.isEmpty() || flags.get(0).getQuestionId() != original.getId()) {
+            throw new IllegalStateException("addQuestion flagged " + flags + ", expected " + original.getId());
+        }
+        questionBank.deleteQuestion(copy.getId());
+        for (QuestionSimilarityIndex.Match match : index.findSimilar(copy)) {
+            if (match.getQuestionId() == copy.getId()) {
+                throw new IllegalStateException("Deleted question " + copy.getId() + " is still indexed");
+            }
+        }
+        System.out.println(String.format("addQuestion flagged the copy of %d as %s in %d us", original.getId(),
+            flags, addMicros));
+    }
+
+    /**
+     * The 5-character shingles of the lower-case words, and the options
+     * as wholes.
+     */
+    private static Set<String> shingles(Question question) {
+        String text = question.getQuestionText().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", " ").trim();
+        Set<String> shingles = new HashSet<>();
+        for (int i = 0; i + 5 <= text.length(); i++) {
+            shingles.add(text.substring(i, i + 5));
+        }
+        for (String option : question.getOptions()) {
+            shingles.add("option: " + option.toLowerCase(Locale.ROOT));
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        int common = 0;
+        for (String shingle : a) {
+            if (b.contains(shingle)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+}
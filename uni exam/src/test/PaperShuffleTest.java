@@ -0,0 +1,134 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import model.AnswerKey;
+import model.ExamPaper;
+import model.PaperShuffle;
+import model.Question;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PaperShuffleTest {
+    private static final long SECRET = 0x5EEDL;
+    // Option counts per question, including one too large to shuffle
+    private static final int[] OPTION_COUNTS = {4, 4, 2, 5, 1, 4, 20, 3, 4, 16, 4, 6};
+
+    private ExamPaper paper;
+
+    @BeforeEach
+    void setUp() {
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < OPTION_COUNTS.length; i++) {
+            List<String> options = new ArrayList<>();
+            for (int o = 1; o <= OPTION_COUNTS[i]; o++) {
+                options.add("Q" + i + " option " + o);
+            }
+            questions.add(new Question(100 + i, "Question " + i, options, 1 + i % OPTION_COUNTS[i],
+                1 + i % 3, "Mathematics", "Easy"));
+        }
+        paper = new ExamPaper(42, 1, questions);
+    }
+
+    @Test
+    void testSameStudentGetsSameOrder() {
+        PaperShuffle first = PaperShuffle.forStudent(paper, 7, SECRET);
+        PaperShuffle second = PaperShuffle.forStudent(paper, 7, SECRET);
+        for (int position = 0; position < OPTION_COUNTS.length; position++) {
+            assertEquals(first.getPaperIndex(position), second.getPaperIndex(position));
+            assertEquals(first.getQuestions().get(position).getOptions(),
+                second.getQuestions().get(position).getOptions());
+        }
+
+        // Other students, or another secret, see other orders
+        boolean differs = false;
+        for (int studentId = 8; studentId < 16 && !differs; studentId++) {
+            differs = !servedIds(PaperShuffle.forStudent(paper, studentId, SECRET)).equals(servedIds(first));
+        }
+        assertTrue(differs);
+        assertNotEquals(servedIds(first), servedIds(PaperShuffle.forStudent(paper, 7, SECRET + 1)));
+    }
+
+    @Test
+    void testServesEveryQuestionOnce() {
+        for (int studentId = 1; studentId <= 50; studentId++) {
+            PaperShuffle shuffle = PaperShuffle.forStudent(paper, studentId, SECRET);
+            boolean[] served = new boolean[OPTION_COUNTS.length];
+            for (int position = 0; position < OPTION_COUNTS.length; position++) {
+                int index = shuffle.getPaperIndex(position);
+                assertFalse(served[index]);
+                served[index] = true;
+                assertEquals(paper.getQuestions().get(index).getId(), shuffle.getQuestions().get(position).getId());
+            }
+        }
+    }
+
+    @Test
+    void testOptionMappingsInvertEachOther() {
+        for (int studentId = 1; studentId <= 50; studentId++) {
+            PaperShuffle shuffle = PaperShuffle.forStudent(paper, studentId, SECRET);
+            for (int index = 0; index < OPTION_COUNTS.length; index++) {
+                boolean[] seen = new boolean[OPTION_COUNTS[index] + 1];
+                for (int served = 1; served <= OPTION_COUNTS[index]; served++) {
+                    int option = shuffle.toPaperOption(index, served);
+                    assertFalse(seen[option]);
+                    seen[option] = true;
+                    assertEquals(served, shuffle.toServedOption(index, option));
+                }
+                // Values that are not options pass through
+                assertEquals(AnswerKey.UNANSWERED, shuffle.toPaperOption(index, AnswerKey.UNANSWERED));
+                assertEquals(OPTION_COUNTS[index] + 1, shuffle.toPaperOption(index, OPTION_COUNTS[index] + 1));
+            }
+            // Too many options to pack: the order is kept
+            for (int option = 1; option <= 20; option++) {
+                assertEquals(option, shuffle.toPaperOption(6, option));
+            }
+        }
+    }
+
+    @Test
+    void testServedAnswersMapBackToThePaper() {
+        int[] paperAnswers = new int[OPTION_COUNTS.length];
+        for (int i = 0; i < paperAnswers.length; i++) {
+            paperAnswers[i] = i % 5 == 0 ? AnswerKey.UNANSWERED : 1 + (i * 7) % OPTION_COUNTS[i];
+        }
+        for (int studentId = 1; studentId <= 50; studentId++) {
+            PaperShuffle shuffle = PaperShuffle.forStudent(paper, studentId, SECRET);
+            assertArrayEquals(paperAnswers, shuffle.toPaperOrder(shuffle.toServedOrder(paperAnswers)));
+        }
+    }
+
+    @Test
+    void testServedQuestionsKeepTheirCorrectAnswer() {
+        PaperShuffle shuffle = PaperShuffle.forStudent(paper, 3, SECRET);
+        List<Question> served = shuffle.getQuestions();
+        for (int position = 0; position < served.size(); position++) {
+            Question original = paper.getQuestions().get(shuffle.getPaperIndex(position));
+            Question question = served.get(position);
+            assertEquals(original.getOptions().get(original.getCorrectOption() - 1),
+                question.getOptions().get(question.getCorrectOption() - 1));
+            assertEquals(original.getMarks(), question.getMarks());
+        }
+    }
+
+    @Test
+    void testIdentityKeepsThePaper() {
+        PaperShuffle shuffle = PaperShuffle.identity(paper);
+        int[] answers = {1, 2, 0, 3, 1, 4, 20, 3, 2, 16, 1, 6};
+        assertArrayEquals(answers, shuffle.toPaperOrder(answers));
+        assertArrayEquals(answers, shuffle.toServedOrder(answers));
+        assertEquals(paper.getQuestions(), shuffle.getQuestions());
+        for (int position = 0; position < OPTION_COUNTS.length; position++) {
+            assertEquals(position, shuffle.getPaperIndex(position));
+        }
+    }
+
+    private static List<Integer> servedIds(PaperShuffle shuffle) {
+        List<Integer> ids = new ArrayList<>();
+        for (Question question : shuffle.getQuestions()) {
+            ids.add(question.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,241 @@
+package test;
+
+import controller.QuestionBankController;
+import controller.QuestionImporter;
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Generates a CSV and a JSON question bank and loads them with
+ * QuestionImporter, comparing its rate with adding the same questions one
+ * at a time through QuestionBankController.addQuestion.
+ *
+ * Every 20th record repeats an earlier one with different case, spacing
+ * and option order, every 50th repeats a question already in the bank and
+ * every 100th is invalid. Checks that the report counts each exactly,
+ * that only the rest reach the database, and that importing a file twice
+ * adds nothing the second time.
+ *
+ * Runs on an in-memory H2 database unless -Ddb.url is set.
+ *
+ * Usage: java -Dbench.records=50000 -Dbench.existing=20000 -Dimport.threads=4 test.QuestionImportBenchmark
+ */
+public class QuestionImportBenchmark {
+    private static final String[] SUBJECTS = {"Mathematics", "Physics", "Chemistry", "Biology"};
+
+    private final int records = Integer.getInteger("bench.records", 50_000);
+    private final int existing = Integer.getInteger("bench.existing", 20_000);
+    private final int baselineRecords = Integer.getInteger("bench.baselineRecords", 2000);
+
+    private int teacherId;
+    private int expectedImported;
+    private int expectedDuplicates;
+    private int expectedInvalid;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkDatabase.useEmbedded("import_bench");
+
+        QuestionImportBenchmark benchmark = new QuestionImportBenchmark();
+        Path csv = Files.createTempFile("questions", ".csv");
+        Path json = Files.createTempFile("questions", ".json");
+        try {
+            benchmark.seed();
+            benchmark.writeCsv(csv);
+            benchmark.writeJson(json);
+            benchmark.run(csv, json);
+        } finally {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(json);
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+
+    private void seed() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            teacherId = BenchmarkDatabase.insertUser(connection, "import_teacher", "TEACHER");
+            BenchmarkDatabase.insertQuestions(connection, teacherId, existing, QuestionImportBenchmark::existingQuestion);
+            connection.commit();
+        }
+        System.out.println(String.format("Seeded %d questions in %d ms", existing, System.currentTimeMillis() - start));
+    }
+
+    private static Question existingQuestion(int number) {
+        return new Question(0, "Which value does series " + number + " converge to?",
+            Arrays.asList("Zero", "One", "Series " + number, "It diverges"), 3, 2,
+            SUBJECTS[number % SUBJECTS.length], "Hard");
+    }
+
+    /**
+     * @return The question for record i of the file, or null if the record is invalid
+     */
+    private Question record(String prefix, int i) {
+        if (i % 100 == 99) {
+            return null;
+        }
+        if (i % 50 == 49) {
+            Question copy = existingQuestion(i % existing);
+            copy.setQuestionText(copy.getQuestionText().toUpperCase());
+            return copy;
+        }
+        if (i % 20 == 19) {
+            Question original = record(prefix, i - 7);
+            List<String> options = new ArrayList<>(original.getOptions());
+            Collections.reverse(options);
+            return new Question(0, "  " + original.getQuestionText().replace(" ", "   ").toLowerCase(), options,
+                4 - original.getCorrectOption() + 1, original.getMarks(), original.getSubject(), "Easy");
+        }
+        // Every seventh record has text that needs quoting in CSV
+        String text = i % 7 == 0
+            ? "In " + prefix + " question " + i + ", which option is \"right\",\nall things considered?"
+            : "What is the " + prefix + " value of item " + i + "?";
+        return new Question(0, text, Arrays.asList(String.valueOf(i), String.valueOf(i + 1), "Both, sometimes",
+            "None"), 1 + i % 4, 1 + i % 3, SUBJECTS[i % SUBJECTS.length], "Medium");
+    }
+
+    private void count(int i) {
+        if (i % 100 == 99) {
+            expectedInvalid++;
+        } else if (i % 50 == 49 || i % 20 == 19) {
+            expectedDuplicates++;
+        } else {
+            expectedImported++;
+        }
+    }
+
+    private void writeCsv(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("question,option1,option2,option3,option4,correct_option,marks,subject,difficulty\n");
+            for (int i = 0; i < records; i++) {
+                count(i);
+                Question question = record("csv", i);
+                if (question == null) {
+                    // Alternately a bad option number and a missing option
+                    out.write(i % 200 == 99 ? "\"Invalid " + i + "\",a,b,c,d,7,1,Physics,Easy\n"
+                        : "\"Invalid " + i + "\",a,,c,d,1,1,Physics,Easy\n");
+                    continue;
+                }
+                out.write(csv(question.getQuestionText()));
+                for (String option : question.getOptions()) {
+                    out.write(',');
+                    out.write(csv(option));
+                }
+                out.write("," + question.getCorrectOption() + "," + question.getMarks() + ","
+                    + question.getSubject() + "," + question.getDifficulty() + "\n");
+            }
+        }
+    }
+
+    private static String csv(String value) {
+        return value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+            ? value : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private void writeJson(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("[\n");
+            for (int i = 0; i < records; i++) {
+                Question question = record("json", i);
+                out.write(i == 0 ? "  " : ",\n  ");
+                if (question == null) {
+                    out.write(i % 200 == 99 ? "{\"questionText\": \"Invalid\", \"options\": [\"a\", \"b\"], "
+                        + "\"correctOption\": 1, \"marks\": 1, \"subject\": \"Physics\", \"difficulty\": \"Easy\"}"
+                        : "{\"questionText\": \"Invalid\", \"options\": [\"a\", \"b\", \"c\", \"d\"], "
+                        + "\"correctOption\": 1, \"marks\": \"many\", \"subject\": \"Physics\", \"difficulty\": \"Easy\"}");
+                    continue;
+                }
+                out.write("{\"questionText\": " + json(question.getQuestionText()) + ", \"options\": [");
+                for (int o = 0; o < 4; o++) {
+                    out.write((o == 0 ? "" : ", ") + json(question.getOptions().get(o)));
+                }
+                out.write("], \"correctOption\": " + question.getCorrectOption() + ", \"marks\": " + question.getMarks()
+                    + ", \"subject\": " + json(question.getSubject()) + ", \"difficulty\": "
+                    + json(question.getDifficulty()) + "}");
+            }
+            out.write("\n]\n");
+        }
+    }
+
+    private static String json(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + '"';
+    }
+
+    private void run(Path csv, Path json) throws Exception {
+        QuestionImporter importer = new QuestionImporter(teacherId);
+        System.out.println(String.format("%d cores, %s import threads", Runtime.getRuntime().availableProcessors(),
+            System.getProperty("import.threads", "default")));
+
+        int before = countQuestions();
+        QuestionImporter.Report report = importer.importFile(csv);
+        print("CSV", csv, report);
+        check(report, before);
+        QuestionImporter.Report again = importer.importFile(csv);
+        print("CSV again", csv, again);
+        if (again.getImported() != 0 || again.getDuplicates() != records - expectedInvalid) {
+            throw new IllegalStateException("Importing the CSV again should only find duplicates: " + again);
+        }
+
+        before = countQuestions();
+        report = importer.importFile(json);
+        print("JSON", json, report);
+        check(report, before);
+
+        // The one-at-a-time path the importer replaces
+        QuestionBankController questionBank = QuestionBankController.getInstance();
+        long start = System.nanoTime();
+        for (int i = 0; i < baselineRecords; i++) {
+            Question question = record("baseline", i);
+            if (question != null) {
+                questionBank.addQuestion(question);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%-10s %,8d records in %6d ms  %,9.0f records/sec",
+            "addQuestion", baselineRecords, Math.round(seconds * 1000), baselineRecords / seconds));
+        System.out.println(String.format("Counts match: %d imported, %d duplicates and %d invalid per file",
+            expectedImported, expectedDuplicates, expectedInvalid));
+    }
+
+    private static void print(String name, Path file, QuestionImporter.Report report) throws IOException {
+        System.out.println(String.format("%-10s %,8d records in %6d ms  %,9.0f records/sec  (%,d KB file) %s",
+            name, report.getRecords(), report.getElapsedMillis(), report.getRecordsPerSecond(),
+            Files.size(file) / 1024, report));
+    }
+
+    private void check(QuestionImporter.Report report, int before) throws SQLException {
+        if (report.getRecords() != records || report.getImported() != expectedImported
+                || report.getDuplicates() != expectedDuplicates || report.getInvalid() != expectedInvalid) {
+            throw new IllegalStateException(String.format("Expected %d imported, %d duplicates, %d invalid: %s",
+                expectedImported, expectedDuplicates, expectedInvalid, report));
+        }
+        if (countQuestions() - before != expectedImported) {
+            throw new IllegalStateException((countQuestions() - before) + " rows stored, expected " + expectedImported);
+        }
+        for (QuestionImporter.Reject reject : report.getRejects().subList(0, 10)) {
+            System.out.println("  " + reject);
+        }
+    }
+
+    private static int countQuestions() throws SQLException {
+        int[] count = new int[1];
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            SqlExecutor.forEach(connection, SqlStatement.QUESTION_CONTENT, SqlExecutor.NO_PARAMETERS,
+                rs -> count[0]++);
+        }
+        return count[0];
+    }
+}
@@ -0,0 +1,151 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import controller.QuestionBankController;
+import database.DatabaseConnection;
+import model.Question;
+import model.QuestionPage;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Keyset paging and streaming of a subject's questions, on the embedded
+ * database. Each test lists a subject of its own, with every eighth
+ * question seeded under another subject in between.
+ */
+public class QuestionListingTest {
+    private static final int QUESTIONS = 2_000;
+    private static final int PAGE_SIZE = 25;
+
+    private static int teacherId;
+    private static int subjects;
+
+    private QuestionBankController questionBank;
+    private String subject;
+
+    @BeforeAll
+    static void setUpDatabase() throws SQLException {
+        BenchmarkDatabase.useEmbedded("exam_test");
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            teacherId = BenchmarkDatabase.insertUser(connection, "listing_teacher", "TEACHER");
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        questionBank = QuestionBankController.getInstance();
+        subject = "Listing " + ++subjects;
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            BenchmarkDatabase.insertQuestions(connection, teacherId, QUESTIONS,
+                number -> new Question(0, "Listing question " + number, Arrays.asList("A", "B", "C", "D"), 2, 1,
+                    number % 8 == 7 ? "Other " + subject : subject, "Medium"));
+            connection.commit();
+        }
+    }
+
+    @Test
+    void testPageWalkReturnsEveryQuestionOnceInOrder() {
+        List<Integer> expected = subjectIds();
+        assertEquals(QUESTIONS - QUESTIONS / 8, expected.size());
+
+        assertEquals(expected, walk(page -> { }));
+    }
+
+    @Test
+    void testPageWalkWithQuestionsAddedAndDeleted() {
+        List<Integer> before = subjectIds();
+        // Questions added and deleted, and pages walked
+        int[] changes = new int[3];
+
+        // After every fifth page, add a question and delete one two pages ahead
+        List<Integer> seen = walk(page -> {
+            if (++changes[2] % 5 != 0 || !page.hasMore()) {
+                return;
+            }
+            assertTrue(questionBank.addQuestion(new Question(0, "Added while listing",
+                Arrays.asList("A", "B", "C", "D"), 1, 1, subject, "Easy")));
+            changes[0]++;
+            int position = Collections.binarySearch(before, page.getNextCursor());
+            if (position >= 0 && position + PAGE_SIZE * 2 < before.size()) {
+                assertTrue(questionBank.deleteQuestion(before.get(position + PAGE_SIZE * 2)));
+                changes[1]++;
+            }
+        });
+
+        assertTrue(changes[0] > 0 && changes[1] > 0);
+        // Exactly what the subject holds once the walk is over
+        assertEquals(subjectIds(), seen);
+        assertEquals(before.size() + changes[0] - changes[1], seen.size());
+    }
+
+    @Test
+    void testStreamSeesTheWholeSubject() {
+        List<Integer> streamed = new ArrayList<>();
+        int count = questionBank.forEachQuestionBySubject(subject, question -> {
+            assertEquals(subject, question.getSubject());
+            streamed.add(question.getId());
+        });
+        assertEquals(streamed.size(), count);
+
+        List<Integer> listed = new ArrayList<>();
+        for (Question question : questionBank.getQuestionsBySubject(subject)) {
+            listed.add(question.getId());
+        }
+        Collections.sort(streamed);
+        Collections.sort(listed);
+        assertEquals(listed, streamed);
+        assertEquals(walk(page -> { }), streamed);
+    }
+
+    @Test
+    void testEmptySubjectHasOneEmptyPage() {
+        QuestionPage page = questionBank.getQuestionsBySubject("No such subject", 0, PAGE_SIZE);
+        assertTrue(page.isEmpty());
+        assertFalse(page.hasMore());
+        assertEquals(0, page.getNextCursor());
+        assertEquals(0, questionBank.forEachQuestionBySubject("No such subject", question -> { }));
+    }
+
+    /**
+     * Walks the subject page by page, checking that each page continues
+     * where the previous one stopped.
+     * @param afterPage Called after each page
+     * @return The ids seen, in the order they came
+     */
+    private List<Integer> walk(Consumer<QuestionPage> afterPage) {
+        List<Integer> seen = new ArrayList<>();
+        int cursor = 0;
+        QuestionPage page;
+        do {
+            page = questionBank.getQuestionsBySubject(subject, cursor, PAGE_SIZE);
+            assertNotNull(page);
+            for (Question question : page.getQuestions()) {
+                assertTrue(question.getId() > cursor, "question " + question.getId() + " after " + cursor);
+                assertEquals(subject, question.getSubject());
+                cursor = question.getId();
+                seen.add(cursor);
+            }
+            // Only the last page may be short
+            assertTrue(page.getQuestions().size() == PAGE_SIZE
+                || (!page.hasMore() && page.getQuestions().size() < PAGE_SIZE));
+            assertEquals(cursor, page.getNextCursor());
+            afterPage.accept(page);
+        } while (page.hasMore());
+        return seen;
+    }
+
+    private List<Integer> subjectIds() {
+        List<Integer> ids = new ArrayList<>();
+        questionBank.forEachQuestionBySubject(subject, question -> ids.add(question.getId()));
+        Collections.sort(ids);
+        return ids;
+    }
+}
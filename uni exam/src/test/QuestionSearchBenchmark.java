@@ -0,0 +1,213 @@
+package test;
+
+import controller.QuestionBankController;
+import controller.QuestionSearchIndex;
+import database.DatabaseConnection;
+import database.SqlStatement;
+import model.Question;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeds a large question bank and compares searching it through
+ * QuestionSearchIndex with the LIKE query it replaces. Question text is
+ * drawn from a synthetic vocabulary with a skewed word frequency, so the
+ * queries cover common words, rare words, prefixes and several words.
+ *
+ * Checks that every query returns exactly the questions that contain a
+ * word starting with each query word, and that added, edited and deleted
+ * questions are found or dropped at once.
+ *
+ * Runs on an in-memory H2 database unless -Ddb.url is set.
+ *
+ * Usage: java -Dbench.questions=200000 -Dbench.iterations=200 test.QuestionSearchBenchmark
+ */
+public class QuestionSearchBenchmark {
+    private static final String[] SUBJECTS = {"Mathematics", "Physics", "Chemistry", "Biology",
+        "Computer Science", "History", "Geography", "Economics"};
+    private static final String[] SYLLABLES = {"ka", "lo", "mi", "ne", "ru", "ta", "vo", "zi", "pe", "su",
+        "da", "fo", "gi", "he", "ju", "ba", "co", "wi", "xe", "yu"};
+    private static final int VOCABULARY = 8000;
+
+    private final int questions = Integer.getInteger("bench.questions", 200_000);
+    private final int iterations = Integer.getInteger("bench.iterations", 200);
+    private final int likeIterations = Integer.getInteger("bench.likeIterations", 10);
+
+    private final Random random = new Random(42);
+    private final String[] words = new String[VOCABULARY];
+    // Vocabulary indexes of each seeded question's words, for the checks
+    private final List<int[]> texts = new ArrayList<>();
+    private final List<Integer> questionIds = new ArrayList<>();
+
+    public static void main(String[] args) throws SQLException {
+        BenchmarkDatabase.useEmbedded("search_bench");
+
+        QuestionSearchBenchmark benchmark = new QuestionSearchBenchmark();
+        try {
+            benchmark.seed();
+            benchmark.run();
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+
+    private void seed() throws SQLException {
+        for (int w = 0; w < VOCABULARY; w++) {
+            StringBuilder word = new StringBuilder();
+            for (int n = w + SYLLABLES.length; n > 0; n /= SYLLABLES.length) {
+                word.append(SYLLABLES[n % SYLLABLES.length]);
+            }
+            words[w] = word.toString();
+        }
+        long start = System.currentTimeMillis();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            int teacherId = BenchmarkDatabase.insertUser(connection, "search_teacher", "TEACHER");
+            questionIds.addAll(BenchmarkDatabase.insertQuestions(connection, teacherId, questions, q -> {
+                int[] text = new int[12 + random.nextInt(14)];
+                StringBuilder sentence = new StringBuilder();
+                for (int i = 0; i < text.length; i++) {
+                    text[i] = skewedWord();
+                    sentence.append(i == 0 ? "" : " ").append(words[text[i]]);
+                }
+                texts.add(text);
+                return new Question(0, sentence.append('?').toString(), Arrays.asList("A", "B", "C", "D"), 1, 1,
+                    SUBJECTS[q % SUBJECTS.length], "Medium");
+            }));
+            connection.commit();
+        }
+        System.out.println(String.format("Seeded %d questions in %d ms", questions,
+            System.currentTimeMillis() - start));
+    }
+
+    /**
+     * @return A vocabulary index, low indexes far more often than high ones
+     */
+    private int skewedWord() {
+        return (int) Math.min(VOCABULARY - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY)) - 1);
+    }
+
+    private void run() throws SQLException {
+        QuestionSearchIndex index = QuestionSearchIndex.getInstance();
+        long start = System.currentTimeMillis();
+        index.rebuild();
+        System.out.println(String.format("Built the index in %d ms: %s", System.currentTimeMillis() - start,
+            index.getStatistics()));
+
+        String[][] queries = {
+            {"common word", words[1]},
+            {"rare word", words[VOCABULARY / 2]},
+            {"prefix", words[VOCABULARY / 3].substring(0, 4)},
+            {"two words", words[2] + " " + words[40]},
+            {"subject and word", "physics " + words[5]},
+        };
+        int checked = 0;
+        for (String[] query : queries) {
+            checkMatches(index, query[1]);
+            checked++;
+        }
+        for (int i = 0; i < 50; i++) {
+            checkMatches(index, words[skewedWord()] + " " + words[skewedWord()].substring(0, 3));
+            checked++;
+        }
+        System.out.println(checked + " queries return exactly the matching questions");
+        checkUpdates(index);
+
+        QuestionBankController questionBank = QuestionBankController.getInstance();
+        System.out.println();
+        System.out.println(LatencyRecorder.header());
+        for (String[] query : queries) {
+            LatencyRecorder indexed = new LatencyRecorder("index: " + query[0]);
+            LatencyRecorder served = new LatencyRecorder("searchQuestions: " + query[0]);
+            for (int i = 0; i < iterations * 2; i++) {
+                long begin = System.nanoTime();
+                index.search(query[1], 100);
+                long middle = System.nanoTime();
+                questionBank.searchQuestions(query[1]);
+                long end = System.nanoTime();
+                if (i >= iterations) {
+                    indexed.record(middle - begin);
+                    served.record(end - middle);
+                }
+            }
+            String pattern = "%" + query[1] + "%";
+            LatencyRecorder like = new LatencyRecorder("LIKE query: " + query[0]);
+            for (int i = 0; i < likeIterations; i++) {
+                long begin = System.nanoTime();
+                DatabaseConnection.getInstance().query(SqlStatement.SEARCH_QUESTIONS, pstmt -> {
+                    pstmt.setString(1, pattern);
+                    pstmt.setString(2, pattern);
+                }, rs -> rs.getInt("id"));
+                like.record(System.nanoTime() - begin);
+            }
+            System.out.println(indexed);
+            System.out.println(served);
+            System.out.println(like);
+        }
+        System.out.println();
+        System.out.println("Search index: " + index.getStatistics());
+    }
+
+    /**
+     * Compares the index with a scan of the seeded texts: a question
+     * matches when each query word starts one of its words or its subject.
+     */
+    private void checkMatches(QuestionSearchIndex index, String query) {
+        String[] queryWords = query.toLowerCase().split(" ");
+        Set<Integer> expected = new HashSet<>();
+        for (int q = 0; q < texts.size(); q++) {
+            boolean all = true;
+            for (String queryWord : queryWords) {
+                boolean found = false;
+                for (String subjectWord : SUBJECTS[q % SUBJECTS.length].toLowerCase().split(" ")) {
+                    found |= subjectWord.startsWith(queryWord);
+                }
+                for (int word : texts.get(q)) {
+                    found |= words[word].startsWith(queryWord);
+                }
+                all &= found;
+            }
+            if (all) {
+                expected.add(questionIds.get(q));
+            }
+        }
+        int[] found = index.search(query, Integer.MAX_VALUE);
+        Set<Integer> actual = new HashSet<>();
+        for (int id : found) {
+            actual.add(id);
+        }
+        if (!actual.equals(expected) || actual.size() != found.length) {
+            throw new IllegalStateException("\"" + query + "\" found " + found.length + " questions, expected "
+                + expected.size());
+        }
+    }
+
+    private void checkUpdates(QuestionSearchIndex index) {
+        QuestionBankController questionBank = QuestionBankController.getInstance();
+        Question question = new Question(0, "Which isotope is quuxium?", Arrays.asList("A", "B", "C", "D"),
+            1, 1, "Chemistry", "Hard");
+        questionBank.addQuestion(question);
+        expect(index, "quux", question.getId());
+        question.setQuestionText("Which isotope is frobnium?");
+        questionBank.updateQuestion(question);
+        expect(index, "quux");
+        expect(index, "frob chem", question.getId());
+        questionBank.deleteQuestion(question.getId());
+        expect(index, "frobnium");
+        System.out.println("Added, edited and deleted questions are searchable at once");
+    }
+
+    private static void expect(QuestionSearchIndex index, String query, int... ids) {
+        int[] found = index.search(query, 10);
+        if (!Arrays.equals(found, ids)) {
+            throw new IllegalStateException("\"" + query + "\" found " + Arrays.toString(found) + ", expected "
+                + Arrays.toString(ids));
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package test;
+
+import controller.QuestionBankController;
+import controller.QuestionStore;
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Seeds a question bank whose options repeat the way real banks do and
+ * compares the heap it takes held as today's object graph (a Question,
+ * an option list and a String per field) with QuestionStore. Then
+ * compares listing a subject from the store with querying it.
+ *
+ * Checks that every view returns exactly what the database holds, that
+ * views keep their values when the question changes or is deleted, and
+ * that edits and deletes through QuestionBankController reach the store.
+ *
+ * H2 in memory hands out the strings it holds itself, so the object graph
+ * copies each one, as a driver reading from a server would.
+ *
+ * Runs on an in-memory H2 database unless -Ddb.url is set.
+ *
+ * Usage: java -Dbench.questions=200000 test.QuestionStoreBenchmark
+ */
+public class QuestionStoreBenchmark {
+    private static final String[] SUBJECTS = {"Mathematics", "Physics", "Chemistry", "Biology",
+        "History", "Geography", "English", "Computer Science"};
+    private static final String[] DIFFICULTIES = {"Easy", "Medium", "Hard"};
+    private static final String[] STOCK_OPTIONS = {"True", "False", "Not given", "All of the above",
+        "None of the above", "Both A and B", "Cannot be determined"};
+
+    private final int questions = Integer.getInteger("bench.questions", 200_000);
+    private final int iterations = Integer.getInteger("bench.iterations", 10);
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws SQLException {
+        BenchmarkDatabase.useEmbedded("store_bench");
+
+        QuestionStoreBenchmark benchmark = new QuestionStoreBenchmark();
+        try {
+            benchmark.seed();
+            benchmark.run();
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+
+    private void seed() throws SQLException {
+        long start = System.currentTimeMillis();
+        SplittableRandom random = new SplittableRandom(24);
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            int teacherId = BenchmarkDatabase.insertUser(connection, "store_teacher", "TEACHER");
+            BenchmarkDatabase.insertQuestions(connection, teacherId, questions, q -> question(q, random));
+            connection.commit();
+        }
+        System.out.println(String.format("Seeded %d questions in %d ms", questions, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * A third are true/false questions, a third have small numbers as
+     * options and the rest have their own wording, often with a stock
+     * option at the end.
+     */
+    private static Question question(int number, SplittableRandom random) {
+        List<String> options;
+        String text;
+        switch (number % 3) {
+            case 0:
+                text = "True or false: statement " + number + " holds for every case considered in unit "
+                    + number % 40 + ".";
+                options = Arrays.asList("True", "False", "Not given", "Cannot be determined");
+                break;
+            case 1:
+                int base = random.nextInt(100);
+                text = "What is the value of expression " + number + " when x is " + base + "?";
+                options = Arrays.asList(String.valueOf(base), String.valueOf(base + 1), String.valueOf(base * 2),
+                    String.valueOf(base + 10));
+                break;
+            default:
+                text = "Which statement about topic " + number + " is correct according to the course notes?";
+                options = Arrays.asList("The first claim about topic " + number,
+                    "The second claim about topic " + number, "A claim about topic " + (number + 7),
+                    STOCK_OPTIONS[random.nextInt(STOCK_OPTIONS.length)]);
+        }
+        return new Question(0, text, options, 1 + random.nextInt(4), 1 + random.nextInt(3),
+            SUBJECTS[number % SUBJECTS.length], DIFFICULTIES[random.nextInt(DIFFICULTIES.length)]);
+    }
+
+    /**
+     * @return Every question as an object graph, each string its own copy
+     */
+    private static List<Question> loadObjectGraph() throws SQLException {
+        List<Question> bank = new ArrayList<>();
+        DatabaseConnection database = DatabaseConnection.getInstance();
+        try (Connection connection = database.getConnection()) {
+            SqlExecutor.forEach(connection, SqlStatement.QUESTION_STORE, database.getFetchSize(),
+                SqlExecutor.NO_PARAMETERS, rs -> {
+                    List<String> options = new ArrayList<>();
+                    for (int o = 1; o <= 4; o++) {
+                        options.add(new String(rs.getString("option" + o)));
+                    }
+                    bank.add(new Question(rs.getInt("id"), new String(rs.getString("question_text")), options,
+                        rs.getInt("correct_option"), rs.getInt("marks"), new String(rs.getString("subject")),
+                        new String(rs.getString("difficulty"))));
+                });
+        }
+        return bank;
+    }
+
+    private void run() throws SQLException {
+        Runtime runtime = Runtime.getRuntime();
+        long heapBefore = usedHeap(runtime);
+        List<Question> bank = loadObjectGraph();
+        long graphBytes = usedHeap(runtime) - heapBefore;
+
+        QuestionStore store = QuestionStore.getInstance();
+        heapBefore = usedHeap(runtime);
+        long start = System.currentTimeMillis();
+        store.rebuild();
+        long buildMillis = System.currentTimeMillis() - start;
+        long storeBytes = usedHeap(runtime) - heapBefore;
+        Map<String, Object> stats = store.getStatistics();
+
+        check(store, bank);
+        bank = null;
+
+        LatencyRecorder query = new LatencyRecorder("query subject (object graph)");
+        LatencyRecorder views = new LatencyRecorder("QuestionStore.getQuestionsBySubject");
+        long[] allocated = new long[2];
+        int subjectSize = 0;
+        for (int i = 0; i < iterations * 2; i++) {
+            boolean measured = i >= iterations;
+            String subject = SUBJECTS[i % SUBJECTS.length];
+
+            long bytes = allocatedBytes();
+            long begin = System.nanoTime();
+            List<Question> queried = new ArrayList<>();
+            try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+                SqlExecutor.forEach(connection, SqlStatement.QUESTIONS_BY_SUBJECT, pstmt -> pstmt.setString(1, subject),
+                    rs -> queried.add(new Question(rs.getInt("id"), rs.getString("question_text"),
+                        new ArrayList<>(Arrays.asList(rs.getString("option1"), rs.getString("option2"),
+                            rs.getString("option3"), rs.getString("option4"))), rs.getInt("correct_option"),
+                        rs.getInt("marks"), rs.getString("subject"), rs.getString("difficulty"))));
+            }
+            long end = System.nanoTime();
+            if (measured) {
+                query.record(end - begin);
+                allocated[0] += allocatedBytes() - bytes;
+            }
+
+            bytes = allocatedBytes();
+            begin = System.nanoTime();
+            List<Question> listed = store.getQuestionsBySubject(subject);
+            end = System.nanoTime();
+            if (listed.size() != queried.size()) {
+                throw new IllegalStateException("Store listed " + listed.size() + " of " + queried.size());
+            }
+            subjectSize = listed.size();
+            if (measured) {
+                views.record(end - begin);
+                allocated[1] += allocatedBytes() - bytes;
+            }
+        }
+
+        checkChanges(store);
+
+        System.out.println();
+        System.out.println(String.format("Object graph: %,d bytes, %d per question", graphBytes, graphBytes / questions));
+        System.out.println(String.format("Store:        %,d bytes, %d per question (built in %d ms)", storeBytes,
+            storeBytes / questions, buildMillis));
+        System.out.println("Store footprint: " + stats);
+        System.out.println();
+        System.out.println(subjectSize + " questions per subject");
+        System.out.println(LatencyRecorder.header());
+        System.out.println(query);
+        System.out.println(views);
+        System.out.println(String.format("Allocated per listing: %,d bytes queried, %,d bytes from the store",
+            allocated[0] / iterations, allocated[1] / iterations));
+    }
+
+    /**
+     * Every view must match the question read from the database.
+     */
+    private void check(QuestionStore store, List<Question> bank) {
+        int[] ids = new int[bank.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = bank.get(i).getId();
+        }
+        List<Question> stored = store.getQuestions(ids);
+        if (stored.size() != bank.size()) {
+            throw new IllegalStateException("Store holds " + stored.size() + " of " + bank.size() + " questions");
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (!same(bank.get(i), stored.get(i))) {
+                throw new IllegalStateException("Question " + ids[i] + " differs in the store");
+            }
+        }
+        System.out.println("All " + ids.length + " views match the database");
+    }
+
+    private static boolean same(Question a, Question b) {
+        return a.getId() == b.getId() && a.getQuestionText().equals(b.getQuestionText())
+            && a.getOptions().equals(b.getOptions()) && a.getCorrectOption() == b.getCorrectOption()
+            && a.getMarks() == b.getMarks() && a.getSubject().equals(b.getSubject())
+            && a.getDifficulty().equals(b.getDifficulty());
+    }
+
+    /**
+     * Edits and deletes a question through the controller and checks that
+     * the store follows while views taken earlier do not.
+     */
+    private static void checkChanges(QuestionStore store) {
+        QuestionBankController questionBank = QuestionBankController.getInstance();
+        Question before = store.getQuestions(new int[] {1}).get(0);
+        String text = before.getQuestionText();
+
+        Question edited = store.getQuestions(new int[] {1}).get(0);
+        edited.setQuestionText("Edited: " + text);
+        edited.getOptions().set(3, "Ünïcödé option");
+        if (!questionBank.updateQuestion(edited)) {
+            throw new IllegalStateException("Could not update question 1");
+        }
+        Question after = store.getQuestions(new int[] {1}).get(0);
+        if (!same(edited, after) || !before.getQuestionText().equals(text)
+                || before.getOptions().get(3).equals("Ünïcödé option")) {
+            throw new IllegalStateException("The store did not keep the edit apart from earlier views");
+        }
+
+        Question added = new Question(0, "Added after the build", Arrays.asList("True", "False", "A", "B"), 2, 1,
+            "Astronomy", "Hard");
+        questionBank.addQuestion(added);
+        List<Question> astronomy = questionBank.getQuestionsBySubject("Astronomy");
+        if (astronomy.size() != 1 || !same(added, astronomy.get(0))) {
+            throw new IllegalStateException("The added question is not in the store");
+        }
+        if (!questionBank.deleteQuestion(added.getId()) || !questionBank.getQuestionsBySubject("Astronomy").isEmpty()
+                || !astronomy.get(0).getQuestionText().equals("Added after the build")) {
+            throw new IllegalStateException("The deleted question is still in the store");
+        }
+        System.out.println("Edits, additions and deletions reach the store; earlier views keep their values");
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long usedHeap(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
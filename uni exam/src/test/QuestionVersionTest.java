@@ -0,0 +1,212 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import controller.ExamController;
+import controller.ExamPaperCache;
+import controller.QuestionBankController;
+import database.DatabaseConnection;
+import model.Exam;
+import model.Question;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Question versions on the embedded database. Each test sets two exams
+ * that are under way, both taken by every student with full marks, and one
+ * exam still to come, all on the same fresh questions.
+ */
+public class QuestionVersionTest {
+    private static final int QUESTIONS = 4;
+    private static final int STUDENTS = 3;
+    private static final int MARKS = 2;
+
+    private static int teacherId;
+    private static List<Integer> studentIds;
+    private static int exams;
+
+    private ExamController examController;
+    private QuestionBankController questionBank;
+    private List<Integer> questionIds;
+    private int takenExam;
+    private int otherTakenExam;
+    private int upcomingExam;
+
+    @BeforeAll
+    static void setUpDatabase() throws SQLException {
+        BenchmarkDatabase.useEmbedded("exam_test");
+        BenchmarkDatabase.setDefault("submission.writeBehind", "false");
+        BenchmarkDatabase.setDefault("regrade.pauseMs", "0");
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            teacherId = BenchmarkDatabase.insertUser(connection, "version_teacher", "TEACHER");
+            studentIds = BenchmarkDatabase.insertUsers(connection, "version_student", "STUDENT", STUDENTS);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        examController = ExamController.getInstance();
+        questionBank = QuestionBankController.getInstance();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            questionIds = BenchmarkDatabase.insertQuestions(connection, teacherId, QUESTIONS,
+                number -> new Question(0, "Version question " + number, Arrays.asList("A", "B", "C", "D"), 1,
+                    MARKS, "Mathematics", "Easy"));
+            connection.commit();
+        }
+
+        long now = System.currentTimeMillis();
+        takenExam = createExam(new Date(now - 1_800_000L));
+        otherTakenExam = createExam(new Date(now - 1_800_000L));
+        upcomingExam = createExam(new Date(now + 86_400_000L));
+        for (int examId : new int[] {takenExam, otherTakenExam}) {
+            for (int studentId : studentIds) {
+                // The correct option of each question as this student is served it
+                List<Question> served = examController.getExamQuestions(studentId, examId);
+                int[] answers = new int[served.size()];
+                for (int i = 0; i < answers.length; i++) {
+                    answers[i] = served.get(i).getCorrectOption();
+                }
+                assertTrue(examController.submitExam(studentId, examId, answers));
+            }
+        }
+        assertEquals(STUDENTS * QUESTIONS * MARKS, examMarks(takenExam));
+    }
+
+    @Test
+    void testTakenExamKeepsItsQuestionsAndMarks() throws SQLException {
+        List<String> before = describe(examController.getExamQuestions(takenExam));
+
+        update(questionIds.get(0), "Edited question", 2);
+        update(questionIds.get(1), "Edited question", 3);
+
+        // Also when the paper is read again from the database
+        assertEquals(before, describe(examController.getExamQuestions(takenExam)));
+        ExamPaperCache.getInstance().invalidateExam(takenExam);
+        assertEquals(before, describe(examController.getExamQuestions(takenExam)));
+        assertEquals(STUDENTS * QUESTIONS * MARKS, examMarks(takenExam));
+    }
+
+    @Test
+    void testUpcomingExamShowsEveryEdit() {
+        // Read once so the edits have a cached paper to replace
+        examController.getExamQuestions(upcomingExam);
+
+        update(questionIds.get(0), "First edit", 2);
+        update(questionIds.get(0), "Second edit", 3);
+        update(questionIds.get(2), "Only edit", 4);
+
+        List<Question> paper = examController.getExamQuestions(upcomingExam);
+        assertEquals(QUESTIONS, paper.size());
+        for (Question question : paper) {
+            int index = questionIds.indexOf(question.getId());
+            if (index == 0) {
+                assertEquals("Second edit", question.getQuestionText());
+                assertEquals(3, question.getCorrectOption());
+            } else if (index == 2) {
+                assertEquals("Only edit", question.getQuestionText());
+                assertEquals(4, question.getCorrectOption());
+            } else {
+                assertEquals("Version question " + index, question.getQuestionText());
+                assertEquals(1, question.getCorrectOption());
+            }
+        }
+    }
+
+    @Test
+    void testEarlierVersionsStayReadable() {
+        int questionId = questionIds.get(3);
+        update(questionId, "First edit", 2);
+        update(questionId, "Second edit", 3);
+
+        Question original = questionBank.getQuestionVersion(questionId, 1);
+        assertNotNull(original);
+        assertEquals("Version question 3", original.getQuestionText());
+        assertEquals(1, original.getCorrectOption());
+        assertEquals("First edit", questionBank.getQuestionVersion(questionId, 2).getQuestionText());
+        assertEquals("Second edit", questionBank.getQuestionVersion(questionId, 3).getQuestionText());
+        assertNull(questionBank.getQuestionVersion(questionId, 4));
+    }
+
+    @Test
+    void testAdoptionRegradesOnlyThatExam() throws Exception {
+        int questionId = questionIds.get(0);
+        update(questionId, "Corrected key", 2);
+        examController.getExamQuestions(takenExam);
+        examController.getExamQuestions(otherTakenExam);
+        ExamPaperCache cache = ExamPaperCache.getInstance();
+        long invalidations = (Long) cache.getStatistics().get("invalidations");
+
+        assertEquals(1, questionBank.adoptLatestVersion(questionId, takenExam));
+        assertEquals(invalidations + 1, (long) (Long) cache.getStatistics().get("invalidations"));
+        assertNull(cache.peek(takenExam));
+        assertNotNull(cache.peek(otherTakenExam));
+
+        // Everyone chose the old key, so the adopting exam loses those marks
+        awaitRegrades();
+        assertEquals(STUDENTS * (QUESTIONS - 1) * MARKS, examMarks(takenExam));
+        assertEquals(STUDENTS * QUESTIONS * MARKS, examMarks(otherTakenExam));
+        for (Question question : examController.getExamQuestions(takenExam)) {
+            if (question.getId() == questionId) {
+                assertEquals(2, question.getCorrectOption());
+            }
+        }
+
+        // Already current: nothing to adopt
+        assertEquals(0, questionBank.adoptLatestVersion(questionId, takenExam));
+    }
+
+    private int createExam(Date startTime) {
+        List<Question> paper = new ArrayList<>();
+        for (int i = 0; i < QUESTIONS; i++) {
+            paper.add(new Question(questionIds.get(i), "Version question " + i, Arrays.asList("A", "B", "C", "D"),
+                1, MARKS, "Mathematics", "Easy"));
+        }
+        Exam exam = new Exam(0, "Version exam " + ++exams, "Mathematics", startTime, 60);
+        exam.setQuestions(paper);
+        assertTrue(examController.createExam(exam));
+        return exam.getId();
+    }
+
+    private void update(int questionId, String text, int correctOption) {
+        assertTrue(questionBank.updateQuestion(new Question(questionId, text, Arrays.asList("A", "B", "C", "D"),
+            correctOption, MARKS, "Mathematics", "Easy")));
+    }
+
+    private static List<String> describe(List<Question> paper) {
+        List<String> description = new ArrayList<>();
+        for (Question question : paper) {
+            description.add(question.getId() + ":" + question.getQuestionText() + ":" + question.getCorrectOption()
+                + ":" + question.getMarks());
+        }
+        return description;
+    }
+
+    private static long examMarks(int examId) throws SQLException {
+        return scalar("SELECT COALESCE(SUM(total_marks_obtained), 0) FROM exam_results WHERE exam_id = " + examId);
+    }
+
+    private static void awaitRegrades() throws SQLException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (scalar("SELECT COUNT(*) FROM regrade_jobs WHERE status IN ('PENDING', 'RUNNING')") > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Re-grade did not finish within 30 s");
+            Thread.sleep(20);
+        }
+    }
+
+    private static long scalar(String sql) throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
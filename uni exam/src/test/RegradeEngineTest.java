@@ -0,0 +1,230 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import controller.RegradeEngine;
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-grading resumed after a crash, on the embedded database. Student i
+ * chose option 1 for the corrected question when i is even and option 2
+ * when it is odd; the key moves from 1 to 2, so every answer changes.
+ */
+public class RegradeEngineTest {
+    private static final int STUDENTS = 10;
+    private static final int MARKS = 2;
+    // The second question on the paper, answered correctly by everyone
+    private static final int OTHER_MARKS = 3;
+
+    private static int teacherId;
+    private static List<Integer> studentIds;
+    private static int exams;
+
+    private int examId;
+    private int questionId;
+
+    @BeforeAll
+    static void setUpDatabase() throws SQLException {
+        BenchmarkDatabase.useEmbedded("exam_test");
+        BenchmarkDatabase.setDefault("submission.writeBehind", "false");
+        BenchmarkDatabase.setDefault("regrade.pageSize", "3");
+        BenchmarkDatabase.setDefault("regrade.pauseMs", "0");
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            teacherId = BenchmarkDatabase.insertUser(connection, "regrade_teacher", "TEACHER");
+            studentIds = BenchmarkDatabase.insertUsers(connection, "regrade_student", "STUDENT", STUDENTS);
+        }
+        // Started before any job is recorded, so only the tests submit them
+        RegradeEngine.getInstance();
+    }
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            List<Integer> questionIds = BenchmarkDatabase.insertQuestions(connection, teacherId, 2,
+                n -> new Question(0, "Regrade question " + n, Arrays.asList("A", "B", "C", "D"), 1,
+                    n == 0 ? MARKS : OTHER_MARKS, "Mathematics", "Easy"));
+            questionId = questionIds.get(0);
+            examId = SqlExecutor.insert(connection, SqlStatement.INSERT_EXAM, pstmt -> {
+                pstmt.setString(1, "Regrade exam " + ++exams);
+                pstmt.setString(2, "Mathematics");
+                pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis() - 7_200_000L));
+                pstmt.setInt(4, 60);
+                pstmt.setInt(5, MARKS + OTHER_MARKS);
+                pstmt.setInt(6, teacherId);
+            });
+            SqlExecutor.insertRows(connection, SqlStatement.INSERT_EXAM_QUESTION, questionIds,
+                (pstmt, id, i, offset) -> {
+                    pstmt.setInt(offset + 1, examId);
+                    pstmt.setInt(offset + 2, id);
+                    pstmt.setInt(offset + 3, i + 1);
+                });
+
+            // Graded against the original key
+            for (int s = 0; s < STUDENTS; s++) {
+                int studentId = studentIds.get(s);
+                int selected = s % 2 == 0 ? 1 : 2;
+                int marks = selected == 1 ? MARKS : 0;
+                SqlExecutor.update(connection, SqlStatement.INSERT_ANSWER, pstmt -> {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, examId);
+                    pstmt.setInt(3, questionId);
+                    pstmt.setInt(4, selected);
+                    pstmt.setInt(5, marks);
+                });
+                SqlExecutor.update(connection, SqlStatement.INSERT_ANSWER, pstmt -> {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, examId);
+                    pstmt.setInt(3, questionIds.get(1));
+                    pstmt.setInt(4, 1);
+                    pstmt.setInt(5, OTHER_MARKS);
+                });
+                SqlExecutor.update(connection, SqlStatement.INSERT_RESULT, pstmt -> {
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, examId);
+                    pstmt.setInt(3, marks + OTHER_MARKS);
+                    pstmt.setDouble(4, (marks + OTHER_MARKS) * 100.0 / (MARKS + OTHER_MARKS));
+                });
+            }
+            // The corrected key, as the exam's paper will read it
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("UPDATE questions SET correct_option = 2 WHERE id = " + questionId);
+            }
+        }
+    }
+
+    @Test
+    void testResumesAfterTheCheckpoint() throws Exception {
+        // The crashed run had re-graded and checkpointed the first four students
+        regradeStudents(4);
+        int jobId = recordRunningJob(4, 4);
+
+        RegradeEngine.getInstance().submit(jobId);
+        Map<String, Object> progress = awaitDone(jobId);
+
+        assertEquals(STUDENTS, progress.get("processedAnswers"));
+        assertEquals(STUDENTS, progress.get("changedAnswers"));
+        assertGradedWithCorrectedKey();
+    }
+
+    @Test
+    void testReplayedPageIsNotCountedTwice() throws Exception {
+        // The crashed run wrote the first page but died before its checkpoint
+        regradeStudents(3);
+        int jobId = recordRunningJob(0, 0);
+
+        RegradeEngine.getInstance().submit(jobId);
+        Map<String, Object> progress = awaitDone(jobId);
+
+        // The replayed answers already carry their new marks
+        assertEquals(STUDENTS, progress.get("processedAnswers"));
+        assertEquals(STUDENTS - 3, progress.get("changedAnswers"));
+        assertGradedWithCorrectedKey();
+    }
+
+    @Test
+    void testFinishedJobIsNotRunAgain() throws Exception {
+        int jobId = RegradeEngine.getInstance().scheduleRegrade(questionId);
+        assertEquals(STUDENTS, awaitDone(jobId).get("changedAnswers"));
+
+        // Resubmitting a finished job leaves marks and counters alone
+        RegradeEngine.getInstance().submit(jobId);
+        assertEquals(STUDENTS, awaitDone(jobId).get("changedAnswers"));
+        assertGradedWithCorrectedKey();
+    }
+
+    /**
+     * Applies the corrected key to the first count students, as a run that
+     * got that far would have.
+     */
+    private void regradeStudents(int count) throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            for (int s = 0; s < count; s++) {
+                int studentId = studentIds.get(s);
+                int marks = s % 2 == 0 ? 0 : MARKS;
+                int delta = s % 2 == 0 ? -MARKS : MARKS;
+                SqlExecutor.update(connection, SqlStatement.UPDATE_ANSWER_MARKS, pstmt -> {
+                    pstmt.setInt(1, marks);
+                    pstmt.setInt(2, studentId);
+                    pstmt.setInt(3, examId);
+                    pstmt.setInt(4, questionId);
+                });
+                SqlExecutor.update(connection, SqlStatement.ADJUST_RESULT, pstmt -> {
+                    pstmt.setInt(1, delta);
+                    pstmt.setInt(2, MARKS + OTHER_MARKS);
+                    pstmt.setInt(3, delta);
+                    pstmt.setInt(4, studentId);
+                    pstmt.setInt(5, examId);
+                });
+            }
+        }
+    }
+
+    /**
+     * @return Id of a job left RUNNING with its cursor after the first
+     *         students, as a crash would leave it
+     */
+    private int recordRunningJob(int students, int changed) throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            int jobId = SqlExecutor.insert(connection, SqlStatement.INSERT_REGRADE_JOB,
+                pstmt -> pstmt.setString(1, String.valueOf(questionId)));
+            SqlExecutor.update(connection, SqlStatement.UPDATE_REGRADE_JOB, pstmt -> {
+                pstmt.setString(1, "RUNNING");
+                pstmt.setInt(2, 0);
+                pstmt.setInt(3, students > 0 ? examId : 0);
+                pstmt.setInt(4, students > 0 ? studentIds.get(students - 1) : 0);
+                pstmt.setInt(5, STUDENTS);
+                pstmt.setInt(6, students);
+                pstmt.setInt(7, changed);
+                pstmt.setInt(8, jobId);
+            });
+            return jobId;
+        }
+    }
+
+    private static Map<String, Object> awaitDone(int jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (true) {
+            Map<String, Object> progress = RegradeEngine.getInstance().getProgress(jobId);
+            if ("DONE".equals(progress.get("status"))) {
+                return progress;
+            }
+            assertNotEquals("FAILED", progress.get("status"));
+            assertTrue(System.currentTimeMillis() < deadline, "Re-grade job " + jobId + " did not finish");
+            Thread.sleep(20);
+        }
+    }
+
+    private void assertGradedWithCorrectedKey() throws SQLException {
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT a.student_id, a.marks_obtained, r.total_marks_obtained, "
+                 + "r.percentage FROM student_exam_answers a JOIN exam_results r "
+                 + "ON r.student_id = a.student_id AND r.exam_id = a.exam_id "
+                 + "WHERE a.exam_id = " + examId + " AND a.question_id = " + questionId)) {
+            int rows = 0;
+            while (rs.next()) {
+                int s = studentIds.indexOf(rs.getInt("student_id"));
+                int expected = s % 2 == 0 ? 0 : MARKS;
+                assertEquals(expected, rs.getInt("marks_obtained"), "marks of student " + s);
+                // Each change reaches the result exactly once
+                assertEquals(expected + OTHER_MARKS, rs.getInt("total_marks_obtained"), "total of student " + s);
+                assertEquals((expected + OTHER_MARKS) * 100.0 / (MARKS + OTHER_MARKS),
+                    rs.getDouble("percentage"), 0.01, "percentage of student " + s);
+                rows++;
+            }
+            assertEquals(STUDENTS, rows);
+        }
+    }
+}
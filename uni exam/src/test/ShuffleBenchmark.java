@@ -0,0 +1,134 @@
+package test;
+
+import model.ExamPaper;
+import model.PaperShuffle;
+import model.Question;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmark of per-student shuffling: serving a paper and grading a
+ * submission in paper order, against deriving the student's shuffle to
+ * serve the paper and deriving it again to map the answers back before
+ * grading. Reports time and bytes allocated per student. Needs no
+ * database.
+ *
+ * Usage: java -Dbench.questions=100 -Dbench.students=5000 test.ShuffleBenchmark
+ */
+public class ShuffleBenchmark {
+    private static final int ROUNDS = 5;
+    private static final long SECRET = 0x5DEECE66DL;
+
+    public static void main(String[] args) {
+        int questionCount = Integer.getInteger("bench.questions", 100);
+        int studentCount = Integer.getInteger("bench.students", 5000);
+
+        Random random = new Random(42);
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < questionCount; i++) {
+            questions.add(new Question(i + 1, "Question " + i, List.of("A", "B", "C", "D"),
+                1 + random.nextInt(4), 1 + random.nextInt(5), "Mathematics", "Medium"));
+        }
+        ExamPaper paper = new ExamPaper(1, 1, questions);
+        verify(paper, studentCount);
+
+        // Answers as the students send them, by served position
+        int[][] answers = new int[studentCount][questionCount];
+        for (int[] studentAnswers : answers) {
+            for (int q = 0; q < questionCount; q++) {
+                studentAnswers[q] = 1 + random.nextInt(4);
+            }
+        }
+
+        System.out.println(String.format("%d questions, %d students per round, best of %d rounds",
+            questionCount, studentCount, ROUNDS));
+        System.out.println(String.format("%-22s %14s %16s", "PATH", "NS/STUDENT", "BYTES/STUDENT"));
+
+        long checksum = 0;
+        int[] marksObtained = new int[questionCount];
+        for (int warm = 0; warm < 2; warm++) {
+            // The first pass only warms up the JIT
+            boolean report = warm == 1;
+            long plainNanos = Long.MAX_VALUE;
+            long plainBytes = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                for (int s = 0; s < studentCount; s++) {
+                    checksum += paper.getQuestions().size();
+                    checksum += paper.getAnswerKey().grade(answers[s], marksObtained);
+                }
+                plainNanos = Math.min(plainNanos, System.nanoTime() - start);
+                plainBytes = Math.min(plainBytes, allocatedBytes() - bytes);
+            }
+
+            long shuffledNanos = Long.MAX_VALUE;
+            long shuffledBytes = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                for (int s = 0; s < studentCount; s++) {
+                    // Serving and grading are separate requests, so each derives the shuffle
+                    checksum += PaperShuffle.forStudent(paper, s, SECRET).getQuestions().size();
+                    int[] inPaperOrder = PaperShuffle.forStudent(paper, s, SECRET).toPaperOrder(answers[s]);
+                    checksum += paper.getAnswerKey().grade(inPaperOrder, marksObtained);
+                }
+                shuffledNanos = Math.min(shuffledNanos, System.nanoTime() - start);
+                shuffledBytes = Math.min(shuffledBytes, allocatedBytes() - bytes);
+            }
+            if (report) {
+                print("Paper order", plainNanos, plainBytes, studentCount);
+                print("Shuffled per student", shuffledNanos, shuffledBytes, studentCount);
+                System.out.println(String.format("Overhead: %.2f us per student",
+                    (shuffledNanos - plainNanos) / 1000.0 / studentCount));
+            }
+        }
+        // Printed so the JIT cannot drop the work
+        System.out.println("checksum " + checksum);
+    }
+
+    /**
+     * Checks that answering every served question correctly grades as full
+     * marks and that students do not all get the same order.
+     */
+    private static void verify(ExamPaper paper, int studentCount) {
+        int[] marksObtained = new int[paper.getQuestionCount()];
+        int samePosition = 0;
+        for (int s = 0; s < studentCount; s++) {
+            List<Question> served = PaperShuffle.forStudent(paper, s, SECRET).getQuestions();
+            int[] answers = new int[served.size()];
+            for (int i = 0; i < answers.length; i++) {
+                answers[i] = served.get(i).getCorrectOption();
+            }
+            if (served.get(0).getId() == paper.getQuestions().get(0).getId()) {
+                samePosition++;
+            }
+            int[] inPaperOrder = PaperShuffle.forStudent(paper, s, SECRET).toPaperOrder(answers);
+            if (paper.getAnswerKey().grade(inPaperOrder, marksObtained) != paper.getTotalMarks()) {
+                throw new IllegalStateException("Shuffled answers of student " + s + " do not grade back");
+            }
+        }
+        if (samePosition == studentCount) {
+            throw new IllegalStateException("Every student was served the same first question");
+        }
+    }
+
+    private static void print(String path, long nanos, long bytes, int students) {
+        System.out.println(String.format("%-22s %14.1f %16.1f", path, (double) nanos / students,
+            bytes < 0 ? -1.0 : (double) bytes / students));
+    }
+
+    /**
+     * @return Bytes allocated so far by this thread, or -1 when the JVM
+     *         does not report it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,155 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import database.SubmissionJournal;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SubmissionJournalTest {
+    // Header, then sequence, student, exam, answer count and three answers
+    private static final int RECORD_BYTES = 8 + 8 + 4 + 4 + 4 + 3 * 4;
+    private static final int SEGMENT_BYTES = 1024;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testRecoversRecordsAfterReopen() throws IOException {
+        try (SubmissionJournal journal = new SubmissionJournal(directory, SEGMENT_BYTES)) {
+            assertTrue(journal.recover().isEmpty());
+            for (int i = 1; i <= 5; i++) {
+                SubmissionJournal.Record record = journal.append(100 + i, 7, new int[] {i, 2, 3});
+                assertEquals(i, record.getSequence());
+            }
+            journal.awaitDurable(5);
+            assertEquals(5, journal.getDurableSequence());
+        }
+
+        try (SubmissionJournal journal = new SubmissionJournal(directory, SEGMENT_BYTES)) {
+            List<SubmissionJournal.Record> records = journal.recover();
+            assertEquals(5, records.size());
+            for (int i = 1; i <= 5; i++) {
+                SubmissionJournal.Record record = records.get(i - 1);
+                assertEquals(i, record.getSequence());
+                assertEquals(100 + i, record.getStudentId());
+                assertEquals(7, record.getExamId());
+                assertArrayEquals(new int[] {i, 2, 3}, record.getAnswers());
+            }
+            // Numbering carries on after the recovered records
+            assertEquals(6, journal.append(106, 7, new int[] {6, 2, 3}).getSequence());
+        }
+    }
+
+    @Test
+    void testRollsSegmentsWhenFull() throws IOException {
+        // Three records to a segment
+        try (SubmissionJournal journal = new SubmissionJournal(directory, 3 * RECORD_BYTES)) {
+            for (int i = 1; i <= 10; i++) {
+                journal.append(i, 1, new int[] {1, 2, 3});
+            }
+        }
+        assertTrue(segments().size() >= 4, segments().toString());
+
+        try (SubmissionJournal journal = new SubmissionJournal(directory, 3 * RECORD_BYTES)) {
+            List<SubmissionJournal.Record> records = journal.recover();
+            assertEquals(10, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(i + 1, records.get(i).getSequence());
+            }
+        }
+    }
+
+    @Test
+    void testCheckpointDropsStoredRecordsAndSegments() throws IOException {
+        try (SubmissionJournal journal = new SubmissionJournal(directory, 3 * RECORD_BYTES)) {
+            for (int i = 1; i <= 10; i++) {
+                journal.append(i, 1, new int[] {1, 2, 3});
+            }
+            int before = segments().size();
+            // Segments up to sequence 6 hold nothing newer than the checkpoint
+            journal.checkpoint(7);
+            assertEquals(before - 2, segments().size());
+            // An older checkpoint changes nothing
+            journal.checkpoint(3);
+        }
+
+        try (SubmissionJournal journal = new SubmissionJournal(directory, 3 * RECORD_BYTES)) {
+            List<SubmissionJournal.Record> records = journal.recover();
+            assertEquals(3, records.size());
+            assertEquals(8, records.get(0).getSequence());
+            assertEquals(10, records.get(2).getSequence());
+            assertEquals(11, journal.append(11, 1, new int[] {1, 2, 3}).getSequence());
+        }
+    }
+
+    @Test
+    void testStopsAtATornRecord() throws IOException {
+        try (SubmissionJournal journal = new SubmissionJournal(directory, SEGMENT_BYTES)) {
+            for (int i = 1; i <= 3; i++) {
+                journal.append(i, 1, new int[] {1, 2, 3});
+            }
+        }
+        // Damage the last answer of the third record, as a crash mid-write would
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 99), 3 * RECORD_BYTES - 4);
+        }
+
+        try (SubmissionJournal journal = new SubmissionJournal(directory, SEGMENT_BYTES)) {
+            List<SubmissionJournal.Record> records = journal.recover();
+            assertEquals(2, records.size());
+            assertEquals(2, records.get(1).getSequence());
+        }
+    }
+
+    @Test
+    void testRefusesASecondJournalOnTheDirectory() throws IOException {
+        try (SubmissionJournal journal = new SubmissionJournal(directory, SEGMENT_BYTES)) {
+            journal.append(1, 1, new int[] {1, 2, 3});
+            assertThrows(IOException.class, () -> new SubmissionJournal(directory, SEGMENT_BYTES));
+            // The refused journal left the first one's records alone
+            assertEquals(2, journal.append(2, 1, new int[] {1, 2, 3}).getSequence());
+        }
+
+        // Closing releases the directory
+        try (SubmissionJournal journal = new SubmissionJournal(directory, SEGMENT_BYTES)) {
+            assertEquals(2, journal.recover().size());
+        }
+    }
+
+    @Test
+    void testRejectsRecordLargerThanASegment() throws IOException {
+        try (SubmissionJournal journal = new SubmissionJournal(directory, RECORD_BYTES)) {
+            assertThrows(IOException.class, () -> journal.append(1, 1, new int[] {1, 2, 3, 4}));
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith("segment-"))
+                .sorted().collect(Collectors.toList());
+        }
+    }
+}
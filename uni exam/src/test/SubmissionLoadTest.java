@@ -0,0 +1,275 @@
+package test;
+
+import controller.AttemptRegistry;
+import controller.ExamController;
+import database.DatabaseConnection;
+import database.SqlExecutor;
+import database.SqlStatement;
+import model.Question;
+import servlet.ExamServlet;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test of POST /exam/submit: client threads post 200-question answer
+ * forms through ExamServlet, which parses them, grades them against the
+ * cached answer key and hands them to the write-behind submission queue.
+ * Every student opens the exam first, as in a real sitting, and answers
+ * in the shuffled order served to them.
+ *
+ * Reports accepted submissions per second with latency percentiles, then
+ * the time until the queue has stored everything, and checks each stored
+ * score against the one expected from the posted answers. The servlet
+ * runs without a container; requests and sessions are minimal stand-ins.
+ *
+ * Runs on an in-memory H2 database unless -Ddb.url is set.
+ *
+ * Usage: java -Dbench.students=4000 -Dbench.questionsPerExam=200 -Dbench.threads=16 test.SubmissionLoadTest
+ */
+public class SubmissionLoadTest {
+    private final int students = Integer.getInteger("bench.students", 4000);
+    private final int questionsPerExam = Integer.getInteger("bench.questionsPerExam", 200);
+    private final int threads = Integer.getInteger("bench.threads", 16);
+    private final int warmup = Integer.getInteger("bench.warmup", 500);
+
+    private final List<Integer> studentIds = new ArrayList<>();
+    private final List<byte[]> forms = new ArrayList<>();
+    private final List<Integer> expectedMarks = new ArrayList<>();
+    private int examId;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkDatabase.useEmbedded("submission_load");
+        BenchmarkDatabase.setDefault("submission.journal.dir", Files.createTempDirectory("load-journal").toString());
+        BenchmarkDatabase.setDefault("exam.shuffle.secret", "load-test");
+
+        SubmissionLoadTest test = new SubmissionLoadTest();
+        try {
+            test.seed();
+            test.openAttempts();
+            test.run();
+        } finally {
+            DatabaseConnection.getInstance().closeConnection();
+        }
+    }
+
+    private void seed() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection()) {
+            connection.setAutoCommit(false);
+            studentIds.addAll(BenchmarkDatabase.insertUsers(connection, "load_", "STUDENT", students));
+            List<Integer> questionIds = BenchmarkDatabase.insertQuestions(connection, studentIds.get(0),
+                questionsPerExam, number -> new Question(0, "Load test question " + number,
+                    List.of("A", "B", "C", "D"), 1 + number % 4, 1 + number % 3, "Mathematics", "Medium"));
+            examId = SqlExecutor.insert(connection, SqlStatement.INSERT_EXAM, pstmt -> {
+                pstmt.setString(1, "Load test");
+                pstmt.setString(2, "Mathematics");
+                pstmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                pstmt.setInt(4, 180);
+                pstmt.setInt(5, questionsPerExam);
+                pstmt.setInt(6, studentIds.get(0));
+            });
+            SqlExecutor.insertRows(connection, SqlStatement.INSERT_EXAM_QUESTION, questionIds,
+                (pstmt, questionId, i, offset) -> {
+                    pstmt.setInt(offset + 1, examId);
+                    pstmt.setInt(offset + 2, questionId);
+                    pstmt.setInt(offset + 3, i + 1);
+                });
+            // Attempts are only opened for active exams
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate("UPDATE exams SET is_active = true WHERE id = " + examId);
+            }
+            connection.commit();
+        }
+        System.out.println(String.format("Seeded %d students and one exam of %d questions in %d ms",
+            students, questionsPerExam, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Opens every student's attempt and builds the form each will post:
+     * a random answer to every question, in served order with served
+     * option numbers.
+     */
+    private void openAttempts() throws SQLException {
+        long start = System.currentTimeMillis();
+        ExamController examController = ExamController.getInstance();
+        AttemptRegistry registry = AttemptRegistry.getInstance();
+        Random random = new Random(42);
+        for (int studentId : studentIds) {
+            registry.openAttempt(studentId, examId);
+            StringBuilder form = new StringBuilder("id=").append(examId);
+            int marks = 0;
+            for (Question question : examController.getExamQuestions(studentId, examId)) {
+                int option = 1 + random.nextInt(question.getOptions().size());
+                form.append("&answer_").append(question.getId()).append('=').append(option);
+                if (option == question.getCorrectOption()) {
+                    marks += question.getMarks();
+                }
+            }
+            forms.add(form.toString().getBytes(StandardCharsets.US_ASCII));
+            expectedMarks.add(marks);
+        }
+        System.out.println(String.format("Opened %d attempts in %d ms, %d bytes per form",
+            students, System.currentTimeMillis() - start, forms.get(0).length));
+    }
+
+    private void run() throws Exception {
+        ExamServlet servlet = new ExamServlet();
+        servlet.init();
+
+        int measured = students - Math.min(warmup, students / 2);
+        post(servlet, 0, students - measured, null);
+        LatencyRecorder latencies = new LatencyRecorder("POST /exam/submit (" + questionsPerExam + " answers)");
+        long start = System.nanoTime();
+        post(servlet, students - measured, students, latencies);
+        long acceptedNanos = System.nanoTime() - start;
+
+        ExamController.getInstance().getSubmissionQueue().close();
+        long storedNanos = System.nanoTime() - start;
+        AttemptRegistry.getInstance().close();
+
+        System.out.println();
+        System.out.println(String.format("%d cores, %d client threads, %d measured submissions",
+            Runtime.getRuntime().availableProcessors(), threads, measured));
+        System.out.println(LatencyRecorder.header());
+        System.out.println(latencies);
+        System.out.println(String.format("Accepted: %.0f submissions/sec (%.0f answers/sec)",
+            measured / (acceptedNanos / 1e9), (double) measured * questionsPerExam / (acceptedNanos / 1e9)));
+        System.out.println(String.format("Stored:   %.0f submissions/sec including the queue drain",
+            measured / (storedNanos / 1e9)));
+        System.out.println("Submission queue: " + ExamController.getInstance().getSubmissionQueue().getStatistics());
+        verify();
+    }
+
+    /**
+     * Posts the forms of students [from, to) from the client threads.
+     */
+    private void post(ExamServlet servlet, int from, int to, LatencyRecorder latencies) throws Exception {
+        AtomicInteger next = new AtomicInteger(from);
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(clients.submit(() -> {
+                long[] samples = new long[to - from];
+                int count = 0;
+                int index;
+                while ((index = next.getAndIncrement()) < to) {
+                    int[] status = new int[1];
+                    HttpServletRequest request = request(studentIds.get(index), forms.get(index));
+                    HttpServletResponse response = response(status);
+                    long start = System.nanoTime();
+                    servlet.service(request, response);
+                    samples[count++] = System.nanoTime() - start;
+                    if (status[0] != HttpServletResponse.SC_FOUND) {
+                        throw new IllegalStateException("Student " + studentIds.get(index) + " got " + status[0]);
+                    }
+                }
+                return Arrays.copyOf(samples, count);
+            }));
+        }
+        for (Future<long[]> result : results) {
+            for (long sample : result.get()) {
+                if (latencies != null) {
+                    latencies.record(sample);
+                }
+            }
+        }
+        clients.shutdown();
+    }
+
+    /**
+     * Checks that every submission was stored with the expected score.
+     */
+    private void verify() throws SQLException {
+        Map<Integer, Integer> stored = new HashMap<>();
+        try (Connection connection = DatabaseConnection.getInstance().getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT student_id, total_marks_obtained FROM exam_results "
+                 + "WHERE exam_id = " + examId)) {
+            while (rs.next()) {
+                stored.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        int mismatches = 0;
+        for (int s = 0; s < students; s++) {
+            if (!expectedMarks.get(s).equals(stored.get(studentIds.get(s)))) {
+                mismatches++;
+            }
+        }
+        if (mismatches > 0 || stored.size() != students) {
+            throw new IllegalStateException(mismatches + " submissions missing or graded wrong");
+        }
+        System.out.println("All " + students + " submissions stored with the expected marks");
+    }
+
+    private HttpServletRequest request(int studentId, byte[] form) {
+        HttpSession session = (HttpSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {HttpSession.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getAttribute")) {
+                    return args[0].equals("userId") ? (Object) studentId : "load_" + studentId;
+                }
+                return null;
+            });
+        ServletInputStream body = new ServletInputStream() {
+            private final ByteArrayInputStream in = new ByteArrayInputStream(form);
+
+            @Override public int read() { return in.read(); }
+            @Override public int read(byte[] b, int off, int len) { return in.read(b, off, len); }
+            @Override public boolean isFinished() { return in.available() == 0; }
+            @Override public boolean isReady() { return true; }
+            @Override public void setReadListener(ReadListener listener) { }
+        };
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getMethod": return "POST";
+                    case "getSession": return session;
+                    case "getPathInfo": return "/submit";
+                    case "getContextPath": return "";
+                    case "getContentType": return "application/x-www-form-urlencoded";
+                    case "getContentLength": return form.length;
+                    case "getInputStream": return body;
+                    case "getProtocol": return "HTTP/1.1";
+                    default: return null;
+                }
+            });
+    }
+
+    private HttpServletResponse response(int[] status) {
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] {HttpServletResponse.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "sendRedirect": status[0] = HttpServletResponse.SC_FOUND; break;
+                    case "sendError":
+                    case "setStatus": status[0] = (Integer) args[0]; break;
+                    default: break;
+                }
+                if (method.getReturnType() == boolean.class) {
+                    return false;
+                }
+                return method.getReturnType() == int.class ? 0 : null;
+            });
+    }
+}
@@ -0,0 +1,124 @@
+package test;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import util.TimingWheel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimingWheelTest {
+    private static final long TICK = 10;
+    // Not a multiple of the tick, so deadlines are measured from it
+    private static final long ORIGIN = 1_234;
+
+    private TimingWheel<Long> wheel;
+    private List<TimingWheel.Timeout<Long>> expired;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new TimingWheel<>(TICK, ORIGIN);
+        expired = new ArrayList<>();
+    }
+
+    @Test
+    void testExpiresOnTheDeadlineTickAtEveryLevel() {
+        // Each level's first and last slots and the overflow list
+        long[] ticks = {1, 63, 64, 65, 4_095, 4_096, 4_097, 262_143, 262_144, 16_777_215, 16_777_216, 20_000_000};
+        for (long tick : ticks) {
+            wheel.schedule(tick, at(tick));
+        }
+        assertEquals(ticks.length, wheel.size());
+
+        for (int i = 0; i < ticks.length; i++) {
+            // Nothing fires a tick early
+            wheel.advance(at(ticks[i] - 1), expired);
+            assertTrue(expired.isEmpty(), "early at tick " + (ticks[i] - 1));
+            wheel.advance(at(ticks[i]), expired);
+            assertEquals(1, expired.size(), "tick " + ticks[i]);
+            assertEquals(ticks[i], expired.get(0).getItem());
+            assertFalse(expired.get(0).isPending());
+            expired.clear();
+            assertEquals(ticks.length - i - 1, wheel.size());
+        }
+    }
+
+    @Test
+    void testDeadlineBetweenTicksExpiresOnTheNextTick() {
+        wheel.schedule(1L, at(3) - TICK + 1);
+        wheel.advance(at(2), expired);
+        assertTrue(expired.isEmpty());
+        wheel.advance(at(3), expired);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    void testPastDeadlineExpiresOnTheNextTick() {
+        wheel.advance(at(100), expired);
+        wheel.schedule(1L, at(5));
+        wheel.schedule(2L, ORIGIN - 60_000);
+        assertEquals(1, wheel.advance(at(101), expired));
+        assertEquals(2, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancelledTimeoutsDoNotExpire() {
+        TimingWheel.Timeout<Long> near = wheel.schedule(1L, at(10));
+        TimingWheel.Timeout<Long> far = wheel.schedule(2L, at(5_000));
+        TimingWheel.Timeout<Long> overflow = wheel.schedule(3L, at(17_000_000));
+        wheel.schedule(4L, at(10));
+
+        assertTrue(wheel.cancel(near));
+        assertTrue(wheel.cancel(far));
+        assertTrue(wheel.cancel(overflow));
+        assertFalse(wheel.cancel(far));
+        assertEquals(1, wheel.size());
+
+        wheel.advance(at(17_000_000), expired);
+        assertEquals(1, expired.size());
+        assertEquals(4L, expired.get(0).getItem());
+        // An expired timeout cannot be cancelled
+        assertFalse(wheel.cancel(expired.get(0)));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testAdvanceReportsTheTicksRun() {
+        assertEquals(0, wheel.advance(ORIGIN + TICK - 1, expired));
+        assertEquals(1, wheel.advance(at(1), expired));
+        assertEquals(99, wheel.advance(at(100), expired));
+        // Time going backwards runs nothing
+        assertEquals(0, wheel.advance(at(50), expired));
+    }
+
+    @Test
+    void testRandomDeadlinesExpireInTheirTick() {
+        Random random = new Random(15);
+        for (int i = 0; i < 20_000; i++) {
+            // Spread over every level and the overflow list
+            long tick = 1 + (long) (Math.pow(random.nextDouble(), 4) * 20_000_000);
+            wheel.schedule((long) i, at(tick) - random.nextInt((int) TICK));
+        }
+
+        long now = 0;
+        int count = 0;
+        while (wheel.size() > 0) {
+            long next = now + 1 + random.nextInt(random.nextBoolean() ? 70 : 300_000);
+            wheel.advance(at(next), expired);
+            for (TimingWheel.Timeout<Long> timeout : expired) {
+                long due = Math.floorDiv(timeout.getDeadlineMillis() - ORIGIN + TICK - 1, TICK);
+                assertTrue(due > now && due <= next, "due " + due + " expired in (" + now + ", " + next + "]");
+                count++;
+            }
+            expired.clear();
+            now = next;
+        }
+        assertEquals(20_000, count);
+    }
+
+    private static long at(long tick) {
+        return ORIGIN + tick * TICK;
+    }
+}
@@ -1,21 +1,16 @@
 package util;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import database.DatabaseConnection;
+import database.SqlStatement;
 
 public class AuditLogger {
     private static AuditLogger instance;
-    private Connection connection;
+    private final DatabaseConnection database;
 
     private AuditLogger() {
-        try {
-            connection = DatabaseConnection.getInstance().getConnection();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        database = DatabaseConnection.getInstance();
     }
 
     public static AuditLogger getInstance() {
@@ -27,13 +22,12 @@ public class AuditLogger {
 
     public void logAction(int userId, String action, String details) {
         try {
-            String query = "INSERT INTO audit_logs (user_id, action, details, timestamp) VALUES (?, ?, ?, ?)";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, action);
-            pstmt.setString(3, details);
-            pstmt.setObject(4, LocalDateTime.now());
-            pstmt.executeUpdate();
+            database.update(SqlStatement.INSERT_AUDIT_LOG, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setString(2, action);
+                pstmt.setString(3, details);
+                pstmt.setObject(4, LocalDateTime.now());
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -41,13 +35,12 @@ public class AuditLogger {
 
     public void logLoginAttempt(String username, boolean success, String ipAddress) {
         try {
-            String query = "INSERT INTO login_attempts (username, success, ip_address, timestamp) VALUES (?, ?, ?, ?)";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            pstmt.setString(1, username);
-            pstmt.setBoolean(2, success);
-            pstmt.setString(3, ipAddress);
-            pstmt.setObject(4, LocalDateTime.now());
-            pstmt.executeUpdate();
+            database.update(SqlStatement.INSERT_LOGIN_ATTEMPT, pstmt -> {
+                pstmt.setString(1, username);
+                pstmt.setBoolean(2, success);
+                pstmt.setString(3, ipAddress);
+                pstmt.setObject(4, LocalDateTime.now());
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -55,13 +48,12 @@ public class AuditLogger {
 
     public void logExamActivity(int userId, int examId, String activity) {
         try {
-            String query = "INSERT INTO exam_logs (user_id, exam_id, activity, timestamp) VALUES (?, ?, ?, ?)";
-            PreparedStatement pstmt = connection.prepareStatement(query);
-            pstmt.setInt(1, userId);
-            pstmt.setInt(2, examId);
-            pstmt.setString(3, activity);
-            pstmt.setObject(4, LocalDateTime.now());
-            pstmt.executeUpdate();
+            database.update(SqlStatement.INSERT_EXAM_LOG, pstmt -> {
+                pstmt.setInt(1, userId);
+                pstmt.setInt(2, examId);
+                pstmt.setString(3, activity);
+                pstmt.setObject(4, LocalDateTime.now());
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,179 @@
+package util;
+
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for large numbers of timeouts.
+ *
+ * Four levels of 64 slots: level 0 holds the timeouts due in the current
+ * run of 64 ticks, level 1 those due in the current run of 64^2 ticks and
+ * so on, with anything further out in an overflow list. When a slot of a
+ * higher level comes round, its timeouts move down to the level below, so
+ * each timeout is moved at most four times. Scheduling and cancelling are
+ * O(1) and a tick only visits the slots that are due, so its cost does not
+ * depend on how many timeouts are pending.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final int OVERFLOW = LEVELS * SLOTS;
+
+    /** A scheduled item; cancel it through the wheel. */
+    public static final class Timeout<T> {
+        private final T item;
+        private final long deadlineMillis;
+        private final long deadlineTick;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+        private int bucket = -1;
+
+        private Timeout(T item, long deadlineMillis, long deadlineTick) {
+            this.item = item;
+            this.deadlineMillis = deadlineMillis;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getItem() { return item; }
+
+        public long getDeadlineMillis() { return deadlineMillis; }
+
+        /**
+         * @return false once the timeout has expired or was cancelled
+         */
+        public boolean isPending() { return bucket >= 0; }
+    }
+
+    private final long tickMillis;
+    private final long originMillis;
+    // Level-major slots followed by the overflow list; each a doubly linked list
+    private final Timeout<T>[] buckets;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.originMillis = nowMillis;
+        this.buckets = (Timeout<T>[]) new Timeout<?>[OVERFLOW + 1];
+    }
+
+    /**
+     * Schedules an item. A deadline already passed expires on the next
+     * tick.
+     */
+    public Timeout<T> schedule(T item, long deadlineMillis) {
+        // First tick at or after the deadline
+        long ticks = Math.floorDiv(deadlineMillis - originMillis + tickMillis - 1, tickMillis);
+        Timeout<T> timeout = new Timeout<>(item, deadlineMillis, Math.max(ticks, currentTick + 1));
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * @return false if the timeout had already expired or been cancelled
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (!timeout.isPending()) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Runs every tick up to nowMillis.
+     * @param expired Receives the timeouts that fell due, in tick order
+     * @return Number of ticks run
+     */
+    public int advance(long nowMillis, List<Timeout<T>> expired) {
+        long target = Math.floorDiv(nowMillis - originMillis, tickMillis);
+        int ticks = 0;
+        while (currentTick < target) {
+            currentTick++;
+            ticks++;
+            if ((currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+                cascade(OVERFLOW);
+            }
+            // Higher levels first: a cascaded timeout may be due this very tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+                }
+            }
+            int bucket = (int) (currentTick & SLOT_MASK);
+            Timeout<T> timeout = buckets[bucket];
+            buckets[bucket] = null;
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.previous = null;
+                timeout.next = null;
+                timeout.bucket = -1;
+                size--;
+                expired.add(timeout);
+                timeout = next;
+            }
+        }
+        return ticks;
+    }
+
+    public int size() { return size; }
+
+    public long getTickMillis() { return tickMillis; }
+
+    /**
+     * Puts the timeout on the lowest level whose current run of ticks
+     * contains its deadline tick.
+     */
+    private void place(Timeout<T> timeout) {
+        long tick = timeout.deadlineTick;
+        int bucket = OVERFLOW;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if ((tick >>> shift) == (currentTick >>> shift)) {
+                bucket = level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                break;
+            }
+        }
+        Timeout<T> head = buckets[bucket];
+        timeout.bucket = bucket;
+        timeout.previous = null;
+        timeout.next = head;
+        if (head != null) {
+            head.previous = timeout;
+        }
+        buckets[bucket] = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    private void cascade(int bucket) {
+        Timeout<T> timeout = buckets[bucket];
+        buckets[bucket] = null;
+        while (timeout != null) {
+            Timeout<T> next = timeout.next;
+            place(timeout);
+            timeout = next;
+        }
+    }
+}